@@ -0,0 +1,336 @@
+package search;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Random;
+import java.util.Set;
+
+import search.Crawler.CrawlArchive;
+import search.Crawler.HttpFetcher;
+
+/**
+ * Synthesizes a large linked web corpus as a crawl archive, for offline benchmarks of
+ * the whole crawl, multicast and barrel path.
+ *
+ * <p>The corpus spreads its pages over many hosts under the reserved {@code .test}
+ * domain, so a replayed crawl can never reach a real site. Every page has a title and
+ * paragraphs of pseudo-words drawn from a Zipf distribution, like the terms of natural
+ * text, and links to:</p>
+ * <ul>
+ *   <li>the next page of its host and the host's home page, so one seed reaches every page;</li>
+ *   <li>random pages, three in four on the same host and the rest anywhere in the corpus.</li>
+ * </ul>
+ * <p>Home pages link to the first pages of their host and to the home pages of other
+ * hosts. Page paths are made of words, so every page has its own path template and
+ * the crawler trap detector treats the corpus as ordinary content.</p>
+ *
+ * <p>The same arguments always produce the same file, byte for byte. Replay it with
+ * {@code FETCH_MODE=replay} and {@code CRAWL_ARCHIVE} pointing at the file, seeding the
+ * queue with {@code http://site0.test/}, e.g. through {@link LocalCluster}.</p>
+ *
+ * <p>Usage: {@code java search.CorpusGenerator <archiveFile> [pages] [hosts] [linksPerPage] [seed]}</p>
+ *
+ * @author João Antunes, David Cameijo and Gabriel Pinto
+ */
+public class CorpusGenerator {
+
+    /** Number of distinct words in the corpus */
+    private static final int VOCABULARY_SIZE = 20000;
+
+    /** Words used in page paths; each path is a base-{@value} number written in words */
+    private static final int SLUG_WORDS = 512;
+
+    /** Words of body text per page */
+    private static final int WORDS_PER_PAGE = 400;
+
+    /** Words per paragraph */
+    private static final int WORDS_PER_PARAGRAPH = 60;
+
+    /** Share of links that stay on the page's host */
+    private static final double SAME_HOST_LINKS = 0.75;
+
+    /** First path segment of the pages, by page number */
+    private static final String[] SECTIONS = {"news", "blog", "docs", "wiki", "shop", "forum", "about", "events"};
+
+    /** Date of every record and Last-Modified of every page */
+    private static final Instant DATE = Instant.parse("2024-01-01T00:00:00Z");
+
+    private static final String CONSONANTS = "bcdfghjklmnprstvz";
+    private static final String VOWELS = "aeiou";
+
+    /** Words of the corpus, most frequent first */
+    private final String[] vocabulary;
+
+    /** Cumulative Zipf weights of the words */
+    private final double[] cumulative;
+
+    /** Number of pages and hosts */
+    private final int pages;
+    private final int hosts;
+
+    /** Links per page */
+    private final int linksPerPage;
+
+    /** Seed of every random choice */
+    private final long seed;
+
+    /**
+     * Prepares a corpus.
+     *
+     * @param pages Number of pages, home pages excluded
+     * @param hosts Number of hosts
+     * @param linksPerPage Links per page
+     * @param seed Seed of every random choice
+     */
+    public CorpusGenerator(int pages, int hosts, int linksPerPage, long seed) {
+        this.pages = Math.max(1, pages);
+        this.hosts = Math.max(1, Math.min(hosts, this.pages));
+        this.linksPerPage = Math.max(2, linksPerPage);
+        this.seed = seed;
+
+        Random random = new Random(seed);
+        Set<String> words = new LinkedHashSet<>();
+        while (words.size() < VOCABULARY_SIZE) {
+            StringBuilder word = new StringBuilder();
+            int syllables = 1 + random.nextInt(4);
+            for (int i = 0; i < syllables; i++) {
+                word.append(CONSONANTS.charAt(random.nextInt(CONSONANTS.length())));
+                word.append(VOWELS.charAt(random.nextInt(VOWELS.length())));
+            }
+            if (word.length() >= 3) {
+                words.add(word.toString());
+            }
+        }
+        this.vocabulary = words.toArray(new String[0]);
+        this.cumulative = new double[VOCABULARY_SIZE];
+        double total = 0;
+        for (int rank = 0; rank < VOCABULARY_SIZE; rank++) {
+            total += 1.0 / (rank + 1);
+            cumulative[rank] = total;
+        }
+    }
+
+    //----------------------------------------GENERATOR----------------------------------------
+
+    /**
+     * Returns the number of pages of a host.
+     *
+     * @param host The host number
+     * @return Its share of the pages
+     */
+    private int pagesOf(int host) {
+        return pages / hosts + (host < pages % hosts ? 1 : 0);
+    }
+
+    /**
+     * Returns the home page of a host.
+     *
+     * @param host The host number
+     * @return The URL of the host's root
+     */
+    private static String homeOf(int host) {
+        return "http://site" + host + ".test/";
+    }
+
+    /**
+     * Returns the path of a page, written with words so it contains no numbers.
+     *
+     * @param page The page number within its host
+     * @return The path
+     */
+    private String pathOf(int page) {
+        StringBuilder path = new StringBuilder("/").append(SECTIONS[page % SECTIONS.length]).append('/');
+        int value = page;
+        int digit = 0;
+        do {
+            if (digit > 0) {
+                path.append('-');
+            }
+            path.append(vocabulary[digit * SLUG_WORDS + value % SLUG_WORDS]);
+            value /= SLUG_WORDS;
+            digit++;
+        } while (value > 0 || digit < 2);
+        return path.toString();
+    }
+
+    /**
+     * Draws a word from the Zipf distribution.
+     *
+     * @param random The source of randomness
+     * @return The word
+     */
+    private String word(Random random) {
+        double target = random.nextDouble() * cumulative[VOCABULARY_SIZE - 1];
+        int index = Arrays.binarySearch(cumulative, target);
+        return vocabulary[index >= 0 ? index : Math.min(-index - 1, VOCABULARY_SIZE - 1)];
+    }
+
+    /**
+     * Appends words to a page.
+     *
+     * @param html The page being built
+     * @param random The source of randomness
+     * @param count Number of words
+     */
+    private void appendWords(StringBuilder html, Random random, int count) {
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                html.append(' ');
+            }
+            html.append(word(random));
+        }
+    }
+
+    /**
+     * Builds a page.
+     *
+     * @param random The page's source of randomness
+     * @param links The links of the page
+     * @param words Words of body text
+     * @return The HTML of the page
+     */
+    private String render(Random random, String[] links, int words) {
+        StringBuilder html = new StringBuilder(words * 8 + links.length * 64 + 256);
+        html.append("<!DOCTYPE html>\n<html><head><meta charset=\"utf-8\"><title>");
+        appendWords(html, random, 3 + random.nextInt(4));
+        html.append("</title></head>\n<body><main><h1>");
+        appendWords(html, random, 3 + random.nextInt(4));
+        html.append("</h1>\n");
+        for (int written = 0; written < words; written += WORDS_PER_PARAGRAPH) {
+            html.append("<p>");
+            appendWords(html, random, Math.min(WORDS_PER_PARAGRAPH, words - written));
+            html.append("</p>\n");
+        }
+        html.append("<ul>\n");
+        for (String link : links) {
+            html.append("<li><a href=\"").append(link).append("\">");
+            appendWords(html, random, 2 + random.nextInt(2));
+            html.append("</a></li>\n");
+        }
+        html.append("</ul></main></body></html>\n");
+        return html.toString();
+    }
+
+    /**
+     * Builds a content page and its links.
+     *
+     * @param host The host number
+     * @param page The page number within the host
+     * @return The HTML of the page
+     */
+    private String contentPage(int host, int page) {
+        Random random = new Random(seed ^ (host * 0x9E3779B97F4A7C15L + page * 0xC2B2AE3D27D4EB4FL));
+        int hostPages = pagesOf(host);
+        String[] links = new String[linksPerPage];
+        links[0] = pathOf((page + 1) % hostPages);
+        links[1] = "/";
+        for (int i = 2; i < links.length; i++) {
+            if (random.nextDouble() < SAME_HOST_LINKS) {
+                links[i] = pathOf(random.nextInt(hostPages));
+            } else {
+                int other = random.nextInt(hosts);
+                String home = homeOf(other);
+                links[i] = home.substring(0, home.length() - 1) + pathOf(random.nextInt(pagesOf(other)));
+            }
+        }
+        return render(random, links, WORDS_PER_PAGE);
+    }
+
+    /**
+     * Builds the home page of a host: links to its first pages, the next host and random hosts.
+     *
+     * @param host The host number
+     * @return The HTML of the page
+     */
+    private String homePage(int host) {
+        Random random = new Random(seed ^ (host * 0x9E3779B97F4A7C15L - 1));
+        int hostPages = pagesOf(host);
+        String[] links = new String[linksPerPage];
+        int local = Math.min(hostPages, linksPerPage / 2);
+        for (int i = 0; i < local; i++) {
+            links[i] = pathOf(i);
+        }
+        links[local] = homeOf((host + 1) % hosts);
+        for (int i = local + 1; i < links.length; i++) {
+            links[i] = homeOf(random.nextInt(hosts));
+        }
+        return render(random, links, WORDS_PER_PAGE / 4);
+    }
+
+    /**
+     * Writes one page to the archive.
+     *
+     * @param writer The archive
+     * @param url The page's URL
+     * @param html The page's HTML
+     * @return The size of the body in bytes
+     * @throws IOException If the record cannot be written
+     */
+    private static int write(CrawlArchive.Writer writer, String url, String html) throws IOException {
+        byte[] body = html.getBytes(StandardCharsets.UTF_8);
+        String etag = "\"" + Integer.toHexString(html.hashCode()) + "\"";
+        String lastModified = DateTimeFormatter.RFC_1123_DATE_TIME.format(DATE.atOffset(ZoneOffset.UTC));
+        writer.write(url, new HttpFetcher.Page(url, 200, "text/html; charset=utf-8", body, etag, lastModified, false), DATE);
+        return body.length;
+    }
+
+    /**
+     * Writes the whole corpus to an archive, replacing any existing file.
+     *
+     * @param file Path of the archive
+     * @return The total size of the page bodies in bytes
+     * @throws IOException If the archive cannot be written
+     */
+    public long generate(String file) throws IOException {
+        Files.deleteIfExists(Path.of(file));
+        long bytes = 0;
+        try (CrawlArchive.Writer writer = new CrawlArchive.Writer(file)) {
+            for (int host = 0; host < hosts; host++) {
+                String home = homeOf(host);
+                bytes += write(writer, home, homePage(host));
+                String origin = home.substring(0, home.length() - 1);
+                for (int page = 0; page < pagesOf(host); page++) {
+                    bytes += write(writer, origin + pathOf(page), contentPage(host, page));
+                }
+            }
+        }
+        return bytes;
+    }
+
+    //----------------------------------------MAIN----------------------------------------
+
+    /**
+     * Generates a corpus.
+     *
+     * @param args Command-line arguments (archive file, pages, hosts, links per page, seed)
+     */
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.err.println("Usage: java search.CorpusGenerator <archiveFile> [pages] [hosts] [linksPerPage] [seed]");
+            return;
+        }
+        int pages = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+        int hosts = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+        int links = args.length > 3 ? Integer.parseInt(args[3]) : 20;
+        long seed = args.length > 4 ? Long.parseLong(args[4]) : 42;
+
+        CorpusGenerator generator = new CorpusGenerator(pages, hosts, links, seed);
+        long start = System.nanoTime();
+        try {
+            long bytes = generator.generate(args[0]);
+            System.out.printf("Wrote %d pages and %d home pages over %d hosts (%.1f MB of HTML) to %s in %.1f s%n",
+                    pages, generator.hosts, generator.hosts, bytes / (1024.0 * 1024.0), args[0],
+                    (System.nanoTime() - start) / 1e9);
+            System.out.println("Seed: " + homeOf(0));
+        } catch (IOException e) {
+            System.err.println("Failed to write corpus: " + e.getMessage());
+        }
+    }
+}
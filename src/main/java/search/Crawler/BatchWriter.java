@@ -0,0 +1,344 @@
+package search.Crawler;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Write-behind log in front of a SQLite connection.
+ *
+ * <p>Callers submit statements and return at once; a single writer thread drains
+ * everything submitted since its last commit and applies it in one transaction (group
+ * commit). While one transaction is being synced to disk the next batch accumulates,
+ * so a slow fsync delays persistence but not the callers. Statements are applied in
+ * submission order, and the statements of one submission always commit together.</p>
+ *
+ * <p>A batch that keeps failing is written again one submission per transaction, so
+ * only the submissions that fail on their own are dropped; their callers learn of it
+ * through the failure callback given to {@link #submit(List, Runnable, Runnable)}.</p>
+ *
+ * <p>The queue of submissions is bounded: when the disk falls behind for long,
+ * {@link #submit(List, Runnable)} blocks instead of letting memory grow.</p>
+ *
+ * <p>Code that needs to read its own writes or to read and write atomically uses
+ * {@link #exclusive(Work)}, which runs on the same connection between two batches.
+ * Thread-safe.</p>
+ */
+public class BatchWriter implements AutoCloseable {
+
+    /**
+     * A statement and its parameters.
+     *
+     * @param sql The SQL statement
+     * @param params The values of its parameters, in order
+     */
+    public record Op(String sql, Object... params) {
+    }
+
+    /**
+     * Work done on the connection with no other writer active.
+     *
+     * @param <T> The type of the result
+     */
+    @FunctionalInterface
+    public interface Work<T> {
+        T run(Connection connection) throws SQLException;
+    }
+
+    /**
+     * One submission.
+     *
+     * @param ops The statements, committed together
+     * @param onCommit Run by the writer thread after the statements committed, or null
+     * @param onDrop Run by the writer thread if the statements were dropped, or null
+     * @param barrier Completed once everything submitted before it was handled, or null
+     */
+    private record Submission(List<Op> ops, Runnable onCommit, Runnable onDrop, CompletableFuture<Void> barrier) {
+    }
+
+    /** Number of times a failed batch is retried before its submissions are written one by one */
+    private static final int MAX_RETRIES = 3;
+
+    /** Connection the batches are written on */
+    private final Connection connection;
+
+    /** Held while a batch or exclusive work uses the connection */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /** Submissions waiting for the writer thread */
+    private final BlockingQueue<Submission> queue;
+
+    /** Maximum number of submissions per transaction */
+    private final int maxBatch;
+
+    /** Prepared statements by SQL, used only under the lock */
+    private final Map<String, PreparedStatement> statements = new HashMap<>();
+
+    /** The writer thread */
+    private final Thread thread;
+
+    /** Cleared by {@link #close()} */
+    private volatile boolean running = true;
+
+    /** Transactions committed */
+    private final AtomicLong commits = new AtomicLong();
+
+    /** Statements committed */
+    private final AtomicLong written = new AtomicLong();
+
+    /** Statements dropped because their submission failed on its own */
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * Creates the writer and starts its thread.
+     *
+     * @param connection Connection to write on; the writer owns its transactions from now on
+     * @param capacity Maximum number of submissions waiting to be written
+     * @param maxBatch Maximum number of submissions per transaction
+     * @param name Name of the writer thread
+     */
+    public BatchWriter(Connection connection, int capacity, int maxBatch, String name) {
+        this.connection = connection;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.maxBatch = maxBatch;
+        this.thread = new Thread(this::writeLoop, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    //----------------------------------------METHODS----------------------------------------
+
+    /**
+     * Submits statements to be committed together.
+     *
+     * @param ops The statements
+     */
+    public void submit(Op... ops) {
+        submit(List.of(ops), null);
+    }
+
+    /**
+     * Submits statements to be committed together, blocking while the queue is full.
+     *
+     * @param ops The statements
+     * @param onCommit Run by the writer thread once they committed, or null
+     */
+    public void submit(List<Op> ops, Runnable onCommit) {
+        submit(ops, onCommit, null);
+    }
+
+    /**
+     * Submits statements to be committed together, blocking while the queue is full.
+     *
+     * @param ops The statements
+     * @param onCommit Run by the writer thread once they committed, or null
+     * @param onDrop Run by the writer thread if they could not be written and were dropped, or null
+     */
+    public void submit(List<Op> ops, Runnable onCommit, Runnable onDrop) {
+        if (ops.isEmpty() && onCommit == null) {
+            return;
+        }
+        enqueue(new Submission(ops, onCommit, onDrop, null));
+    }
+
+    /**
+     * Waits until everything submitted so far has been written or dropped.
+     */
+    public void flush() {
+        CompletableFuture<Void> barrier = new CompletableFuture<>();
+        enqueue(new Submission(List.of(), null, null, barrier));
+        barrier.join();
+    }
+
+    /**
+     * Adds a submission to the queue.
+     *
+     * @param submission The submission
+     */
+    private void enqueue(Submission submission) {
+        if (!running) {
+            throw new IllegalStateException("Writer is closed");
+        }
+        try {
+            queue.put(submission);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the writer", e);
+        }
+    }
+
+    /**
+     * Runs work on the connection between two batches, in its own transaction.
+     *
+     * <p>Statements still in the queue are not applied first; call {@link #flush()}
+     * before if the work must see them.</p>
+     *
+     * @param work The work
+     * @param <T> The type of the result
+     * @return The result of the work
+     * @throws SQLException If the work fails; its transaction is rolled back
+     */
+    public <T> T exclusive(Work<T> work) throws SQLException {
+        lock.lock();
+        try {
+            connection.setAutoCommit(false);
+            try {
+                T result = work.run(connection);
+                connection.commit();
+                return result;
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Takes batches off the queue and writes them until the writer is closed and drained.
+     */
+    private void writeLoop() {
+        List<Submission> batch = new ArrayList<>();
+        while (running || !queue.isEmpty()) {
+            try {
+                Submission first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, maxBatch - 1);
+            } catch (InterruptedException e) {
+                queue.drainTo(batch);
+            }
+
+            if (write(batch, MAX_RETRIES)) {
+                batch.forEach(submission -> finish(submission, true));
+            } else {
+                // Isolate the failing submissions so the others still commit
+                System.err.println("Writing the " + batch.size() + " submissions of a failed batch one at a time");
+                for (Submission submission : batch) {
+                    finish(submission, write(List.of(submission), 0));
+                }
+            }
+            batch.clear();
+        }
+    }
+
+    /**
+     * Runs the callback of a written or dropped submission and releases its barrier.
+     *
+     * @param submission The submission
+     * @param committed Whether its statements committed
+     */
+    private void finish(Submission submission, boolean committed) {
+        if (committed) {
+            if (submission.onCommit() != null) {
+                submission.onCommit().run();
+            }
+        } else {
+            dropped.addAndGet(submission.ops().size());
+            if (submission.onDrop() != null) {
+                submission.onDrop().run();
+            }
+        }
+        if (submission.barrier() != null) {
+            submission.barrier().complete(null);
+        }
+    }
+
+    /**
+     * Writes submissions in one transaction, retrying if it fails.
+     *
+     * @param batch The submissions
+     * @param retries Number of times a failed transaction is retried
+     * @return true if the transaction committed, false if it failed every time
+     */
+    private boolean write(List<Submission> batch, int retries) {
+        int count = 0;
+        for (Submission submission : batch) {
+            count += submission.ops().size();
+        }
+        if (count == 0) {
+            return true;
+        }
+
+        for (int attempt = 1; ; attempt++) {
+            lock.lock();
+            try {
+                connection.setAutoCommit(false);
+                for (Submission submission : batch) {
+                    for (Op op : submission.ops()) {
+                        PreparedStatement stmt = statements.get(op.sql());
+                        if (stmt == null) {
+                            stmt = connection.prepareStatement(op.sql());
+                            statements.put(op.sql(), stmt);
+                        }
+                        for (int i = 0; i < op.params().length; i++) {
+                            stmt.setObject(i + 1, op.params()[i]);
+                        }
+                        stmt.executeUpdate();
+                    }
+                }
+                connection.commit();
+                commits.incrementAndGet();
+                written.addAndGet(count);
+                return true;
+            } catch (SQLException e) {
+                try {
+                    connection.rollback();
+                } catch (SQLException ex) {
+                    ex.printStackTrace();
+                }
+                if (attempt > retries) {
+                    System.err.println("Failed to write " + count + " statements after " + attempt + " attempts: " + e.getMessage());
+                    return false;
+                }
+                System.err.println("Batch write failed, retrying: " + e.getMessage());
+            } finally {
+                lock.unlock();
+            }
+            try {
+                Thread.sleep(100L * attempt);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Adds the writer's statistics to a stats map.
+     *
+     * @param prefix Prefix of the keys, such as {@code "queue_writer"}
+     * @param stats The map to fill
+     */
+    public void reportTo(String prefix, Map<String, Object> stats) {
+        stats.put(prefix + "_pending", queue.size());
+        stats.put(prefix + "_commits", commits.get());
+        stats.put(prefix + "_statements", written.get());
+        stats.put(prefix + "_dropped", dropped.get());
+    }
+
+    /**
+     * Writes everything still queued and stops the writer thread.
+     */
+    @Override
+    public void close() {
+        running = false;
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package search.Crawler;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fixed-size Bloom filter over strings.
+ *
+ * <p>A lookup that returns false is exact: the string was never added. A lookup that
+ * returns true may be a false positive, with a probability that grows as the filter
+ * fills. The filter is sized from the expected number of insertions and the target
+ * false-positive rate, and its memory use never grows past that.</p>
+ *
+ * <p>Each string is hashed once to 64 bits and the bit positions are derived by
+ * double hashing ({@code h1 + i * h2}), so a lookup costs one pass over the string
+ * plus one memory access per hash function.</p>
+ *
+ * <p>Thread-safe without locks: bits are set with an atomic OR on their word, so
+ * concurrent {@link #put(String)} calls never lose each other's bits. When two
+ * threads add the same string at once both may see the filter change; callers that
+ * need exactly one winner arbitrate elsewhere.</p>
+ */
+public class BloomFilter {
+
+    /** Marks the start of a serialized filter */
+    private static final int MAGIC = 0x426c6f6d;
+
+    /** Atomic access to the elements of {@link #words} */
+    private static final VarHandle WORDS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    /** Bits of the filter, 64 per word */
+    private final long[] words;
+
+    /** Number of bits in the filter */
+    private final long numBits;
+
+    /** Number of bit positions set per string */
+    private final int numHashes;
+
+    /** Number of set bits */
+    private final LongAdder bitsSet = new LongAdder();
+
+    /**
+     * Creates an empty filter sized for the expected number of insertions.
+     *
+     * @param expectedInsertions Number of strings the filter should hold at the target rate
+     * @param falsePositiveRate Target false-positive rate, between 0 and 1 exclusive
+     */
+    public BloomFilter(long expectedInsertions, double falsePositiveRate) {
+        if (expectedInsertions <= 0) {
+            throw new IllegalArgumentException("Expected insertions must be positive: " + expectedInsertions);
+        }
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("False-positive rate must be between 0 and 1: " + falsePositiveRate);
+        }
+        double ln2 = Math.log(2);
+        long bits = (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveRate) / (ln2 * ln2));
+        bits = Math.max(64, Math.min(bits, (long) Integer.MAX_VALUE * 64));
+        this.words = new long[(int) ((bits + 63) / 64)];
+        this.numBits = words.length * 64L;
+        this.numHashes = Math.max(1, (int) Math.round((double) numBits / expectedInsertions * ln2));
+    }
+
+    /**
+     * Creates a filter from serialized state.
+     *
+     * @param words The bit words
+     * @param numHashes The number of hash functions
+     */
+    private BloomFilter(long[] words, int numHashes) {
+        this.words = words;
+        this.numBits = words.length * 64L;
+        this.numHashes = numHashes;
+        for (long word : words) {
+            bitsSet.add(Long.bitCount(word));
+        }
+    }
+
+    //----------------------------------------METHODS----------------------------------------
+
+    /**
+     * Computes a 64-bit hash of a string (FNV-1a followed by a final avalanche step).
+     *
+     * @param value The string
+     * @return The hash
+     */
+    private static long hash(String value) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            h = (h ^ value.charAt(i)) * 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * Adds a string to the filter.
+     *
+     * @param value The string to add
+     * @return true if the filter changed, which means the string was definitely not present before
+     */
+    public boolean put(String value) {
+        long h = hash(value);
+        long h2 = (h >>> 32) | 1;
+        boolean changed = false;
+        for (int i = 0; i < numHashes; i++) {
+            long bit = Long.remainderUnsigned(h + i * h2, numBits);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            if (((long) WORDS.getAcquire(words, word) & mask) == 0
+                    && ((long) WORDS.getAndBitwiseOr(words, word, mask) & mask) == 0) {
+                bitsSet.increment();
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Checks whether a string may have been added.
+     *
+     * @param value The string to look up
+     * @return false if the string was definitely never added, true if it probably was
+     */
+    public boolean mightContain(String value) {
+        long h = hash(value);
+        long h2 = (h >>> 32) | 1;
+        for (int i = 0; i < numHashes; i++) {
+            long bit = Long.remainderUnsigned(h + i * h2, numBits);
+            if (((long) WORDS.getAcquire(words, (int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Estimates the current false-positive rate from the fraction of bits set.
+     *
+     * @return The probability that a string never added is reported as present
+     */
+    public double expectedFalsePositiveRate() {
+        return Math.pow((double) bitsSet.sum() / numBits, numHashes);
+    }
+
+    /**
+     * Returns the number of bit positions set per string.
+     *
+     * @return The number of hash functions
+     */
+    public int numHashes() {
+        return numHashes;
+    }
+
+    /**
+     * Returns the memory held by the filter's bits.
+     *
+     * @return The size of the bit array in bytes
+     */
+    public long sizeBytes() {
+        return words.length * 8L;
+    }
+
+    /**
+     * Writes the filter.
+     *
+     * @param out The destination
+     * @throws IOException If writing fails
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(numHashes);
+        out.writeInt(words.length);
+        for (int i = 0; i < words.length; i++) {
+            out.writeLong((long) WORDS.getAcquire(words, i));
+        }
+    }
+
+    /**
+     * Reads a filter written by {@link #writeTo(DataOutput)}.
+     *
+     * @param in The source
+     * @return The filter
+     * @throws IOException If reading fails or the data is not a serialized filter
+     */
+    public static BloomFilter readFrom(DataInput in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a Bloom filter");
+        }
+        int numHashes = in.readInt();
+        long[] words = new long[in.readInt()];
+        for (int i = 0; i < words.length; i++) {
+            words[i] = in.readLong();
+        }
+        return new BloomFilter(words, numHashes);
+    }
+
+    /**
+     * Checks whether this filter has the same layout as another, so it can stand in for it.
+     *
+     * @param other The filter to compare with
+     * @return true if both filters have the same size and number of hash functions
+     */
+    public boolean sameLayout(BloomFilter other) {
+        return numBits == other.numBits && numHashes == other.numHashes;
+    }
+}
@@ -0,0 +1,254 @@
+package search.Crawler;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Adaptive limit on concurrent operations, so a crawler finds its own saturation point
+ * instead of running with a hand-tuned number of fetches in flight.
+ *
+ * <p>Callers take a permit with {@link #acquire()} before an operation and return it
+ * with {@link #release(long, boolean)}, reporting how long the operation took and
+ * whether it failed. Once per window the limit is adjusted from what was observed:</p>
+ * <ul>
+ *   <li>if the error rate exceeds a threshold, or the downstream reported backpressure
+ *       during the window, the limit is cut multiplicatively (AIMD);</li>
+ *   <li>otherwise it follows the latency gradient: the window's mean latency is
+ *       compared with a baseline, the fastest recent window, which drifts up only
+ *       slowly when windows stay slower. While latency stays within
+ *       a tolerance of that baseline the limit grows by about its square root, the
+ *       allowance for queueing; once requests take longer because the machine, the
+ *       network or the servers are saturated, the limit shrinks in proportion.</li>
+ * </ul>
+ *
+ * <p>The limit only grows when the window actually used most of it, so an idle
+ * crawler does not inflate a limit it never tested. Changes are smoothed, and the
+ * limit stays within the configured bounds.</p>
+ *
+ * <p>Thread-safe.</p>
+ */
+public class ConcurrencyLimiter {
+
+    /** Weight of a slower window in the latency baseline; faster windows replace it at once */
+    private static final double BASELINE_WEIGHT = 0.01;
+
+    /** Weight of a new target in the limit */
+    private static final double SMOOTHING = 0.2;
+
+    /** Smallest latency gradient applied in one window, so one slow window cannot collapse the limit */
+    private static final double MIN_GRADIENT = 0.5;
+
+    /** Minimum number of completed operations for a window to count */
+    private static final int MIN_WINDOW_SAMPLES = 10;
+
+    /** Lock guarding the limit and the window */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /** Signalled when a permit is returned or the limit grows */
+    private final Condition permitFreed = lock.newCondition();
+
+    /** Bounds of the limit */
+    private final int minLimit;
+    private final int maxLimit;
+
+    /** Length of a window in nanoseconds */
+    private final long windowNanos;
+
+    /** Latency ratio to the baseline tolerated before the limit shrinks */
+    private final double tolerance;
+
+    /** Error rate in a window above which the limit is cut */
+    private final double errorThreshold;
+
+    /** Factor the limit is multiplied by when it is cut */
+    private final double backoff;
+
+    /** Monotonic count of nanoseconds the downstream spent holding senders back, or null */
+    private final LongSupplier backpressureNanos;
+
+    /** Current limit, kept fractional so small adjustments accumulate */
+    private double limit;
+
+    /** Operations in flight */
+    private int inFlight;
+
+    /** Long-term latency baseline in nanoseconds, 0 until the first window */
+    private double baselineNanos;
+
+    /** Current window: start, latency sum, samples, errors and most operations in flight */
+    private long windowStart = System.nanoTime();
+    private long windowLatencySum;
+    private int windowSamples;
+    private int windowErrors;
+    private int windowMaxInFlight;
+
+    /** Backpressure counter at the start of the window */
+    private long windowBackpressure;
+
+    /** Windows that grew, shrank on latency and were cut on errors or backpressure */
+    private long increases;
+    private long latencyDecreases;
+    private long cuts;
+
+    /** Time callers spent waiting for a permit */
+    private final AtomicLong waitedNanos = new AtomicLong();
+
+    /**
+     * Creates a limiter.
+     *
+     * @param initialLimit Limit to start from
+     * @param minLimit Smallest limit
+     * @param maxLimit Largest limit
+     * @param windowMs Length of an adjustment window in milliseconds
+     * @param tolerance Ratio of a window's latency to the baseline tolerated before the limit shrinks, e.g. 1.5
+     * @param errorThreshold Error rate in a window above which the limit is cut, e.g. 0.1
+     * @param backoff Factor the limit is multiplied by when it is cut, e.g. 0.8
+     * @param backpressureNanos Monotonic count of nanoseconds the downstream held senders back, or null for none
+     */
+    public ConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, long windowMs, double tolerance,
+                              double errorThreshold, double backoff, LongSupplier backpressureNanos) {
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.limit = Math.max(this.minLimit, Math.min(this.maxLimit, initialLimit));
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, windowMs));
+        this.tolerance = tolerance;
+        this.errorThreshold = errorThreshold;
+        this.backoff = backoff;
+        this.backpressureNanos = backpressureNanos;
+        this.windowBackpressure = backpressureNanos == null ? 0 : backpressureNanos.getAsLong();
+    }
+
+    //----------------------------------------METHODS----------------------------------------
+
+    /**
+     * Takes a permit, blocking while the operations in flight reach the limit.
+     *
+     * @return The start time of the operation, to pass to {@link #release(long, boolean)}
+     * @throws InterruptedException If the thread is interrupted while waiting
+     */
+    public long acquire() throws InterruptedException {
+        long waitStart = System.nanoTime();
+        lock.lock();
+        try {
+            while (inFlight >= (int) limit) {
+                permitFreed.await();
+            }
+            inFlight++;
+            windowMaxInFlight = Math.max(windowMaxInFlight, inFlight);
+        } finally {
+            lock.unlock();
+        }
+        long now = System.nanoTime();
+        waitedNanos.addAndGet(now - waitStart);
+        return now;
+    }
+
+    /**
+     * Returns a permit and records the operation's outcome.
+     *
+     * @param startNanos The value returned by {@link #acquire()}
+     * @param failed Whether the operation failed in a way that suggests overload
+     *               (timeout, connection error, HTTP 429 or 5xx)
+     */
+    public void release(long startNanos, boolean failed) {
+        long now = System.nanoTime();
+        lock.lock();
+        try {
+            inFlight--;
+            windowLatencySum += now - startNanos;
+            windowSamples++;
+            if (failed) {
+                windowErrors++;
+            }
+            int before = (int) limit;
+            if (now - windowStart >= windowNanos && windowSamples >= MIN_WINDOW_SAMPLES) {
+                adjust(now);
+            }
+            if ((int) limit > before) {
+                permitFreed.signalAll();
+            } else {
+                permitFreed.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adjusts the limit at the end of a window and starts the next one. Called with the lock held.
+     *
+     * @param now The current time
+     */
+    private void adjust(long now) {
+        double meanNanos = (double) windowLatencySum / windowSamples;
+        double errorRate = (double) windowErrors / windowSamples;
+        long backpressure = backpressureNanos == null ? 0 : backpressureNanos.getAsLong();
+        // Senders held back for a tenth of the window or more means the barrels are saturated
+        boolean heldBack = backpressure - windowBackpressure >= (now - windowStart) / 10;
+
+        double target;
+        if (errorRate > errorThreshold || heldBack) {
+            target = limit * backoff;
+            limit = target;
+            cuts++;
+        } else {
+            if (baselineNanos == 0) {
+                baselineNanos = meanNanos;
+            }
+            double gradient = Math.max(MIN_GRADIENT, Math.min(1.0, tolerance * baselineNanos / meanNanos));
+            boolean used = windowMaxInFlight >= limit / 2;
+            target = gradient < 1.0 || !used ? limit * gradient : limit + Math.sqrt(limit);
+            if (target > limit) {
+                increases++;
+            } else if (target < limit) {
+                latencyDecreases++;
+            }
+            limit = limit * (1 - SMOOTHING) + target * SMOOTHING;
+            // Like Vegas' minimum RTT, but drifting up slowly so a lasting change in the mix of hosts is learnt
+            baselineNanos = meanNanos < baselineNanos
+                    ? meanNanos : baselineNanos * (1 - BASELINE_WEIGHT) + meanNanos * BASELINE_WEIGHT;
+        }
+        limit = Math.max(minLimit, Math.min(maxLimit, limit));
+
+        windowStart = now;
+        windowLatencySum = 0;
+        windowSamples = 0;
+        windowErrors = 0;
+        windowMaxInFlight = inFlight;
+        windowBackpressure = backpressure;
+    }
+
+    /**
+     * Returns the current limit.
+     *
+     * @return The number of operations allowed in flight
+     */
+    public int limit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns a one-line summary of the limiter state.
+     *
+     * @return A human-readable report
+     */
+    public String report() {
+        lock.lock();
+        try {
+            return String.format("Fetch limit: %d (%d-%d), %d in flight, baseline latency %.0f ms, "
+                            + "%d increases, %d latency decreases, %d cuts, %.1f s waited for permits",
+                    (int) limit, minLimit, maxLimit, inFlight, baselineNanos / 1e6,
+                    increases, latencyDecreases, cuts, waitedNanos.get() / 1e9);
+        } finally {
+            lock.unlock();
+        }
+    }
+}
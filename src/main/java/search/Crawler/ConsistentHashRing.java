@@ -0,0 +1,70 @@
+package search.Crawler;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Consistent hash ring assigning keys (hosts) to a fixed list of nodes.
+ *
+ * <p>Every node is placed on a 64-bit ring at several points derived from its name
+ * (virtual nodes), and a key belongs to the first node point at or after the key's
+ * hash. Because points depend on node names rather than on their number, adding or
+ * removing a node only moves the keys between it and its neighbours, about
+ * {@code 1/n} of them, and the virtual nodes keep the partitions close in size.</p>
+ *
+ * <p>Immutable and thread-safe.</p>
+ */
+public class ConsistentHashRing {
+
+    /** Node index of every point on the ring */
+    private final TreeMap<Long, Integer> ring = new TreeMap<>();
+
+    /**
+     * Builds the ring.
+     *
+     * @param nodeNames Stable names of the nodes, such as their addresses; a key's node
+     *                  is returned as an index into this list
+     * @param virtualNodes Number of points per node
+     */
+    public ConsistentHashRing(List<String> nodeNames, int virtualNodes) {
+        if (nodeNames.isEmpty()) {
+            throw new IllegalArgumentException("A hash ring needs at least one node");
+        }
+        for (int node = 0; node < nodeNames.size(); node++) {
+            for (int v = 0; v < virtualNodes; v++) {
+                ring.put(hash(nodeNames.get(node) + "#" + v), node);
+            }
+        }
+    }
+
+    /**
+     * Computes a 64-bit hash of a string (FNV-1a followed by a final avalanche step).
+     *
+     * @param value The string
+     * @return The hash
+     */
+    private static long hash(String value) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            h = (h ^ value.charAt(i)) * 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * Returns the node owning a key.
+     *
+     * @param key The key
+     * @return The index of the owning node
+     */
+    public int nodeFor(String key) {
+        Map.Entry<Long, Integer> point = ring.ceilingEntry(hash(key));
+        return point != null ? point.getValue() : ring.firstEntry().getValue();
+    }
+}
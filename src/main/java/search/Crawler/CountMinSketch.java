@@ -0,0 +1,123 @@
+package search.Crawler;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Count-min sketch: approximate counts of many string keys in fixed memory.
+ *
+ * <p>Each key increments one counter in each of {@code depth} rows, chosen by an
+ * independent hash per row, and its estimate is the smallest of those counters. The
+ * estimate does not undercount (but see the race below); it overcounts by at most {@code e * N / width} with
+ * probability {@code 1 - exp(-depth)}, where {@code N} is the total of all counts.
+ * Updates are conservative (only the counters at the current minimum are raised),
+ * which tightens the overcount further.</p>
+ *
+ * <p>Counters saturate at {@link Integer#MAX_VALUE}. Thread-safe without locks; two
+ * threads adding the same key at the same instant may count it once, which budgets
+ * built on the sketch can tolerate.</p>
+ */
+public class CountMinSketch {
+
+    /** Counters, row after row */
+    private final AtomicIntegerArray counters;
+
+    /** Number of counters per row */
+    private final int width;
+
+    /** Number of rows */
+    private final int depth;
+
+    /**
+     * Creates an empty sketch.
+     *
+     * @param width Number of counters per row
+     * @param depth Number of rows, each with its own hash
+     */
+    public CountMinSketch(int width, int depth) {
+        if (width <= 0 || depth <= 0 || (long) width * depth > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid sketch size: " + width + " x " + depth);
+        }
+        this.width = width;
+        this.depth = depth;
+        this.counters = new AtomicIntegerArray(width * depth);
+    }
+
+    //----------------------------------------METHODS----------------------------------------
+
+    /**
+     * Computes a 64-bit hash of a string (FNV-1a followed by a final avalanche step).
+     *
+     * @param value The string
+     * @return The hash
+     */
+    private static long hash(String value) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            h = (h ^ value.charAt(i)) * 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * Returns the counter index of a key in a row, by double hashing.
+     *
+     * @param h The key's hash
+     * @param row The row
+     * @return The index into {@link #counters}
+     */
+    private int index(long h, int row) {
+        long h2 = (h >>> 32) | 1;
+        return row * width + (int) Long.remainderUnsigned(h + row * h2, width);
+    }
+
+    /**
+     * Counts one occurrence of a key.
+     *
+     * @param key The key
+     * @return The key's estimated count, including this occurrence
+     */
+    public int add(String key) {
+        long h = hash(key);
+        int min = Integer.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            min = Math.min(min, counters.get(index(h, row)));
+        }
+        if (min == Integer.MAX_VALUE) {
+            return min;
+        }
+        int target = min + 1;
+        for (int row = 0; row < depth; row++) {
+            counters.accumulateAndGet(index(h, row), target, Math::max);
+        }
+        return target;
+    }
+
+    /**
+     * Returns the estimated count of a key.
+     *
+     * @param key The key
+     * @return The estimate, which overcounts rather than undercounts
+     */
+    public int estimate(String key) {
+        long h = hash(key);
+        int min = Integer.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            min = Math.min(min, counters.get(index(h, row)));
+        }
+        return min;
+    }
+
+    /**
+     * Returns the memory held by the counters.
+     *
+     * @return The size of the counters in bytes
+     */
+    public long sizeBytes() {
+        return 4L * width * depth;
+    }
+}
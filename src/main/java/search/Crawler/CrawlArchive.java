@@ -0,0 +1,399 @@
+package search.Crawler;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Archive of fetched responses in a WARC-like format, read back for offline crawls.
+ *
+ * <p>The file is a sequence of uncompressed records, each laid out like a WARC 1.0
+ * {@code response} record:</p>
+ * <pre>
+ * WARC/1.0
+ * WARC-Type: response
+ * WARC-Target-URI: http://example.test/a
+ * WARC-Date: 2024-01-01T00:00:00Z
+ * WARC-Record-ID: &lt;urn:uuid:...&gt;
+ * Content-Type: application/http; msgtype=response
+ * Content-Length: 1234
+ *
+ * HTTP/1.1 200
+ * Content-Type: text/html; charset=utf-8
+ * Content-Location: http://example.test/b   (final URL, only after a redirect)
+ * ETag: "abc"
+ * Last-Modified: ...
+ * Content-Length: 1100
+ *
+ * &lt;body bytes&gt;
+ * </pre>
+ * <p>Lines end with CRLF and two CRLFs follow each block. Truncated bodies carry a
+ * {@code WARC-Truncated: length} header. Records of other types are skipped when
+ * reading, and a URL recorded twice is served from its last record.</p>
+ *
+ * <p>Opening an archive scans it once and keeps an index of URL to record position in
+ * memory; bodies stay on disk and are read on demand with positional reads, so
+ * lookups are thread-safe. Archives are written with {@link Writer}.</p>
+ */
+public class CrawlArchive implements Closeable {
+
+    /** Line ending of headers */
+    private static final String CRLF = "\r\n";
+
+    /** Longest header line accepted */
+    private static final int MAX_LINE = 64 * 1024;
+
+    /**
+     * Position of a record's HTTP block in the file.
+     *
+     * @param offset Offset of the block's first byte
+     * @param length Length of the block in bytes
+     * @param truncated Whether the recorded body was truncated
+     */
+    private record Entry(long offset, int length, boolean truncated) {
+    }
+
+    /** Path of the archive */
+    private final Path path;
+
+    /** Open channel for positional reads */
+    private final FileChannel channel;
+
+    /** Record position of each target URL */
+    private final Map<String, Entry> index = new HashMap<>();
+
+    /** Total size of the HTTP blocks indexed */
+    private long indexedBytes;
+
+    /**
+     * Opens an archive and indexes its records.
+     *
+     * @param path Path of the archive file
+     * @throws IOException If the file cannot be read or is not a valid archive
+     */
+    public CrawlArchive(String path) throws IOException {
+        this.path = Path.of(path);
+        this.channel = FileChannel.open(this.path, StandardOpenOption.READ);
+        try {
+            scan();
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    //----------------------------------------METHODS----------------------------------------
+
+    /**
+     * Reads the record headers of the whole file and fills the index.
+     *
+     * @throws IOException If a record is malformed
+     */
+    private void scan() throws IOException {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(path), 1 << 16)) {
+            long[] position = {0};
+            String version;
+            while ((version = readLine(in, position)) != null) {
+                if (version.isEmpty()) {
+                    continue; // Separator after the previous block
+                }
+                if (!version.startsWith("WARC/")) {
+                    throw new IOException("Invalid archive " + path + ": expected a record at byte "
+                            + (position[0] - version.length() - 2));
+                }
+                Map<String, String> headers = readHeaders(in, position);
+                long length = Long.parseLong(headers.getOrDefault("content-length", "0"));
+                if (length > Integer.MAX_VALUE) {
+                    throw new IOException("Record too large in " + path + " at byte " + position[0]);
+                }
+                String target = headers.get("warc-target-uri");
+                if ("response".equals(headers.get("warc-type")) && target != null) {
+                    index.put(target, new Entry(position[0], (int) length, headers.containsKey("warc-truncated")));
+                    indexedBytes += length;
+                }
+                in.skipNBytes(length);
+                position[0] += length;
+            }
+        } catch (EOFException e) {
+            throw new IOException("Archive " + path + " ends in the middle of a record", e);
+        }
+    }
+
+    /**
+     * Reads one CRLF- or LF-terminated line.
+     *
+     * @param in The stream
+     * @param position Current offset in the file, advanced past the line
+     * @return The line without its terminator, or null at the end of the stream
+     * @throws IOException If the line is too long or cannot be read
+     */
+    private static String readLine(InputStream in, long[] position) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream(128);
+        int b;
+        while ((b = in.read()) != -1) {
+            position[0]++;
+            if (b == '\n') {
+                byte[] bytes = line.toByteArray();
+                int end = bytes.length > 0 && bytes[bytes.length - 1] == '\r' ? bytes.length - 1 : bytes.length;
+                return new String(bytes, 0, end, StandardCharsets.UTF_8);
+            }
+            if (line.size() >= MAX_LINE) {
+                throw new IOException("Header line longer than " + MAX_LINE + " bytes");
+            }
+            line.write(b);
+        }
+        return line.size() == 0 ? null : line.toString(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads header lines up to the empty line that ends them.
+     *
+     * @param in The stream
+     * @param position Current offset in the file, advanced past the headers
+     * @return The headers, keyed by lower-case name
+     * @throws IOException If the headers cannot be read
+     */
+    private static Map<String, String> readHeaders(InputStream in, long[] position) throws IOException {
+        Map<String, String> headers = new HashMap<>();
+        String line;
+        while ((line = readLine(in, position)) != null && !line.isEmpty()) {
+            int colon = line.indexOf(':');
+            if (colon > 0) {
+                headers.put(line.substring(0, colon).trim().toLowerCase(Locale.ROOT), line.substring(colon + 1).trim());
+            }
+        }
+        if (line == null) {
+            throw new EOFException();
+        }
+        return headers;
+    }
+
+    /**
+     * Returns the recorded response for a URL.
+     *
+     * @param url The requested URL
+     * @return The response, or null if the URL was not recorded
+     * @throws IOException If the record cannot be read
+     */
+    public HttpFetcher.Page get(String url) throws IOException {
+        Entry entry = index.get(url);
+        if (entry == null) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(entry.length());
+        long position = entry.offset();
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new EOFException("Archive " + path + " truncated in the record of " + url);
+            }
+            position += read;
+        }
+        return parseBlock(url, buffer.array(), entry.truncated());
+    }
+
+    /**
+     * Parses the HTTP block of a record.
+     *
+     * @param url The requested URL
+     * @param block The status line, headers and body
+     * @param truncated Whether the body was truncated when recorded
+     * @return The response
+     * @throws IOException If the block is malformed
+     */
+    private static HttpFetcher.Page parseBlock(String url, byte[] block, boolean truncated) throws IOException {
+        int headerEnd = -1;
+        for (int i = 0; i + 3 < block.length; i++) {
+            if (block[i] == '\r' && block[i + 1] == '\n' && block[i + 2] == '\r' && block[i + 3] == '\n') {
+                headerEnd = i;
+                break;
+            }
+        }
+        if (headerEnd < 0) {
+            throw new IOException("Malformed record for " + url + ": no end of headers");
+        }
+        String[] lines = new String(block, 0, headerEnd, StandardCharsets.UTF_8).split(CRLF);
+        String[] status = lines[0].split(" ", 3);
+        int statusCode;
+        try {
+            statusCode = Integer.parseInt(status.length > 1 ? status[1] : "");
+        } catch (NumberFormatException e) {
+            throw new IOException("Malformed status line for " + url + ": " + lines[0]);
+        }
+        String contentType = "";
+        String finalUrl = url;
+        String etag = null;
+        String lastModified = null;
+        for (int i = 1; i < lines.length; i++) {
+            int colon = lines[i].indexOf(':');
+            if (colon <= 0) {
+                continue;
+            }
+            String value = lines[i].substring(colon + 1).trim();
+            switch (lines[i].substring(0, colon).trim().toLowerCase(Locale.ROOT)) {
+                case "content-type" -> contentType = value.toLowerCase(Locale.ROOT);
+                case "content-location" -> finalUrl = value;
+                case "etag" -> etag = value;
+                case "last-modified" -> lastModified = value;
+                default -> {
+                }
+            }
+        }
+        byte[] body = Arrays.copyOfRange(block, headerEnd + 4, block.length);
+        return new HttpFetcher.Page(finalUrl, statusCode, contentType, body, etag, lastModified, truncated);
+    }
+
+    /**
+     * Returns the number of URLs in the archive.
+     *
+     * @return The number of distinct recorded URLs
+     */
+    public int size() {
+        return index.size();
+    }
+
+    /**
+     * Returns a one-line description of the archive.
+     *
+     * @return The path, number of URLs and size of the indexed records
+     */
+    @Override
+    public String toString() {
+        return String.format("%s (%d URLs, %.1f MB)", path, index.size(), indexedBytes / (1024.0 * 1024.0));
+    }
+
+    /**
+     * Closes the archive file.
+     *
+     * @throws IOException If the file cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    //----------------------------------------WRITER----------------------------------------
+
+    /**
+     * Appends response records to an archive file. Each record is flushed as soon as it
+     * is written, so an interrupted recording leaves every complete record readable.
+     * Thread-safe.
+     */
+    public static class Writer implements Closeable {
+
+        /** Buffered stream to the archive file */
+        private final OutputStream out;
+
+        /** Records written */
+        private long records;
+
+        /**
+         * Opens an archive for appending, creating it if needed.
+         *
+         * @param path Path of the archive file
+         * @throws IOException If the file cannot be opened
+         */
+        public Writer(String path) throws IOException {
+            this.out = new BufferedOutputStream(new FileOutputStream(path, true), 1 << 16);
+        }
+
+        /**
+         * Records a response, dated now.
+         *
+         * @param targetUrl The requested URL, under which the response is served on replay
+         * @param page The response
+         * @throws IOException If the record cannot be written
+         */
+        public void write(String targetUrl, HttpFetcher.Page page) throws IOException {
+            write(targetUrl, page, Instant.now());
+        }
+
+        /**
+         * Records a response. The record id is derived from the URL and date, so the
+         * same responses with the same dates always produce the same file.
+         *
+         * @param targetUrl The requested URL, under which the response is served on replay
+         * @param page The response
+         * @param date The date of the record
+         * @throws IOException If the record cannot be written
+         */
+        public void write(String targetUrl, HttpFetcher.Page page, Instant date) throws IOException {
+            StringBuilder http = new StringBuilder(256);
+            http.append("HTTP/1.1 ").append(page.statusCode()).append(CRLF);
+            if (!page.contentType().isEmpty()) {
+                http.append("Content-Type: ").append(page.contentType()).append(CRLF);
+            }
+            if (!page.url().equals(targetUrl)) {
+                http.append("Content-Location: ").append(page.url()).append(CRLF);
+            }
+            if (page.etag() != null) {
+                http.append("ETag: ").append(page.etag()).append(CRLF);
+            }
+            if (page.lastModified() != null) {
+                http.append("Last-Modified: ").append(page.lastModified()).append(CRLF);
+            }
+            http.append("Content-Length: ").append(page.body().length).append(CRLF).append(CRLF);
+            byte[] httpHeaders = http.toString().getBytes(StandardCharsets.UTF_8);
+
+            UUID id = UUID.nameUUIDFromBytes((targetUrl + ' ' + date).getBytes(StandardCharsets.UTF_8));
+            StringBuilder warc = new StringBuilder(256);
+            warc.append("WARC/1.0").append(CRLF)
+                    .append("WARC-Type: response").append(CRLF)
+                    .append("WARC-Target-URI: ").append(targetUrl).append(CRLF)
+                    .append("WARC-Date: ").append(date).append(CRLF)
+                    .append("WARC-Record-ID: <urn:uuid:").append(id).append('>').append(CRLF);
+            if (page.truncated()) {
+                warc.append("WARC-Truncated: length").append(CRLF);
+            }
+            warc.append("Content-Type: application/http; msgtype=response").append(CRLF)
+                    .append("Content-Length: ").append(httpHeaders.length + page.body().length).append(CRLF)
+                    .append(CRLF);
+
+            synchronized (this) {
+                out.write(warc.toString().getBytes(StandardCharsets.UTF_8));
+                out.write(httpHeaders);
+                out.write(page.body());
+                out.write((CRLF + CRLF).getBytes(StandardCharsets.UTF_8));
+                out.flush();
+                records++;
+            }
+        }
+
+        /**
+         * Returns the number of records written.
+         *
+         * @return The count
+         */
+        public synchronized long records() {
+            return records;
+        }
+
+        /**
+         * Flushes and closes the archive file.
+         *
+         * @throws IOException If the file cannot be closed
+         */
+        @Override
+        public synchronized void close() throws IOException {
+            out.close();
+        }
+    }
+}
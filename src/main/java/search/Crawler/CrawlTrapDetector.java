@@ -0,0 +1,351 @@
+package search.Crawler;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Detects crawler traps (calendars, faceted search, session URLs and other link
+ * spaces without end) and keeps them from swamping the frontier.
+ *
+ * <p>URLs are grouped by host and by path template: the host and path with numbers
+ * and id-like segments replaced by placeholders, followed by the sorted names of the
+ * query parameters without their values, so {@code /cal/2024/05?view=day} and
+ * {@code /cal/1999/12?view=week} share the template {@code host/cal/{n}/{n}?view}.
+ * Two count-min sketches count the new URLs queued per host and per template, in
+ * fixed memory however many hosts and templates the crawl meets.</p>
+ *
+ * <p>A URL is:</p>
+ * <ul>
+ *   <li>demoted, its score multiplied by a factor, once its host or template used a
+ *       configured fraction of its budget;</li>
+ *   <li>blocked once its host or template used its whole budget, or once its template
+ *       was flagged as a trap.</li>
+ * </ul>
+ *
+ * <p>A template is flagged when its pages keep producing near-identical link sets:
+ * each self-similar page's links are reduced to their templates and fingerprinted with
+ * SimHash, and a run of consecutive pages of the same template whose fingerprints lie
+ * within a small Hamming distance of each other marks the template as generating link
+ * space rather than content.</p>
+ *
+ * <p>Counts live in memory and start over when the queue restarts. Thread-safe.</p>
+ */
+public class CrawlTrapDetector {
+
+    /**
+     * What to do with a URL about to be queued.
+     */
+    public enum Verdict {
+        /** Queue the URL as it is */
+        ACCEPT,
+        /** Queue the URL with a lower score */
+        DEMOTE,
+        /** Do not queue the URL */
+        BLOCK
+    }
+
+    /**
+     * Link-set history of one template.
+     *
+     * @param fingerprint SimHash of the last page's link templates
+     * @param streak Number of consecutive pages whose link sets were near-identical
+     */
+    private record LinkSetHistory(long fingerprint, int streak) {
+    }
+
+    /** Pages with fewer distinct link templates than this say nothing about traps */
+    private static final int MIN_LINK_TEMPLATES = 3;
+
+    /** Share of a page's links that must lead into its own path template for its link set to count */
+    private static final double SELF_LINK_SHARE = 0.5;
+
+    /** Maximum number of templates whose link-set history is kept */
+    private static final int MAX_TRACKED_TEMPLATES = 100_000;
+
+    /** New URLs queued per host */
+    private final CountMinSketch hostCounts;
+
+    /** New URLs queued per template */
+    private final CountMinSketch templateCounts;
+
+    /** Maximum number of URLs queued per host */
+    private final int hostBudget;
+
+    /** Maximum number of URLs queued per template */
+    private final int templateBudget;
+
+    /** Fraction of a budget after which URLs are demoted */
+    private final double demoteFraction;
+
+    /** Consecutive near-identical link sets that flag a template */
+    private final int similarPages;
+
+    /** Maximum Hamming distance between near-identical link-set fingerprints */
+    private final int maxDistance;
+
+    /** Templates flagged as traps */
+    private final Set<String> trapTemplates = ConcurrentHashMap.newKeySet();
+
+    /** Link-set history of the templates seen most recently */
+    private final Map<String, LinkSetHistory> linkSets = Collections.synchronizedMap(
+            new LinkedHashMap<>(1024, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, LinkSetHistory> eldest) {
+                    return size() > MAX_TRACKED_TEMPLATES;
+                }
+            });
+
+    /** URLs demoted and blocked */
+    private final LongAdder demoted = new LongAdder();
+    private final LongAdder blockedByBudget = new LongAdder();
+    private final LongAdder blockedByTrap = new LongAdder();
+
+    /**
+     * Creates a detector.
+     *
+     * @param hostBudget Maximum number of URLs queued per host
+     * @param templateBudget Maximum number of URLs queued per path template
+     * @param demoteFraction Fraction of a budget after which URLs are demoted, 1 to never demote
+     * @param similarPages Consecutive near-identical link sets that flag a template as a trap
+     * @param maxDistance Maximum Hamming distance between near-identical link-set fingerprints
+     * @param sketchWidth Counters per row of each count-min sketch
+     * @param sketchDepth Rows of each count-min sketch
+     */
+    public CrawlTrapDetector(int hostBudget, int templateBudget, double demoteFraction, int similarPages,
+                             int maxDistance, int sketchWidth, int sketchDepth) {
+        this.hostBudget = hostBudget;
+        this.templateBudget = templateBudget;
+        this.demoteFraction = demoteFraction;
+        this.similarPages = similarPages;
+        this.maxDistance = maxDistance;
+        this.hostCounts = new CountMinSketch(sketchWidth, sketchDepth);
+        this.templateCounts = new CountMinSketch(sketchWidth, sketchDepth);
+    }
+
+    //----------------------------------------METHODS----------------------------------------
+
+    /**
+     * Returns the path template of a URL.
+     *
+     * @param url The URL
+     * @return The host, the path with numbers and ids replaced by {@code {n}} and
+     *         {@code {id}}, and the sorted names of the query parameters
+     */
+    public static String template(String url) {
+        URI uri;
+        try {
+            uri = URI.create(url);
+        } catch (IllegalArgumentException e) {
+            return url;
+        }
+        StringBuilder template = new StringBuilder(url.length());
+        template.append(uri.getHost() == null ? "" : uri.getHost().toLowerCase());
+        String path = uri.getRawPath();
+        if (path != null) {
+            for (String segment : path.split("/", -1)) {
+                if (segment.isEmpty()) {
+                    continue;
+                }
+                template.append('/').append(templateSegment(segment));
+            }
+        }
+        String query = uri.getRawQuery();
+        if (query != null && !query.isEmpty()) {
+            List<String> names = new ArrayList<>();
+            for (String param : query.split("&")) {
+                int eq = param.indexOf('=');
+                String name = eq < 0 ? param : param.substring(0, eq);
+                if (!name.isEmpty()) {
+                    names.add(name);
+                }
+            }
+            Collections.sort(names);
+            template.append('?').append(String.join("&", names));
+        }
+        return template.toString();
+    }
+
+    /**
+     * Replaces a path segment by a placeholder if it looks generated.
+     *
+     * @param segment The segment
+     * @return {@code {n}} for numbers (dates, page numbers), {@code {id}} for long
+     *         tokens mixing digits and letters (hashes, session ids), else the segment
+     *         with its digit runs replaced by {@code {n}}
+     */
+    private static String templateSegment(String segment) {
+        int digits = 0;
+        int letters = 0;
+        for (int i = 0; i < segment.length(); i++) {
+            char c = segment.charAt(i);
+            if (Character.isDigit(c)) {
+                digits++;
+            } else if (Character.isLetter(c)) {
+                letters++;
+            }
+        }
+        if (digits == 0) {
+            return segment;
+        }
+        if (letters == 0 && digits == segment.length()) {
+            return "{n}";
+        }
+        if (segment.length() >= 16 && digits >= 4 && segment.indexOf('-') < 0) {
+            return "{id}";
+        }
+        return segment.replaceAll("[0-9]+", "{n}");
+    }
+
+    /**
+     * Returns the path template of a URL, without the query parameter names.
+     *
+     * @param url The URL
+     * @return The host and path part of {@link #template(String)}
+     */
+    private static String pathTemplate(String url) {
+        String template = template(url);
+        int query = template.indexOf('?');
+        return query < 0 ? template : template.substring(0, query);
+    }
+
+    /**
+     * Computes the SimHash of a page's links, reduced to their templates.
+     *
+     * <p>Only self-similar pages, a share of whose links lead back into the page's own
+     * path template (the next day of a calendar, another facet of the same listing),
+     * get a fingerprint. Pages that merely repeat the site's navigation, like the
+     * articles of a blog, produce near-identical link sets too, but do not grow the
+     * frontier.</p>
+     *
+     * @param pageUrl The URL of the page
+     * @param links The URLs the page links to
+     * @return The fingerprint, or 0 if the page is not self-similar or has too few
+     *         distinct link templates to judge
+     */
+    public static long linkSetFingerprint(String pageUrl, Collection<String> links) {
+        String ownPath = pathTemplate(pageUrl);
+        Set<String> templates = new HashSet<>();
+        int selfLinks = 0;
+        for (String link : links) {
+            String template = template(link);
+            templates.add(template);
+            int query = template.indexOf('?');
+            if ((query < 0 ? template : template.substring(0, query)).equals(ownPath)) {
+                selfLinks++;
+            }
+        }
+        if (templates.size() < MIN_LINK_TEMPLATES || selfLinks < SELF_LINK_SHARE * links.size()) {
+            return 0;
+        }
+        int[] votes = new int[64];
+        for (String template : templates) {
+            long h = 0xcbf29ce484222325L;
+            for (int i = 0; i < template.length(); i++) {
+                h = (h ^ template.charAt(i)) * 0x100000001b3L;
+            }
+            h ^= h >>> 33;
+            h *= 0xff51afd7ed558ccdL;
+            h ^= h >>> 33;
+            for (int bit = 0; bit < 64; bit++) {
+                votes[bit] += ((h >>> bit) & 1) != 0 ? 1 : -1;
+            }
+        }
+        long fingerprint = 0;
+        for (int bit = 0; bit < 64; bit++) {
+            if (votes[bit] > 0) {
+                fingerprint |= 1L << bit;
+            }
+        }
+        return fingerprint == 0 ? 1 : fingerprint;
+    }
+
+    /**
+     * Decides whether a new URL may be queued, without counting it.
+     *
+     * @param url The URL
+     * @return The verdict
+     */
+    public Verdict check(String url) {
+        String template = template(url);
+        if (trapTemplates.contains(template)) {
+            blockedByTrap.increment();
+            return Verdict.BLOCK;
+        }
+        int hostCount = hostCounts.estimate(HostScheduler.hostOf(url));
+        int templateCount = templateCounts.estimate(template);
+        if (hostCount >= hostBudget || templateCount >= templateBudget) {
+            blockedByBudget.increment();
+            return Verdict.BLOCK;
+        }
+        if (hostCount >= demoteFraction * hostBudget || templateCount >= demoteFraction * templateBudget) {
+            demoted.increment();
+            return Verdict.DEMOTE;
+        }
+        return Verdict.ACCEPT;
+    }
+
+    /**
+     * Counts a URL that was queued against its host's and template's budgets.
+     *
+     * @param url The URL
+     */
+    public void recordQueued(String url) {
+        hostCounts.add(HostScheduler.hostOf(url));
+        templateCounts.add(template(url));
+    }
+
+    /**
+     * Records the link set of a fetched page and tells whether the page's template is a trap.
+     *
+     * @param pageUrl The URL of the page
+     * @param fingerprint The page's {@link #linkSetFingerprint(String, Collection)}, 0 if it has none
+     * @return true if the page's template is flagged as a trap, so its links should not be followed
+     */
+    public boolean recordLinkSet(String pageUrl, long fingerprint) {
+        String template = template(pageUrl);
+        if (trapTemplates.contains(template)) {
+            return true;
+        }
+        if (fingerprint == 0) {
+            return false;
+        }
+        LinkSetHistory next;
+        synchronized (linkSets) {
+            LinkSetHistory previous = linkSets.get(template);
+            int streak = previous != null && Long.bitCount(previous.fingerprint() ^ fingerprint) <= maxDistance
+                    ? previous.streak() + 1 : 0;
+            next = new LinkSetHistory(fingerprint, streak);
+            linkSets.put(template, next);
+        }
+        if (next.streak() >= similarPages) {
+            if (trapTemplates.add(template)) {
+                System.out.println("Crawler trap: " + template + " produced " + next.streak()
+                        + " near-identical link sets in a row, its URLs are no longer queued");
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Adds the detector's statistics to a stats map.
+     *
+     * @param stats The map to fill
+     */
+    public void reportTo(Map<String, Object> stats) {
+        stats.put("trap_templates", trapTemplates.size());
+        stats.put("trap_urls_blocked", blockedByTrap.sum());
+        stats.put("budget_urls_blocked", blockedByBudget.sum());
+        stats.put("budget_urls_demoted", demoted.sum());
+        stats.put("budget_sketch_bytes", hostCounts.sizeBytes() + templateCounts.sizeBytes());
+    }
+}
@@ -0,0 +1,350 @@
+package search.Crawler;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.net.spi.InetAddressResolver;
+import java.net.spi.InetAddressResolver.LookupPolicy;
+import java.security.Security;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache of host name resolutions with positive and negative TTLs and asynchronous
+ * prefetch, placed under every name lookup of the JVM.
+ *
+ * <p>The JVM resolves host names through an {@link InetAddressResolver};
+ * {@link DnsCacheResolverProvider} replaces it with one that answers from the cache
+ * installed with {@link #install(DnsCache)} and falls back to the built-in resolver
+ * while none is installed. The HTTP client, robots.txt fetches and RMI therefore all
+ * share the cache.</p>
+ *
+ * <ul>
+ *   <li>Successful resolutions are kept for the positive TTL, failures ("unknown
+ *       host") for the shorter negative TTL, so dead hosts are not queried over and
+ *       over.</li>
+ *   <li>Concurrent lookups of the same host share one resolution.</li>
+ *   <li>{@link #prefetch(String)} starts resolving a host in the background, so the
+ *       answer is usually cached by the time its first URL is fetched.</li>
+ * </ul>
+ *
+ * <p>The cache counts hits, negative hits, misses and lookups that waited on a
+ * resolution already in flight, and records the latency of the resolutions it runs.
+ * Thread-safe.</p>
+ */
+public class DnsCache {
+
+    /**
+     * Outcome of one resolution.
+     *
+     * @param addresses The addresses, or null if the host is unknown
+     * @param failure The reason the host is unknown, or null
+     * @param expiresAtMs Time after which the outcome must be resolved again
+     */
+    private record Entry(InetAddress[] addresses, String failure, long expiresAtMs) {
+    }
+
+    /** Lookup policy of the JVM's default lookups, used for prefetches until a real lookup is seen */
+    private static final LookupPolicy DEFAULT_POLICY =
+            LookupPolicy.of(LookupPolicy.IPV4 | LookupPolicy.IPV6 | LookupPolicy.IPV4_FIRST);
+
+    /** The JVM's built-in resolver, set once the provider is loaded */
+    private static volatile InetAddressResolver builtin;
+
+    /** The cache answering the JVM's lookups, or null */
+    private static volatile DnsCache installed;
+
+    /** Resolutions, done or in flight, keyed by lookup policy and host */
+    private final Map<String, CompletableFuture<Entry>> entries = new ConcurrentHashMap<>();
+
+    /** Time a successful resolution is kept, in milliseconds */
+    private final long positiveTtlMs;
+
+    /** Time a failed resolution is kept, in milliseconds */
+    private final long negativeTtlMs;
+
+    /** Number of hosts above which expired entries are swept */
+    private final int maxEntries;
+
+    /** Threads running the resolutions, which block in the system resolver */
+    private final ExecutorService resolvers = Executors.newVirtualThreadPerTaskExecutor();
+
+    /** Policy of the most recent lookup, reused by prefetches */
+    private volatile LookupPolicy lastPolicy = DEFAULT_POLICY;
+
+    /** Lookups answered from the cache, with addresses and with a cached failure */
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder negativeHits = new LongAdder();
+
+    /** Lookups that started a resolution */
+    private final LongAdder misses = new LongAdder();
+
+    /** Lookups that waited on a resolution already in flight, usually a prefetch */
+    private final LongAdder joined = new LongAdder();
+
+    /** Prefetches that started a resolution */
+    private final LongAdder prefetches = new LongAdder();
+
+    /** Latency of the resolutions run by the cache */
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    /**
+     * Creates an empty cache.
+     *
+     * @param positiveTtlMs Time a successful resolution is kept, in milliseconds
+     * @param negativeTtlMs Time a failed resolution is kept, in milliseconds
+     * @param maxEntries Number of hosts above which expired entries are swept
+     */
+    public DnsCache(long positiveTtlMs, long negativeTtlMs, int maxEntries) {
+        this.positiveTtlMs = positiveTtlMs;
+        this.negativeTtlMs = negativeTtlMs;
+        this.maxEntries = maxEntries;
+    }
+
+    //----------------------------------------INSTALLATION----------------------------------------
+
+    /**
+     * Called by {@link DnsCacheResolverProvider} with the JVM's built-in resolver.
+     *
+     * @param resolver The resolver the cache delegates to
+     */
+    static void bind(InetAddressResolver resolver) {
+        builtin = resolver;
+    }
+
+    /**
+     * Returns the cache answering the JVM's lookups.
+     *
+     * @return The installed cache, or null
+     */
+    static DnsCache installed() {
+        return installed;
+    }
+
+    /**
+     * Makes a cache answer every name lookup of the JVM.
+     *
+     * <p>The JVM keeps its own cache of lookups in front of the resolver, 30 seconds by
+     * default; it is turned off here so this cache and its TTLs decide, which only works
+     * if no lookup happened in the JVM before.</p>
+     *
+     * @param cache The cache
+     * @return true if lookups now go through the cache, false if the resolver provider
+     *         is not registered (its services file is missing from the classpath)
+     */
+    public static boolean install(DnsCache cache) {
+        Security.setProperty("networkaddress.cache.ttl", "0");
+        Security.setProperty("networkaddress.cache.negative.ttl", "0");
+        installed = cache;
+        try {
+            // Loads the resolver provider if no lookup has done it yet
+            InetAddress.getByName("localhost");
+        } catch (UnknownHostException e) {
+            // Still loaded; the answer does not matter
+        }
+        return builtin != null;
+    }
+
+    //----------------------------------------METHODS----------------------------------------
+
+    /**
+     * Resolves a host through the cache, blocking until it is resolved.
+     *
+     * @param host The host name
+     * @param policy The address families and order requested
+     * @return The addresses of the host
+     * @throws UnknownHostException If the host cannot be resolved now or failed to resolve within the negative TTL
+     */
+    public InetAddress[] lookup(String host, LookupPolicy policy) throws UnknownHostException {
+        lastPolicy = policy;
+        String key = keyOf(host, policy);
+        long now = System.currentTimeMillis();
+        CompletableFuture<Entry> future = entries.get(key);
+        if (future != null && future.isDone()) {
+            Entry entry = future.getNow(null);
+            if (entry != null && entry.expiresAtMs() > now) {
+                if (entry.addresses() == null) {
+                    negativeHits.increment();
+                    throw new UnknownHostException(entry.failure());
+                }
+                hits.increment();
+                return entry.addresses().clone();
+            }
+            entries.remove(key, future);
+            future = null;
+        }
+        if (future == null) {
+            CompletableFuture<Entry> started = new CompletableFuture<>();
+            future = entries.putIfAbsent(key, started);
+            if (future == null) {
+                misses.increment();
+                future = started;
+                resolve(host, policy, started);
+            } else {
+                joined.increment();
+            }
+        } else {
+            joined.increment();
+        }
+
+        Entry entry;
+        try {
+            entry = future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new UnknownHostException("Interrupted while resolving " + host);
+        } catch (ExecutionException | CompletionException e) {
+            throw new UnknownHostException(host + ": " + e.getCause());
+        }
+        if (entry.addresses() == null) {
+            throw new UnknownHostException(entry.failure());
+        }
+        return entry.addresses().clone();
+    }
+
+    /**
+     * Starts resolving a host in the background unless it is cached or already being resolved.
+     *
+     * @param host The host name; IP literals and empty hosts are ignored
+     */
+    public void prefetch(String host) {
+        if (host == null || host.isEmpty() || isLiteral(host)) {
+            return;
+        }
+        LookupPolicy policy = lastPolicy;
+        String key = keyOf(host, policy);
+        CompletableFuture<Entry> current = entries.get(key);
+        if (current != null) {
+            Entry entry = current.getNow(null);
+            if (entry == null || entry.expiresAtMs() > System.currentTimeMillis()) {
+                return;
+            }
+            entries.remove(key, current);
+        }
+        CompletableFuture<Entry> started = new CompletableFuture<>();
+        if (entries.putIfAbsent(key, started) == null) {
+            prefetches.increment();
+            resolve(host, policy, started);
+        }
+    }
+
+    /**
+     * Resolves a host on a resolver thread and completes its entry.
+     *
+     * @param host The host name
+     * @param policy The address families and order requested
+     * @param future The entry to complete
+     */
+    private void resolve(String host, LookupPolicy policy, CompletableFuture<Entry> future) {
+        if (entries.size() > maxEntries) {
+            sweep();
+        }
+        resolvers.execute(() -> {
+            long start = System.nanoTime();
+            try {
+                InetAddress[] addresses = resolveNow(host, policy);
+                latency.record(System.nanoTime() - start);
+                future.complete(new Entry(addresses, null, System.currentTimeMillis() + positiveTtlMs));
+            } catch (UnknownHostException e) {
+                latency.record(System.nanoTime() - start);
+                String failure = e.getMessage() == null ? host : e.getMessage();
+                future.complete(new Entry(null, failure, System.currentTimeMillis() + negativeTtlMs));
+            } catch (RuntimeException e) {
+                // Not cached: the next lookup tries again
+                entries.remove(keyOf(host, policy), future);
+                future.completeExceptionally(e);
+            }
+        });
+    }
+
+    /**
+     * Resolves a host with the built-in resolver, bypassing every cache.
+     *
+     * @param host The host name
+     * @param policy The address families and order requested
+     * @return The addresses of the host
+     * @throws UnknownHostException If the host cannot be resolved
+     */
+    private static InetAddress[] resolveNow(String host, LookupPolicy policy) throws UnknownHostException {
+        InetAddressResolver resolver = builtin;
+        if (resolver == null) {
+            // Provider not registered: the JVM resolves as usual
+            return InetAddress.getAllByName(host);
+        }
+        InetAddress[] addresses = resolver.lookupByName(host, policy).toArray(InetAddress[]::new);
+        if (addresses.length == 0) {
+            throw new UnknownHostException(host);
+        }
+        return addresses;
+    }
+
+    /**
+     * Removes expired entries, then, if the cache is still too large, arbitrary finished ones.
+     */
+    private void sweep() {
+        long now = System.currentTimeMillis();
+        entries.values().removeIf(future -> {
+            Entry entry = future.getNow(null);
+            return entry != null && entry.expiresAtMs() <= now;
+        });
+        Iterator<CompletableFuture<Entry>> iterator = entries.values().iterator();
+        while (entries.size() > maxEntries && iterator.hasNext()) {
+            if (iterator.next().isDone()) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Returns the cache key of a lookup.
+     *
+     * @param host The host name
+     * @param policy The lookup policy
+     * @return The key, distinct per host and policy
+     */
+    private static String keyOf(String host, LookupPolicy policy) {
+        return policy.characteristics() + ":" + host.toLowerCase();
+    }
+
+    /**
+     * Returns whether a host is an IP address literal, which needs no resolution.
+     *
+     * @param host The host
+     * @return true for IPv4 and bracketed or bare IPv6 literals
+     */
+    private static boolean isLiteral(String host) {
+        if (host.indexOf(':') >= 0 || host.startsWith("[")) {
+            return true;
+        }
+        for (int i = 0; i < host.length(); i++) {
+            char c = host.charAt(i);
+            if (c != '.' && (c < '0' || c > '9')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns a one-line summary of the cache.
+     *
+     * @return A human-readable report
+     */
+    public String report() {
+        long hit = hits.sum();
+        long negative = negativeHits.sum();
+        long miss = misses.sum();
+        long join = joined.sum();
+        long total = hit + negative + miss + join;
+        return String.format("DNS cache: %d hosts, %.1f%% hit rate (%d hits, %d negative hits, %d misses, "
+                        + "%d joined in-flight), %d prefetched, resolution %s",
+                entries.size(), total == 0 ? 0.0 : 100.0 * (hit + negative + join) / total,
+                hit, negative, miss, join, prefetches.sum(), latency.summary());
+    }
+}
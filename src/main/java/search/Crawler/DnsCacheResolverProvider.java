@@ -0,0 +1,60 @@
+package search.Crawler;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.net.spi.InetAddressResolver;
+import java.net.spi.InetAddressResolverProvider;
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+/**
+ * Resolver provider that routes the JVM's host name lookups through the installed
+ * {@link DnsCache}.
+ *
+ * <p>Registered in {@code META-INF/services/java.net.spi.InetAddressResolverProvider}
+ * and loaded by the JVM at its first lookup. Until a cache is installed with
+ * {@link DnsCache#install(DnsCache)}, and for reverse lookups, it passes every call
+ * to the built-in resolver, so processes that do not install a cache resolve exactly
+ * as before.</p>
+ */
+public class DnsCacheResolverProvider extends InetAddressResolverProvider {
+
+    //----------------------------------------METHODS----------------------------------------
+
+    /**
+     * Creates the resolver.
+     *
+     * @param configuration Gives access to the built-in resolver
+     * @return A resolver that answers from the installed cache
+     */
+    @Override
+    public InetAddressResolver get(Configuration configuration) {
+        InetAddressResolver builtin = configuration.builtinResolver();
+        DnsCache.bind(builtin);
+        return new InetAddressResolver() {
+            @Override
+            public Stream<InetAddress> lookupByName(String host, LookupPolicy lookupPolicy) throws UnknownHostException {
+                DnsCache cache = DnsCache.installed();
+                if (cache == null) {
+                    return builtin.lookupByName(host, lookupPolicy);
+                }
+                return Arrays.stream(cache.lookup(host, lookupPolicy));
+            }
+
+            @Override
+            public String lookupByAddress(byte[] addr) throws UnknownHostException {
+                return builtin.lookupByAddress(addr);
+            }
+        };
+    }
+
+    /**
+     * Returns the name of the provider.
+     *
+     * @return The provider name
+     */
+    @Override
+    public String name() {
+        return "googol-dns-cache";
+    }
+}
@@ -0,0 +1,172 @@
+package search.Crawler;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local store of what the Downloader knows about each URL it fetched: the HTTP
+ * validators ({@code ETag} and {@code Last-Modified}) and a hash of the body.
+ *
+ * <p>When a URL comes back through the queue the validators are sent as
+ * {@code If-None-Match} and {@code If-Modified-Since}, so a server can answer
+ * {@code 304 Not Modified} without a body. Servers that ignore validators still send
+ * the full page, but if its hash matches the stored one the page is unchanged and
+ * parsing and emission are skipped as well.</p>
+ *
+ * <p>Metadata is kept in a SQLite database. Methods are synchronized because the
+ * store is shared by all fetch threads of a Downloader.</p>
+ */
+public class FetchMetadataStore implements AutoCloseable {
+
+    /**
+     * Stored metadata of one URL.
+     *
+     * @param etag The ETag of the last fetched version, or null
+     * @param lastModified The Last-Modified header of the last fetched version, or null
+     * @param bodyHash Hash of the last indexed body
+     */
+    public record Metadata(String etag, String lastModified, long bodyHash) {
+    }
+
+    /** Connection to the metadata database */
+    private final Connection connection;
+
+    /** Lookups that found stored metadata */
+    private final AtomicLong revisits = new AtomicLong();
+
+    /** Re-crawls answered with 304 Not Modified */
+    private final AtomicLong notModified = new AtomicLong();
+
+    /** Re-crawls whose body hash matched the stored one */
+    private final AtomicLong unchanged = new AtomicLong();
+
+    /** Pages stored as new or changed */
+    private final AtomicLong changed = new AtomicLong();
+
+    /**
+     * Opens or creates the metadata database.
+     *
+     * @param dbPath Path of the SQLite database file
+     * @throws SQLException If the database cannot be opened
+     */
+    public FetchMetadataStore(String dbPath) throws SQLException {
+        connection = DriverManager.getConnection("jdbc:sqlite:" + dbPath);
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("PRAGMA journal_mode=WAL;");
+            stmt.execute("PRAGMA synchronous=NORMAL;");
+            stmt.execute("PRAGMA busy_timeout=5000;");      // Several Downloaders may share the file
+            stmt.execute("CREATE TABLE IF NOT EXISTS fetch_metadata (" +
+                    "url TEXT PRIMARY KEY, " +
+                    "etag TEXT, " +
+                    "last_modified TEXT, " +
+                    "body_hash INTEGER, " +
+                    "fetched_at INTEGER)");
+        }
+    }
+
+    /**
+     * Computes the 64-bit FNV-1a hash of a body.
+     *
+     * @param body The response body
+     * @return The body hash
+     */
+    public static long hash(byte[] body) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : body) {
+            h = (h ^ (b & 0xff)) * 0x100000001b3L;
+        }
+        return h;
+    }
+
+    /**
+     * Returns the stored metadata of a URL.
+     *
+     * @param url The URL
+     * @return The metadata, or null if the URL was never stored or the lookup failed
+     */
+    public synchronized Metadata get(String url) {
+        try (PreparedStatement stmt = connection.prepareStatement(
+                "SELECT etag, last_modified, body_hash FROM fetch_metadata WHERE url = ?")) {
+            stmt.setString(1, url);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    revisits.incrementAndGet();
+                    return new Metadata(rs.getString(1), rs.getString(2), rs.getLong(3));
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Fetch metadata lookup failed for " + url + ": " + e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Stores the metadata of a fetched version of a URL, replacing the previous one.
+     *
+     * @param url The URL
+     * @param etag The ETag header, or null
+     * @param lastModified The Last-Modified header, or null
+     * @param bodyHash Hash of the body
+     */
+    public synchronized void put(String url, String etag, String lastModified, long bodyHash) {
+        try (PreparedStatement stmt = connection.prepareStatement(
+                "INSERT OR REPLACE INTO fetch_metadata (url, etag, last_modified, body_hash, fetched_at) VALUES (?, ?, ?, ?, ?)")) {
+            stmt.setString(1, url);
+            stmt.setString(2, etag);
+            stmt.setString(3, lastModified);
+            stmt.setLong(4, bodyHash);
+            stmt.setLong(5, System.currentTimeMillis());
+            stmt.executeUpdate();
+        } catch (SQLException e) {
+            System.err.println("Failed to store fetch metadata for " + url + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Records that a re-crawl was answered with 304 Not Modified.
+     */
+    public void recordNotModified() {
+        notModified.incrementAndGet();
+    }
+
+    /**
+     * Records that a re-crawl returned a body identical to the stored one.
+     */
+    public void recordUnchanged() {
+        unchanged.incrementAndGet();
+    }
+
+    /**
+     * Records that a page was new or had changed and will be indexed.
+     */
+    public void recordChanged() {
+        changed.incrementAndGet();
+    }
+
+    /**
+     * Returns a one-line summary of the re-crawl savings.
+     *
+     * @return A human-readable report
+     */
+    public String report() {
+        return String.format("Fetch metadata: %d revisits, %d not modified, %d unchanged, %d new or changed",
+                revisits.get(), notModified.get(), unchanged.get(), changed.get());
+    }
+
+    /**
+     * Closes the database connection.
+     */
+    @Override
+    public synchronized void close() {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            System.err.println("Failed to close fetch metadata store: " + e.getMessage());
+        }
+    }
+}
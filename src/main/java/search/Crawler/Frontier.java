@@ -0,0 +1,61 @@
+package search.Crawler;
+
+/**
+ * In-memory part of the URL queue: the URLs waiting to be handed to a Downloader and
+ * the order they are handed out in.
+ *
+ * <p>Implementations are not thread-safe unless stated otherwise; the owner
+ * synchronizes access.</p>
+ */
+public interface Frontier {
+
+    /**
+     * A queued URL with the information used to rank it.
+     *
+     * @param url The URL
+     * @param score Importance estimate; in OPIC terms, the cash the URL has received from pages linking to it
+     * @param depth Number of links followed from a seed URL to reach it
+     */
+    record Entry(String url, double score, int depth) {
+    }
+
+    /**
+     * Adds a URL that is not queued yet.
+     *
+     * @param entry The URL and its ranking information
+     */
+    void add(Entry entry);
+
+    /**
+     * Removes and returns the next URL to hand out.
+     *
+     * @return The next URL, or null if the frontier is empty
+     */
+    Entry poll();
+
+    /**
+     * Adds credit to the score of a queued URL, for example when a new inbound link is found.
+     *
+     * @param url The URL
+     * @param credit The amount added to its score
+     * @return true if the URL is queued and its score was raised, false if it is not
+     *         queued or the frontier does not rank by score
+     */
+    boolean raise(String url, double credit);
+
+    /**
+     * Returns the number of queued URLs.
+     *
+     * @return The frontier size
+     */
+    long size();
+
+    /**
+     * Checks whether the frontier is empty.
+     *
+     * @return true if no URL is queued
+     */
+    default boolean isEmpty() {
+        return size() == 0;
+    }
+}
@@ -0,0 +1,277 @@
+package search.Crawler;
+
+import java.net.URI;
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+
+/**
+ * Politeness scheduler that hands out URLs per host instead of in FIFO order.
+ *
+ * <p>Each host has its own queue, a limit on concurrent fetches and a timer that
+ * enforces a minimum delay between consecutive requests (the crawl delay). Hosts
+ * that may be fetched are kept in a priority queue ordered by the time they become
+ * ready, so {@link #take()} always returns a URL from a host that is ready now and a
+ * single slow or large host cannot starve the others.</p>
+ *
+ * <p>Callers must call {@link #release(String)} once the fetch of a URL obtained
+ * from {@link #take()} has finished, successfully or not.</p>
+ */
+public class HostScheduler {
+
+    /** Number of hosts above which idle hosts are swept from memory */
+    private static final int SWEEP_THRESHOLD = 10000;
+
+    /** Time an idle host is remembered after its last fetch, in milliseconds */
+    private static final long IDLE_RETENTION_MS = 60000;
+
+    /**
+     * Per-host queue and politeness state.
+     */
+    private static class HostQueue {
+        final String host;
+        final Queue<String> urls = new ArrayDeque<>();
+        int inFlight;
+        long readyAtMs;
+        boolean scheduled;
+
+        HostQueue(String host) {
+            this.host = host;
+        }
+    }
+
+    /** Queues of all known hosts */
+    private final Map<String, HostQueue> hosts = new HashMap<>();
+
+    /** Hosts that have pending URLs and a free concurrency slot, ordered by ready time */
+    private final PriorityQueue<HostQueue> ready = new PriorityQueue<>(Comparator.comparingLong(h -> h.readyAtMs));
+
+    /** Lock guarding all scheduler state */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /** Signalled when a host may have become ready */
+    private final Condition hostReady = lock.newCondition();
+
+    /** Signalled when URLs are handed out and pending space is freed */
+    private final Condition spaceFreed = lock.newCondition();
+
+    /** Maximum concurrent fetches per host */
+    private final int maxFetchesPerHost;
+
+    /** Crawl delay of a host in milliseconds */
+    private final ToLongFunction<String> crawlDelayMs;
+
+    /** Told about each host the scheduler starts tracking, e.g. to resolve it ahead of its first fetch */
+    private final Consumer<String> onNewHost;
+
+    /** Number of URLs waiting in host queues */
+    private int pendingUrls;
+
+    /**
+     * Creates a scheduler.
+     *
+     * @param maxFetchesPerHost Maximum concurrent fetches per host
+     * @param crawlDelayMs Returns the minimum delay between requests to a host, in milliseconds
+     */
+    public HostScheduler(int maxFetchesPerHost, ToLongFunction<String> crawlDelayMs) {
+        this(maxFetchesPerHost, crawlDelayMs, host -> {
+        });
+    }
+
+    /**
+     * Creates a scheduler that reports the hosts it starts tracking.
+     *
+     * @param maxFetchesPerHost Maximum concurrent fetches per host
+     * @param crawlDelayMs Returns the minimum delay between requests to a host, in milliseconds
+     * @param onNewHost Called, outside the scheduler's lock, with each host not already queued
+     */
+    public HostScheduler(int maxFetchesPerHost, ToLongFunction<String> crawlDelayMs, Consumer<String> onNewHost) {
+        this.maxFetchesPerHost = maxFetchesPerHost;
+        this.crawlDelayMs = crawlDelayMs;
+        this.onNewHost = onNewHost;
+    }
+
+    /**
+     * Returns the host of a URL in lower case, or an empty string if it has none.
+     *
+     * @param url The URL
+     * @return The host used to group the URL
+     */
+    public static String hostOf(String url) {
+        try {
+            String host = URI.create(url.trim()).getHost();
+            return host == null ? "" : host.toLowerCase();
+        } catch (IllegalArgumentException e) {
+            return "";
+        }
+    }
+
+    /**
+     * Adds a URL to its host's queue.
+     *
+     * @param url The URL to schedule
+     */
+    public void offer(String url) {
+        String host = hostOf(url);
+        boolean newHost;
+        lock.lock();
+        try {
+            if (hosts.size() > SWEEP_THRESHOLD) {
+                sweepIdleHosts();
+            }
+            HostQueue queue = hosts.get(host);
+            newHost = queue == null;
+            if (newHost) {
+                queue = new HostQueue(host);
+                hosts.put(host, queue);
+            }
+            queue.urls.add(url);
+            pendingUrls++;
+            scheduleIfEligible(queue);
+        } finally {
+            lock.unlock();
+        }
+        if (newHost) {
+            onNewHost.accept(host);
+        }
+    }
+
+    /**
+     * Blocks until some host is ready and returns its next URL.
+     *
+     * @return A URL whose host may be fetched now
+     * @throws InterruptedException If the thread is interrupted while waiting
+     */
+    public String take() throws InterruptedException {
+        lock.lock();
+        try {
+            while (true) {
+                HostQueue head = ready.peek();
+                long now = System.currentTimeMillis();
+                if (head == null) {
+                    hostReady.await();
+                } else if (head.readyAtMs > now) {
+                    hostReady.await(head.readyAtMs - now, TimeUnit.MILLISECONDS);
+                } else {
+                    ready.poll();
+                    head.scheduled = false;
+                    String url = head.urls.poll();
+                    pendingUrls--;
+                    head.inFlight++;
+                    head.readyAtMs = now + crawlDelayMs.applyAsLong(head.host);
+                    scheduleIfEligible(head);
+                    spaceFreed.signalAll();
+                    return url;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Marks the fetch of a URL obtained from {@link #take()} as finished.
+     *
+     * @param url The URL whose fetch finished
+     */
+    public void release(String url) {
+        lock.lock();
+        try {
+            HostQueue queue = hosts.get(hostOf(url));
+            if (queue != null && queue.inFlight > 0) {
+                queue.inFlight--;
+                scheduleIfEligible(queue);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Blocks until fewer than {@code limit} URLs are waiting in host queues.
+     *
+     * @param limit The pending URL limit
+     * @param timeoutMs Maximum time to wait in milliseconds
+     * @throws InterruptedException If the thread is interrupted while waiting
+     */
+    public void awaitPendingBelow(int limit, long timeoutMs) throws InterruptedException {
+        lock.lock();
+        try {
+            long remaining = TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+            while (pendingUrls >= limit && remaining > 0) {
+                remaining = spaceFreed.awaitNanos(remaining);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of URLs waiting in host queues.
+     *
+     * @return The pending URL count
+     */
+    public int pendingUrls() {
+        lock.lock();
+        try {
+            return pendingUrls;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adds the host to the ready queue if it has pending URLs, a free concurrency
+     * slot and is not queued already. Must be called with the lock held.
+     *
+     * @param queue The host to check
+     */
+    private void scheduleIfEligible(HostQueue queue) {
+        if (!queue.scheduled && !queue.urls.isEmpty() && queue.inFlight < maxFetchesPerHost) {
+            queue.scheduled = true;
+            ready.add(queue);
+            hostReady.signal();
+        }
+    }
+
+    /**
+     * Forgets hosts with nothing pending or in flight whose last fetch is old enough
+     * that their crawl delay no longer matters. Must be called with the lock held.
+     */
+    private void sweepIdleHosts() {
+        long cutoff = System.currentTimeMillis() - IDLE_RETENTION_MS;
+        Iterator<HostQueue> iterator = hosts.values().iterator();
+        while (iterator.hasNext()) {
+            HostQueue queue = iterator.next();
+            if (queue.urls.isEmpty() && queue.inFlight == 0 && queue.readyAtMs < cutoff) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Returns a one-line summary of the scheduler state.
+     *
+     * @return A human-readable report
+     */
+    public String report() {
+        lock.lock();
+        try {
+            long now = System.currentTimeMillis();
+            long readyNow = ready.stream().filter(h -> h.readyAtMs <= now).count();
+            return String.format("Host scheduler: %d hosts, %d ready now, %d waiting on crawl delay, %d URLs pending",
+                    hosts.size(), readyNow, ready.size() - readyNow, pendingUrls);
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,441 @@
+package search.Crawler;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+
+/**
+ * HTTP fetch layer built on a single shared {@link HttpClient}.
+ *
+ * <p>Sharing one client lets every request reuse its connection pool: HTTP/1.1
+ * connections are kept alive per host and HTTP/2 connections (negotiated through
+ * ALPN on HTTPS) multiplex concurrent requests to the same host over one connection,
+ * so TCP and TLS handshakes are paid once per host instead of once per page.</p>
+ *
+ * <p>Every request has a connect timeout and a deadline covering the whole exchange,
+ * body included, so a slow or stalled host ties up its caller for a bounded time.
+ * Bodies are returned as bytes and parsed with {@link Jsoup#parse(java.io.InputStream, String, String)}.</p>
+ *
+ * <p>Bodies are streamed into a buffer that never grows past a per-page byte cap:
+ * longer bodies are truncated and the rest of the transfer is cancelled, so the heap
+ * used by a fetch is bounded whatever the server sends. HTML fetches also look at the
+ * Content-Type header before reading the body and cancel the transfer of anything
+ * that is not HTML (images, PDFs, archives, ...).</p>
+ *
+ * <p>Responses can be recorded to a {@link CrawlArchive} (see {@link #recordTo(CrawlArchive.Writer)})
+ * and served back offline by a {@link ReplayFetcher}.</p>
+ *
+ * <p>Instances are thread-safe and meant to be shared by the whole process.</p>
+ */
+public class HttpFetcher {
+
+    /**
+     * A fetched response.
+     *
+     * @param url The final URL, after redirects
+     * @param statusCode The HTTP status code
+     * @param contentType The Content-Type header, or an empty string if absent
+     * @param body The response body
+     * @param etag The ETag header, or null if absent
+     * @param lastModified The Last-Modified header, or null if absent
+     * @param truncated Whether the body was cut at the byte cap
+     */
+    public record Page(String url, int statusCode, String contentType, byte[] body, String etag, String lastModified,
+                       boolean truncated) {
+
+        /**
+         * Returns whether the Content-Type is HTML. Responses without a Content-Type
+         * are accepted, leaving detection to the parser.
+         *
+         * @return true for HTML and XHTML responses
+         */
+        public boolean isHtml() {
+            return isHtmlType(contentType);
+        }
+
+        /**
+         * Returns the charset declared in the Content-Type header.
+         *
+         * @return The charset name, or null if none is declared or it is not supported
+         */
+        public String charset() {
+            for (String parameter : contentType.split(";")) {
+                String trimmed = parameter.trim();
+                if (trimmed.regionMatches(true, 0, "charset=", 0, 8)) {
+                    String name = trimmed.substring(8).replace("\"", "").trim();
+                    try {
+                        return Charset.isSupported(name) ? name : null;
+                    } catch (IllegalArgumentException e) {
+                        return null;
+                    }
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Parses the body as HTML. When no charset is declared, Jsoup detects it from
+         * the byte order mark or the page's meta tags.
+         *
+         * @return The parsed document
+         * @throws IOException If the body cannot be decoded
+         */
+        public Document parse() throws IOException {
+            return Jsoup.parse(new ByteArrayInputStream(body), charset(), url);
+        }
+
+        /**
+         * Decodes the body as text, using the declared charset or UTF-8.
+         *
+         * @return The body as a string
+         */
+        public String text() {
+            String charset = charset();
+            return new String(body, charset == null ? StandardCharsets.UTF_8 : Charset.forName(charset));
+        }
+    }
+
+    /**
+     * Body read by {@link CappedBodySubscriber}.
+     *
+     * @param bytes The bytes received, at most the cap
+     * @param truncated Whether more bytes were available
+     */
+    private record Body(byte[] bytes, boolean truncated) {
+    }
+
+    /**
+     * Streams a body into a buffer bounded by the byte cap, cancelling the transfer
+     * once the cap is reached. A cap of zero cancels the transfer immediately.
+     */
+    private final class CappedBodySubscriber implements HttpResponse.BodySubscriber<Body> {
+
+        private final CompletableFuture<Body> result = new CompletableFuture<>();
+        private final int cap;
+        private Flow.Subscription subscription;
+        private byte[] buffer;
+        private int size;
+
+        /**
+         * @param cap Maximum number of bytes kept
+         * @param expectedLength Content-Length of the body, or -1 if unknown
+         */
+        CappedBodySubscriber(int cap, long expectedLength) {
+            this.cap = cap;
+            this.buffer = new byte[(int) Math.min(cap, expectedLength >= 0 ? expectedLength : 16 * 1024)];
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            if (cap == 0) {
+                finish(true);
+            } else {
+                subscription.request(1);
+            }
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> items) {
+            if (result.isDone()) {
+                return;
+            }
+            for (ByteBuffer item : items) {
+                int room = cap - size;
+                int length = Math.min(room, item.remaining());
+                if (size + length > buffer.length) {
+                    buffer = Arrays.copyOf(buffer, Math.min(cap, Math.max(buffer.length * 2, size + length)));
+                }
+                item.get(buffer, size, length);
+                size += length;
+                if (item.hasRemaining()) {
+                    finish(true);
+                    return;
+                }
+            }
+            subscription.request(1);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            result.completeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            result.complete(new Body(size == buffer.length ? buffer : Arrays.copyOf(buffer, size), false));
+        }
+
+        /**
+         * Cancels the rest of the transfer and completes with the bytes read so far.
+         *
+         * @param truncated Whether bytes were left unread
+         */
+        private void finish(boolean truncated) {
+            subscription.cancel();
+            result.complete(new Body(Arrays.copyOf(buffer, size), truncated));
+        }
+
+        @Override
+        public CompletableFuture<Body> getBody() {
+            return result;
+        }
+    }
+
+    /** Client shared by all requests */
+    private final HttpClient client;
+
+    /** Deadline for a whole request, body included, in milliseconds */
+    private final long requestTimeoutMs;
+
+    /** Maximum number of body bytes kept per response */
+    private final int maxBodyBytes;
+
+    /** User agent sent with every request */
+    private final String userAgent;
+
+    /** Requests completed */
+    private final AtomicLong completed = new AtomicLong();
+
+    /** Requests abandoned because they exceeded the deadline */
+    private final AtomicLong timedOut = new AtomicLong();
+
+    /** Requests that failed with a network error */
+    private final AtomicLong failed = new AtomicLong();
+
+    /** Body bytes received */
+    private final AtomicLong bytesReceived = new AtomicLong();
+
+    /** Bodies cut at the byte cap */
+    private final AtomicLong truncated = new AtomicLong();
+
+    /** Responses whose body was not read because they were not HTML */
+    private final AtomicLong rejected = new AtomicLong();
+
+    /** Archive every response is recorded to, or null when not recording */
+    private volatile CrawlArchive.Writer recorder;
+
+    /** Responses that could not be recorded */
+    private final AtomicLong recordFailures = new AtomicLong();
+
+    /**
+     * Creates a fetcher with its own shared client.
+     *
+     * @param connectTimeoutMs Timeout for establishing a connection, in milliseconds
+     * @param requestTimeoutMs Deadline for a whole request, body included, in milliseconds
+     * @param maxBodyBytes Maximum number of body bytes kept per response; longer bodies are truncated
+     * @param userAgent User agent sent with every request
+     */
+    public HttpFetcher(long connectTimeoutMs, long requestTimeoutMs, int maxBodyBytes, String userAgent) {
+        this.requestTimeoutMs = requestTimeoutMs;
+        this.maxBodyBytes = maxBodyBytes;
+        this.userAgent = userAgent;
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .build();
+    }
+
+    /**
+     * Returns whether a Content-Type header denotes HTML. A missing header is accepted.
+     *
+     * @param contentType The lower-case Content-Type header, or an empty string
+     * @return true for HTML, XHTML or unknown content
+     */
+    private static boolean isHtmlType(String contentType) {
+        return contentType.isEmpty() || contentType.startsWith("text/html") || contentType.startsWith("application/xhtml+xml");
+    }
+
+    /**
+     * Starts fetching a URL without blocking the caller.
+     *
+     * @param url The URL to fetch
+     * @param etag ETag of the cached version, sent as If-None-Match, or null
+     * @param lastModified Last-Modified of the cached version, sent as If-Modified-Since, or null
+     * @param htmlOnly Whether to skip the body of responses that are not HTML
+     * @return A future completed with the page, or exceptionally on failure or timeout
+     */
+    public CompletableFuture<Page> fetchAsync(String url, String etag, String lastModified, boolean htmlOnly) {
+        HttpRequest request;
+        try {
+            HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(url.trim()))
+                    .timeout(Duration.ofMillis(requestTimeoutMs))
+                    .header("User-Agent", userAgent)
+                    .header("Accept", htmlOnly ? "text/html,application/xhtml+xml;q=0.9" : "text/html,application/xhtml+xml,*/*;q=0.8")
+                    .GET();
+            if (etag != null) {
+                builder.header("If-None-Match", etag);
+            }
+            if (lastModified != null) {
+                builder.header("If-Modified-Since", lastModified);
+            }
+            request = builder.build();
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(new IOException("Invalid URL: " + url, e));
+        }
+
+        // Decide from the headers how much of the body to read
+        HttpResponse.BodyHandler<Body> handler = info -> {
+            String contentType = info.headers().firstValue("Content-Type").orElse("").toLowerCase(Locale.ROOT);
+            boolean skip = htmlOnly && !isHtmlType(contentType);
+            if (skip) {
+                rejected.incrementAndGet();
+            }
+            return new CappedBodySubscriber(skip ? 0 : maxBodyBytes, info.headers().firstValueAsLong("Content-Length").orElse(-1));
+        };
+
+        return client.sendAsync(request, handler)
+                .thenApply(response -> {
+                    Body body = response.body();
+                    bytesReceived.addAndGet(body.bytes().length);
+                    completed.incrementAndGet();
+                    if (body.truncated() && body.bytes().length > 0) {
+                        truncated.incrementAndGet();
+                    }
+                    Page page = new Page(response.uri().toString(), response.statusCode(),
+                            response.headers().firstValue("Content-Type").orElse("").toLowerCase(Locale.ROOT), body.bytes(),
+                            response.headers().firstValue("ETag").orElse(null),
+                            response.headers().firstValue("Last-Modified").orElse(null),
+                            body.truncated());
+                    record(url.trim(), page);
+                    return page;
+                });
+    }
+
+    /**
+     * Starts recording every response to an archive, for later offline replay.
+     *
+     * @param writer The archive to append to, or null to stop recording
+     */
+    public void recordTo(CrawlArchive.Writer writer) {
+        this.recorder = writer;
+    }
+
+    /**
+     * Records a response if recording is on. Conditional 304 answers are not recorded,
+     * since they carry no body to replay.
+     *
+     * @param url The requested URL
+     * @param page The response
+     */
+    private void record(String url, Page page) {
+        CrawlArchive.Writer writer = recorder;
+        if (writer == null || page.statusCode() == 304) {
+            return;
+        }
+        try {
+            writer.write(url, page);
+        } catch (IOException e) {
+            if (recordFailures.getAndIncrement() == 0) {
+                System.err.println("Failed to record " + url + " to the crawl archive: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Fetches a URL of any content type, blocking until the response body has been
+     * received or the deadline expires. Intended to be called from virtual threads.
+     *
+     * @param url The URL to fetch
+     * @return The fetched page, whatever its status code
+     * @throws IOException If the request fails or exceeds the deadline
+     */
+    public Page fetch(String url) throws IOException {
+        return await(url, fetchAsync(url, null, null, false));
+    }
+
+    /**
+     * Fetches an HTML page, blocking until the response has been received or the
+     * deadline expires. Responses that are not HTML are returned with an empty body
+     * (see {@link Page#isHtml()}).
+     *
+     * @param url The URL to fetch
+     * @return The fetched page, whatever its status code
+     * @throws IOException If the request fails or exceeds the deadline
+     */
+    public Page fetchHtml(String url) throws IOException {
+        return fetchHtml(url, null, null);
+    }
+
+    /**
+     * Fetches an HTML page conditionally, blocking until the response has been received
+     * or the deadline expires. Intended to be called from virtual threads.
+     *
+     * @param url The URL to fetch
+     * @param etag ETag of the cached version, sent as If-None-Match, or null
+     * @param lastModified Last-Modified of the cached version, sent as If-Modified-Since, or null
+     * @return The fetched page, whatever its status code (304 if unchanged)
+     * @throws IOException If the request fails or exceeds the deadline
+     */
+    public Page fetchHtml(String url, String etag, String lastModified) throws IOException {
+        return await(url, fetchAsync(url, etag, lastModified, true));
+    }
+
+    /**
+     * Waits for a fetch to complete within the request deadline.
+     *
+     * @param url The URL being fetched, for error messages
+     * @param future The pending fetch
+     * @return The fetched page
+     * @throws IOException If the request fails or exceeds the deadline
+     */
+    private Page await(String url, CompletableFuture<Page> future) throws IOException {
+        try {
+            return future.get(requestTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            timedOut.incrementAndGet();
+            throw new HttpTimeoutException("Request to " + url + " exceeded " + requestTimeoutMs + " ms");
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while fetching " + url);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof HttpTimeoutException timeout) {
+                timedOut.incrementAndGet();
+                throw timeout;
+            }
+            failed.incrementAndGet();
+            throw cause instanceof IOException io ? io : new IOException(cause);
+        }
+    }
+
+    /**
+     * Returns a one-line summary of the fetcher state.
+     *
+     * @return A human-readable report
+     */
+    public String report() {
+        String report = String.format("HTTP fetcher: %d completed, %d timed out, %d failed, %d not HTML, %d truncated, %.1f MB received",
+                completed.get(), timedOut.get(), failed.get(), rejected.get(), truncated.get(),
+                bytesReceived.get() / (1024.0 * 1024.0));
+        CrawlArchive.Writer writer = recorder;
+        return writer == null ? report
+                : report + String.format(", %d recorded, %d not recorded", writer.records(), recordFailures.get());
+    }
+}
@@ -0,0 +1,157 @@
+package search.Crawler;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of durations with logarithmic buckets, for latency percentiles.
+ *
+ * <p>Each power of two is split into eight buckets, so a percentile is reported within
+ * 12.5% of the true value over the whole range of a {@code long}, in a fixed 488
+ * counters. Durations are recorded in nanoseconds.</p>
+ *
+ * <p>Thread-safe without locks. A percentile read while other threads record is taken
+ * from a slightly moving snapshot, which is fine for monitoring.</p>
+ */
+public class LatencyHistogram {
+
+    /** Buckets per power of two, as a number of bits */
+    private static final int SUB_BUCKET_BITS = 3;
+
+    /** Buckets per power of two */
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /** Values below this each have their own bucket */
+    private static final int LINEAR_LIMIT = 2 * SUB_BUCKETS;
+
+    /** Exponent of the first logarithmic bucket */
+    private static final int FIRST_EXPONENT = SUB_BUCKET_BITS + 1;
+
+    /** Number of buckets */
+    private static final int BUCKETS = LINEAR_LIMIT + (63 - FIRST_EXPONENT) * SUB_BUCKETS;
+
+    /** Count of each bucket */
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    /** Number of durations recorded */
+    private final LongAdder count = new LongAdder();
+
+    /** Sum of the durations recorded */
+    private final LongAdder sum = new LongAdder();
+
+    /** Longest duration recorded */
+    private final AtomicLong max = new AtomicLong();
+
+    //----------------------------------------METHODS----------------------------------------
+
+    /**
+     * Returns the bucket of a value.
+     *
+     * @param value The value, not negative
+     * @return The bucket index
+     */
+    private static int bucketOf(long value) {
+        if (value < LINEAR_LIMIT) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return LINEAR_LIMIT + (exponent - FIRST_EXPONENT) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * Returns the largest value of a bucket.
+     *
+     * @param bucket The bucket index
+     * @return The bucket's upper bound, inclusive
+     */
+    private static long upperBoundOf(int bucket) {
+        if (bucket < LINEAR_LIMIT) {
+            return bucket;
+        }
+        int exponent = (bucket - LINEAR_LIMIT) / SUB_BUCKETS + FIRST_EXPONENT;
+        long sub = (bucket - LINEAR_LIMIT) % SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        return ((SUB_BUCKETS + sub) << (exponent - SUB_BUCKET_BITS)) + width - 1;
+    }
+
+    /**
+     * Records a duration.
+     *
+     * @param nanos The duration in nanoseconds; negative values count as 0
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(bucketOf(value));
+        count.increment();
+        sum.add(value);
+        max.accumulateAndGet(value, Math::max);
+    }
+
+    /**
+     * Returns the number of durations recorded.
+     *
+     * @return The count
+     */
+    public long count() {
+        return count.sum();
+    }
+
+    /**
+     * Returns the mean of the durations recorded.
+     *
+     * @return The mean in nanoseconds, 0 if nothing was recorded
+     */
+    public double mean() {
+        long n = count.sum();
+        return n == 0 ? 0 : (double) sum.sum() / n;
+    }
+
+    /**
+     * Returns the longest duration recorded.
+     *
+     * @return The maximum in nanoseconds
+     */
+    public long max() {
+        return max.get();
+    }
+
+    /**
+     * Returns a percentile of the durations recorded.
+     *
+     * @param fraction The percentile, between 0 and 1
+     * @return The upper bound of the bucket holding the percentile, in nanoseconds, never
+     *         above the maximum; 0 if nothing was recorded
+     */
+    public long percentile(double fraction) {
+        long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(fraction * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(upperBoundOf(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Returns the usual percentiles in a compact form.
+     *
+     * @return The median, 99th percentile and maximum in milliseconds
+     */
+    public String summary() {
+        return String.format("p50 %.1f ms, p99 %.1f ms, max %.1f ms",
+                percentile(0.50) / 1e6, percentile(0.99) / 1e6, max() / 1e6);
+    }
+}
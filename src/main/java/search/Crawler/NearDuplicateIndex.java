@@ -0,0 +1,151 @@
+package search.Crawler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-memory index of 64-bit SimHash fingerprints answering "is there a page within
+ * Hamming distance k of this one?" without comparing against every page.
+ *
+ * <p>The fingerprint is split into {@code k + 1} bands of contiguous bits. Two
+ * fingerprints that differ in at most {@code k} bits must agree exactly on at least one
+ * band (pigeonhole principle), so a lookup only compares against the pages sharing one
+ * of its band values and then checks the full Hamming distance.</p>
+ *
+ * <p>Not thread-safe; the owner synchronizes access.</p>
+ */
+public class NearDuplicateIndex {
+
+    /** Maximum Hamming distance for two pages to be near-duplicates */
+    private final int maxDistance;
+
+    /** Number of bands the fingerprint is split into */
+    private final int bands;
+
+    /** Width of each band in bits; the last band takes the remaining bits */
+    private final int bandWidth;
+
+    /** Fingerprint id of each indexed URL */
+    private final Map<String, Integer> idsByUrl = new HashMap<>();
+
+    /** URL of each fingerprint id */
+    private final List<String> urls = new ArrayList<>();
+
+    /** Fingerprint of each id */
+    private long[] fingerprints = new long[1024];
+
+    /** Fingerprint ids per band key */
+    private final Map<Long, List<Integer>> buckets = new HashMap<>();
+
+    /**
+     * Creates an empty index.
+     *
+     * @param maxDistance Maximum Hamming distance for two pages to be near-duplicates (0 to 7)
+     */
+    public NearDuplicateIndex(int maxDistance) {
+        if (maxDistance < 0 || maxDistance > 7) {
+            throw new IllegalArgumentException("Hamming distance must be between 0 and 7: " + maxDistance);
+        }
+        this.maxDistance = maxDistance;
+        this.bands = maxDistance + 1;
+        this.bandWidth = 64 / bands;
+    }
+
+    /**
+     * Returns the bucket key of one band of a fingerprint.
+     *
+     * @param fingerprint The fingerprint
+     * @param band The band index
+     * @return A key unique to the band index and value
+     */
+    private long bandKey(long fingerprint, int band) {
+        if (bands == 1) {
+            return fingerprint;
+        }
+        int shift = band * bandWidth;
+        int width = band == bands - 1 ? 64 - shift : bandWidth;
+        long value = (fingerprint >>> shift) & ((1L << width) - 1);
+        return ((long) band << 58) | value;
+    }
+
+    /**
+     * Finds an indexed page within the maximum Hamming distance of a fingerprint.
+     *
+     * @param fingerprint The fingerprint to look up
+     * @param excludeUrl A URL to ignore (the page itself), or null
+     * @return The URL of the closest near-duplicate, or null if there is none
+     */
+    public String findNearDuplicate(long fingerprint, String excludeUrl) {
+        Integer excluded = excludeUrl == null ? null : idsByUrl.get(excludeUrl);
+        String best = null;
+        int bestDistance = Integer.MAX_VALUE;
+
+        for (int band = 0; band < bands; band++) {
+            List<Integer> bucket = buckets.get(bandKey(fingerprint, band));
+            if (bucket == null) {
+                continue;
+            }
+            for (int id : bucket) {
+                if (excluded != null && id == excluded) {
+                    continue;
+                }
+                int distance = Long.bitCount(fingerprints[id] ^ fingerprint);
+                if (distance <= maxDistance && distance < bestDistance) {
+                    best = urls.get(id);
+                    bestDistance = distance;
+                    if (distance == 0) {
+                        return best;
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Adds a page to the index, replacing its previous fingerprint if it had one.
+     *
+     * @param url The URL of the page
+     * @param fingerprint The page's fingerprint
+     */
+    public void put(String url, long fingerprint) {
+        Integer id = idsByUrl.get(url);
+        if (id != null) {
+            if (fingerprints[id] == fingerprint) {
+                return;
+            }
+            for (int band = 0; band < bands; band++) {
+                long key = bandKey(fingerprints[id], band);
+                List<Integer> bucket = buckets.get(key);
+                bucket.remove(id);
+                if (bucket.isEmpty()) {
+                    buckets.remove(key);
+                }
+            }
+        } else {
+            id = urls.size();
+            urls.add(url);
+            idsByUrl.put(url, id);
+            if (id == fingerprints.length) {
+                fingerprints = Arrays.copyOf(fingerprints, id * 2);
+            }
+        }
+
+        fingerprints[id] = fingerprint;
+        for (int band = 0; band < bands; band++) {
+            buckets.computeIfAbsent(bandKey(fingerprint, band), k -> new ArrayList<>(2)).add(id);
+        }
+    }
+
+    /**
+     * Returns the number of indexed pages.
+     *
+     * @return The page count
+     */
+    public int size() {
+        return urls.size();
+    }
+}
@@ -0,0 +1,294 @@
+package search.Crawler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Staged pipeline: items pass through a fixed sequence of stages, each with its own
+ * workers and a bounded queue in front of it.
+ *
+ * <p>A stage's workers are either virtual threads, for stages that mostly wait on the
+ * network, or platform threads, for CPU-bound stages, and each stage is sized on its
+ * own. A worker hands its result to the next stage by putting it on that stage's
+ * queue and blocks while the queue is full, so a slow stage holds back the stages
+ * before it, down to {@link #submit(Object)}, instead of letting items pile up in
+ * memory.</p>
+ *
+ * <p>Each stage may end an item early. When an item leaves the pipeline, whether
+ * after the last stage, ended early or failed, the completion callback is told the
+ * outcome. A step that throws fails its item.</p>
+ *
+ * <p>Per stage, the pipeline counts the items processed and failed, and records their
+ * queue wait and service time in {@link LatencyHistogram}s.</p>
+ *
+ * @param <T> The type of the items, which carry their own state from stage to stage
+ */
+public class Pipeline<T> implements AutoCloseable {
+
+    /**
+     * What happens to an item after a step.
+     */
+    public enum Result {
+        /** Pass the item to the next stage; after the last stage, complete it successfully */
+        NEXT,
+        /** Complete the item successfully without the remaining stages */
+        DONE,
+        /** Complete the item as failed */
+        FAILED
+    }
+
+    /**
+     * The work of a stage on one item.
+     *
+     * @param <T> The type of the items
+     */
+    @FunctionalInterface
+    public interface Step<T> {
+        /**
+         * Processes an item.
+         *
+         * @param item The item
+         * @return What happens to the item next
+         * @throws Exception If processing fails, which fails the item
+         */
+        Result apply(T item) throws Exception;
+    }
+
+    /**
+     * Told the outcome of every item that leaves the pipeline.
+     *
+     * @param <T> The type of the items
+     */
+    @FunctionalInterface
+    public interface Completion<T> {
+        /**
+         * Completes an item.
+         *
+         * @param item The item
+         * @param succeeded Whether the item was processed successfully
+         */
+        void complete(T item, boolean succeeded);
+    }
+
+    /**
+     * An item waiting in a stage's queue, with the time it was queued.
+     */
+    private record Queued<T>(T item, long queuedAt) {
+    }
+
+    /**
+     * One stage: its step, queue, workers and metrics.
+     */
+    private final class Stage {
+        final String name;
+        final Step<T> step;
+        final int workers;
+        final boolean virtual;
+        final BlockingQueue<Queued<T>> queue;
+        final List<Thread> threads = new ArrayList<>();
+        final AtomicInteger busy = new AtomicInteger();
+        final LongAdder processed = new LongAdder();
+        final LongAdder failed = new LongAdder();
+        final LatencyHistogram wait = new LatencyHistogram();
+        final LatencyHistogram service = new LatencyHistogram();
+        Stage next;
+
+        /** Items processed and time at the previous report, for the throughput since then */
+        long reportedCount;
+        long reportedAt = System.nanoTime();
+
+        Stage(String name, Step<T> step, int workers, boolean virtual, int capacity) {
+            this.name = name;
+            this.step = step;
+            this.workers = workers;
+            this.virtual = virtual;
+            this.queue = new ArrayBlockingQueue<>(capacity);
+        }
+    }
+
+    /** The stages, in order */
+    private final List<Stage> stages = new ArrayList<>();
+
+    /** Capacity of each stage's queue */
+    private final int queueCapacity;
+
+    /** Told the outcome of each item */
+    private final Completion<T> completion;
+
+    /** Items that completed successfully and that failed */
+    private final LongAdder succeeded = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    /** Whether the workers were started */
+    private volatile boolean started;
+
+    /**
+     * Creates an empty pipeline.
+     *
+     * @param queueCapacity Capacity of the queue in front of each stage
+     * @param completion Told the outcome of each item that leaves the pipeline
+     */
+    public Pipeline(int queueCapacity, Completion<T> completion) {
+        this.queueCapacity = Math.max(1, queueCapacity);
+        this.completion = completion;
+    }
+
+    //----------------------------------------METHODS----------------------------------------
+
+    /**
+     * Appends a stage. Stages can only be added before {@link #start()}.
+     *
+     * @param name Name of the stage, used in thread names and reports
+     * @param workers Number of workers
+     * @param virtual Whether the workers are virtual threads (I/O-bound stage) or platform threads (CPU-bound stage)
+     * @param step The work of the stage
+     */
+    public void addStage(String name, int workers, boolean virtual, Step<T> step) {
+        if (started) {
+            throw new IllegalStateException("Pipeline already started");
+        }
+        Stage stage = new Stage(name, step, Math.max(1, workers), virtual, queueCapacity);
+        if (!stages.isEmpty()) {
+            stages.get(stages.size() - 1).next = stage;
+        }
+        stages.add(stage);
+    }
+
+    /**
+     * Starts the workers of every stage.
+     */
+    public void start() {
+        if (stages.isEmpty()) {
+            throw new IllegalStateException("Pipeline has no stages");
+        }
+        started = true;
+        for (Stage stage : stages) {
+            for (int i = 0; i < stage.workers; i++) {
+                Thread.Builder builder = stage.virtual ? Thread.ofVirtual() : Thread.ofPlatform().daemon(true);
+                stage.threads.add(builder.name("Stage-" + stage.name + "-" + i).start(() -> work(stage)));
+            }
+        }
+    }
+
+    /**
+     * Hands an item to the first stage, blocking while its queue is full.
+     *
+     * @param item The item
+     * @throws InterruptedException If the thread is interrupted while waiting for room
+     */
+    public void submit(T item) throws InterruptedException {
+        stages.get(0).queue.put(new Queued<>(item, System.nanoTime()));
+    }
+
+    /**
+     * Runs a worker of a stage until it is interrupted.
+     *
+     * @param stage The stage
+     */
+    private void work(Stage stage) {
+        while (!Thread.currentThread().isInterrupted()) {
+            Queued<T> queued;
+            try {
+                queued = stage.queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            long start = System.nanoTime();
+            stage.wait.record(start - queued.queuedAt());
+            stage.busy.incrementAndGet();
+            Result result;
+            try {
+                result = stage.step.apply(queued.item());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                result = Result.FAILED;
+            } catch (Exception e) {
+                System.err.println("Stage " + stage.name + " failed for " + queued.item() + ": " + e.getMessage());
+                result = Result.FAILED;
+            } finally {
+                stage.busy.decrementAndGet();
+            }
+            long end = System.nanoTime();
+            stage.service.record(end - start);
+            stage.processed.increment();
+            if (result == Result.FAILED) {
+                stage.failed.increment();
+            }
+
+            if (result == Result.NEXT && stage.next != null) {
+                try {
+                    stage.next.queue.put(new Queued<>(queued.item(), end));
+                } catch (InterruptedException e) {
+                    complete(queued.item(), false);
+                    return;
+                }
+            } else {
+                complete(queued.item(), result != Result.FAILED);
+            }
+        }
+    }
+
+    /**
+     * Reports an item's outcome to the completion callback.
+     *
+     * @param item The item
+     * @param success Whether it succeeded
+     */
+    private void complete(T item, boolean success) {
+        (success ? succeeded : failed).increment();
+        try {
+            completion.complete(item, success);
+        } catch (RuntimeException e) {
+            System.err.println("Pipeline completion failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Returns a summary of the pipeline: one line overall, then one line per stage
+     * with its workers busy, queue depth, throughput since the previous report, failures
+     * and latency percentiles.
+     *
+     * @return A human-readable report
+     */
+    public synchronized String report() {
+        StringBuilder report = new StringBuilder(String.format("Pipeline: %d items succeeded, %d failed",
+                succeeded.sum(), failed.sum()));
+        long now = System.nanoTime();
+        for (Stage stage : stages) {
+            long processed = stage.processed.sum();
+            double seconds = (now - stage.reportedAt) / 1e9;
+            double rate = seconds <= 0 ? 0 : (processed - stage.reportedCount) / seconds;
+            stage.reportedCount = processed;
+            stage.reportedAt = now;
+            report.append(String.format("%n  %-9s %s %3d/%-3d busy, queue %3d/%d, %.1f/s, %d done, %d failed, wait %s, service %s",
+                    stage.name, stage.virtual ? "virtual " : "platform", stage.busy.get(), stage.workers,
+                    stage.queue.size(), queueCapacity, rate, processed, stage.failed.sum(),
+                    stage.wait.summary(), stage.service.summary()));
+        }
+        return report.toString();
+    }
+
+    /**
+     * Stops the workers of every stage. Items still queued are dropped without completion.
+     */
+    @Override
+    public void close() {
+        for (Stage stage : stages) {
+            stage.threads.forEach(Thread::interrupt);
+        }
+        for (Stage stage : stages) {
+            for (Thread thread : stage.threads) {
+                try {
+                    thread.join(5000);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,304 @@
+package search.Crawler;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Frontier that hands out the most important URLs first.
+ *
+ * <p>Each URL carries a score in the style of OPIC (On-line Page Importance
+ * Computation): seed URLs start with a credit of 1, and every fetched page splits its
+ * own score evenly among its outlinks, so the score of a queued URL grows with each
+ * inbound link found. The score is discounted when the URL is ranked:</p>
+ * <ul>
+ *   <li>by its depth, {@code 1 + depthPenalty * depth}, favouring pages close to the seeds;</li>
+ *   <li>by its host, {@code 1 + hostPenalty * n} where {@code n} is the number of URLs
+ *       already handed out for that host, so one large site does not take over the crawl.</li>
+ * </ul>
+ *
+ * <p>URLs live in an indexed binary max-heap: a map from URL to heap node gives
+ * O(log n) increase-key when an inbound link raises a score. Handing out URLs raises
+ * the host discount, which lowers the priority of every queued URL of that host; those
+ * priorities are corrected lazily with a decrease-key when a stale node reaches the top.</p>
+ *
+ * <p>The whole frontier is kept in memory, so its heap use grows with the number of
+ * queued URLs; its durable copy, including scores, is kept by the owner. Hand-out
+ * counts are kept for hosts with queued URLs; those of hosts with none left are swept
+ * once they outnumber the others, so a long crawl over many hosts does not accumulate
+ * them. A swept host starts again without a discount if new URLs of it are found.
+ * Not thread-safe; the owner synchronizes access.</p>
+ */
+public class PriorityFrontier implements Frontier {
+
+    /**
+     * A queued URL and its position in the heap.
+     */
+    private static final class Node {
+        final String url;
+        final String host;
+        final int depth;
+        double score;
+        double priority;
+        int index;
+
+        Node(String url, String host, int depth, double score) {
+            this.url = url;
+            this.host = host;
+            this.depth = depth;
+            this.score = score;
+        }
+    }
+
+    /** Discount per level of depth */
+    private final double depthPenalty;
+
+    /** Discount per URL already handed out for the same host */
+    private final double hostPenalty;
+
+    /** Binary max-heap on priority */
+    private Node[] heap = new Node[1024];
+
+    /** Number of nodes in the heap */
+    private int size;
+
+    /** Heap node of every queued URL */
+    private final Map<String, Node> nodes = new HashMap<>();
+
+    /** Number of hand-out counts kept for hosts without queued URLs before they are swept */
+    private static final int MIN_HOSTS_KEPT = 10000;
+
+    /** Number of URLs handed out per host */
+    private final Map<String, Integer> handedOut = new HashMap<>();
+
+    /** Number of queued URLs per host */
+    private final Map<String, Integer> queuedPerHost = new HashMap<>();
+
+    /** Hand-out counts swept because their host had no queued URLs */
+    private long sweptHosts;
+
+    /** Scores raised by newly found inbound links */
+    private long raises;
+
+    /** Stale priorities corrected when their node reached the top */
+    private long corrections;
+
+    /**
+     * Creates an empty frontier.
+     *
+     * @param depthPenalty Discount per level of depth, 0 to ignore depth
+     * @param hostPenalty Discount per URL already handed out for the same host, 0 to ignore hosts
+     */
+    public PriorityFrontier(double depthPenalty, double hostPenalty) {
+        if (depthPenalty < 0 || hostPenalty < 0) {
+            throw new IllegalArgumentException("Penalties must not be negative");
+        }
+        this.depthPenalty = depthPenalty;
+        this.hostPenalty = hostPenalty;
+    }
+
+    //----------------------------------------METHODS----------------------------------------
+
+    /**
+     * Computes the current priority of a node.
+     *
+     * @param node The node
+     * @return Its score discounted by depth and host
+     */
+    private double priorityOf(Node node) {
+        int hostCount = handedOut.getOrDefault(node.host, 0);
+        return node.score / (1 + depthPenalty * node.depth) / (1 + hostPenalty * hostCount);
+    }
+
+    /**
+     * Adds a URL that is not queued yet. URLs already queued are left unchanged.
+     *
+     * @param entry The URL and its ranking information
+     */
+    @Override
+    public void add(Entry entry) {
+        if (nodes.containsKey(entry.url())) {
+            return;
+        }
+        Node node = new Node(entry.url(), HostScheduler.hostOf(entry.url()), entry.depth(), entry.score());
+        node.priority = priorityOf(node);
+        if (size == heap.length) {
+            heap = Arrays.copyOf(heap, size * 2);
+        }
+        node.index = size;
+        heap[size++] = node;
+        nodes.put(node.url, node);
+        queuedPerHost.merge(node.host, 1, Integer::sum);
+        siftUp(node.index);
+    }
+
+    /**
+     * Removes and returns the URL with the highest priority.
+     *
+     * @return The best URL, or null if the frontier is empty
+     */
+    @Override
+    public Entry poll() {
+        while (size > 0) {
+            Node top = heap[0];
+            double current = priorityOf(top);
+            if (current < top.priority) {
+                // Its host was served since the priority was computed: decrease-key and look again
+                top.priority = current;
+                corrections++;
+                siftDown(0);
+                if (heap[0] != top) {
+                    continue;
+                }
+            }
+            removeTop();
+            handedOut.merge(top.host, 1, Integer::sum);
+            if (handedOut.size() > MIN_HOSTS_KEPT + 2 * queuedPerHost.size()) {
+                sweepHosts();
+            }
+            return new Entry(top.url, top.score, top.depth);
+        }
+        return null;
+    }
+
+    /**
+     * Forgets the hand-out counts of hosts that have no queued URLs.
+     *
+     * <p>Sweeping only once those hosts outnumber the rest by {@link #MIN_HOSTS_KEPT}
+     * keeps the cost amortized constant per URL handed out.</p>
+     */
+    private void sweepHosts() {
+        int before = handedOut.size();
+        handedOut.keySet().retainAll(queuedPerHost.keySet());
+        sweptHosts += before - handedOut.size();
+    }
+
+    /**
+     * Adds credit to the score of a queued URL and moves it up the heap.
+     *
+     * @param url The URL
+     * @param credit The amount added to its score
+     * @return true if the URL is queued and its score was raised
+     */
+    @Override
+    public boolean raise(String url, double credit) {
+        Node node = nodes.get(url);
+        if (node == null) {
+            return false;
+        }
+        node.score += credit;
+        node.priority = priorityOf(node);
+        siftUp(node.index);
+        siftDown(node.index);
+        raises++;
+        return true;
+    }
+
+    /**
+     * Returns the number of queued URLs.
+     *
+     * @return The frontier size
+     */
+    @Override
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Returns the number of scores raised by inbound links found while the URL was queued.
+     *
+     * @return The count of score raises
+     */
+    public long raises() {
+        return raises;
+    }
+
+    /**
+     * Returns the number of hosts whose hand-out count is kept.
+     *
+     * @return The number of tracked hosts
+     */
+    public long trackedHosts() {
+        return handedOut.size();
+    }
+
+    /**
+     * Returns the number of hand-out counts swept because their host had no queued URLs.
+     *
+     * @return The count of swept hosts
+     */
+    public long sweptHosts() {
+        return sweptHosts;
+    }
+
+    /**
+     * Returns the number of stale priorities corrected at the top of the heap.
+     *
+     * @return The count of lazy corrections
+     */
+    public long corrections() {
+        return corrections;
+    }
+
+    /**
+     * Removes the root node.
+     */
+    private void removeTop() {
+        Node top = heap[0];
+        nodes.remove(top.url);
+        queuedPerHost.computeIfPresent(top.host, (host, count) -> count == 1 ? null : count - 1);
+        Node last = heap[--size];
+        heap[size] = null;
+        if (size > 0) {
+            heap[0] = last;
+            last.index = 0;
+            siftDown(0);
+        }
+    }
+
+    /**
+     * Moves a node up until its parent has a higher or equal priority.
+     *
+     * @param index The node's position
+     */
+    private void siftUp(int index) {
+        Node node = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (heap[parent].priority >= node.priority) {
+                break;
+            }
+            heap[index] = heap[parent];
+            heap[index].index = index;
+            index = parent;
+        }
+        heap[index] = node;
+        node.index = index;
+    }
+
+    /**
+     * Moves a node down until both children have a lower or equal priority.
+     *
+     * @param index The node's position
+     */
+    private void siftDown(int index) {
+        Node node = heap[index];
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && heap[child + 1].priority > heap[child].priority) {
+                child++;
+            }
+            if (heap[child].priority <= node.priority) {
+                break;
+            }
+            heap[index] = heap[child];
+            heap[index].index = index;
+            index = child;
+        }
+        heap[index] = node;
+        node.index = index;
+    }
+}
@@ -0,0 +1,146 @@
+package search.Crawler;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fetch layer that serves responses from a {@link CrawlArchive} instead of the network,
+ * so crawls can be benchmarked offline and reproducibly.
+ *
+ * <p>Each response is delivered after a simulated latency: a base latency plus a jitter
+ * derived from a hash of the URL, so a URL takes the same time on every run whatever
+ * order it is fetched in. URLs missing from the archive are answered with an empty
+ * 404, which the robots.txt cache reads as "no rules". Conditional requests whose
+ * validators match the recorded ETag or Last-Modified are answered with 304, and
+ * non-HTML and oversized bodies are cut as the live fetcher would.</p>
+ *
+ * <p>No request leaves the process: the {@link HttpFetcher} client created by the
+ * superclass is never used. Thread-safe.</p>
+ */
+public class ReplayFetcher extends HttpFetcher {
+
+    /** Archive the responses are served from */
+    private final CrawlArchive archive;
+
+    /** Base latency of a response, in milliseconds */
+    private final long latencyMs;
+
+    /** Largest deviation from the base latency, in milliseconds */
+    private final long jitterMs;
+
+    /** Maximum number of body bytes kept per response */
+    private final int maxBodyBytes;
+
+    /** Responses served from the archive */
+    private final AtomicLong served = new AtomicLong();
+
+    /** URLs missing from the archive, answered with 404 */
+    private final AtomicLong missing = new AtomicLong();
+
+    /** Conditional requests answered with 304 */
+    private final AtomicLong notModified = new AtomicLong();
+
+    /** Body bytes served */
+    private final AtomicLong bytesServed = new AtomicLong();
+
+    /**
+     * Creates a replaying fetcher.
+     *
+     * @param archive The archive to serve from
+     * @param latencyMs Base latency of a response, in milliseconds
+     * @param jitterMs Largest deviation from the base latency, in milliseconds
+     * @param requestTimeoutMs Deadline for a whole request, in milliseconds
+     * @param maxBodyBytes Maximum number of body bytes kept per response; longer bodies are truncated
+     */
+    public ReplayFetcher(CrawlArchive archive, long latencyMs, long jitterMs, long requestTimeoutMs, int maxBodyBytes) {
+        super(requestTimeoutMs, requestTimeoutMs, maxBodyBytes, "replay");
+        this.archive = archive;
+        this.latencyMs = Math.max(0, latencyMs);
+        this.jitterMs = Math.max(0, Math.min(jitterMs, latencyMs));
+        this.maxBodyBytes = maxBodyBytes;
+    }
+
+    //----------------------------------------METHODS----------------------------------------
+
+    /**
+     * Returns the simulated latency of a URL.
+     *
+     * @param url The URL
+     * @return The base latency plus a jitter in {@code [-jitterMs, jitterMs]} fixed by the URL
+     */
+    private long latencyOf(String url) {
+        if (jitterMs == 0) {
+            return latencyMs;
+        }
+        long h = url.hashCode() * 0x9E3779B97F4A7C15L;
+        h ^= h >>> 29;
+        return latencyMs - jitterMs + Long.remainderUnsigned(h, 2 * jitterMs + 1);
+    }
+
+    /**
+     * Serves a URL from the archive after its simulated latency.
+     *
+     * @param url The URL to fetch
+     * @param etag ETag of the cached version, or null
+     * @param lastModified Last-Modified of the cached version, or null
+     * @param htmlOnly Whether to drop the body of responses that are not HTML
+     * @return A future completed with the recorded page, an empty 304 or an empty 404
+     */
+    @Override
+    public CompletableFuture<Page> fetchAsync(String url, String etag, String lastModified, boolean htmlOnly) {
+        String key = url.trim();
+        Page recorded;
+        try {
+            recorded = archive.get(key);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        Page page;
+        if (recorded == null) {
+            missing.incrementAndGet();
+            page = new Page(key, 404, "text/html", new byte[0], null, null, false);
+        } else if ((etag != null && etag.equals(recorded.etag()))
+                || (lastModified != null && lastModified.equals(recorded.lastModified()))) {
+            notModified.incrementAndGet();
+            page = new Page(recorded.url(), 304, recorded.contentType(), new byte[0], recorded.etag(),
+                    recorded.lastModified(), false);
+        } else if (htmlOnly && !recorded.isHtml()) {
+            page = new Page(recorded.url(), recorded.statusCode(), recorded.contentType(), new byte[0],
+                    recorded.etag(), recorded.lastModified(), true);
+        } else if (recorded.body().length > maxBodyBytes) {
+            page = new Page(recorded.url(), recorded.statusCode(), recorded.contentType(),
+                    Arrays.copyOf(recorded.body(), maxBodyBytes), recorded.etag(), recorded.lastModified(), true);
+        } else {
+            page = recorded;
+        }
+        if (recorded != null) {
+            served.incrementAndGet();
+        }
+        bytesServed.addAndGet(page.body().length);
+
+        long delay = latencyOf(key);
+        if (delay == 0) {
+            return CompletableFuture.completedFuture(page);
+        }
+        Executor delayed = CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS);
+        return CompletableFuture.supplyAsync(() -> page, delayed);
+    }
+
+    /**
+     * Returns a one-line summary of the replay.
+     *
+     * @return A human-readable report
+     */
+    @Override
+    public String report() {
+        return String.format("Replay fetcher: %d served from %s, %d missing (404), %d not modified (304), "
+                        + "%.1f MB served, latency %d +/- %d ms",
+                served.get(), archive, missing.get(), notModified.get(),
+                bytesServed.get() / (1024.0 * 1024.0), latencyMs, jitterMs);
+    }
+}
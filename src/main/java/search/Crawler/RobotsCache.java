@@ -0,0 +1,293 @@
+package search.Crawler;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of parsed robots.txt files with a time-to-live per host.
+ *
+ * <p>The first lookup for a host downloads and parses its robots.txt; concurrent
+ * lookups for the same host wait for that single download. Entries expire after the
+ * configured TTL. Only the group for user agent {@code *} is honoured, with
+ * longest-match precedence between {@code Allow} and {@code Disallow} rules and
+ * support for the {@code *} and {@code $} wildcards.</p>
+ *
+ * <p>A missing robots.txt (4xx) allows everything. If the file cannot be fetched at
+ * all the host is also allowed, but the entry is kept for a shorter time so it is
+ * retried soon.</p>
+ */
+public class RobotsCache {
+
+    /** TTL of entries created after a failed download, in milliseconds */
+    private static final long FAILURE_TTL_MS = 3600_000;
+
+    /** Largest crawl delay honoured, in milliseconds */
+    private static final long MAX_CRAWL_DELAY_MS = 60000;
+
+    /**
+     * Parsed rules of one host.
+     *
+     * @param rules Allow and Disallow rules for user agent *
+     * @param crawlDelayMs Crawl-delay in milliseconds, or -1 if absent
+     * @param expiresAtMs Time at which the entry must be fetched again
+     */
+    private record Rules(List<Rule> rules, long crawlDelayMs, long expiresAtMs) {
+
+        /**
+         * Applies the longest matching rule; ties favour Allow.
+         *
+         * @param path The path and query of the URL
+         * @return true if the path may be fetched
+         */
+        boolean isAllowed(String path) {
+            Rule best = null;
+            for (Rule rule : rules) {
+                if (rule.matches(path) && (best == null || rule.pattern.length() > best.pattern.length()
+                        || (rule.pattern.length() == best.pattern.length() && rule.allow))) {
+                    best = rule;
+                }
+            }
+            return best == null || best.allow;
+        }
+    }
+
+    /**
+     * A single Allow or Disallow line.
+     *
+     * @param pattern The path pattern, possibly with * and $ wildcards
+     * @param allow true for Allow, false for Disallow
+     */
+    private record Rule(String pattern, boolean allow) {
+
+        /**
+         * Matches the pattern against a path.
+         *
+         * @param path The path and query of the URL
+         * @return true if the pattern matches
+         */
+        boolean matches(String path) {
+            return matches(path, 0, 0);
+        }
+
+        private boolean matches(String path, int pi, int si) {
+            while (pi < pattern.length()) {
+                char c = pattern.charAt(pi);
+                if (c == '*') {
+                    for (int k = si; k <= path.length(); k++) {
+                        if (matches(path, pi + 1, k)) {
+                            return true;
+                        }
+                    }
+                    return false;
+                }
+                if (c == '$' && pi == pattern.length() - 1) {
+                    return si == path.length();
+                }
+                if (si >= path.length() || path.charAt(si) != c) {
+                    return false;
+                }
+                pi++;
+                si++;
+            }
+            return true;
+        }
+    }
+
+    /** Rules per scheme and authority, loaded at most once at a time */
+    private final Map<String, CompletableFuture<Rules>> cache = new ConcurrentHashMap<>();
+
+    /** Time-to-live of successfully fetched entries, in milliseconds */
+    private final long ttlMs;
+
+    /** Shared fetch layer used to download robots.txt */
+    private final HttpFetcher fetcher;
+
+    /** Lookups answered from the cache */
+    private final AtomicLong hits = new AtomicLong();
+
+    /** Lookups that required a download */
+    private final AtomicLong misses = new AtomicLong();
+
+    /** URLs rejected by robots.txt */
+    private final AtomicLong disallowed = new AtomicLong();
+
+    /**
+     * Creates a robots.txt cache.
+     *
+     * @param fetcher Shared fetch layer used to download robots.txt
+     * @param ttlMs Time-to-live of cached entries, in milliseconds
+     */
+    public RobotsCache(HttpFetcher fetcher, long ttlMs) {
+        this.fetcher = fetcher;
+        this.ttlMs = ttlMs;
+    }
+
+    /**
+     * Checks whether a URL may be fetched, downloading the host's robots.txt if needed.
+     * Blocks while the file is downloaded, so it should be called from a fetch thread.
+     *
+     * @param url The URL to check
+     * @return true if robots.txt allows the URL
+     */
+    public boolean isAllowed(String url) {
+        URI uri;
+        try {
+            uri = URI.create(url.trim());
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        if (uri.getScheme() == null || uri.getRawAuthority() == null) {
+            return false;
+        }
+
+        Rules rules = rulesFor(uri.getScheme().toLowerCase() + "://" + uri.getRawAuthority().toLowerCase());
+        String path = uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath();
+        if (uri.getRawQuery() != null) {
+            path += "?" + uri.getRawQuery();
+        }
+
+        boolean allowed = rules.isAllowed(path);
+        if (!allowed) {
+            disallowed.incrementAndGet();
+        }
+        return allowed;
+    }
+
+    /**
+     * Returns the crawl delay of a host if its robots.txt is already cached. Never blocks.
+     *
+     * @param host The host name
+     * @param defaultDelayMs The delay to use when none is known
+     * @return The crawl delay in milliseconds
+     */
+    public long crawlDelayMs(String host, long defaultDelayMs) {
+        for (String origin : new String[]{"https://" + host, "http://" + host}) {
+            CompletableFuture<Rules> entry = cache.get(origin);
+            if (entry != null && entry.isDone() && !entry.isCompletedExceptionally()) {
+                long delay = entry.join().crawlDelayMs();
+                if (delay >= 0) {
+                    return Math.max(delay, defaultDelayMs);
+                }
+            }
+        }
+        return defaultDelayMs;
+    }
+
+    /**
+     * Returns the cached rules for an origin, downloading them if absent or expired.
+     *
+     * @param origin The scheme and authority, e.g. {@code https://example.com}
+     * @return The rules for the origin
+     */
+    private Rules rulesFor(String origin) {
+        while (true) {
+            CompletableFuture<Rules> created = new CompletableFuture<>();
+            CompletableFuture<Rules> existing = cache.putIfAbsent(origin, created);
+
+            if (existing == null) {
+                misses.incrementAndGet();
+                created.complete(download(origin));
+                return created.join();
+            }
+
+            Rules rules = existing.join();
+            if (rules.expiresAtMs() > System.currentTimeMillis()) {
+                hits.incrementAndGet();
+                return rules;
+            }
+            // Expired: drop it and let one caller download it again
+            cache.remove(origin, existing);
+        }
+    }
+
+    /**
+     * Downloads and parses the robots.txt of an origin.
+     *
+     * @param origin The scheme and authority
+     * @return The parsed rules; allow-all if the file is missing or unreachable
+     */
+    private Rules download(String origin) {
+        long now = System.currentTimeMillis();
+        try {
+            HttpFetcher.Page response = fetcher.fetch(origin + "/robots.txt");
+            if (response.statusCode() >= 400) {
+                return new Rules(List.of(), -1, now + ttlMs);
+            }
+            return parse(response.text(), now + ttlMs);
+        } catch (IOException | RuntimeException e) {
+            return new Rules(List.of(), -1, now + Math.min(ttlMs, FAILURE_TTL_MS));
+        }
+    }
+
+    /**
+     * Parses the group for user agent {@code *} of a robots.txt file.
+     *
+     * @param body The robots.txt contents
+     * @param expiresAtMs Expiry time of the resulting entry
+     * @return The parsed rules
+     */
+    private static Rules parse(String body, long expiresAtMs) {
+        List<Rule> rules = new ArrayList<>();
+        long crawlDelayMs = -1;
+        boolean inStarGroup = false;
+        boolean groupHasRules = false;
+
+        for (String rawLine : body.split("\r?\n|\r")) {
+            int comment = rawLine.indexOf('#');
+            String line = (comment >= 0 ? rawLine.substring(0, comment) : rawLine).trim();
+            int colon = line.indexOf(':');
+            if (colon <= 0) {
+                continue;
+            }
+            String field = line.substring(0, colon).trim().toLowerCase();
+            String value = line.substring(colon + 1).trim();
+
+            switch (field) {
+                case "user-agent" -> {
+                    // Consecutive user-agent lines share one group; a new group starts after rules
+                    if (groupHasRules) {
+                        inStarGroup = false;
+                        groupHasRules = false;
+                    }
+                    inStarGroup |= value.equals("*");
+                }
+                case "allow", "disallow" -> {
+                    groupHasRules = true;
+                    if (inStarGroup && !value.isEmpty()) {
+                        rules.add(new Rule(value, field.equals("allow")));
+                    }
+                }
+                case "crawl-delay" -> {
+                    groupHasRules = true;
+                    if (inStarGroup) {
+                        try {
+                            crawlDelayMs = Math.min(MAX_CRAWL_DELAY_MS, (long) (Double.parseDouble(value) * 1000));
+                        } catch (NumberFormatException ignored) {
+                            // Malformed delay, keep the default
+                        }
+                    }
+                }
+                default -> {
+                    // Sitemap and unknown fields are ignored
+                }
+            }
+        }
+        return new Rules(rules, crawlDelayMs, expiresAtMs);
+    }
+
+    /**
+     * Returns a one-line summary of the cache state.
+     *
+     * @return A human-readable report
+     */
+    public String report() {
+        return String.format("Robots cache: %d origins, %d hits, %d misses, %d URLs disallowed",
+                cache.size(), hits.get(), misses.get(), disallowed.get());
+    }
+}
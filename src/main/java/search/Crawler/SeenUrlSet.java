@@ -0,0 +1,310 @@
+package search.Crawler;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Set of every URL ever added to the URL queue, used to enqueue each URL once.
+ *
+ * <p>Membership is checked at two levels:</p>
+ * <ul>
+ *   <li>A {@link BloomFilter} in memory, sized by configuration. Most new URLs are
+ *       recognized there as definitely unseen and are inserted without reading the
+ *       database.</li>
+ *   <li>An exact set in a SQLite table with a unique index on the URL. It is only
+ *       queried when the filter answers "probably seen", which separates real
+ *       duplicates from false positives.</li>
+ * </ul>
+ *
+ * <p>The filter is saved to a file together with the id of the last URL it covers.
+ * On startup the file is loaded and only URLs inserted after that id are added to
+ * it, so a crash costs a short catch-up rather than a full rebuild. If the file is
+ * missing or was sized differently, the filter is rebuilt from the table.</p>
+ *
+ * <p>Inserts go through a {@link BatchWriter}, together with the caller's own
+ * statements for the same URL. Until the writer commits them, new URLs are kept in a
+ * concurrent pending set, and adding to that set is what decides which of several
+ * concurrent callers adding the same URL wins. If the writer drops an insert, the URL
+ * leaves the pending set and is counted as unseen again, so a later add stores it; the
+ * dropped URLs are logged and the most recent ones reported. Exact lookups use their
+ * own read connection, so they do not wait for the writer's transactions.</p>
+ *
+ * <p>Thread-safe.</p>
+ */
+public class SeenUrlSet {
+
+    /** Read connection to the exact set; lookups on it are serialized */
+    private final Connection connection;
+
+    /** Writes the inserts */
+    private final BatchWriter writer;
+
+    /** File the filter is saved to */
+    private final Path filterFile;
+
+    /** First-level filter */
+    private BloomFilter filter;
+
+    /** Exact lookup of a URL */
+    private final PreparedStatement selectStmt;
+
+    /** Insert of a new URL */
+    private static final String INSERT_SQL = "INSERT OR IGNORE INTO seen (url) VALUES (?)";
+
+    /** URLs added but not yet committed by the writer, so not visible to the exact lookup */
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+
+    /** Number of dropped URLs kept for the statistics */
+    private static final int DROPPED_URLS_KEPT = 20;
+
+    /** Most recent URLs whose insert the writer dropped, oldest first */
+    private final Deque<String> droppedUrls = new ArrayDeque<>();
+
+    /** URLs whose insert the writer dropped */
+    private final LongAdder dropped = new LongAdder();
+
+    /** Number of URLs in the set */
+    private final AtomicLong size = new AtomicLong();
+
+    /** New URLs recognized by the filter alone */
+    private final LongAdder filterNegatives = new LongAdder();
+
+    /** URLs the filter reported as seen that the exact set had not seen */
+    private final LongAdder falsePositives = new LongAdder();
+
+    /** URLs confirmed as seen by the exact set */
+    private final LongAdder duplicates = new LongAdder();
+
+    /**
+     * Opens the set, creating its table if needed and loading or rebuilding the filter.
+     *
+     * @param connection Connection to the database holding the exact set, used for reads
+     * @param writer Writer of the inserts, on a connection to the same database
+     * @param filterFile File the filter is saved to
+     * @param expectedUrls Number of URLs the filter is sized for
+     * @param falsePositiveRate Target false-positive rate of the filter at that size
+     * @throws SQLException If the exact set cannot be read
+     */
+    public SeenUrlSet(Connection connection, BatchWriter writer, String filterFile, long expectedUrls,
+                      double falsePositiveRate) throws SQLException {
+        long start = System.nanoTime();
+        this.connection = connection;
+        this.writer = writer;
+        this.filterFile = Path.of(filterFile);
+
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS seen (id INTEGER PRIMARY KEY, url TEXT NOT NULL UNIQUE)");
+            try (ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM seen")) {
+                size.set(rs.next() ? rs.getLong(1) : 0);
+            }
+        }
+        selectStmt = connection.prepareStatement("SELECT 1 FROM seen WHERE url = ?");
+
+        filter = new BloomFilter(expectedUrls, falsePositiveRate);
+        long covered = load();
+
+        // Add the URLs inserted after the filter was last saved
+        long added = 0;
+        try (PreparedStatement stmt = connection.prepareStatement("SELECT url FROM seen WHERE id > ?")) {
+            stmt.setLong(1, covered);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    filter.put(rs.getString(1));
+                    added++;
+                }
+            }
+        }
+        System.out.printf("Seen URL set: %d URLs, filter of %.1f MB with %d hash functions, %d URLs added since last save, ready in %d ms%n",
+                size.get(), filter.sizeBytes() / (1024.0 * 1024.0), filter.numHashes(), added, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    //----------------------------------------METHODS----------------------------------------
+
+    /**
+     * Loads the saved filter if it matches the configured size.
+     *
+     * @return The id of the last URL the loaded filter covers, or 0 if it was not loaded
+     */
+    private long load() {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(filterFile), 1 << 16))) {
+            long covered = in.readLong();
+            BloomFilter saved = BloomFilter.readFrom(in);
+            if (!saved.sameLayout(filter)) {
+                System.out.println("Seen URL filter was resized, rebuilding it from the database");
+                return 0;
+            }
+            filter = saved;
+            return covered;
+        } catch (NoSuchFileException e) {
+            return 0;
+        } catch (IOException e) {
+            System.err.println("Failed to load seen URL filter, rebuilding it from the database: " + e.getMessage());
+            return 0;
+        }
+    }
+
+    /**
+     * Saves the filter, replacing the previous file atomically.
+     *
+     * <p>Every committed URL was put in the filter before its insert was submitted, so
+     * the filter covers at least the largest id committed when the save starts.</p>
+     */
+    public void save() {
+        Path tmp = filterFile.resolveSibling(filterFile.getFileName() + ".tmp");
+        long covered;
+        try {
+            synchronized (connection) {
+                try (Statement stmt = connection.createStatement();
+                     ResultSet rs = stmt.executeQuery("SELECT COALESCE(MAX(id), 0) FROM seen")) {
+                    covered = rs.next() ? rs.getLong(1) : 0;
+                }
+            }
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+                out.writeLong(covered);
+                filter.writeTo(out);
+            }
+            Files.move(tmp, filterFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (SQLException | IOException e) {
+            System.err.println("Failed to save seen URL filter: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Adds a URL to the set unless it was seen before.
+     *
+     * <p>If the URL is new, its insert is submitted to the writer together with
+     * {@code with}, so the caller's statements for the URL commit in the same
+     * transaction as the URL's entry in the set.</p>
+     *
+     * @param url The URL
+     * @param with Statements to commit with the insert if the URL is new
+     * @return true if the URL is new, false if it was seen before
+     * @throws SQLException If the exact lookup fails
+     */
+    public boolean add(String url, BatchWriter.Op... with) throws SQLException {
+        boolean filterChanged = filter.put(url);
+        if (!pending.add(url)) {
+            // Added concurrently or recently, and not committed yet
+            duplicates.increment();
+            return false;
+        }
+        if (filterChanged) {
+            filterNegatives.increment();
+        } else {
+            boolean exists;
+            try {
+                exists = existsExactly(url);
+            } catch (SQLException e) {
+                pending.remove(url);
+                throw e;
+            }
+            if (exists) {
+                pending.remove(url);
+                duplicates.increment();
+                return false;
+            }
+            falsePositives.increment();
+        }
+
+        List<BatchWriter.Op> ops = new ArrayList<>(with.length + 1);
+        ops.add(new BatchWriter.Op(INSERT_SQL, url));
+        ops.addAll(List.of(with));
+        writer.submit(ops, () -> pending.remove(url), () -> dropped(url));
+        size.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Forgets a URL whose insert the writer dropped, so it can be added again.
+     *
+     * <p>The URL stays in the filter; the next add finds it missing from the exact set
+     * and stores it as a false positive.</p>
+     *
+     * @param url The URL
+     */
+    private void dropped(String url) {
+        pending.remove(url);
+        size.decrementAndGet();
+        dropped.increment();
+        System.err.println("Seen URL set: insert of " + url + " was dropped by the writer");
+        synchronized (droppedUrls) {
+            if (droppedUrls.size() == DROPPED_URLS_KEPT) {
+                droppedUrls.removeFirst();
+            }
+            droppedUrls.addLast(url);
+        }
+    }
+
+    /**
+     * Checks the filter alone for a URL, without an exact lookup.
+     *
+     * @param url The URL
+     * @return false if the URL was certainly never added, true if it may have been
+     */
+    public boolean mightContain(String url) {
+        return filter.mightContain(url);
+    }
+
+    /**
+     * Checks the exact set for a URL.
+     *
+     * @param url The URL
+     * @return true if the URL is stored
+     * @throws SQLException If the lookup fails
+     */
+    private boolean existsExactly(String url) throws SQLException {
+        synchronized (connection) {
+            selectStmt.setString(1, url);
+            try (ResultSet rs = selectStmt.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    /**
+     * Adds the set's statistics to a stats map.
+     *
+     * <p>The observed false-positive rate is the fraction of new URLs the filter
+     * reported as seen, each of which cost an exact lookup.</p>
+     *
+     * @param stats The map to fill
+     */
+    public void reportTo(Map<String, Object> stats) {
+        long negatives = filterNegatives.sum();
+        long positives = falsePositives.sum();
+        long newUrls = negatives + positives;
+        stats.put("seen_urls", size.get());
+        stats.put("seen_filter_bytes", filter.sizeBytes());
+        stats.put("seen_filter_hash_functions", filter.numHashes());
+        stats.put("seen_filter_expected_fp_rate", filter.expectedFalsePositiveRate());
+        stats.put("seen_filter_observed_fp_rate", newUrls == 0 ? 0.0 : (double) positives / newUrls);
+        stats.put("seen_exact_lookups", positives + duplicates.sum());
+        stats.put("seen_duplicates", duplicates.sum());
+        stats.put("seen_pending_writes", pending.size());
+        stats.put("seen_dropped_writes", dropped.sum());
+        synchronized (droppedUrls) {
+            stats.put("seen_dropped_urls", new ArrayList<>(droppedUrls));
+        }
+    }
+}
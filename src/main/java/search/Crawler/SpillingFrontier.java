@@ -0,0 +1,252 @@
+package search.Crawler;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * FIFO queue of URLs whose heap use is bounded no matter how many URLs it holds.
+ *
+ * <p>Only the two ends of the queue live in memory:</p>
+ * <ul>
+ *   <li>The head buffer holds the oldest URLs and serves {@link #poll()}.</li>
+ *   <li>The tail buffer collects new URLs. When it fills up it is written as one
+ *       append-only segment file and cleared.</li>
+ * </ul>
+ * <p>Segments sit between the two buffers in FIFO order. When the head runs dry the
+ * oldest segment is read back sequentially into it and deleted; with no segments
+ * left, the tail becomes the head. Each buffer and segment holds at most
+ * {@code bufferSize} URLs, so the heap holds at most twice that.</p>
+ *
+ * <p>Segments are a spill area, not the durable copy of the queue: the owner keeps
+ * that elsewhere, and segments left by a previous run are deleted on startup. If a
+ * segment cannot be written its URLs stay in memory; if it cannot be read its URLs
+ * are dropped from this queue and must be recovered from the durable copy.</p>
+ *
+ * <p>URLs are handed out in the order they were added; their scores are kept but not
+ * used for ordering. Not thread-safe; the owner synchronizes access.</p>
+ */
+public class SpillingFrontier implements Frontier {
+
+    /**
+     * A spilled segment file.
+     *
+     * @param file Path of the file
+     * @param count Number of URLs in it
+     */
+    private record Segment(Path file, int count) {
+    }
+
+    /** Directory holding the segment files */
+    private final Path spillDir;
+
+    /** Maximum number of URLs in each buffer and segment */
+    private final int bufferSize;
+
+    /** Oldest URLs, next to be polled */
+    private ArrayDeque<Entry> head;
+
+    /** Newest URLs, not yet spilled */
+    private ArrayDeque<Entry> tail;
+
+    /** Spilled segments, oldest first */
+    private final ArrayDeque<Segment> segments = new ArrayDeque<>();
+
+    /** Sequence number of the next segment file */
+    private long nextSegment;
+
+    /** Number of URLs in the queue */
+    private long size;
+
+    /** Segments written since startup */
+    private long segmentsWritten;
+
+    /**
+     * Creates an empty frontier, deleting segments left by a previous run.
+     *
+     * @param spillDir Directory for the segment files, created if needed
+     * @param bufferSize Maximum number of URLs in each buffer and segment
+     * @throws IOException If the directory cannot be created or cleaned
+     */
+    public SpillingFrontier(String spillDir, int bufferSize) throws IOException {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("Buffer size must be positive: " + bufferSize);
+        }
+        this.spillDir = Files.createDirectories(Path.of(spillDir));
+        this.bufferSize = bufferSize;
+        this.head = new ArrayDeque<>();
+        this.tail = new ArrayDeque<>();
+
+        try (DirectoryStream<Path> stale = Files.newDirectoryStream(this.spillDir, "segment-*.urls")) {
+            for (Path segment : stale) {
+                Files.delete(segment);
+            }
+        }
+    }
+
+    //----------------------------------------METHODS----------------------------------------
+
+    /**
+     * Adds a URL at the end of the queue.
+     *
+     * @param entry The URL and its ranking information
+     */
+    @Override
+    public void add(Entry entry) {
+        // While nothing is queued behind the head, new URLs can go straight into it
+        if (segments.isEmpty() && tail.isEmpty() && head.size() < bufferSize) {
+            head.add(entry);
+        } else {
+            tail.add(entry);
+            if (tail.size() >= bufferSize) {
+                spill();
+            }
+        }
+        size++;
+    }
+
+    /**
+     * Removes and returns the oldest URL.
+     *
+     * @return The oldest URL, or null if the queue is empty
+     */
+    @Override
+    public Entry poll() {
+        if (head.isEmpty()) {
+            refill();
+        }
+        Entry entry = head.poll();
+        if (entry != null) {
+            size--;
+        }
+        return entry;
+    }
+
+    /**
+     * Scores do not affect FIFO order, so they are not updated.
+     *
+     * @param url The URL
+     * @param credit The amount that would be added to its score
+     * @return Always false
+     */
+    @Override
+    public boolean raise(String url, double credit) {
+        return false;
+    }
+
+    /**
+     * Returns the number of queued URLs, spilled ones included.
+     *
+     * @return The queue size
+     */
+    @Override
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Returns the number of segment files currently on disk.
+     *
+     * @return The segment count
+     */
+    public int spilledSegments() {
+        return segments.size();
+    }
+
+    /**
+     * Returns the number of segment files written since startup.
+     *
+     * @return The count of segments written
+     */
+    public long segmentsWritten() {
+        return segmentsWritten;
+    }
+
+    /**
+     * Writes the tail buffer as a new segment and clears it. On failure the URLs stay
+     * in the tail, which then grows past its bound until a later spill succeeds.
+     */
+    private void spill() {
+        int count = tail.size();
+        Path segment = spillDir.resolve(String.format("segment-%012d.urls", nextSegment));
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(segment), 1 << 16))) {
+            out.writeInt(count);
+            for (Entry entry : tail) {
+                byte[] bytes = entry.url().getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+                out.writeDouble(entry.score());
+                out.writeInt(entry.depth());
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to spill " + count + " URLs to " + segment + ": " + e.getMessage());
+            try {
+                Files.deleteIfExists(segment);
+            } catch (IOException ignored) {
+                // The partial file is overwritten by the next attempt
+            }
+            return;
+        }
+        nextSegment++;
+        segmentsWritten++;
+        segments.add(new Segment(segment, count));
+        tail.clear();
+    }
+
+    /**
+     * Refills the empty head from the oldest segment, or from the tail if nothing is spilled.
+     */
+    private void refill() {
+        while (head.isEmpty() && !segments.isEmpty()) {
+            Segment segment = segments.poll();
+            List<Entry> entries = readSegment(segment);
+            if (entries == null) {
+                continue;
+            }
+            head.addAll(entries);
+        }
+        if (head.isEmpty() && !tail.isEmpty()) {
+            ArrayDeque<Entry> swap = head;
+            head = tail;
+            tail = swap;
+        }
+    }
+
+    /**
+     * Reads a segment sequentially and deletes it.
+     *
+     * @param segment The segment
+     * @return The URLs in the segment, or null if it could not be read
+     */
+    private List<Entry> readSegment(Segment segment) {
+        List<Entry> entries;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(segment.file()), 1 << 16))) {
+            int count = in.readInt();
+            entries = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                entries.add(new Entry(new String(bytes, StandardCharsets.UTF_8), in.readDouble(), in.readInt()));
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to read " + segment.count() + " spilled URLs from " + segment.file() + ": " + e.getMessage());
+            size -= segment.count();
+            entries = null;
+        }
+        try {
+            Files.deleteIfExists(segment.file());
+        } catch (IOException e) {
+            System.err.println("Failed to delete spilled segment " + segment.file() + ": " + e.getMessage());
+        }
+        return entries;
+    }
+}
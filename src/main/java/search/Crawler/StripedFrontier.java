@@ -0,0 +1,213 @@
+package search.Crawler;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ToLongFunction;
+
+/**
+ * Frontier split into independently locked stripes, so producers and consumers of
+ * different stripes never wait for each other.
+ *
+ * <p>A URL's stripe is chosen by a hash of its host. All URLs of a host therefore
+ * share a stripe, which keeps per-host state such as the priority frontier's host
+ * discount exact. Consumers start at a rotating stripe and skip stripes that are busy
+ * before waiting for one, so concurrent {@link #poll(int)} calls spread over the
+ * stripes instead of queueing on one lock.</p>
+ *
+ * <p>Order is kept within a stripe: oldest first in FIFO stripes, most important first
+ * in priority stripes. Across stripes URLs are handed out in turn, so with more than
+ * one stripe the global order is only approximate.</p>
+ *
+ * <p>Thread-safe, unlike the stripes it wraps.</p>
+ */
+public class StripedFrontier implements Frontier {
+
+    /**
+     * Creates the frontier of one stripe.
+     */
+    @FunctionalInterface
+    public interface StripeFactory {
+        Frontier create(int stripe) throws IOException;
+    }
+
+    /** The stripes */
+    private final Frontier[] stripes;
+
+    /** Lock of each stripe */
+    private final ReentrantLock[] locks;
+
+    /** Stripe the next consumer starts at */
+    private final AtomicInteger nextStripe = new AtomicInteger();
+
+    /** Number of URLs in all stripes */
+    private final AtomicLong size = new AtomicLong();
+
+    /**
+     * Creates the stripes.
+     *
+     * @param count Number of stripes
+     * @param factory Creates the frontier of each stripe
+     * @throws IOException If a stripe cannot be created
+     */
+    public StripedFrontier(int count, StripeFactory factory) throws IOException {
+        if (count <= 0) {
+            throw new IllegalArgumentException("Stripe count must be positive: " + count);
+        }
+        stripes = new Frontier[count];
+        locks = new ReentrantLock[count];
+        for (int i = 0; i < count; i++) {
+            stripes[i] = factory.create(i);
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    //----------------------------------------METHODS----------------------------------------
+
+    /**
+     * Returns the stripe of a URL.
+     *
+     * @param url The URL
+     * @return The index of the stripe holding the URL's host
+     */
+    private int stripeOf(String url) {
+        int h = HostScheduler.hostOf(url).hashCode();
+        return Math.floorMod(h ^ (h >>> 16), stripes.length);
+    }
+
+    /**
+     * Adds a URL to its host's stripe.
+     *
+     * @param entry The URL and its ranking information
+     */
+    @Override
+    public void add(Entry entry) {
+        int stripe = stripeOf(entry.url());
+        locks[stripe].lock();
+        try {
+            long before = stripes[stripe].size();
+            stripes[stripe].add(entry);
+            size.addAndGet(stripes[stripe].size() - before);
+        } finally {
+            locks[stripe].unlock();
+        }
+    }
+
+    /**
+     * Removes and returns the next URL of the first stripe that has one.
+     *
+     * @return The next URL, or null if every stripe is empty
+     */
+    @Override
+    public Entry poll() {
+        List<Entry> one = poll(1);
+        return one.isEmpty() ? null : one.get(0);
+    }
+
+    /**
+     * Removes up to {@code max} URLs, taking an even share from each stripe in turn.
+     *
+     * <p>The first pass only visits stripes whose lock is free; stripes found busy are
+     * waited for in a second pass if URLs are still missing.</p>
+     *
+     * @param max The maximum number of URLs to remove
+     * @return The URLs removed, possibly fewer than {@code max}
+     */
+    public List<Entry> poll(int max) {
+        List<Entry> taken = new ArrayList<>(Math.max(0, Math.min(max, 1000)));
+        if (max <= 0 || size.get() == 0) {
+            return taken;
+        }
+        int start = Math.floorMod(nextStripe.getAndIncrement(), stripes.length);
+        int share = Math.max(1, (max + stripes.length - 1) / stripes.length);
+        boolean progress = true;
+        boolean blocking = false;
+        while (taken.size() < max && size.get() > 0 && (progress || !blocking)) {
+            if (!progress) {
+                blocking = true;
+            }
+            progress = false;
+            for (int i = 0; i < stripes.length && taken.size() < max; i++) {
+                int stripe = (start + i) % stripes.length;
+                if (blocking) {
+                    locks[stripe].lock();
+                } else if (!locks[stripe].tryLock()) {
+                    continue;
+                }
+                try {
+                    for (int n = 0; n < share && taken.size() < max; n++) {
+                        Entry entry = stripes[stripe].poll();
+                        if (entry == null) {
+                            break;
+                        }
+                        size.decrementAndGet();
+                        taken.add(entry);
+                        progress = true;
+                    }
+                } finally {
+                    locks[stripe].unlock();
+                }
+            }
+        }
+        return taken;
+    }
+
+    /**
+     * Adds credit to the score of a queued URL in its host's stripe.
+     *
+     * @param url The URL
+     * @param credit The amount added to its score
+     * @return true if the URL is queued and its score was raised
+     */
+    @Override
+    public boolean raise(String url, double credit) {
+        int stripe = stripeOf(url);
+        locks[stripe].lock();
+        try {
+            return stripes[stripe].raise(url, credit);
+        } finally {
+            locks[stripe].unlock();
+        }
+    }
+
+    /**
+     * Returns the number of queued URLs.
+     *
+     * @return The frontier size
+     */
+    @Override
+    public long size() {
+        return size.get();
+    }
+
+    /**
+     * Returns the number of stripes.
+     *
+     * @return The stripe count
+     */
+    public int stripeCount() {
+        return stripes.length;
+    }
+
+    /**
+     * Sums a statistic over the stripes, reading each under its lock.
+     *
+     * @param metric Reads the statistic from one stripe
+     * @return The total
+     */
+    public long sum(ToLongFunction<Frontier> metric) {
+        long total = 0;
+        for (int i = 0; i < stripes.length; i++) {
+            locks[i].lock();
+            try {
+                total += metric.applyAsLong(stripes[i]);
+            } finally {
+                locks[i].unlock();
+            }
+        }
+        return total;
+    }
+}
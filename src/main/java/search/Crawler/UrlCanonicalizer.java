@@ -0,0 +1,341 @@
+package search.Crawler;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Rewrites URLs to a canonical form so that equivalent spellings of the same page are
+ * crawled and indexed once.
+ *
+ * <p>The rules applied are:</p>
+ * <ul>
+ *   <li>only http and https URLs are accepted; other schemes (mailto, javascript, ...)
+ *       are rejected;</li>
+ *   <li>scheme and host are lower-cased, a trailing dot on the host is removed and the
+ *       default port (80 for http, 443 for https) is dropped;</li>
+ *   <li>the fragment is dropped, {@code .} and {@code ..} path segments are resolved and
+ *       an empty path becomes {@code /};</li>
+ *   <li>percent-encodings of unreserved characters are decoded and the others are
+ *       upper-cased, so {@code %7e} and {@code ~} compare equal;</li>
+ *   <li>session ids carried in the path ({@code ;jsessionid=...}) are removed;</li>
+ *   <li>query parameters matching the strip list are removed; a rule ending in
+ *       {@code *} matches by prefix, so {@code utm_*} removes every UTM parameter;</li>
+ *   <li>optionally, the remaining parameters are sorted and a trailing slash is removed
+ *       from paths other than the root.</li>
+ * </ul>
+ *
+ * <p>Thread-safe.</p>
+ */
+public class UrlCanonicalizer {
+
+    /** Tracking and session parameters removed when none are configured */
+    public static final String DEFAULT_STRIP_PARAMS =
+            "utm_*,fbclid,gclid,dclid,msclkid,mc_cid,mc_eid,_ga,_hsenc,_hsmi,ref_src,jsessionid,phpsessid,sid,sessionid";
+
+    /** Exact parameter names to remove, lower-case */
+    private final List<String> stripNames = new ArrayList<>();
+
+    /** Parameter name prefixes to remove, lower-case */
+    private final List<String> stripPrefixes = new ArrayList<>();
+
+    /** Whether query parameters are sorted */
+    private final boolean sortParams;
+
+    /** Whether a trailing slash is removed from paths other than the root */
+    private final boolean stripTrailingSlash;
+
+    /** URLs canonicalized */
+    private final LongAdder processed = new LongAdder();
+
+    /** URLs whose canonical form differs from the input */
+    private final LongAdder rewritten = new LongAdder();
+
+    /** URLs rejected as unsupported or malformed */
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * Creates a canonicalizer.
+     *
+     * @param stripParams Names of the query parameters to remove; a name ending in {@code *} is a prefix
+     * @param sortParams Whether to sort the remaining query parameters
+     * @param stripTrailingSlash Whether to remove a trailing slash from paths other than the root
+     */
+    public UrlCanonicalizer(Collection<String> stripParams, boolean sortParams, boolean stripTrailingSlash) {
+        for (String param : stripParams) {
+            String rule = param.trim().toLowerCase(Locale.ROOT);
+            if (rule.endsWith("*")) {
+                stripPrefixes.add(rule.substring(0, rule.length() - 1));
+            } else if (!rule.isEmpty()) {
+                stripNames.add(rule);
+            }
+        }
+        this.sortParams = sortParams;
+        this.stripTrailingSlash = stripTrailingSlash;
+    }
+
+    /**
+     * Creates a canonicalizer from the CANONICAL_* keys of a configuration.
+     *
+     * @param prop The configuration
+     * @return The canonicalizer
+     */
+    public static UrlCanonicalizer fromConfig(Properties prop) {
+        return new UrlCanonicalizer(
+                Arrays.asList(prop.getProperty("CANONICAL_STRIP_PARAMS", DEFAULT_STRIP_PARAMS).split(",")),
+                Boolean.parseBoolean(prop.getProperty("CANONICAL_SORT_PARAMS", "true")),
+                Boolean.parseBoolean(prop.getProperty("CANONICAL_STRIP_TRAILING_SLASH", "true")));
+    }
+
+    //----------------------------------------METHODS----------------------------------------
+
+    /**
+     * Returns the canonical form of a URL.
+     *
+     * @param url The URL, absolute
+     * @return The canonical URL, or null if the URL is malformed or not http(s)
+     */
+    public String canonicalize(String url) {
+        processed.increment();
+        String canonical = url == null ? null : rewrite(url.trim());
+        if (canonical == null) {
+            rejected.increment();
+        } else if (!canonical.equals(url)) {
+            rewritten.increment();
+        }
+        return canonical;
+    }
+
+    /**
+     * Returns the canonical form of a URL, or the URL itself if it cannot be canonicalized.
+     *
+     * @param url The URL
+     * @return The canonical URL, or {@code url} unchanged
+     */
+    public String canonicalOrSelf(String url) {
+        String canonical = canonicalize(url);
+        return canonical != null ? canonical : url;
+    }
+
+    /**
+     * Applies the rules to a URL.
+     *
+     * @param url The URL
+     * @return The canonical URL, or null if it is rejected
+     */
+    private String rewrite(String url) {
+        URI uri;
+        try {
+            uri = new URI(url).normalize();
+        } catch (URISyntaxException e) {
+            // Browsers accept spaces, non-ASCII characters and stray '%' in links; escape them and retry
+            try {
+                uri = new URI(escapeIllegal(url)).normalize();
+            } catch (URISyntaxException again) {
+                return null;
+            }
+        }
+        String scheme = uri.getScheme();
+        String host = uri.getHost();
+        if (host == null && uri.getRawAuthority() != null) {
+            // Host names URI does not parse, such as ones with underscores, are kept as written
+            host = uri.getRawAuthority();
+        }
+        if (scheme == null || host == null) {
+            return null;
+        }
+        scheme = scheme.toLowerCase(Locale.ROOT);
+        if (!scheme.equals("http") && !scheme.equals("https")) {
+            return null;
+        }
+        host = host.toLowerCase(Locale.ROOT);
+        if (host.endsWith(".")) {
+            host = host.substring(0, host.length() - 1);
+        }
+        int port = uri.getPort();
+        if ((port == 80 && scheme.equals("http")) || (port == 443 && scheme.equals("https"))) {
+            port = -1;
+        }
+
+        String path = uri.getRawPath();
+        if (path == null || path.isEmpty()) {
+            path = "/";
+        }
+        path = normalizeEscapes(stripPathSessionId(path));
+        // normalize() leaves leading ".." segments of an absolute path in place
+        while (path.startsWith("/../")) {
+            path = path.substring(3);
+        }
+        if (path.equals("/..")) {
+            path = "/";
+        }
+        if (stripTrailingSlash) {
+            int end = path.length();
+            while (end > 1 && path.charAt(end - 1) == '/') {
+                end--;
+            }
+            path = path.substring(0, end);
+        }
+
+        StringBuilder canonical = new StringBuilder(url.length());
+        canonical.append(scheme).append("://");
+        if (uri.getRawUserInfo() != null) {
+            canonical.append(uri.getRawUserInfo()).append('@');
+        }
+        canonical.append(host);
+        if (port != -1) {
+            canonical.append(':').append(port);
+        }
+        canonical.append(path);
+        String query = canonicalQuery(uri.getRawQuery());
+        if (!query.isEmpty()) {
+            canonical.append('?').append(query);
+        }
+        return canonical.toString();
+    }
+
+    /**
+     * Percent-encodes the characters that may not appear in a URI (as UTF-8), and any
+     * {@code %} not followed by two hex digits.
+     *
+     * @param url The URL
+     * @return The URL with those characters escaped
+     */
+    private static String escapeIllegal(String url) {
+        StringBuilder out = new StringBuilder(url.length() + 16);
+        for (int i = 0; i < url.length(); i++) {
+            char c = url.charAt(i);
+            boolean strayPercent = c == '%' && (i + 2 >= url.length()
+                    || Character.digit(url.charAt(i + 1), 16) < 0 || Character.digit(url.charAt(i + 2), 16) < 0);
+            if (c > 0x20 && c < 0x7f && "\"<>\\^`{|} ".indexOf(c) < 0 && !strayPercent) {
+                out.append(c);
+                continue;
+            }
+            int end = Character.isHighSurrogate(c) && i + 1 < url.length() ? i + 2 : i + 1;
+            for (byte b : url.substring(i, end).getBytes(StandardCharsets.UTF_8)) {
+                out.append('%').append(Character.toUpperCase(Character.forDigit((b >> 4) & 0xF, 16)))
+                        .append(Character.toUpperCase(Character.forDigit(b & 0xF, 16)));
+            }
+            i = end - 1;
+        }
+        return out.toString();
+    }
+
+    /**
+     * Removes a session id carried as a path parameter, such as {@code ;jsessionid=ABC}.
+     *
+     * @param path The raw path
+     * @return The path without the session id
+     */
+    private static String stripPathSessionId(String path) {
+        int semicolon = path.toLowerCase(Locale.ROOT).indexOf(";jsessionid=");
+        if (semicolon < 0) {
+            return path;
+        }
+        int end = path.indexOf('/', semicolon);
+        return end < 0 ? path.substring(0, semicolon) : path.substring(0, semicolon) + path.substring(end);
+    }
+
+    /**
+     * Removes the stripped parameters from a query, then sorts the rest if configured.
+     *
+     * @param rawQuery The raw query, or null
+     * @return The canonical query, empty if no parameter is left
+     */
+    private String canonicalQuery(String rawQuery) {
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return "";
+        }
+        List<String> params = new ArrayList<>();
+        for (String param : rawQuery.split("&")) {
+            if (param.isEmpty()) {
+                continue;
+            }
+            int eq = param.indexOf('=');
+            String name = normalizeEscapes(eq < 0 ? param : param.substring(0, eq));
+            if (!isStripped(name.toLowerCase(Locale.ROOT))) {
+                params.add(eq < 0 ? name : name + "=" + normalizeEscapes(param.substring(eq + 1)));
+            }
+        }
+        if (sortParams) {
+            params.sort(null);
+        }
+        return String.join("&", params);
+    }
+
+    /**
+     * Checks a parameter name against the strip rules.
+     *
+     * @param name The parameter name, lower-case
+     * @return true if the parameter is removed
+     */
+    private boolean isStripped(String name) {
+        if (stripNames.contains(name)) {
+            return true;
+        }
+        for (String prefix : stripPrefixes) {
+            if (name.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Decodes percent-encoded unreserved characters and upper-cases the other escapes.
+     *
+     * @param value The raw URL component
+     * @return The component with normalized escapes
+     */
+    private static String normalizeEscapes(String value) {
+        if (value.indexOf('%') < 0) {
+            return value;
+        }
+        StringBuilder out = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '%' && i + 2 < value.length()
+                    && Character.digit(value.charAt(i + 1), 16) >= 0 && Character.digit(value.charAt(i + 2), 16) >= 0) {
+                char decoded = (char) Integer.parseInt(value.substring(i + 1, i + 3), 16);
+                if (isUnreserved(decoded)) {
+                    out.append(decoded);
+                } else {
+                    out.append('%').append(Character.toUpperCase(value.charAt(i + 1))).append(Character.toUpperCase(value.charAt(i + 2)));
+                }
+                i += 2;
+            } else {
+                out.append(c);
+            }
+        }
+        return out.toString();
+    }
+
+    /**
+     * Checks whether a character is unreserved in URLs (RFC 3986), so escaping it changes nothing.
+     *
+     * @param c The character
+     * @return true for letters, digits and {@code - . _ ~}
+     */
+    private static boolean isUnreserved(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                || c == '-' || c == '.' || c == '_' || c == '~';
+    }
+
+    /**
+     * Returns a one-line summary of the URLs canonicalized.
+     *
+     * @return A human-readable report
+     */
+    public String report() {
+        long total = processed.sum();
+        return String.format("Canonicalizer: %d URLs, %d rewritten (%.1f%%), %d rejected",
+                total, rewritten.sum(), total == 0 ? 0.0 : 100.0 * rewritten.sum() / total, rejected.sum());
+    }
+}
@@ -2,37 +2,56 @@ package search;
 
 import java.io.FileInputStream;
 import java.io.InputStream;
-import java.rmi.registry.*;
 import java.rmi.RemoteException;
-import java.text.Normalizer;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.http.HttpTimeoutException;
+import java.sql.SQLException;
 
-import org.jsoup.*;
 import org.jsoup.nodes.*;
 import org.jsoup.select.*;
-import search.Sockets.ReliableMulticast;
+import search.Crawler.ConcurrencyLimiter;
+import search.Crawler.CrawlArchive;
+import search.Crawler.CrawlTrapDetector;
+import search.Crawler.DnsCache;
+import search.Crawler.FetchMetadataStore;
+import search.Crawler.HostScheduler;
+import search.Crawler.HttpFetcher;
+import search.Crawler.Pipeline;
+import search.Crawler.ReplayFetcher;
+import search.Crawler.RobotsCache;
+import search.Crawler.UrlCanonicalizer;
+import search.Sockets.FlowController;
+import search.Sockets.Transport;
+import search.Sockets.Transports;
 
 /**
  * The Downloader class is responsible for retrieving web content, processing it,
- * and extracting relevant data for indexing. It uses parallel streams to process
- * multiple URLs concurrently.
+ * and extracting relevant data for indexing. Pages flow through a staged pipeline
+ * (fetch, parse, extract, tokenize, emit) whose stages each have their own threads
+ * and a bounded queue, so a slow stage applies backpressure instead of stalling the rest.
  *
  * <p>This class performs the following key functions:</p>
  * <ul>
  *   <li>Fetches URLs from a distributed queue</li>
  *   <li>Downloads and parses web page content in parallel</li>
  *   <li>Extracts and normalizes words for indexing</li>
- *   <li>Transmits index data via reliable multicast</li>
+ *   <li>Transmits index data via a pluggable transport (multicast by default)</li>
  *   <li>Processes and extracts links from web pages</li>
  *   <li>Implements reconnection mechanisms for handling URLQueue and Multicast failures</li>
  * </ul>
  *
  * <p>The class uses RMI (Remote Method Invocation) to communicate with a URL queue
- * and multicast sockets to distribute the processed data to storage barrels.</p>
+ * and a {@link Transport} (UDP multicast, in-JVM loopback or TCP fan-out) to
+ * distribute the processed data to storage barrels.</p>
  * 
  * @author João Antunes, David Cameijo and Gabriel Pinto
  */
@@ -52,8 +71,23 @@ public class Downloader {
     /** The port number for multicast communication */
     private static int PORT = 4446;
 
-    /** Reliable multicast instance for sending processed data */
-    private static ReliableMulticast multicast;
+    /** Transport used to send processed data to the barrels (multicast, loopback or TCP) */
+    private static Transport dataChannel;
+
+    /** Transport implementation selected in the configuration */
+    private static String TRANSPORT = "multicast";
+
+    /** Barrel addresses, used by the TCP transport */
+    private static String[] BARREL_IP = {"localhost", "localhost"};
+
+    /** Barrel registry ports, used to derive the TCP transport ports */
+    private static int[] BARREL_PORTS = {8182, 8183};
+
+    /** Offset added to a barrel's registry port to obtain its TCP data port */
+    private static int TCP_DATA_PORT_OFFSET = 1000;
+
+    /** Offset added to a barrel's registry port to obtain its TCP control port */
+    private static int TCP_CONTROL_PORT_OFFSET = 2000;
 
     /** Maximum number of connection retry attempts */
     private static final int MAX_RETRY_ATTEMPTS = 5;
@@ -69,6 +103,202 @@ public class Downloader {
 
     private static String QUEUE_IP = "localhost";
 
+    /** Addresses of the URL queue nodes as host:port, each owning a partition of the hosts */
+    private static String QUEUE_NODES = "localhost:8184";
+
+    /** Port of the control channel on which barrels advertise their ingest credits */
+    private static int FLOW_CONTROL_PORT = 4447;
+
+    /** Interval between barrel credit advertisements in milliseconds */
+    private static long FLOW_CONTROL_INTERVAL_MS = 500;
+
+    /** Number of barrels that must sustain the send rate (0 throttles to the slowest live barrel) */
+    private static int FLOW_CONTROL_QUORUM = 0;
+
+    /** Interval between status reports in seconds */
+    private static final int REPORT_INTERVAL_S = 30;
+
+    /** Control channel on which barrels advertise their ingest credits */
+    private static Transport controlChannel;
+
+    /** Throttles multicast sends to the rate the barrels can absorb */
+    private static FlowController flowController;
+
+    /** Maximum number of concurrent fetches: the fetch stage's virtual threads and the adaptive limit's ceiling */
+    private static int MAX_INFLIGHT_FETCHES = 256;
+
+    /** Adaptive limit on concurrent fetches, driven by fetch latency, timeouts and barrel backpressure */
+    private static ConcurrencyLimiter fetchLimiter;
+
+    /** Concurrent fetches allowed before the limiter has observed anything */
+    private static int FETCH_LIMIT_INITIAL = 16;
+
+    /** Fewest concurrent fetches the limiter goes down to */
+    private static int FETCH_LIMIT_MIN = 2;
+
+    /** Length of the limiter's adjustment window in milliseconds */
+    private static long FETCH_LIMIT_WINDOW_MS = 1000;
+
+    /** Ratio of fetch latency to its baseline tolerated before the limit shrinks */
+    private static double FETCH_LATENCY_TOLERANCE = 1.5;
+
+    /** Share of fetches timing out or answered 429/5xx in a window above which the limit is cut */
+    private static double FETCH_ERROR_THRESHOLD = 0.1;
+
+    /** Factor the limit is multiplied by when it is cut */
+    private static double FETCH_LIMIT_BACKOFF = 0.8;
+
+    /** Longest a request for URLs waits on an empty queue, in milliseconds */
+    private static long TAKE_TIMEOUT_MS = 10_000;
+
+    /** Fewest URLs requested from the queue at once */
+    private static final int MIN_TAKE_BATCH = 10;
+
+    /** Number of threads parsing fetched pages */
+    private static int PARSE_THREADS = Runtime.getRuntime().availableProcessors();
+
+    /** Number of threads extracting the text and links of parsed pages */
+    private static int EXTRACT_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+
+    /** Number of threads tokenizing page text and building term messages */
+    private static int TOKENIZE_THREADS = Runtime.getRuntime().availableProcessors();
+
+    /** Number of virtual threads sending pages to the barrels and links to the queue */
+    private static int EMIT_THREADS = 16;
+
+    /** Capacity of the queue in front of each pipeline stage */
+    private static int STAGE_QUEUE_CAPACITY = 32;
+
+    /** Fetches, parses, extracts, tokenizes and emits pages, each stage on its own threads */
+    private static Pipeline<PageWork> pipeline;
+
+    /** Maximum concurrent fetches to a single host */
+    private static int MAX_FETCHES_PER_HOST = 2;
+
+    /** Minimum delay between requests to the same host, in milliseconds */
+    private static long POLITENESS_DELAY_MS = 1000;
+
+    /** Time-to-live of cached robots.txt files, in milliseconds */
+    private static long ROBOTS_TTL_MS = 86_400_000;
+
+    /** Maximum number of URLs held in the host scheduler before taking more from the queue */
+    private static int MAX_SCHEDULED_URLS = 10000;
+
+    /** User agent sent with every request */
+    private static final String USER_AGENT = "Mozilla/5.0";
+
+    /** Timeout for establishing an HTTP connection, in milliseconds */
+    private static long HTTP_CONNECT_TIMEOUT_MS = 5000;
+
+    /** Deadline for a whole HTTP request, body included, in milliseconds */
+    private static long HTTP_REQUEST_TIMEOUT_MS = 20000;
+
+    /** Maximum number of bytes read per page; longer pages are truncated */
+    private static int MAX_PAGE_BYTES = 2 * 1024 * 1024;
+
+    /** Shared HTTP client with keep-alive and HTTP/2 connection reuse */
+    private static HttpFetcher httpFetcher;
+
+    /**
+     * Where pages come from: {@code live} fetches from the web, {@code record} also appends
+     * every response to {@link #CRAWL_ARCHIVE}, and {@code replay} serves pages from that
+     * archive without touching the network. Offline benchmarks usually also lower
+     * POLITENESS_DELAY_MS, since replayed hosts need no politeness.
+     */
+    private static String FETCH_MODE = "live";
+
+    /** Path of the crawl archive written in record mode and read in replay mode */
+    private static String CRAWL_ARCHIVE = "../crawl_archive.warc";
+
+    /** Simulated latency of a replayed response, in milliseconds */
+    private static long REPLAY_LATENCY_MS = 50;
+
+    /** Largest deviation from the replay latency, fixed per URL, in milliseconds */
+    private static long REPLAY_JITTER_MS = 25;
+
+    /** Path of the database holding the validators and body hash of each fetched URL */
+    private static String FETCH_METADATA_DB = "../fetch_metadata.db";
+
+    /** Validators and body hashes used to skip unchanged pages on re-crawl */
+    private static FetchMetadataStore fetchMetadata;
+
+    /** Per-host queues enforcing concurrency limits and crawl delays */
+    private static HostScheduler hostScheduler;
+
+    /** Cached robots.txt rules per host */
+    private static RobotsCache robotsCache;
+
+    /** Whether host name lookups go through {@link #dnsCache} */
+    private static boolean DNS_CACHE_ENABLED = true;
+
+    /** Time a successful host name resolution is cached, in milliseconds */
+    private static long DNS_POSITIVE_TTL_MS = 300000;
+
+    /** Time a failed host name resolution is cached, in milliseconds */
+    private static long DNS_NEGATIVE_TTL_MS = 30000;
+
+    /** Number of cached hosts above which expired resolutions are swept */
+    private static int DNS_CACHE_MAX_HOSTS = 100000;
+
+    /** Resolver cache shared by every lookup of the process, prefetching hosts as they are scheduled; null if disabled */
+    private static DnsCache dnsCache;
+
+    /** Maximum number of messages handed to the transport at once, which packs them into few packets */
+    private static final int EMIT_BATCH_SIZE = 64;
+
+    /** Distinct terms below which a page is not checked for near-duplicates, its SimHash being mostly noise */
+    private static int NEAR_DUPLICATE_MIN_TERMS = 30;
+
+    /** One tokenizer per processing thread, since tokenizers reuse their term buffer */
+    private static final ThreadLocal<Tokenizer> TOKENIZERS = ThreadLocal.withInitial(Tokenizer::new);
+
+    /** One term counter per processing thread, reused for every page */
+    private static final ThreadLocal<TermCounter> TERM_COUNTERS = ThreadLocal.withInitial(TermCounter::new);
+
+    /** Rewrites links to their canonical form before they are queued */
+    private static UrlCanonicalizer canonicalizer = UrlCanonicalizer.fromConfig(new Properties());
+
+    /** Distinct links found on pages as written, and distinct canonical URLs they collapsed to */
+    private static final AtomicLong distinctRawLinks = new AtomicLong();
+    private static final AtomicLong distinctCanonicalLinks = new AtomicLong();
+
+    /** Pages the URL queue reported as part of a crawler trap, and the links not queued because of it */
+    private static final AtomicLong trappedPages = new AtomicLong();
+    private static final AtomicLong trappedLinks = new AtomicLong();
+
+    /** Pages whose SimHash was checked against the shared near-duplicate index */
+    private static final AtomicLong fingerprintedPages = new AtomicLong();
+
+    /** Pages indexed without the near-duplicate check because they have too few distinct terms */
+    private static final AtomicLong shortPages = new AtomicLong();
+
+    /** Pages skipped because they nearly duplicate an indexed page */
+    private static final AtomicLong nearDuplicatePages = new AtomicLong();
+
+    /** Term messages not sent because their page was a near-duplicate */
+    private static final AtomicLong duplicateMessagesSaved = new AtomicLong();
+
+    /** Approximate bytes of term messages not sent because their page was a near-duplicate */
+    private static final AtomicLong duplicateBytesSaved = new AtomicLong();
+
+    /** Pages whose terms and links were emitted, and the time spent doing so */
+    private static final AtomicLong emittedPages = new AtomicLong();
+    private static final AtomicLong emissionNanos = new AtomicLong();
+
+    /** Scheduler for the periodic status reports */
+    private static ScheduledExecutorService reportExecutor;
+
+    /** Interval between renewals of the leases held by this Downloader, in milliseconds */
+    private static long LEASE_RENEW_INTERVAL_MS = 60000;
+
+    /** Interval between flushes of pending acknowledgements, in milliseconds */
+    private static final long ACK_FLUSH_INTERVAL_MS = 1000;
+
+    /** Lease of every URL taken from the queue and not yet acknowledged */
+    private static final Map<String, UrlLease> heldLeases = new ConcurrentHashMap<>();
+
+    /** Lease ids of finished URLs waiting to be acknowledged in the next batch */
+    private static final Queue<Long> pendingAcks = new ConcurrentLinkedQueue<>();
 
     //----------------------------------------CONSTRUCTOR----------------------------------------
 
@@ -88,31 +318,94 @@ public class Downloader {
             URL_QUEUE_PORT = Integer.parseInt(prop.getProperty("URL_QUEUE_PORT"));
             PORT = Integer.parseInt(prop.getProperty("PORT_MULTICAST_COMMUNICATION"));
             QUEUE_IP = prop.getProperty("QUEUE_IP");
+            QUEUE_NODES = prop.getProperty("QUEUE_NODES", QUEUE_IP + ":" + URL_QUEUE_PORT);
+            FLOW_CONTROL_PORT = Integer.parseInt(prop.getProperty("PORT_FLOW_CONTROL", String.valueOf(PORT + 1)));
+            FLOW_CONTROL_INTERVAL_MS = Long.parseLong(prop.getProperty("FLOW_CONTROL_INTERVAL_MS", "500"));
+            FLOW_CONTROL_QUORUM = Integer.parseInt(prop.getProperty("FLOW_CONTROL_QUORUM", "0"));
+            TRANSPORT = prop.getProperty("TRANSPORT", TRANSPORT);
+            MAX_INFLIGHT_FETCHES = Integer.parseInt(prop.getProperty("MAX_INFLIGHT_FETCHES", String.valueOf(MAX_INFLIGHT_FETCHES)));
+            PARSE_THREADS = Integer.parseInt(prop.getProperty("PARSE_THREADS", String.valueOf(PARSE_THREADS)));
+            EXTRACT_THREADS = Integer.parseInt(prop.getProperty("EXTRACT_THREADS", String.valueOf(EXTRACT_THREADS)));
+            TOKENIZE_THREADS = Integer.parseInt(prop.getProperty("TOKENIZE_THREADS", String.valueOf(TOKENIZE_THREADS)));
+            EMIT_THREADS = Integer.parseInt(prop.getProperty("EMIT_THREADS", String.valueOf(EMIT_THREADS)));
+            STAGE_QUEUE_CAPACITY = Integer.parseInt(prop.getProperty("STAGE_QUEUE_CAPACITY", String.valueOf(STAGE_QUEUE_CAPACITY)));
+            FETCH_LIMIT_INITIAL = Integer.parseInt(prop.getProperty("FETCH_LIMIT_INITIAL", String.valueOf(FETCH_LIMIT_INITIAL)));
+            FETCH_LIMIT_MIN = Integer.parseInt(prop.getProperty("FETCH_LIMIT_MIN", String.valueOf(FETCH_LIMIT_MIN)));
+            FETCH_LIMIT_WINDOW_MS = Long.parseLong(prop.getProperty("FETCH_LIMIT_WINDOW_MS", String.valueOf(FETCH_LIMIT_WINDOW_MS)));
+            FETCH_LATENCY_TOLERANCE = Double.parseDouble(prop.getProperty("FETCH_LATENCY_TOLERANCE", String.valueOf(FETCH_LATENCY_TOLERANCE)));
+            FETCH_ERROR_THRESHOLD = Double.parseDouble(prop.getProperty("FETCH_ERROR_THRESHOLD", String.valueOf(FETCH_ERROR_THRESHOLD)));
+            FETCH_LIMIT_BACKOFF = Double.parseDouble(prop.getProperty("FETCH_LIMIT_BACKOFF", String.valueOf(FETCH_LIMIT_BACKOFF)));
+            TAKE_TIMEOUT_MS = Long.parseLong(prop.getProperty("TAKE_TIMEOUT_MS", String.valueOf(TAKE_TIMEOUT_MS)));
+            MAX_FETCHES_PER_HOST = Integer.parseInt(prop.getProperty("MAX_FETCHES_PER_HOST", String.valueOf(MAX_FETCHES_PER_HOST)));
+            POLITENESS_DELAY_MS = Long.parseLong(prop.getProperty("POLITENESS_DELAY_MS", String.valueOf(POLITENESS_DELAY_MS)));
+            HTTP_CONNECT_TIMEOUT_MS = Long.parseLong(prop.getProperty("HTTP_CONNECT_TIMEOUT_MS", String.valueOf(HTTP_CONNECT_TIMEOUT_MS)));
+            HTTP_REQUEST_TIMEOUT_MS = Long.parseLong(prop.getProperty("HTTP_REQUEST_TIMEOUT_MS", String.valueOf(HTTP_REQUEST_TIMEOUT_MS)));
+            MAX_PAGE_BYTES = Integer.parseInt(prop.getProperty("MAX_PAGE_BYTES", String.valueOf(MAX_PAGE_BYTES)));
+            FETCH_METADATA_DB = prop.getProperty("FETCH_METADATA_DB", FETCH_METADATA_DB);
+            FETCH_MODE = prop.getProperty("FETCH_MODE", FETCH_MODE).trim().toLowerCase();
+            CRAWL_ARCHIVE = prop.getProperty("CRAWL_ARCHIVE", CRAWL_ARCHIVE);
+            REPLAY_LATENCY_MS = Long.parseLong(prop.getProperty("REPLAY_LATENCY_MS", String.valueOf(REPLAY_LATENCY_MS)));
+            REPLAY_JITTER_MS = Long.parseLong(prop.getProperty("REPLAY_JITTER_MS", String.valueOf(REPLAY_JITTER_MS)));
+            LEASE_RENEW_INTERVAL_MS = Long.parseLong(prop.getProperty("LEASE_RENEW_INTERVAL_MS", String.valueOf(LEASE_RENEW_INTERVAL_MS)));
+            ROBOTS_TTL_MS = Long.parseLong(prop.getProperty("ROBOTS_TTL_MS", String.valueOf(ROBOTS_TTL_MS)));
+            DNS_CACHE_ENABLED = Boolean.parseBoolean(prop.getProperty("DNS_CACHE_ENABLED", String.valueOf(DNS_CACHE_ENABLED)));
+            DNS_POSITIVE_TTL_MS = Long.parseLong(prop.getProperty("DNS_POSITIVE_TTL_MS", String.valueOf(DNS_POSITIVE_TTL_MS)));
+            DNS_NEGATIVE_TTL_MS = Long.parseLong(prop.getProperty("DNS_NEGATIVE_TTL_MS", String.valueOf(DNS_NEGATIVE_TTL_MS)));
+            DNS_CACHE_MAX_HOSTS = Integer.parseInt(prop.getProperty("DNS_CACHE_MAX_HOSTS", String.valueOf(DNS_CACHE_MAX_HOSTS)));
+            NEAR_DUPLICATE_MIN_TERMS = Integer.parseInt(prop.getProperty("NEAR_DUPLICATE_MIN_TERMS", String.valueOf(NEAR_DUPLICATE_MIN_TERMS)));
+            MAX_SCHEDULED_URLS = Integer.parseInt(prop.getProperty("MAX_SCHEDULED_URLS", String.valueOf(MAX_SCHEDULED_URLS)));
+            TCP_DATA_PORT_OFFSET = Integer.parseInt(prop.getProperty("TCP_DATA_PORT_OFFSET", "1000"));
+            TCP_CONTROL_PORT_OFFSET = Integer.parseInt(prop.getProperty("TCP_CONTROL_PORT_OFFSET", "2000"));
+            String ips = prop.getProperty("BARREL_IP");
+            if (ips != null && !ips.isEmpty()) BARREL_IP = ips.split(",");
+            String ports = prop.getProperty("BARREL_PORTS");
+            if (ports != null && !ports.isEmpty()) BARREL_PORTS = Arrays.stream(ports.split(",")).mapToInt(Integer::parseInt).toArray();
+            canonicalizer = UrlCanonicalizer.fromConfig(prop);
         } catch (IOException ex) {
             System.out.println(ex.getMessage());
         }
-
-
-
-
-
-
-
-
-
-
-
-
-
+        pipeline = buildPipeline();
+        // Time the flow controller held emitters back is the barrels' backpressure signal
+        fetchLimiter = new ConcurrencyLimiter(FETCH_LIMIT_INITIAL, FETCH_LIMIT_MIN, MAX_INFLIGHT_FETCHES,
+                FETCH_LIMIT_WINDOW_MS, FETCH_LATENCY_TOLERANCE, FETCH_ERROR_THRESHOLD, FETCH_LIMIT_BACKOFF,
+                () -> flowController == null ? 0 : TimeUnit.MILLISECONDS.toNanos(flowController.getThrottledMillis()));
+        httpFetcher = createFetcher();
+        robotsCache = new RobotsCache(httpFetcher, ROBOTS_TTL_MS);
+        // Replays start without stored validators, so every run fetches and indexes the same pages
+        if (!(httpFetcher instanceof ReplayFetcher)) {
+            try {
+                fetchMetadata = new FetchMetadataStore(FETCH_METADATA_DB);
+            } catch (SQLException e) {
+                System.err.println("Fetch metadata store unavailable, every page will be fetched in full: " + e.getMessage());
+            }
+        }
+        // Replayed hosts are never resolved
+        if (DNS_CACHE_ENABLED && !(httpFetcher instanceof ReplayFetcher)) {
+            dnsCache = new DnsCache(DNS_POSITIVE_TTL_MS, DNS_NEGATIVE_TTL_MS, DNS_CACHE_MAX_HOSTS);
+            if (!DnsCache.install(dnsCache)) {
+                System.err.println("DNS cache resolver provider not registered, host lookups bypass the cache");
+            }
+        }
+        hostScheduler = new HostScheduler(MAX_FETCHES_PER_HOST, host -> robotsCache.crawlDelayMs(host, POLITENESS_DELAY_MS),
+                host -> {
+                    if (dnsCache != null) {
+                        dnsCache.prefetch(host);
+                    }
+                });
 
         // Initialize connections with retry mechanisms
         initializeMulticast();
+        initializeFlowControl();
         initializeURLQueue();
 
         // Set operational status based on successful connections
-        isOperational = (multicast != null && urlQueueInterface != null);
+        isOperational = (dataChannel != null && urlQueueInterface != null && httpFetcher != null);
 
         if (isOperational) {
+            pipeline.start();
+            startDispatcher();
+            startReporting();
+            startLeaseKeeper();
             System.out.println("Downloader initialized successfully and is operational.");
         } else {
             System.err.println("Downloader initialization failed. Some services are unavailable.");
@@ -130,7 +423,7 @@ public class Downloader {
     private boolean initializeMulticast() {
         for (int attempt = 1; attempt <= MAX_RETRY_ATTEMPTS; attempt++) {
             try {
-                multicast = new ReliableMulticast(GROUP_ADDRESS, PORT);
+                dataChannel = Transports.connect(TRANSPORT, GROUP_ADDRESS, PORT, barrelEndpoints(TCP_DATA_PORT_OFFSET));
                 System.out.println("Successfully connected to multicast group on attempt " + attempt);
                 return true;
             } catch (IOException e) {
@@ -152,6 +445,257 @@ public class Downloader {
         return false;
     }
 
+    /**
+     * Joins the flow control channel and starts listening for barrel credit advertisements.
+     *
+     * <p>If the control channel cannot be joined, the Downloader still runs but sends
+     * without throttling, as it did before flow control existed.</p>
+     */
+    private void initializeFlowControl() {
+        try {
+            controlChannel = Transports.connect(TRANSPORT, GROUP_ADDRESS, FLOW_CONTROL_PORT, barrelEndpoints(TCP_CONTROL_PORT_OFFSET));
+            flowController = new FlowController(controlChannel, FLOW_CONTROL_INTERVAL_MS, FLOW_CONTROL_QUORUM);
+            flowController.start();
+        } catch (IOException e) {
+            System.err.println("Failed to join flow control channel, sending without throttling: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Builds the TCP endpoints of the configured barrels.
+     *
+     * @param portOffset The offset added to each barrel's registry port
+     * @return The barrel endpoints for the TCP transport
+     */
+    private static List<InetSocketAddress> barrelEndpoints(int portOffset) {
+        List<InetSocketAddress> endpoints = new ArrayList<>();
+        for (int i = 0; i < BARREL_PORTS.length && i < BARREL_IP.length; i++) {
+            endpoints.add(new InetSocketAddress(BARREL_IP[i], BARREL_PORTS[i] + portOffset));
+        }
+        return endpoints;
+    }
+
+    /**
+     * Creates the fetch layer for {@link #FETCH_MODE}.
+     *
+     * @return A live fetcher, recording to the crawl archive in record mode, or a replaying
+     *         fetcher in replay mode; null if the archive to replay cannot be opened
+     */
+    private static HttpFetcher createFetcher() {
+        if (FETCH_MODE.equals("replay")) {
+            try {
+                CrawlArchive archive = new CrawlArchive(CRAWL_ARCHIVE);
+                System.out.println("Replaying crawl archive " + archive);
+                return new ReplayFetcher(archive, REPLAY_LATENCY_MS, REPLAY_JITTER_MS, HTTP_REQUEST_TIMEOUT_MS, MAX_PAGE_BYTES);
+            } catch (IOException e) {
+                System.err.println("Cannot open crawl archive " + CRAWL_ARCHIVE + " for replay: " + e.getMessage());
+                return null;
+            }
+        }
+        HttpFetcher fetcher = new HttpFetcher(HTTP_CONNECT_TIMEOUT_MS, HTTP_REQUEST_TIMEOUT_MS, MAX_PAGE_BYTES, USER_AGENT);
+        if (FETCH_MODE.equals("record")) {
+            try {
+                fetcher.recordTo(new CrawlArchive.Writer(CRAWL_ARCHIVE));
+                System.out.println("Recording responses to crawl archive " + CRAWL_ARCHIVE);
+            } catch (IOException e) {
+                System.err.println("Cannot open crawl archive " + CRAWL_ARCHIVE + ", crawling without recording: " + e.getMessage());
+            }
+        }
+        return fetcher;
+    }
+
+    /**
+     * Starts the periodic report of the pipeline stages, the current rate limit and time spent throttled.
+     */
+    private void startReporting() {
+        reportExecutor = Executors.newSingleThreadScheduledExecutor();
+        reportExecutor.scheduleAtFixedRate(() -> {
+            System.out.println(pipeline.report());
+            System.out.println(fetchLimiter.report());
+            System.out.println(httpFetcher.report());
+            System.out.println(hostScheduler.report());
+            System.out.println(robotsCache.report());
+            if (dnsCache != null) {
+                System.out.println(dnsCache.report());
+            }
+            if (fetchMetadata != null) {
+                System.out.println(fetchMetadata.report());
+            }
+            System.out.println(nearDuplicateReport());
+            System.out.println(canonicalizationReport());
+            System.out.printf("Crawler traps: %d pages, %d links not queued%n", trappedPages.get(), trappedLinks.get());
+            if (flowController != null) {
+                System.out.println(flowController.report());
+            }
+        }, REPORT_INTERVAL_S, REPORT_INTERVAL_S, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Starts the periodic tasks that acknowledge finished URLs and renew held leases.
+     *
+     * <p>Acknowledgements are flushed to the queue in one remote call per interval.
+     * Leases of URLs still waiting in the host scheduler or being processed are
+     * extended well before they expire, so only the URLs of a Downloader that stopped
+     * renewing them (because it crashed) are handed out again.</p>
+     */
+    private void startLeaseKeeper() {
+        ScheduledExecutorService leaseKeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "LeaseKeeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        leaseKeeper.scheduleWithFixedDelay(Downloader::flushAcks,
+                ACK_FLUSH_INTERVAL_MS, ACK_FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        leaseKeeper.scheduleWithFixedDelay(Downloader::renewLeases,
+                LEASE_RENEW_INTERVAL_MS, LEASE_RENEW_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Marks a URL as done so its lease is acknowledged in the next batch.
+     *
+     * @param url The finished URL
+     */
+    private static void acknowledge(String url) {
+        UrlLease lease = url == null ? null : heldLeases.remove(url);
+        if (lease != null) {
+            pendingAcks.add(lease.leaseId());
+        }
+    }
+
+    /**
+     * Gives up a URL without acknowledging it, so the queue hands it out again once
+     * its lease expires.
+     *
+     * @param url The URL that could not be processed
+     */
+    private static void abandon(String url) {
+        if (url != null) {
+            heldLeases.remove(url);
+        }
+    }
+
+    /**
+     * Sends the pending acknowledgements to the queue in a single remote call.
+     * If the call fails they are kept for the next flush.
+     */
+    private static void flushAcks() {
+        List<Long> leaseIds = new ArrayList<>();
+        Long leaseId;
+        while ((leaseId = pendingAcks.poll()) != null) {
+            leaseIds.add(leaseId);
+        }
+        if (leaseIds.isEmpty()) {
+            return;
+        }
+        try {
+            urlQueueInterface.ack(leaseIds);
+        } catch (RemoteException e) {
+            System.err.println("Failed to acknowledge " + leaseIds.size() + " URLs: " + e.getMessage());
+            pendingAcks.addAll(leaseIds);
+            reconnectURLQueue();
+        }
+    }
+
+    /**
+     * Extends the leases of every URL this Downloader still holds.
+     */
+    private static void renewLeases() {
+        List<Long> leaseIds = new ArrayList<>();
+        for (UrlLease lease : heldLeases.values()) {
+            leaseIds.add(lease.leaseId());
+        }
+        if (leaseIds.isEmpty()) {
+            return;
+        }
+        try {
+            urlQueueInterface.extendLeases(leaseIds);
+        } catch (RemoteException e) {
+            System.err.println("Failed to renew " + leaseIds.size() + " leases: " + e.getMessage());
+            reconnectURLQueue();
+        }
+    }
+
+    /**
+     * Starts the thread that moves URLs from ready hosts to the pipeline.
+     *
+     * <p>The dispatcher always takes a URL from a host whose crawl delay has elapsed
+     * and whose concurrency limit is not reached, then waits for room in the fetch
+     * stage's queue.</p>
+     */
+    private void startDispatcher() {
+        Thread dispatcher = new Thread(() -> {
+            while (true) {
+                try {
+                    pipeline.submit(new PageWork(hostScheduler.take()));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    System.err.println("Host dispatcher interrupted: " + e.getMessage());
+                    return;
+                }
+            }
+        }, "HostDispatcher");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    /**
+     * Sends a message to the barrels once the flow controller grants a permit.
+     *
+     * @param message The message to transmit
+     * @throws IOException If the transmission fails or the wait for a permit is interrupted
+     */
+    private static void sendThrottled(String message) throws IOException {
+        sendThrottled(List.of(message));
+    }
+
+    /**
+     * Sends messages to the barrels as one transport batch, once the flow controller
+     * grants a permit for each of them.
+     *
+     * @param messages The messages to transmit, in order
+     * @throws IOException If the transmission fails or the wait for permits is interrupted
+     */
+    private static void sendThrottled(List<String> messages) throws IOException {
+        if (flowController != null) {
+            try {
+                flowController.acquire(messages.size());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while throttled", e);
+            }
+        }
+        dataChannel.sendBatch(messages);
+    }
+
+    /**
+     * Sends a page's messages to the barrels in batches of up to EMIT_BATCH_SIZE.
+     *
+     * <p>After a failure the connection is re-established once and sending resumes
+     * with the failed batch. Its messages that did get through are sent twice, which
+     * is harmless: the barrels apply every message idempotently.</p>
+     *
+     * @param messages The messages to transmit, in order
+     * @param url The URL of the page, for the logs
+     * @return true if every message was sent, false otherwise
+     */
+    private static boolean sendAllThrottled(List<String> messages, String url) {
+        boolean reconnected = false;
+        for (int from = 0; from < messages.size(); ) {
+            List<String> batch = messages.subList(from, Math.min(from + EMIT_BATCH_SIZE, messages.size()));
+            try {
+                sendThrottled(batch);
+                from += batch.size();
+            } catch (IOException e) {
+                System.err.println("Multicast transmission failed for URL '" + url + "': " + e.getMessage());
+                if (reconnected || !reconnectMulticast()) {
+                    return false;
+                }
+                reconnected = true;
+            }
+        }
+        return true;
+    }
+
     /**
      * Initializes the connection to the URL Queue service via RMI with retry mechanism.
      *
@@ -163,8 +707,7 @@ public class Downloader {
     private boolean initializeURLQueue() {
         for (int attempt = 1; attempt <= MAX_RETRY_ATTEMPTS; attempt++) {
             try {
-                Registry registryQueue = LocateRegistry.getRegistry(QUEUE_IP, URL_QUEUE_PORT);
-                urlQueueInterface = (URLQueueInterface) registryQueue.lookup("URLQueueService");
+                urlQueueInterface = URLQueueRouter.connect(QUEUE_NODES);
                 System.out.println("Successfully connected to URL Queue service on attempt " + attempt);
                 return true;
             } catch (Exception e) {
@@ -199,8 +742,7 @@ public class Downloader {
 
         for (int attempt = 1; attempt <= MAX_RETRY_ATTEMPTS; attempt++) {
             try {
-                Registry registryQueue = LocateRegistry.getRegistry(QUEUE_IP, URL_QUEUE_PORT);
-                urlQueueInterface = (URLQueueInterface) registryQueue.lookup("URLQueueService");
+                urlQueueInterface = URLQueueRouter.connect(QUEUE_NODES);
                 System.out.println("Successfully reconnected to URL Queue service on attempt " + attempt);
                 return true;
             } catch (Exception e) {
@@ -232,9 +774,18 @@ public class Downloader {
     private static boolean reconnectMulticast() {
         System.out.println("Attempting to reconnect to multicast group...");
 
+        // Release the broken endpoint before opening a new one
+        if (dataChannel != null) {
+            try {
+                dataChannel.close();
+            } catch (IOException ignored) {
+                // The old endpoint is already unusable
+            }
+        }
+
         for (int attempt = 1; attempt <= MAX_RETRY_ATTEMPTS; attempt++) {
             try {
-                multicast = new ReliableMulticast(GROUP_ADDRESS, PORT);
+                dataChannel = Transports.connect(TRANSPORT, GROUP_ADDRESS, PORT, barrelEndpoints(TCP_DATA_PORT_OFFSET));
                 System.out.println("Successfully reconnected to multicast group on attempt " + attempt);
                 return true;
             } catch (IOException e) {
@@ -258,347 +809,572 @@ public class Downloader {
     //----------------------------------------METHODS----------------------------------------
 
     /**
-     * Splits a string into components based on punctuation characters.
+     * A page on its way through the pipeline, with what each stage found out about it.
+     */
+    private static final class PageWork {
+        /** The URL of the page */
+        final String url;
+
+        /** Set by the fetch stage: the downloaded page */
+        HttpFetcher.Page response;
+
+        /** Set by the parse stage, cleared by the extract stage: the parsed document */
+        Document document;
+
+        /** Set by the extract stage: the text of the page and its distinct canonical links */
+        String text;
+        Set<String> links;
+
+        /** Set by the tokenize stage: one message per distinct term, the SimHash and the message bytes */
+        List<String> termMessages;
+        long simHash;
+        long termBytes;
+
+        /** Set by the tokenize stage: whether the page has enough distinct terms for the near-duplicate check */
+        boolean fingerprinted;
+
+        PageWork(String url) {
+            this.url = url;
+        }
+
+        @Override
+        public String toString() {
+            return url;
+        }
+    }
+
+    /**
+     * Builds the crawl pipeline: fetch, parse, extract, tokenize and emit.
      *
-     * <p>This method divides a text string whenever punctuation is encountered,
-     * with the exception of hyphens which are preserved. This is useful for
-     * tokenizing text while preserving hyphenated words.</p>
+     * <p>Fetching and emitting mostly wait on the network, so they run on virtual
+     * threads; parsing, extracting and tokenizing are CPU-bound and run on platform
+     * threads. Each stage is sized by its own configuration key.</p>
      *
-     * @param input The string to be divided
-     * @return An array of strings split by punctuation
+     * @return The pipeline, not started
      */
-    private static String[] splitByPunctuation(String input) {
-        // Split by all punctuation except hyphens
-        return input.split("[\\p{Punct}&&[^-]]+");
+    private static Pipeline<PageWork> buildPipeline() {
+        Pipeline<PageWork> stages = new Pipeline<>(STAGE_QUEUE_CAPACITY, Downloader::finishPage);
+        stages.addStage("fetch", MAX_INFLIGHT_FETCHES, true, Downloader::fetchStage);
+        stages.addStage("parse", PARSE_THREADS, false, Downloader::parseStage);
+        stages.addStage("extract", EXTRACT_THREADS, false, Downloader::extractStage);
+        stages.addStage("tokenize", TOKENIZE_THREADS, false, Downloader::tokenizeStage);
+        stages.addStage("emit", EMIT_THREADS, true, Downloader::emitStage);
+        return stages;
     }
 
     /**
-     * Removes special characters from a word while preserving letters and hyphens.
+     * Settles a page's lease once it leaves the pipeline.
      *
-     * <p>This method sanitizes text by removing everything except letters and hyphens,
-     * preserving accented characters and other Unicode letters.</p>
+     * <p>A processed page is acknowledged. A page that failed in any stage is left to
+     * its lease's expiry, so the queue hands the URL out again.</p>
      *
-     * @param input The string to be cleaned
-     * @return The cleaned string containing only letters and hyphens
+     * @param work The page
+     * @param succeeded Whether the page was processed successfully
      */
-    private static String cleanWord(String input) {
-        // Keep only letters (including accented ones) and hyphens
-        return input.replaceAll("[^\\p{L}-]", "");
+    private static void finishPage(PageWork work, boolean succeeded) {
+        if (succeeded) {
+            acknowledge(work.url);
+        } else {
+            abandon(work.url);
+        }
     }
 
     /**
-     * Normalizes text by removing diacritical marks (accents).
+     * Fetch stage: checks robots.txt and downloads the page.
      *
-     * <p>This method transforms accented characters to their base form by
-     * first decomposing them into base characters and combining marks,
-     * then removing the combining marks.</p>
+     * <p>The fetch runs under a permit of the adaptive fetch limiter, which is told how
+     * long it took and whether it hinted at overload: a timeout, or a 429 or 5xx
+     * answer. Other failures, such as unknown hosts, say nothing about load and do
+     * not count. The URL's host is released in the host scheduler once the transfer
+     * ends. URLs that need no processing (disallowed, not HTML, unchanged) end here.</p>
      *
-     * @param inputWord The word to be normalized
-     * @return The normalized word without diacritical marks
+     * @param work The page
+     * @return NEXT with the response set, or DONE if there is nothing to process
+     * @throws IOException If the download fails
+     * @throws InterruptedException If the thread is interrupted while waiting for a permit
      */
-    private static String normalizeText(String inputWord) {
-        // Decompose accented characters and remove the accent marks
-        return Normalizer.normalize(inputWord, Normalizer.Form.NFD).replaceAll("\\p{M}", "");
+    private static Pipeline.Result fetchStage(PageWork work) throws IOException, InterruptedException {
+        long start;
+        try {
+            start = fetchLimiter.acquire();
+        } catch (InterruptedException e) {
+            hostScheduler.release(work.url);
+            throw e;
+        }
+        boolean overloaded = false;
+        try {
+            if (!robotsCache.isAllowed(work.url)) {
+                System.out.println("URL disallowed by robots.txt: " + work.url);
+                return Pipeline.Result.DONE;
+            }
+            work.response = download(work.url);
+            overloaded = work.response != null
+                    && (work.response.statusCode() == 429 || work.response.statusCode() >= 500);
+        } catch (HttpTimeoutException | SocketTimeoutException e) {
+            overloaded = true;
+            throw e;
+        } finally {
+            fetchLimiter.release(start, overloaded);
+            hostScheduler.release(work.url);
+        }
+        return work.response == null ? Pipeline.Result.DONE : Pipeline.Result.NEXT;
     }
 
     /**
-     * Checks if a string contains at least one alphabetic character.
+     * Performs the HTTP transfer of a page.
      *
-     * <p>This method verifies that a string contains at least one letter,
-     * including ASCII and common accented Latin characters.</p>
+     * <p>If the URL was indexed before, the request is conditional on its stored ETag
+     * and Last-Modified. A 304 answer, or a body whose hash matches the indexed one,
+     * means the page is unchanged and it is not processed again.</p>
      *
-     * @param word The string to check
-     * @return true if the string contains at least one letter, false otherwise
+     * <p>Only HTML is downloaded: other content types are rejected from the response
+     * headers. Bodies larger than MAX_PAGE_BYTES are truncated, which bounds the
+     * memory held by each fetch in flight.</p>
+     *
+     * @param url The URL to download
+     * @return The HTTP response, or null if the URL is invalid, not HTML or unchanged
+     * @throws IOException If the download fails
      */
-    private static boolean containsLetter(String word) {
-        // Check if the word contains at least one letter (including accented chars)
-        return word.matches(".*[a-zA-Záéíóúâêîôûãõç].*");
+    private static HttpFetcher.Page download(String url) throws IOException {
+        // Skip processing if the URL is null or empty
+        if (url == null || url.isEmpty()) {
+            System.err.println("Attempted to process null or empty URL");
+            return null;
+        }
+
+        // Re-crawls send the stored validators so unchanged pages can be answered with 304
+        FetchMetadataStore.Metadata previous = fetchMetadata == null ? null : fetchMetadata.get(url);
+
+        // Download the page over the shared client, capped in size; error statuses are still processed
+        HttpFetcher.Page page = previous == null
+                ? httpFetcher.fetchHtml(url)
+                : httpFetcher.fetchHtml(url, previous.etag(), previous.lastModified());
+
+        // Non-HTML responses were cancelled after their headers and have no body to index
+        if (!page.isHtml()) {
+            return null;
+        }
+        if (previous != null && page.statusCode() == 304) {
+            fetchMetadata.recordNotModified();
+            return null;
+        }
+        if (previous != null && page.statusCode() == 200 && FetchMetadataStore.hash(page.body()) == previous.bodyHash()) {
+            // Same content without validator support: refresh the validators, skip indexing
+            fetchMetadata.put(url, page.etag(), page.lastModified(), previous.bodyHash());
+            fetchMetadata.recordUnchanged();
+            return null;
+        }
+        return page;
     }
 
     /**
-     * Determines if a string appears to be a URL or link.
+     * Parse stage: parses the page and removes the elements that carry no content
+     * (scripts, styles, navigation, headers and footers).
      *
-     * <p>This method uses regular expressions to check if the input string
-     * matches common URL patterns starting with http, https, or www.</p>
+     * @param work The page
+     * @return NEXT with the document set, or FAILED if the page has no body
+     * @throws IOException If the page cannot be parsed
+     */
+    private static Pipeline.Result parseStage(PageWork work) throws IOException {
+        Document doc = work.response.parse();
+        if (doc == null || doc.body() == null) {
+            System.err.println("Failed to retrieve valid content from URL: " + work.url);
+            return Pipeline.Result.FAILED;
+        }
+        doc.select("script, style, nav, footer, header, aside").remove();
+        work.document = doc;
+        return Pipeline.Result.NEXT;
+    }
+
+    /**
+     * Extract stage: takes the text and the distinct canonical links out of the
+     * document, then drops the document.
      *
-     * @param input The string to check
-     * @return true if the string matches URL patterns, false otherwise
+     * @param work The page
+     * @return NEXT with the text and links set, or DONE if the page has no text
      */
-    private static boolean isLink(String input) {
-        // Define a regex pattern for URLs
-        String regex = "^(http|https|www)\\S+";
-        Pattern pattern = Pattern.compile(regex, Pattern.CASE_INSENSITIVE);
-        Matcher matcher = pattern.matcher(input);
-        return matcher.find();
+    private static Pipeline.Result extractStage(PageWork work) {
+        Document doc = work.document;
+        work.document = null;
+        String text = doc.body().text();
+        if (text == null || text.isEmpty()) {
+            System.out.println("No text content found at URL: " + work.url);
+            return Pipeline.Result.DONE;  // A valid state, just no content
+        }
+        work.text = text;
+        work.links = extractLinks(doc, work.url);
+        return Pipeline.Result.NEXT;
     }
 
     /**
-     * Processes a URL by downloading its content, extracting words and links.
+     * Tokenize stage: counts the normalized terms of the page in a single pass and
+     * builds one {@code term;url;count;documentLength} message per distinct term, with
+     * the page's SimHash for the near-duplicate check. Pages with fewer than
+     * NEAR_DUPLICATE_MIN_TERMS distinct terms are not fingerprinted: their SimHash is
+     * mostly noise, and short stubs such as login or listing pages would match each other.
      *
-     * <p>This method performs the following operations:</p>
-     * <ol>
-     *   <li>Downloads the web page content</li>
-     *   <li>Removes non-content elements (scripts, styles, etc.)</li>
-     *   <li>Extracts and processes text content for indexing</li>
-     *   <li>Normalizes and transmits words for storage</li>
-     *   <li>Extracts links for further processing</li>
-     * </ol>
+     * @param work The page
+     * @return NEXT with the term messages set
+     */
+    private static Pipeline.Result tokenizeStage(PageWork work) {
+        TermCounter counter = TERM_COUNTERS.get();
+        counter.clear();
+        TOKENIZERS.get().tokenize(work.text, counter::add);
+        work.text = null;
+        int documentLength = counter.total();
+        List<String> messages = new ArrayList<>(counter.size());
+        long[] bytes = {0};
+        counter.forEach((pool, offset, length, count) -> {
+            String message = new String(pool, offset, length) + ";" + work.url + ";" + count + ";" + documentLength;
+            messages.add(message);
+            bytes[0] += message.length();
+        });
+        work.termMessages = messages;
+        work.termBytes = bytes[0];
+        work.fingerprinted = counter.size() >= NEAR_DUPLICATE_MIN_TERMS;
+        if (work.fingerprinted) {
+            work.simHash = counter.simHash();
+        }
+        return Pipeline.Result.NEXT;
+    }
+
+    /**
+     * Emit stage: sends the page to the barrels and its links to the queue.
      *
-     * <p>This method includes error handling and reconnection mechanisms for both
-     * JSoup connection failures and multicast transmission failures.</p>
+     * <p>Near-duplicates of an indexed page are linked to it instead of being indexed
+     * again; pages too short to fingerprint are always indexed. Otherwise each distinct term is sent once, then the links are queued and
+     * sent to the web graph. The page's validators are stored only once it was fully
+     * sent, so failures are retried in full. This stage includes reconnection
+     * mechanisms for transmission failures.</p>
      *
-     * @param url The URL to process
-     * @return true if processing was successful, false otherwise
+     * @param work The page
+     * @return NEXT if the page was sent, FAILED otherwise
      */
-    private static boolean processUrl(String url) {
-        // Skip processing if the URL is null or empty
-        if (url == null || url.isEmpty()) {
-            System.err.println("Attempted to process null or empty URL");
-            return false;
+    private static Pipeline.Result emitStage(PageWork work) {
+        String url = work.url;
+        String original = null;
+        if (work.fingerprinted) {
+            original = findNearDuplicate(url, work.simHash);
+        } else {
+            shortPages.incrementAndGet();
         }
-    
+        if (original != null) {
+            return linkDuplicate(url, original, work) ? Pipeline.Result.DONE : Pipeline.Result.FAILED;
+        }
+        long emissionStart = System.nanoTime();
+
+        // Transmit each distinct term once, in batches; after a failure, reconnect once and resend from the failed batch
+        if (!sendAllThrottled(work.termMessages, url)) {
+            // Not every term was sent: skip links and validators so the page is retried in full
+            System.err.println("Unable to send every word. Skipping link processing for URL: " + url);
+            return Pipeline.Result.FAILED;
+        }
+
+        boolean linksProcessed = emitLinks(url, work.links);
+        emittedPages.incrementAndGet();
+        emissionNanos.addAndGet(System.nanoTime() - emissionStart);
+
+        // Remember the indexed version only once it was fully sent, so failures are retried in full
+        HttpFetcher.Page response = work.response;
+        if (linksProcessed && fetchMetadata != null && response.statusCode() == 200) {
+            fetchMetadata.put(url, response.etag(), response.lastModified(), FetchMetadataStore.hash(response.body()));
+            fetchMetadata.recordChanged();
+        }
+        return linksProcessed ? Pipeline.Result.NEXT : Pipeline.Result.FAILED;
+    }
+
+    /**
+     * Checks a page's fingerprint against the near-duplicate index shared through the URL queue.
+     *
+     * @param url The URL of the page
+     * @param fingerprint The SimHash of the page's terms
+     * @return The URL of the indexed page it nearly duplicates, or null if it is new or the check failed
+     */
+    private static String findNearDuplicate(String url, long fingerprint) {
+        fingerprintedPages.incrementAndGet();
         try {
-            urlQueueInterface.addUrl(url);
-        } catch (RemoteException re) {
-            System.err.println("Failed to add URL to queue even after reconnection: " + url);
-        } 
+            return urlQueueInterface.registerFingerprint(url, fingerprint);
+        } catch (RemoteException e) {
+            // Without the shared index the page is indexed normally
+            System.err.println("Near-duplicate check failed for URL " + url + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Reports a page's link set to the URL queue and asks whether the page belongs to a crawler trap.
+     *
+     * @param url The URL of the page
+     * @param targets The distinct canonical URLs the page links to
+     * @return true if the page's links should not be queued, false if they should or the check failed
+     */
+    private static boolean isTrapPage(String url, Collection<String> targets) {
         try {
-            // Download the web page content using JSoup
-            Document doc = Jsoup.connect(url)
-                    .timeout(1000000)  // Set a 1000-second timeout
-                    .userAgent("Mozilla/5.0")  // Use a common user agent
-                    .ignoreHttpErrors(true)  // Continue even if HTTP errors occur
-                    .get();
-
-            // Check if the document was successfully retrieved
-            if (doc == null || doc.body() == null) {
-                System.err.println("Failed to retrieve valid content from URL: " + url);
-                return false;
+            if (urlQueueInterface.reportLinkSet(url, CrawlTrapDetector.linkSetFingerprint(url, targets))) {
+                trappedPages.incrementAndGet();
+                trappedLinks.addAndGet(targets.size());
+                return true;
             }
+        } catch (RemoteException e) {
+            // Without the check the links are queued, where the queue's budgets still apply
+            System.err.println("Crawler trap check failed for URL " + url + ": " + e.getMessage());
+        }
+        return false;
+    }
 
-            // Remove non-content elements that wouldn't contribute to meaningful indexing
-            doc.select("script, style, nav, footer, header, aside").remove();
+    /**
+     * Records a near-duplicate page as a copy of an indexed page instead of indexing it.
+     *
+     * <p>The barrels receive a single {@code duplicateOf;url;originalUrl} message in place
+     * of the page's term and link messages. The savings are added to the report.</p>
+     *
+     * @param url The URL of the duplicate page
+     * @param original The URL of the indexed page it duplicates
+     * @param work The page, with the term messages not sent
+     * @return true if the duplicate was recorded, false otherwise
+     */
+    private static boolean linkDuplicate(String url, String original, PageWork work) {
+        nearDuplicatePages.incrementAndGet();
+        duplicateMessagesSaved.addAndGet(work.termMessages.size());
+        duplicateBytesSaved.addAndGet(work.termBytes);
+        HttpFetcher.Page response = work.response;
 
-            // Extract the text content from the document body
-            String text = doc.body().text();
+        try {
+            sendThrottled("duplicateOf;" + url + ";" + original);
+        } catch (IOException e) {
+            System.err.println("Multicast transmission failed for duplicate URL '" + url + "': " + e.getMessage());
+            reconnectMulticast();
+            return false;
+        }
 
-            if (text == null || text.isEmpty()) {
-                System.out.println("No text content found at URL: " + url);
-                return true;  // Return true as this is a valid state, just no content
-            }
+        // Re-crawls of the duplicate can then be skipped with validators as well
+        if (fetchMetadata != null && response.statusCode() == 200) {
+            fetchMetadata.put(url, response.etag(), response.lastModified(), FetchMetadataStore.hash(response.body()));
+        }
+        return true;
+    }
 
-            // Process each word in the text - using streams for parallel processing
-            boolean allWordsProcessed = Arrays.stream(text.split("\\s+"))
-                    .parallel()
-                    .filter(word -> !word.isEmpty() && !isLink(word))
-                    .flatMap(word -> Arrays.stream(splitByPunctuation(word)))
-                    .map(Downloader::cleanWord)
-                    .map(Downloader::normalizeText)
-                    .map(String::toLowerCase)
-                    .filter(part -> !part.isEmpty() && containsLetter(part))
-                    .map(part -> {
-                        try {
-                            // Transmit the word and URL via multicast for indexing
-                            String message = part + ";" + url;
-                            multicast.sendMessage(message);
-                            return true;
-                        } catch (IOException e) {
-                            System.err.println("Multicast transmission failed for word '" + part + "': " + e.getMessage());
-                            return false;
-                        }
-                    })
-                    .allMatch(Boolean::booleanValue);  // Check if all words were processed successfully
-
-            // If multicast transmission failed, attempt reconnection
-            if (!allWordsProcessed) {
-                System.err.println("Some words failed to transmit for URL: " + url);
-                boolean reconnected = reconnectMulticast();
-                if (!reconnected) {
-                    System.err.println("Unable to reconnect to multicast. Skipping link processing for URL: " + url);
-                    return false;
-                }
-            }
+    /**
+     * Returns a one-line summary of the near-duplicate detection and its savings.
+     *
+     * @return A human-readable report
+     */
+    private static String nearDuplicateReport() {
+        long checked = fingerprintedPages.get();
+        long duplicates = nearDuplicatePages.get();
+        long emitted = emittedPages.get();
+        double avgEmissionMs = emitted == 0 ? 0 : emissionNanos.get() / 1e6 / emitted;
+        return String.format("Near duplicates: %d of %d pages (%.1f%%), %d messages (%.1f KB) not sent, ~%.0f ms of emission avoided, "
+                        + "%d pages under %d distinct terms not checked",
+                duplicates, checked, checked == 0 ? 0.0 : 100.0 * duplicates / checked,
+                duplicateMessagesSaved.get(), duplicateBytesSaved.get() / 1024.0, avgEmissionMs * duplicates,
+                shortPages.get(), NEAR_DUPLICATE_MIN_TERMS);
+    }
 
-            // Extract and process links from the document
-            return processLinks(doc, url);
+    /**
+     * Returns a one-line summary of how many links canonicalization collapsed.
+     *
+     * <p>The collapse ratio is the share of a page's distinct links that turned out to
+     * be another spelling of a link already on the page, summed over all pages.</p>
+     *
+     * @return A human-readable report
+     */
+    private static String canonicalizationReport() {
+        long raw = distinctRawLinks.get();
+        long canonical = distinctCanonicalLinks.get();
+        return String.format("%s; %d distinct links collapsed to %d canonical URLs (collapse ratio %.1f%%)",
+                canonicalizer.report(), raw, canonical, raw == 0 ? 0.0 : 100.0 * (raw - canonical) / raw);
+    }
 
-        } catch (IOException e) {
-            System.err.println("Failed to process URL '" + url + "': " + e.getMessage());
+    /**
+     * Adds a page's outgoing links to the URL queue in a single remote call,
+     * reconnecting once if the queue is unreachable.
+     *
+     * <p>The page's score, taken from its lease, is split evenly among its links and
+     * each link is credited with its share.</p>
+     *
+     * @param sourceUrl The URL of the page
+     * @param urls The distinct URLs the page links to
+     * @return true if the URLs were handed to the queue, false otherwise
+     */
+    private static boolean addLinksToQueue(String sourceUrl, Collection<String> urls) {
+        urls.remove(sourceUrl);
+        urls.remove(canonicalizer.canonicalOrSelf(sourceUrl));
+        if (urls.isEmpty()) {
+            return true;
+        }
+        UrlLease lease = heldLeases.get(sourceUrl);
+        double credit = (lease == null ? 1.0 : lease.score()) / urls.size();
+        int depth = (lease == null ? 0 : lease.depth()) + 1;
+        try {
+            urlQueueInterface.addLinks(new ArrayList<>(urls), credit, depth);
+            return true;
+        } catch (RemoteException e) {
+            System.err.println("Failed to add " + urls.size() + " URLs to queue: " + e.getMessage());
+
+            // Attempt to reconnect to the URL Queue and retry once
+            if (reconnectURLQueue()) {
+                try {
+                    urlQueueInterface.addLinks(new ArrayList<>(urls), credit, depth);
+                    return true;
+                } catch (RemoteException re) {
+                    System.err.println("Failed to add URLs to queue even after reconnection: " + re.getMessage());
+                }
+            }
             return false;
         }
     }
 
     /**
-     * Extracts and processes links from a web document.
+     * Collects the distinct links of a document as absolute URLs in canonical form.
+     * Links that are not http(s) are dropped.
      *
-     * <p>This method identifies all hyperlinks in the document, converts them to
-     * absolute URLs, adds them to the processing queue, and transmits link
-     * relationship information via multicast for building the web graph.</p>
+     * @param document The parsed page
+     * @param sourceUrl The URL of the page
+     * @return The distinct canonical URLs the page links to, in document order
+     */
+    private static Set<String> extractLinks(Document document, String sourceUrl) {
+        Elements links = document.select("a[href]");
+        Set<String> targets = new LinkedHashSet<>();
+        if (links.isEmpty()) {
+            System.out.println("No links found in document: " + sourceUrl);
+            return targets;
+        }
+        Set<String> rawTargets = new HashSet<>();
+        for (Element link : links) {
+            String absUrl = link.attr("abs:href");
+            if (!absUrl.isEmpty() && rawTargets.add(absUrl)) {
+                String canonical = canonicalizer.canonicalize(absUrl);
+                if (canonical != null) {
+                    targets.add(canonical);
+                }
+            }
+        }
+        distinctRawLinks.addAndGet(rawTargets.size());
+        distinctCanonicalLinks.addAndGet(targets.size());
+        return targets;
+    }
+
+    /**
+     * Adds a page's links to the processing queue in a single remote call and
+     * transmits the link relationships via multicast for building the web graph.
+     * Links of pages the queue reports as part of a crawler trap are not queued, but
+     * still sent to the web graph.
      *
      * <p>The method includes error handling and reconnection mechanisms for both
      * URL Queue and multicast failures.</p>
      *
-     * @param document The JSoup Document containing the HTML content
-     * @param sourceUrl The URL of the source document
+     * @param sourceUrl The URL of the page
+     * @param targets The distinct canonical URLs the page links to
      * @return true if link processing was successful, false otherwise
      */
-    private static boolean processLinks(Document document, String sourceUrl) {
-        if (document == null || sourceUrl == null || sourceUrl.isEmpty()) {
-            System.err.println("Invalid document or source URL provided to processLinks");
-            return false;
+    private static boolean emitLinks(String sourceUrl, Set<String> targets) {
+        if (targets.isEmpty()) {
+            return true;  // A valid state, just no links
         }
-
         try {
-            // Select all hyperlink elements from the document
-            Elements links = document.select("a[href]");
-
-            if (links.isEmpty()) {
-                System.out.println("No links found in document: " + sourceUrl);
-                return true;  // Return true as this is a valid state, just no links
+            // Add all of them to the queue in one call, unless the page belongs to a crawler trap
+            if (!isTrapPage(sourceUrl, targets) && !addLinksToQueue(sourceUrl, targets)) {
+                return false;
             }
 
-            // Flag to track if all links were processed successfully
-            final boolean[] allLinksProcessed = {true};
-
-            // Process links in parallel
-            links.parallelStream()
-                    .map(link -> link.attr("abs:href"))
-                    .filter(absUrl -> !absUrl.isEmpty())
-                    .forEach(absUrl -> {
-                        boolean linkProcessed = true;
-
-                        // First, try to add the URL to the queue
-                        try {
-                            urlQueueInterface.addUrl(absUrl);
-                        } catch (RemoteException e) {
-                            System.err.println("Failed to add URL to queue: " + absUrl);
-
-                            // Attempt to reconnect to the URL Queue
-                            boolean reconnected = reconnectURLQueue();
-                            if (reconnected) {
-                                // Retry adding the URL after reconnection
-                                try {
-                                    urlQueueInterface.addUrl(absUrl);
-                                } catch (RemoteException re) {
-                                    System.err.println("Failed to add URL to queue even after reconnection: " + absUrl);
-                                    linkProcessed = false;
-                                }
-                            } else {
-                                linkProcessed = false;
-                            }
-                        }
-
-                        // If adding to the queue was successful, transmit link relationship via multicast
-                        if (linkProcessed) {
-                            try {
-                                String message = "addLink" + ";" + sourceUrl + ";" + absUrl;
-                                multicast.sendMessage(message);
-                            } catch (IOException e) {
-                                System.err.println("Failed to send link relationship via multicast: " + sourceUrl + " -> " + absUrl);
-
-                                // Attempt to reconnect to the multicast group
-                                boolean reconnected = reconnectMulticast();
-                                if (reconnected) {
-                                    // Retry sending the message after reconnection
-                                    try {
-                                        String message = "addLink" + ";" + sourceUrl + ";" + absUrl;
-                                        multicast.sendMessage(message);
-                                    } catch (IOException re) {
-                                        System.err.println("Failed to send link relationship via multicast even after reconnection");
-                                        linkProcessed = false;
-                                    }
-                                } else {
-                                    linkProcessed = false;
-                                }
-                            }
-                        }
-
-                        // Update the overall success status
-                        if (!linkProcessed) {
-                            allLinksProcessed[0] = false;
-                        }
-                    });
-
-            return allLinksProcessed[0];
+            // Transmit the link relationships in batches, reconnecting once after a failure
+            List<String> messages = new ArrayList<>(targets.size());
+            for (String absUrl : targets) {
+                messages.add("addLink" + ";" + sourceUrl + ";" + absUrl);
+            }
+            if (!sendAllThrottled(messages, sourceUrl)) {
+                System.err.println("Failed to send every link relationship via multicast for URL: " + sourceUrl);
+                return false;
+            }
+            return true;
 
         } catch (Exception e) {
-            System.err.println("Error processing links from document: " + e.getMessage());
+            System.err.println("Error emitting links of " + sourceUrl + ": " + e.getMessage());
             e.printStackTrace();
             return false;
         }
     }
 
     /**
-     * Processes a batch of URLs retrieved from the queue in parallel.
+     * Takes a batch of URLs from the queue and hands them to the host scheduler.
      *
-     * <p>This method retrieves a batch of URLs from the queue and processes them
-     * in parallel. It includes error handling and reconnection mechanisms for
+     * <p>This method retrieves a batch of URLs in a single remote call and adds each one to its host's
+     * queue; the dispatcher then feeds them to the pipeline as their hosts
+     * become ready. It includes error handling and reconnection mechanisms for
      * URL Queue failures.</p>
      *
-     * @param batchSize The number of URLs to process in one batch
-     * @return The number of URLs successfully processed
+     * <p>The URLs are leased rather than removed from the queue: each lease is kept
+     * until the URL is acknowledged after processing, and renewed in the meantime.</p>
+     *
+     * <p>If the queue is empty the call waits in the queue, up to TAKE_TIMEOUT_MS, for
+     * URLs to arrive, so an idle Downloader neither polls nor sleeps past new work.</p>
+     *
+     * @param batchSize The maximum number of URLs to take in one batch
+     * @return The number of URLs scheduled for processing
      */
     private static int processBatch(int batchSize) {
-        List<String> urlBatch = new ArrayList<>();
-        int processedCount = 0;
+        List<UrlLease> urlBatch = new ArrayList<>();
+        int submittedCount = 0;
 
         try {
-            // Retrieve URLs from the queue up to the batch size
-            for (int i = 0; i < batchSize; i++) {
-                try {
-                    String url = urlQueueInterface.takeUrl();
-                    if (url == null) break;
-                    urlBatch.add(url);
-                } catch (RemoteException e) {
-                    System.err.println("Failed to retrieve URL from queue: " + e.getMessage());
-
-                    // Attempt to reconnect to the URL Queue
-                    boolean reconnected = reconnectURLQueue();
-                    if (reconnected) {
-                        // Continue retrieving URLs after reconnection
-                        try {
-                            String url = urlQueueInterface.takeUrl();
-                            if (url == null) break;
-                            urlBatch.add(url);
-                        } catch (RemoteException re) {
-                            System.err.println("Failed to retrieve URL from queue even after reconnection: " + re.getMessage());
-                            break;
-                        }
-                    } else {
-                        // If reconnection failed, break out of the loop
-                        break;
+            // Retrieve up to batchSize URLs from the queue in one call
+            try {
+                urlBatch = urlQueueInterface.takeUrls(batchSize, TAKE_TIMEOUT_MS);
+            } catch (RemoteException e) {
+                System.err.println("Failed to retrieve URLs from queue: " + e.getMessage());
+
+                // Attempt to reconnect to the URL Queue and retry once
+                boolean reconnected = reconnectURLQueue();
+                if (reconnected) {
+                    try {
+                        urlBatch = urlQueueInterface.takeUrls(batchSize, TAKE_TIMEOUT_MS);
+                    } catch (RemoteException re) {
+                        System.err.println("Failed to retrieve URLs from queue even after reconnection: " + re.getMessage());
                     }
                 }
+                if (urlBatch.isEmpty()) {
+                    // The queue is unreachable; back off instead of retrying at once
+                    Thread.sleep(RETRY_DELAY_MS);
+                }
             }
 
-            // Process the URLs in parallel if any were retrieved
+            // Hand the URLs to the host scheduler if any were retrieved
             if (!urlBatch.isEmpty()) {
-                // Count successfully processed URLs
-                processedCount = (int) urlBatch.parallelStream()
-                        .map(Downloader::processUrl)
-                        .filter(Boolean::booleanValue)
-                        .count();
+                for (UrlLease lease : urlBatch) {
+                    // A URL already held under another lease is scheduled once
+                    if (heldLeases.putIfAbsent(lease.url(), lease) != null) {
+                        pendingAcks.add(lease.leaseId());
+                        continue;
+                    }
+                    hostScheduler.offer(lease.url());
+                    submittedCount++;
+                }
             } else {
-                System.out.println("No URLs retrieved from queue");
+                System.out.println("No URLs in queue after waiting " + TAKE_TIMEOUT_MS + " ms");
             }
 
-            return processedCount;
+            return submittedCount;
 
         } catch (Exception e) {
             System.err.println("Error processing URL batch: " + e.getMessage());
             e.printStackTrace();
-            return processedCount;
+            return submittedCount;
         }
     }
 
     //----------------------------------------MAIN----------------------------------------
 
     /**
-     * The main entry point that initiates parallel URL processing.
+     * The main entry point that initiates concurrent URL processing.
      *
-     * <p>This method retrieves batches of URLs and processes them in parallel
-     * using Java streams, improving throughput and efficiency. It includes
-     * robust error handling and reconnection mechanisms.</p>
+     * <p>This method keeps the host scheduler supplied with URLs from the queue,
+     * up to {@code MAX_SCHEDULED_URLS}, asking for twice the current fetch limit at a
+     * time so the batch grows and shrinks with the crawler's own concurrency. The
+     * dispatcher moves them to the pipeline, where the adaptive fetch limiter decides
+     * how many downloads run concurrently, up to {@code MAX_INFLIGHT_FETCHES}, before
+     * the later stages process them. It includes robust error handling and
+     * reconnection mechanisms.</p>
      *
      * @param args Command-line arguments (not used)
      */
@@ -613,23 +1389,13 @@ public class Downloader {
                 System.exit(1);
             }
 
-            // Define the batch size for parallel processing
-            int batchSize = 10;
-
-            // Continuously process URLs
+            // Continuously process URLs; an empty queue is waited on inside takeUrls
             while (true) {
-                int processedCount = processBatch(batchSize);
-
-                // If no URLs were processed, wait 1 second before trying again
-                if (processedCount == 0) {
-                    System.out.println("No URLs in queue. Sleeping for 1 second.");
-                    try {
-                        Thread.sleep(1000);
-                    } catch (InterruptedException e) {
-                        Thread.currentThread().interrupt();
-                        System.err.println("Sleep interrupted: " + e.getMessage());
-                    }
-                }
+                // Wait until the host scheduler has room for more URLs
+                hostScheduler.awaitPendingBelow(MAX_SCHEDULED_URLS, 1000);
+                int room = MAX_SCHEDULED_URLS - hostScheduler.pendingUrls();
+                if (room <= 0) continue;
+                processBatch(Math.min(room, Math.max(MIN_TAKE_BATCH, 2 * fetchLimiter.limit())));
             }
         } catch (Exception e) {
             System.err.println("Fatal error in Downloader: " + e.getMessage());
@@ -13,8 +13,9 @@ import java.rmi.NotBoundException;
 import java.util.concurrent.*;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
-import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
+import search.Crawler.HttpFetcher;
+import search.Crawler.LatencyHistogram;
 import java.util.stream.Collectors;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Stream;
@@ -27,6 +28,7 @@ import java.util.stream.Stream;
  * <ul>
  *     <li>Fault tolerance mechanisms for handling remote failures</li>
  *     <li>Load balancing between multiple storage barrels</li>
+ *     <li>Hedged searches: a replica slower than the recent p95 is raced by a second one</li>
  *     <li>Health monitoring and automatic reconnection strategies</li>
  * </ul>
  * Implements {@link GatewayInterface} to provide core search and indexing functionalities.
@@ -54,8 +56,22 @@ public class Gateway extends UnicastRemoteObject implements GatewayInterface, Au
 
     private static String QUEUE_IP = "localhost";
 
+    /** Addresses of the URL queue nodes as host:port, each owning a partition of the hosts */
+    private static String QUEUE_NODES = "localhost:8184";
+
     private static String[] BARREL_IP = {"localhost", "localhost"};
 
+    /** Timeout for establishing an HTTP connection when fetching titles, in milliseconds */
+    private static long HTTP_CONNECT_TIMEOUT_MS = 5000;
+
+    /** Deadline for a whole title fetch, in milliseconds */
+    private static long HTTP_REQUEST_TIMEOUT_MS = 20000;
+
+    /** Maximum number of bytes read from a page when fetching its title */
+    private static int MAX_PAGE_BYTES = 2 * 1024 * 1024;
+
+    /** Shared HTTP client for title and citation fetches */
+    private static HttpFetcher httpFetcher;
 
     /** Health check interval in seconds */
     private static final int HEALTH_CHECK_INTERVAL = 30;
@@ -63,6 +79,30 @@ public class Gateway extends UnicastRemoteObject implements GatewayInterface, Au
     /** Maximum consecutive failures before removing a barrel */
     private static final int MAX_CONSECUTIVE_FAILURES = 3;
 
+    /** Deadline for the barrel phase of a search, hedges and retries included, in milliseconds */
+    private static long SEARCH_TIMEOUT_MS = 10000;
+
+    /** Maximum number of barrel calls per search: the primary, its hedge and retries after failures */
+    private static int SEARCH_MAX_ATTEMPTS = 3;
+
+    /** Percentile of recent barrel latencies after which a search is hedged to a second replica */
+    private static double HEDGE_PERCENTILE = 0.95;
+
+    /** Hedge delay used until enough latencies were observed, in milliseconds */
+    private static long HEDGE_INITIAL_DELAY_MS = 100;
+
+    /** Smallest hedge delay, so fast barrels are not hedged on scheduling noise, in milliseconds */
+    private static long HEDGE_MIN_DELAY_MS = 5;
+
+    /** Extra barrel calls (hedges and retries) allowed per search, as a fraction of searches */
+    private static double HEDGE_BUDGET_RATIO = 0.1;
+
+    /** Extra barrel calls that may be saved up while searches go unhedged */
+    private static final double HEDGE_BUDGET_MAX = 10;
+
+    /** Number of barrel latencies per window of the hedge percentile */
+    private static final int LATENCY_WINDOW = 1000;
+
     /** Interface for accessing the URL queue */
     private URLQueueInterface urlQueue;
 
@@ -82,6 +122,25 @@ public class Gateway extends UnicastRemoteObject implements GatewayInterface, Au
     /** Scheduled executor for periodic health checks */
     private ScheduledExecutorService healthCheckExecutor;
 
+    /** Virtual threads running barrel calls, so a hedged call can be abandoned and cancelled */
+    private final ExecutorService barrelCalls = Executors.newVirtualThreadPerTaskExecutor();
+
+    /** Recent latencies of successful barrel searches, for the hedge delay */
+    private final LatencyWindow barrelLatency = new LatencyWindow(LATENCY_WINDOW);
+
+    /** Latency of the barrel phase of each search, hedges and retries included */
+    private final LatencyHistogram searchLatency = new LatencyHistogram();
+
+    /** Budget of hedges and retries */
+    private final RetryBudget retryBudget = new RetryBudget();
+
+    /** Searches hedged, hedges that answered first, retries after failures, extra calls refused by the budget and searches that timed out */
+    private final AtomicInteger hedgesSent = new AtomicInteger();
+    private final AtomicInteger hedgesWon = new AtomicInteger();
+    private final AtomicInteger retriesSent = new AtomicInteger();
+    private final AtomicInteger budgetRefusals = new AtomicInteger();
+    private final AtomicInteger searchTimeouts = new AtomicInteger();
+
     /** Formatter for logging timestamps */
     private static final DateTimeFormatter LOG_FORMATTER =
             DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
@@ -90,12 +149,12 @@ public class Gateway extends UnicastRemoteObject implements GatewayInterface, Au
      * Inner class to track barrel health status
      */
     private static class BarrelHealth {
-        int currentLoad;
+        final AtomicInteger currentLoad;
         int consecutiveFailures;
         long lastSuccessfulContactTime;
 
         BarrelHealth() {
-            this.currentLoad = 0;
+            this.currentLoad = new AtomicInteger();
             this.consecutiveFailures = 0;
             this.lastSuccessfulContactTime = System.currentTimeMillis();
         }
@@ -147,6 +206,76 @@ public class Gateway extends UnicastRemoteObject implements GatewayInterface, Au
         }
     }
 
+    /**
+     * Latency percentiles over the most recent window of samples, so the hedge delay
+     * follows the barrels' current behaviour rather than their whole history. Once a
+     * window is full it becomes the previous window, which answers percentile queries
+     * while the next one fills.
+     */
+    private static class LatencyWindow {
+        /** Samples needed before the first window answers on its own */
+        private static final int MIN_SAMPLES = 20;
+
+        private final int size;
+        private volatile LatencyHistogram current = new LatencyHistogram();
+        private volatile LatencyHistogram previous;
+
+        LatencyWindow(int size) {
+            this.size = size;
+        }
+
+        void record(long nanos) {
+            LatencyHistogram window = current;
+            window.record(nanos);
+            if (window.count() >= size) {
+                synchronized (this) {
+                    if (current == window) {
+                        previous = window;
+                        current = new LatencyHistogram();
+                    }
+                }
+            }
+        }
+
+        /**
+         * Returns a percentile of the last full window, or of the current one before any window filled.
+         *
+         * @param fraction The percentile, between 0 and 1
+         * @return The percentile in nanoseconds, or -1 if too few latencies were observed
+         */
+        long percentile(double fraction) {
+            LatencyHistogram window = previous;
+            if (window == null) {
+                window = current;
+                if (window.count() < MIN_SAMPLES) {
+                    return -1;
+                }
+            }
+            return window.percentile(fraction);
+        }
+    }
+
+    /**
+     * Retry budget: each search deposits a fraction of a token and each hedge or retry
+     * withdraws a whole one, so extra calls stay a bounded fraction of the barrels' load
+     * even when every barrel is slow or failing.
+     */
+    private static class RetryBudget {
+        private double tokens = HEDGE_BUDGET_MAX;
+
+        synchronized void deposit() {
+            tokens = Math.min(HEDGE_BUDGET_MAX, tokens + HEDGE_BUDGET_RATIO);
+        }
+
+        synchronized boolean tryWithdraw() {
+            if (tokens < 1) {
+                return false;
+            }
+            tokens--;
+            return true;
+        }
+    }
+
 
     //----------------------------------------LOGGING METHODS----------------------------------------
 
@@ -200,11 +329,22 @@ public class Gateway extends UnicastRemoteObject implements GatewayInterface, Au
             URL_QUEUE_PORT = Integer.parseInt(prop.getProperty("URL_QUEUE_PORT"));
             GATEWAY_PORT = Integer.parseInt(prop.getProperty("GATEWAY_PORT"));
             QUEUE_IP = prop.getProperty("QUEUE_IP");
+            QUEUE_NODES = prop.getProperty("QUEUE_NODES", QUEUE_IP + ":" + URL_QUEUE_PORT);
 
             // Ler e converter os IPs para String[]
             String ips = prop.getProperty("BARREL_IP");
             if (ips != null && !ips.isEmpty()) BARREL_IP = ips.split(",");
 
+            HTTP_CONNECT_TIMEOUT_MS = Long.parseLong(prop.getProperty("HTTP_CONNECT_TIMEOUT_MS", String.valueOf(HTTP_CONNECT_TIMEOUT_MS)));
+            HTTP_REQUEST_TIMEOUT_MS = Long.parseLong(prop.getProperty("HTTP_REQUEST_TIMEOUT_MS", String.valueOf(HTTP_REQUEST_TIMEOUT_MS)));
+            MAX_PAGE_BYTES = Integer.parseInt(prop.getProperty("MAX_PAGE_BYTES", String.valueOf(MAX_PAGE_BYTES)));
+            SEARCH_TIMEOUT_MS = Long.parseLong(prop.getProperty("SEARCH_TIMEOUT_MS", String.valueOf(SEARCH_TIMEOUT_MS)));
+            SEARCH_MAX_ATTEMPTS = Integer.parseInt(prop.getProperty("SEARCH_MAX_ATTEMPTS", String.valueOf(SEARCH_MAX_ATTEMPTS)));
+            HEDGE_PERCENTILE = Double.parseDouble(prop.getProperty("HEDGE_PERCENTILE", String.valueOf(HEDGE_PERCENTILE)));
+            HEDGE_INITIAL_DELAY_MS = Long.parseLong(prop.getProperty("HEDGE_INITIAL_DELAY_MS", String.valueOf(HEDGE_INITIAL_DELAY_MS)));
+            HEDGE_MIN_DELAY_MS = Long.parseLong(prop.getProperty("HEDGE_MIN_DELAY_MS", String.valueOf(HEDGE_MIN_DELAY_MS)));
+            HEDGE_BUDGET_RATIO = Double.parseDouble(prop.getProperty("HEDGE_BUDGET_RATIO", String.valueOf(HEDGE_BUDGET_RATIO)));
+
 
 
 
@@ -295,8 +435,7 @@ public class Gateway extends UnicastRemoteObject implements GatewayInterface, Au
 
             // Connect to the URL queue service
             try {
-                Registry registryQueue = LocateRegistry.getRegistry(QUEUE_IP, URL_QUEUE_PORT);
-                urlQueue = (URLQueueInterface) registryQueue.lookup("URLQueueService");
+                urlQueue = URLQueueRouter.connect(QUEUE_NODES);
                 logInfo("Successfully connected to URL Queue Service");
             } catch (Exception e) {
                 logError(String.format("Failed to connect to URL Queue: %s", e.getMessage()));
@@ -361,11 +500,177 @@ public class Gateway extends UnicastRemoteObject implements GatewayInterface, Au
         return barrelsHealth.entrySet()
                 .stream()
                 .filter(entry -> entry.getValue().isHealthy())
-                .min(Comparator.comparingInt(entry -> entry.getValue().currentLoad))
+                .min(Comparator.comparingInt(entry -> entry.getValue().currentLoad.get()))
                 .map(Map.Entry::getKey)
                 .orElse(null);
     }
 
+    /**
+     * Lists the healthy storage barrels, least loaded first, ties in random order.
+     *
+     * @return The replicas a search may be sent to
+     */
+    private List<IndexStorageBarrelInterface> healthyBarrelsByLoad() {
+        List<Map.Entry<IndexStorageBarrelInterface, BarrelHealth>> healthy = barrelsHealth.entrySet()
+                .stream()
+                .filter(entry -> entry.getValue().isHealthy())
+                .collect(Collectors.toCollection(ArrayList::new));
+        Collections.shuffle(healthy, random);
+        healthy.sort(Comparator.comparingInt(entry -> entry.getValue().currentLoad.get()));
+        return healthy.stream().map(Map.Entry::getKey).collect(Collectors.toList());
+    }
+
+    /**
+     * Returns how long to wait for a barrel before hedging: the configured percentile of
+     * recent barrel latencies, or the initial delay until enough were observed.
+     *
+     * @return The hedge delay in nanoseconds
+     */
+    private long hedgeDelayNanos() {
+        long observed = barrelLatency.percentile(HEDGE_PERCENTILE);
+        long delay = observed < 0 ? TimeUnit.MILLISECONDS.toNanos(HEDGE_INITIAL_DELAY_MS) : observed;
+        return Math.max(TimeUnit.MILLISECONDS.toNanos(HEDGE_MIN_DELAY_MS), delay);
+    }
+
+    /**
+     * Sends a search to one barrel on a virtual thread, tracking its load, latency and health.
+     *
+     * @param barrel The barrel
+     * @param word The word to search for
+     * @param completions Where the finished call is delivered
+     * @return The pending call, cancelled if another replica answers first
+     */
+    private Future<List<String>> callBarrel(IndexStorageBarrelInterface barrel, String word,
+                                            CompletionService<List<String>> completions) {
+        BarrelHealth health = barrelsHealth.get(barrel);
+        return completions.submit(() -> {
+            if (health != null) {
+                health.currentLoad.incrementAndGet();
+            }
+            long start = System.nanoTime();
+            try {
+                List<String> urls = barrel.searchWord(word);
+                long elapsed = System.nanoTime() - start;
+                barrelLatency.record(elapsed);
+                BarrelMetrics metrics = barrelMetrics.get(barrel);
+                if (metrics != null) {
+                    metrics.recordResponse(TimeUnit.NANOSECONDS.toMillis(elapsed));
+                }
+                if (health != null) {
+                    health.recordSuccess();
+                }
+                return urls;
+            } catch (RemoteException e) {
+                // A call cancelled because another replica answered says nothing about this barrel
+                if (!Thread.currentThread().isInterrupted() && health != null) {
+                    health.recordFailure();
+                    if (!health.isHealthy()) {
+                        barrelsHealth.remove(barrel);
+                        logError("A Storage Barrel has been removed after repeated search failures");
+                    }
+                }
+                throw e;
+            } finally {
+                if (health != null) {
+                    health.currentLoad.decrementAndGet();
+                }
+            }
+        });
+    }
+
+    /**
+     * Searches the barrels for a word with hedged requests.
+     *
+     * <p>The search goes to the least loaded healthy replica. If it has not answered
+     * within the hedge delay (see {@link #hedgeDelayNanos()}), the same search is sent
+     * to the next replica and the first answer wins; the other call is cancelled. A
+     * failed call is retried on the next replica at once. Hedges and retries are
+     * limited per search by {@link #SEARCH_MAX_ATTEMPTS} and overall by the retry
+     * budget, and the whole search by {@link #SEARCH_TIMEOUT_MS}.</p>
+     *
+     * @param word The word to search for
+     * @return The URLs found, or null if no replica answered
+     */
+    private List<String> hedgedSearch(String word) {
+        List<IndexStorageBarrelInterface> replicas = healthyBarrelsByLoad();
+        if (replicas.isEmpty()) {
+            return null;
+        }
+        retryBudget.deposit();
+        CompletionService<List<String>> completions = new ExecutorCompletionService<>(barrelCalls);
+        // Pending calls with their start time and whether they are a hedge
+        Map<Future<List<String>>, long[]> calls = new HashMap<>();
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(SEARCH_TIMEOUT_MS);
+        long hedgeAt = start + hedgeDelayNanos();
+        calls.put(callBarrel(replicas.get(0), word, completions), new long[]{start, 0});
+        int attempts = 1;
+        boolean hedged = false;
+
+        try {
+            while (!calls.isEmpty()) {
+                long now = System.nanoTime();
+                if (now >= deadline) {
+                    searchTimeouts.incrementAndGet();
+                    logWarning(String.format("Search for '%s' timed out after %d ms", word, SEARCH_TIMEOUT_MS));
+                    return null;
+                }
+                boolean mayHedge = !hedged && attempts < Math.min(SEARCH_MAX_ATTEMPTS, replicas.size());
+                long waitUntil = mayHedge ? Math.min(hedgeAt, deadline) : deadline;
+                Future<List<String>> done = completions.poll(Math.max(0, waitUntil - now), TimeUnit.NANOSECONDS);
+
+                if (done == null) {
+                    if (mayHedge && System.nanoTime() >= hedgeAt) {
+                        hedged = true;
+                        if (retryBudget.tryWithdraw()) {
+                            hedgesSent.incrementAndGet();
+                            calls.put(callBarrel(replicas.get(attempts), word, completions), new long[]{System.nanoTime(), 1});
+                            attempts++;
+                        } else {
+                            budgetRefusals.incrementAndGet();
+                        }
+                    }
+                    continue;
+                }
+
+                boolean hedge = calls.remove(done)[1] == 1;
+                try {
+                    List<String> urls = done.get();
+                    if (hedge) {
+                        hedgesWon.incrementAndGet();
+                    }
+                    return urls;
+                } catch (ExecutionException e) {
+                    logWarning(String.format("Barrel search for '%s' failed: %s", word, e.getCause()));
+                    // While a hedge is still running it may answer; retry only when nothing is left in flight
+                    if (calls.isEmpty() && attempts < SEARCH_MAX_ATTEMPTS) {
+                        if (retryBudget.tryWithdraw()) {
+                            retriesSent.incrementAndGet();
+                            calls.put(callBarrel(replicas.get(attempts % replicas.size()), word, completions),
+                                    new long[]{System.nanoTime(), 0});
+                            attempts++;
+                        } else {
+                            budgetRefusals.incrementAndGet();
+                        }
+                    }
+                }
+            }
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } finally {
+            // Cancel the losers; interrupting a virtual thread closes its RMI connection
+            long end = System.nanoTime();
+            calls.forEach((call, info) -> {
+                call.cancel(true);
+                // The loser took at least this long; leaving it out would bias the hedge percentile down
+                barrelLatency.record(end - info[0]);
+            });
+            searchLatency.record(end - start);
+        }
+    }
+
     //----------------------------------------INTERFACE METHODS----------------------------------------
 
     /**
@@ -390,62 +695,24 @@ public class Gateway extends UnicastRemoteObject implements GatewayInterface, Au
             }
         }
 
-        // Select a healthy barrel
-        IndexStorageBarrelInterface selectedBarrel = selectHealthyBarrel();
-        if (selectedBarrel == null) {
-            logError("No healthy Storage Barrels available!");
-            return Collections.emptyList();
-        }
-
-        // Track barrel load
-        BarrelHealth barrelHealth = barrelsHealth.get(selectedBarrel);
-        barrelHealth.currentLoad++;
-
-        // Record the start time for response measurement
-        long startTime = System.currentTimeMillis();
-
-        try {
-            // Perform search
-            List<String> urls = selectedBarrel.searchWord(word);
-            // Process URLs concurrently using parallelStream
-            List<String> results = urls.parallelStream()
-                    .map(url -> {
-                        String title = getTitle(url);
-                        return "URL" + url + "\n" + title + "\n";
-                    })
-                    .collect(Collectors.toList());
-
-            return results;
-        } catch (RemoteException e) {
-            logError(String.format("Error searching barrel for word '%s'. Attempting recovery...", word));
-
-            // Mark this barrel as failed
-            barrelHealth.recordFailure();
-
-            // If barrel is no longer healthy, remove it
-            if (!barrelHealth.isHealthy()) {
-                barrelsHealth.remove(selectedBarrel);
-            }
-
-            // Attempt to reconnect and retry
-            connectToServices();
-
-            // Recursive retry with newly connected barrels
-            if (!barrelsHealth.isEmpty()) {
-                return search(word);
+        // Query the replicas, hedging a slow one and retrying a failed one within the budget
+        List<String> urls = hedgedSearch(word);
+        if (urls == null) {
+            logError(String.format("No Storage Barrel answered the search for '%s'", word));
+            // Look for barrels again in the background instead of retrying this search
+            if (barrelsHealth.isEmpty() && healthCheckExecutor != null) {
+                healthCheckExecutor.execute(this::connectToServices);
             }
-
             return Collections.emptyList();
-        } finally {
-            long responseTime = System.currentTimeMillis() - startTime;
-            // Update metrics for this barrel
-            BarrelMetrics metrics = barrelMetrics.get(selectedBarrel);
-            if (metrics != null) {
-                metrics.recordResponse(responseTime);
-            }
-            // Decrease load
-            barrelHealth.currentLoad--;
         }
+
+        // Process URLs concurrently using parallelStream
+        return urls.parallelStream()
+                .map(url -> {
+                    String title = getTitle(url);
+                    return "URL" + url + "\n" + title + "\n";
+                })
+                .collect(Collectors.toList());
     }
 
     /**
@@ -459,8 +726,7 @@ public class Gateway extends UnicastRemoteObject implements GatewayInterface, Au
         // Ensure URL queue is connected
         if (urlQueue == null) {
             try {
-                Registry registryQueue = LocateRegistry.getRegistry(QUEUE_IP, URL_QUEUE_PORT);
-                urlQueue = (URLQueueInterface) registryQueue.lookup("URLQueueService");
+                urlQueue = URLQueueRouter.connect(QUEUE_NODES);
             } catch (Exception e) {
                 logError(String.format("Definitive failure reconnecting to URL Queue: %s", e.getMessage()));
                 return;
@@ -477,6 +743,34 @@ public class Gateway extends UnicastRemoteObject implements GatewayInterface, Au
         }
     }
 
+    /**
+     * Adds several URLs to the indexing queue with a single call to the URL queue.
+     *
+     * @param urls The URLs to be indexed
+     * @throws RemoteException If there is an error in remote communication
+     */
+    @Override
+    public void addUrls(List<String> urls) throws RemoteException {
+        // Ensure URL queue is connected
+        if (urlQueue == null) {
+            try {
+                urlQueue = URLQueueRouter.connect(QUEUE_NODES);
+            } catch (Exception e) {
+                logError(String.format("Definitive failure reconnecting to URL Queue: %s", e.getMessage()));
+                return;
+            }
+        }
+
+        try {
+            int added = urlQueue.addUrls(new ArrayList<>(urls));
+            logInfo(String.format("%d of %d URLs added to queue", added, urls.size()));
+        } catch (RemoteException e) {
+            logError(String.format("Error adding %d URLs to queue. Attempting reconnection...", urls.size()));
+            urlQueue = null;
+            addUrls(urls);  // Retry after nullifying
+        }
+    }
+
     /**
      * Checks inbound links pointing to a specific page URL.
      * If no healthy storage barrels are available, attempts reconnection before retrying.
@@ -504,7 +798,7 @@ public class Gateway extends UnicastRemoteObject implements GatewayInterface, Au
 
         // Track barrel load
         BarrelHealth barrelHealth = barrelsHealth.get(selectedBarrel);
-        barrelHealth.currentLoad++;
+        barrelHealth.currentLoad.incrementAndGet();
 
         try {
             // Perform the inbound links lookup on the selected barrel
@@ -532,11 +826,24 @@ public class Gateway extends UnicastRemoteObject implements GatewayInterface, Au
             return Collections.emptyList();
         } finally {
             // Decrease the current load on the selected barrel
-            barrelHealth.currentLoad--;
+            barrelHealth.currentLoad.decrementAndGet();
         }
     }
 
 
+    /**
+     * Returns the HTTP client shared by all title and citation fetches, creating it on
+     * first use so connections to the same hosts are reused across searches.
+     *
+     * @return The shared fetcher
+     */
+    private static synchronized HttpFetcher httpFetcher() {
+        if (httpFetcher == null) {
+            httpFetcher = new HttpFetcher(HTTP_CONNECT_TIMEOUT_MS, HTTP_REQUEST_TIMEOUT_MS, MAX_PAGE_BYTES, "Mozilla/5.0");
+        }
+        return httpFetcher;
+    }
+
     /**
      * Retrieves the title of a webpage by fetching and parsing its HTML.
      *
@@ -545,7 +852,7 @@ public class Gateway extends UnicastRemoteObject implements GatewayInterface, Au
      */
     public static String getTitle(String url) {
         try {
-            Document doc = Jsoup.connect(url).get();
+            Document doc = httpFetcher().fetchHtml(url).parse();
             return doc.title() + "\n" + doc.select("p").first().text();
         } catch (IOException e) {
             e.printStackTrace();
@@ -563,7 +870,7 @@ public class Gateway extends UnicastRemoteObject implements GatewayInterface, Au
      */
     public static String getShortCitation(String url) {
         try {
-            Document doc = Jsoup.connect(url).get();
+            Document doc = httpFetcher().fetchHtml(url).parse();
             return doc.select("p").first().text(); // Get the first paragraph text
         } catch (IOException | NullPointerException e) {
             e.printStackTrace();
@@ -577,6 +884,7 @@ public class Gateway extends UnicastRemoteObject implements GatewayInterface, Au
      * Returns the current system state including:
      *   - The 10 most common search terms.
      *   - A list of active barrels and their index sizes.
+     *   - The URL queue's statistics.
      *   - The average response time (in tenths of a second) per barrel.
      */
     public String getSystemState() throws RemoteException {
@@ -613,7 +921,18 @@ public class Gateway extends UnicastRemoteObject implements GatewayInterface, Au
             }
         }
 
-        // 3. Average response time per barrel (in tenths of a second)
+        // 3. URL queue statistics, including the seen URL filter
+        if (urlQueue != null) {
+            try {
+                Map<String, Object> queueStats = urlQueue.getStats();
+                stateReport.append("\nURL Queue Statistics:\n");
+                queueStats.forEach((key, value) -> stateReport.append(String.format("  %s: %s\n", key, value)));
+            } catch (RemoteException e) {
+                urlQueue = null;
+            }
+        }
+
+        // 4. Average response time per barrel (in tenths of a second)
         stateReport.append("\nAverage Response Time per Barrel (tenths of a second):\n");
         for (Map.Entry<IndexStorageBarrelInterface, BarrelMetrics> entry : barrelMetrics.entrySet()) {
             BarrelMetrics metrics = entry.getValue();
@@ -626,6 +945,11 @@ public class Gateway extends UnicastRemoteObject implements GatewayInterface, Au
             }
         }
 
+        // 5. Latency of the barrel phase of searches, with hedging and retries
+        stateReport.append(String.format("\nSearch Latency: %s over %d searches\n", searchLatency.summary(), searchLatency.count()));
+        stateReport.append(String.format("  hedge delay %.1f ms, %d hedges sent, %d won, %d retries, %d refused by budget, %d timeouts\n",
+                hedgeDelayNanos() / 1e6, hedgesSent.get(), hedgesWon.get(), retriesSent.get(), budgetRefusals.get(), searchTimeouts.get()));
+
         stateReport.append("------------------------------\n");
         return stateReport.toString();
     }
@@ -657,6 +981,8 @@ public class Gateway extends UnicastRemoteObject implements GatewayInterface, Au
             }
         }
 
+        barrelCalls.shutdownNow();
+
         logInfo("Gateway resources cleaned up.");
     }
 
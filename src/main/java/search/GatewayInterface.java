@@ -30,6 +30,14 @@ public interface GatewayInterface extends Remote {
      */
     void addUrl(String url) throws RemoteException;
 
+    /**
+     * Adds several URLs to the queue to be indexed in a single call.
+     *
+     * @param urls The URLs to be indexed.
+     * @throws RemoteException If a remote communication error occurs.
+     */
+    void addUrls(List<String> urls) throws RemoteException;
+
     /**
      * Retrieves a list of inbound links pointing to a specific page.
      * This method queries the system to find all URLs that link to the given page URL.
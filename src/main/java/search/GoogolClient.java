@@ -5,6 +5,8 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Properties;
 import java.util.Scanner;
@@ -150,20 +152,26 @@ public class GoogolClient {
         try {
             while (true) {
                 System.out.println("Insira [exit] para voltar atrás.");
-                System.out.print("Inserir URL: ");
-                String userUrl = scanner.nextLine();
+                System.out.print("Inserir URL (vários separados por espaços): ");
+                String userUrl = scanner.nextLine().trim();
+                List<String> userUrls = Arrays.asList(userUrl.split("\\s+"));
 
                 if (userUrl.equalsIgnoreCase("exit")) {
                     clearConsole();
                     break;
-                } else if (!isValidUrl(userUrl)) {
+                } else if (!userUrls.stream().allMatch(GoogolClient::isValidUrl)) {
                     clearConsole();
                     System.out.println("ERRO: URL inválido! Tente novamente.");
-                } else {
+                } else if (userUrls.size() == 1) {
                     clearConsole();
                     gateway.addUrl(userUrl);
                     System.out.println("✅ URL enviado para indexação!");
                     break;
+                } else {
+                    clearConsole();
+                    gateway.addUrls(new ArrayList<>(userUrls));
+                    System.out.println("✅ " + userUrls.size() + " URLs enviados para indexação!");
+                    break;
                 }
             }
         } catch (Exception e) {
@@ -1,6 +1,9 @@
 package search;
 
-import search.Sockets.ReliableMulticast;
+import search.Crawler.UrlCanonicalizer;
+import search.Sockets.FlowController;
+import search.Sockets.Transport;
+import search.Sockets.Transports;
 
 import java.io.FileInputStream;
 import java.io.IOException;
@@ -12,7 +15,13 @@ import java.rmi.registry.*;
 import java.sql.*;
 import java.util.*;
 import java.io.File;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * IndexStorageBarrel implements a distributed inverted index storage system for a search engine.
@@ -49,12 +58,69 @@ public class IndexStorageBarrel extends UnicastRemoteObject implements IndexStor
     private static String QUEUE_IP = "localhost";
 
 
-    /** ReliableMulticast instance for group communication */
-    private static ReliableMulticast multicast;
+    /** Transport on which index updates are received (multicast, loopback or TCP) */
+    private static Transport dataChannel;
+
+    /** Transport implementation selected in the configuration */
+    private static String TRANSPORT = "multicast";
+
+    /** Offset added to the registry port to obtain the TCP data port */
+    private static int TCP_DATA_PORT_OFFSET = 1000;
+
+    /** Offset added to the registry port to obtain the TCP control port */
+    private static int TCP_CONTROL_PORT_OFFSET = 2000;
+
+    /** Default RMI registry port, used when none is given to the constructor */
+    private static final int DEFAULT_REGISTRY_PORT = 8182;
+
+    /** Port of the control channel used to advertise ingest credits */
+    private static int FLOW_CONTROL_PORT = 4447;
+
+    /** Interval between credit advertisements in milliseconds */
+    private static long FLOW_CONTROL_INTERVAL_MS = 500;
+
+    /** Capacity of the ingest queue between the multicast receiver and the database writer */
+    private static int INGEST_QUEUE_CAPACITY = 10000;
+
+    /** Maximum number of messages applied in a single database transaction */
+    private static final int INGEST_BATCH_SIZE = 500;
+
+    /** Number of times a failed batch is retried before its messages are applied one by one */
+    private static final int INGEST_MAX_RETRIES = 3;
+
+    /** Control channel on which this barrel advertises its ingest credits */
+    private static Transport controlChannel;
+
+    /** Messages received from the multicast group and waiting to be written to the database */
+    private BlockingQueue<String> ingestQueue;
+
+    /** Number of messages applied to the database since startup */
+    private final AtomicLong appliedMessages = new AtomicLong();
+
+    /** Number of messages discarded because the ingest queue was full */
+    private final AtomicLong droppedMessages = new AtomicLong();
+
+    /** Number of messages discarded because they could not be written to the database */
+    private final AtomicLong failedMessages = new AtomicLong();
+
+    /** Total time the ingest queue spent full, in milliseconds */
+    private final AtomicLong saturatedMillis = new AtomicLong();
+
+    /** Drain rate measured over the last advertising interval, in messages per second */
+    private volatile double drainRate;
+
+    /** Scheduler for the periodic credit advertisements */
+    private ScheduledExecutorService advertiseExecutor;
+
+    /** Rewrites page URLs to the canonical form used as document ids */
+    private static UrlCanonicalizer canonicalizer = UrlCanonicalizer.fromConfig(new Properties());
 
     /** Unique identifier for this barrel instance, used to create a unique database */
     private final String barrelId;
 
+    /** RMI registry port of this barrel, used to derive the TCP transport ports */
+    private final int registryPort;
+
 
 
     //----------------------------------------CONSTRUCTORS----------------------------------------
@@ -78,6 +144,18 @@ public class IndexStorageBarrel extends UnicastRemoteObject implements IndexStor
      * @throws RemoteException If a communication-related exception occurs during remote object initialization
      */
     public IndexStorageBarrel(String barrelId) throws RemoteException {
+        this(barrelId, DEFAULT_REGISTRY_PORT);
+    }
+
+    /**
+     * Constructor with specified barrel identifier and RMI registry port.
+     * The registry port determines the TCP ports used when the TCP transport is configured.
+     *
+     * @param barrelId Unique identifier for this barrel instance
+     * @param registryPort The RMI registry port this barrel is published on
+     * @throws RemoteException If a communication-related exception occurs during remote object initialization
+     */
+    public IndexStorageBarrel(String barrelId, int registryPort) throws RemoteException {
         super();
         try (InputStream input = new FileInputStream("../config.properties")) {
             Properties prop = new Properties();
@@ -88,14 +166,24 @@ public class IndexStorageBarrel extends UnicastRemoteObject implements IndexStor
             GROUP_ADDRESS = prop.getProperty("MULTICAST_ADDRESS");
             URL_QUEUE_PORT = Integer.parseInt(prop.getProperty("URL_QUEUE_PORT"));
             QUEUE_IP = prop.getProperty("QUEUE_IP");
+            FLOW_CONTROL_PORT = Integer.parseInt(prop.getProperty("PORT_FLOW_CONTROL", String.valueOf(PORT + 1)));
+            FLOW_CONTROL_INTERVAL_MS = Long.parseLong(prop.getProperty("FLOW_CONTROL_INTERVAL_MS", "500"));
+            INGEST_QUEUE_CAPACITY = Integer.parseInt(prop.getProperty("INGEST_QUEUE_CAPACITY", "10000"));
+            TRANSPORT = prop.getProperty("TRANSPORT", TRANSPORT);
+            TCP_DATA_PORT_OFFSET = Integer.parseInt(prop.getProperty("TCP_DATA_PORT_OFFSET", "1000"));
+            TCP_CONTROL_PORT_OFFSET = Integer.parseInt(prop.getProperty("TCP_CONTROL_PORT_OFFSET", "2000"));
+            canonicalizer = UrlCanonicalizer.fromConfig(prop);
         } catch (IOException ex) {
             System.out.println(ex.getMessage());
         }
 
 
         this.barrelId = barrelId;
+        this.registryPort = registryPort;
+        this.ingestQueue = new ArrayBlockingQueue<>(INGEST_QUEUE_CAPACITY);
         try {
-            multicast = new ReliableMulticast(GROUP_ADDRESS, PORT);
+            dataChannel = Transports.listen(TRANSPORT, GROUP_ADDRESS, PORT, registryPort + TCP_DATA_PORT_OFFSET);
+            controlChannel = Transports.listen(TRANSPORT, GROUP_ADDRESS, FLOW_CONTROL_PORT, registryPort + TCP_CONTROL_PORT_OFFSET);
 
             System.out.println("IndexStorageBarrel " + barrelId + " conectado ao grupo multicast.");
 
@@ -121,6 +209,9 @@ public class IndexStorageBarrel extends UnicastRemoteObject implements IndexStor
      * The database schema includes:
      * - index_data table: stores words and their associated URLs
      * - links_graph table: stores the web page link relationships
+     * - term_freqs table: stores how often each word occurs in each page
+     * - documents table: stores the number of terms of each page
+     * - duplicates table: maps near-duplicate pages to the indexed page they copy
      *
      * Performance optimizations include:
      * - Write-Ahead Logging (WAL) for improved concurrency
@@ -165,6 +256,23 @@ public class IndexStorageBarrel extends UnicastRemoteObject implements IndexStor
                 // Create indices to improve link query performance
                 stmt.execute("CREATE INDEX IF NOT EXISTS idx_source_url ON links_graph(source_url)");
                 stmt.execute("CREATE INDEX IF NOT EXISTS idx_linked_url ON links_graph(linked_url)");
+
+                // Create term_freqs table for the occurrences of each word in each page
+                stmt.execute("CREATE TABLE IF NOT EXISTS term_freqs (" +
+                        "word TEXT, " +                             // The indexed word
+                        "url TEXT, " +                              // URL of the page containing the word
+                        "tf INTEGER, " +                            // Occurrences of the word in the page
+                        "PRIMARY KEY (word, url))");
+
+                // Create duplicates table for pages skipped as near-duplicates of an indexed page
+                stmt.execute("CREATE TABLE IF NOT EXISTS duplicates (" +
+                        "url TEXT PRIMARY KEY, " +                  // URL of the duplicate page
+                        "original_url TEXT)");                      // URL of the indexed page it duplicates
+
+                // Create documents table for the length of each indexed page
+                stmt.execute("CREATE TABLE IF NOT EXISTS documents (" +
+                        "url TEXT PRIMARY KEY, " +                  // URL of the page
+                        "length INTEGER)");                         // Number of terms in the page
             }
 
         } catch (SQLException e) {
@@ -176,44 +284,72 @@ public class IndexStorageBarrel extends UnicastRemoteObject implements IndexStor
     //----------------------------------------METHODS----------------------------------------
 
     /**
-     * Continuously listens for multicast messages and processes them accordingly.
+     * Continuously listens for multicast messages and hands them to the ingest queue.
      *
      * This method implements a non-terminating loop that:
      * 1. Receives messages from the multicast group
-     * 2. Parses the message format
-     * 3. Processes messages based on their format:
-     *    - Word;URL format for adding to the inverted index
-     *    - addLink;sourceUrl;linkedUrl format for adding link relationships
+     * 2. Offers them to the bounded ingest queue drained by {@link #ingest()}
+     * 3. When the queue is full, waits for room on a reliable transport (TCP) and
+     *    drops the message on a best-effort one (multicast, loopback), counting the
+     *    drops and the time spent saturated
      * 4. Handles connection errors with reconnection logic
      *
+     * Decoupling reception from the database writes keeps the socket drained while
+     * the writer applies messages in batches, and gives the barrel a queue depth to
+     * advertise as credits to the Downloaders.
+     *
+     * On TCP, waiting stops the reader and TCP flow control slows the Downloaders
+     * down, so nothing is lost. On multicast, waiting would only move the loss into
+     * the socket's receive buffer, where the kernel drops datagrams without a count,
+     * and would let it fill with stale messages; dropping here keeps the loss visible
+     * in the statistics while the credits throttle the senders.
+     *
      * The method includes error recovery mechanisms to reconnect to the
      * multicast group after a failure.
      */
     public void listen() {
         try {
             System.out.println("Barrel " + barrelId + " iniciando escuta de mensagens multicast...");
+            long saturatedSince = 0;
             while (true) {
-                String message = multicast.receiveMessage();
-                String[] parts = message.split(";");
+                String message = dataChannel.receive();
 
-                if (parts.length == 2) {
-                    // Word;URL format for indexing
-                    addToIndex(parts[0], parts[1]);
-                } else if (parts.length == 3 && "addLink".equals(parts[0])) {
-                    // addLink;sourceUrl;linkedUrl format for link relationships
-                    addLink(parts[1], parts[2]);
+                if (ingestQueue.offer(message)) {
+                    if (saturatedSince != 0) {
+                        saturatedMillis.addAndGet(System.currentTimeMillis() - saturatedSince);
+                        saturatedSince = 0;
+                    }
+                } else if (dataChannel.isReliable()) {
+                    // Stop reading until there is room; TCP pushes back on the Downloaders
+                    long blockedSince = System.currentTimeMillis();
+                    try {
+                        ingestQueue.put(message);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        System.err.println("Barrel " + barrelId + " interrompido na recepção de dados.");
+                        return;
+                    }
+                    saturatedMillis.addAndGet(System.currentTimeMillis() - blockedSince);
                 } else {
-                    System.err.println("Invalid message format received: " + message);
+                    droppedMessages.incrementAndGet();
+                    if (saturatedSince == 0) {
+                        saturatedSince = System.currentTimeMillis();
+                    }
                 }
             }
-        } catch (IOException | SQLException e) {
+        } catch (IOException e) {
             System.err.println("Barrel " + barrelId + " erro na recepção de dados multicast: " + e.getMessage());
             e.printStackTrace();
 
             // Attempt to reconnect to the multicast group after a delay
             try {
                 Thread.sleep(5000);
-                multicast = new ReliableMulticast(GROUP_ADDRESS, PORT);
+                try {
+                    dataChannel.close();
+                } catch (IOException ignored) {
+                    // The old endpoint is already broken
+                }
+                dataChannel = Transports.listen(TRANSPORT, GROUP_ADDRESS, PORT, registryPort + TCP_DATA_PORT_OFFSET);
                 System.out.println("Barrel " + barrelId + " reconectado ao grupo multicast.");
                 listen(); // Restart listening
             } catch (Exception ex) {
@@ -223,6 +359,157 @@ public class IndexStorageBarrel extends UnicastRemoteObject implements IndexStor
         }
     }
 
+    /**
+     * Drains the ingest queue and applies its messages to the database in batches.
+     *
+     * Each batch is written in a single transaction; see {@link #writeBatch(List)}
+     * for what happens when it fails. Supported message formats are:
+     * - Word;URL format for adding to the inverted index
+     * - Word;URL;count;documentLength format for a page's aggregated terms
+     * - duplicateOf;url;originalUrl format for near-duplicate pages
+     * - addLink;sourceUrl;linkedUrl format for adding link relationships
+     */
+    public void ingest() {
+        List<String> batch = new ArrayList<>(INGEST_BATCH_SIZE);
+        while (true) {
+            try {
+                batch.add(ingestQueue.take());
+                ingestQueue.drainTo(batch, INGEST_BATCH_SIZE - 1);
+                writeBatch(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                System.err.println("Barrel " + barrelId + " escrita interrompida: " + e.getMessage());
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Writes a batch of messages, retrying with a growing delay if its transaction fails.
+     *
+     * If the batch still fails after {@link #INGEST_MAX_RETRIES} retries, its messages
+     * are applied one per transaction, so a message that cannot be written is the only
+     * one lost. Such messages are logged and counted in the statistics.
+     *
+     * @param batch The messages to write
+     * @throws InterruptedException If interrupted while waiting to retry
+     */
+    private void writeBatch(List<String> batch) throws InterruptedException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                applyBatch(batch);
+                appliedMessages.addAndGet(batch.size());
+                return;
+            } catch (SQLException e) {
+                if (attempt > INGEST_MAX_RETRIES) {
+                    System.err.println("Barrel " + barrelId + " erro ao aplicar lote de " + batch.size()
+                            + " mensagens após " + attempt + " tentativas, a aplicar uma a uma: " + e.getMessage());
+                    break;
+                }
+                System.err.println("Barrel " + barrelId + " erro ao aplicar lote, nova tentativa: " + e.getMessage());
+            }
+            Thread.sleep(100L * attempt);
+        }
+
+        for (String message : batch) {
+            try {
+                applyBatch(List.of(message));
+                appliedMessages.incrementAndGet();
+            } catch (SQLException e) {
+                failedMessages.incrementAndGet();
+                System.err.println("Barrel " + barrelId + " mensagem descartada: " + message + " - " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Applies a batch of multicast messages to the database in one transaction.
+     *
+     * Every URL is stored in canonical form, so equivalent spellings of a page
+     * share one document id.
+     *
+     * @param batch The messages to apply
+     * @throws SQLException If a database error occurs; the whole batch is rolled back
+     */
+    private synchronized void applyBatch(List<String> batch) throws SQLException {
+        connection.setAutoCommit(false);
+        try {
+            String lastDocumentUrl = null;
+            for (String message : batch) {
+                String[] parts = message.split(";");
+
+                if (parts.length == 2) {
+                    // Word;URL format for indexing
+                    indexWord(parts[0], docId(parts[1]));
+                } else if (parts.length == 4) {
+                    // Word;URL;count;documentLength format for aggregated page terms
+                    try {
+                        int count = Integer.parseInt(parts[2]);
+                        int documentLength = Integer.parseInt(parts[3]);
+                        String url = docId(parts[1]);
+                        indexWord(parts[0], url);
+                        recordTermFrequency(parts[0], url, count);
+                        // A page's terms arrive together, so its length is written once per run
+                        if (!url.equals(lastDocumentUrl)) {
+                            recordDocumentLength(url, documentLength);
+                            lastDocumentUrl = url;
+                        }
+                    } catch (NumberFormatException e) {
+                        System.err.println("Invalid message format received: " + message);
+                    }
+                } else if (parts.length == 3 && "addLink".equals(parts[0])) {
+                    // addLink;sourceUrl;linkedUrl format for link relationships
+                    insertLink(docId(parts[1]), docId(parts[2]));
+                } else if (parts.length == 3 && "duplicateOf".equals(parts[0])) {
+                    // duplicateOf;url;originalUrl format for near-duplicate pages
+                    recordDuplicate(docId(parts[1]), docId(parts[2]));
+                } else {
+                    System.err.println("Invalid message format received: " + message);
+                }
+            }
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the document id of a page: its URL in canonical form, or the URL as
+     * received if it cannot be canonicalized.
+     *
+     * @param url The URL of the page
+     * @return The document id
+     */
+    private static String docId(String url) {
+        return canonicalizer.canonicalOrSelf(url);
+    }
+
+    /**
+     * Starts advertising this barrel's ingest credits on the control channel.
+     *
+     * Every interval the barrel publishes the free slots of its ingest queue and
+     * the rate at which it drained messages since the previous advertisement, so
+     * Downloaders can throttle to what the barrels actually absorb.
+     */
+    public void startAdvertisingCredits() {
+        advertiseExecutor = Executors.newSingleThreadScheduledExecutor();
+        long[] lastApplied = {appliedMessages.get()};
+        advertiseExecutor.scheduleAtFixedRate(() -> {
+            long applied = appliedMessages.get();
+            drainRate = (applied - lastApplied[0]) * 1000.0 / FLOW_CONTROL_INTERVAL_MS;
+            lastApplied[0] = applied;
+            try {
+                controlChannel.send(FlowController.encodeAdvertisement(
+                        barrelId, ingestQueue.remainingCapacity(), INGEST_QUEUE_CAPACITY, drainRate));
+            } catch (IOException e) {
+                System.err.println("Barrel " + barrelId + " erro ao anunciar créditos: " + e.getMessage());
+            }
+        }, FLOW_CONTROL_INTERVAL_MS, FLOW_CONTROL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
     /**
      * Adds a word and its associated URL to the inverted index.
      *
@@ -249,48 +536,7 @@ public class IndexStorageBarrel extends UnicastRemoteObject implements IndexStor
         try {
             conn = connection;
             conn.setAutoCommit(false);  // Start transaction for atomicity
-
-            String existingUrls = null;
-
-            // Check if the word already exists in the database
-            try (PreparedStatement stmt = conn.prepareStatement("SELECT urls FROM index_data WHERE word = ?")) {
-                stmt.setString(1, word);
-                try (ResultSet rs = stmt.executeQuery()) {
-                    if (rs.next()) {
-                        existingUrls = rs.getString("urls");
-                    }
-                }
-            }
-
-            // Update or insert the word with associated URLs
-            if (existingUrls != null) {
-                // Check if the URL already exists for this word
-                String[] urlArray = existingUrls.split(";");
-                boolean urlExists = false;
-                for (String existingUrl : urlArray) {
-                    if (existingUrl.equals(url)) {
-                        urlExists = true;
-                        break;
-                    }
-                }
-
-                if (!urlExists) {
-                    // Append new URL to existing URLs
-                    existingUrls += ";" + url;
-                    try (PreparedStatement updateStmt = conn.prepareStatement("UPDATE index_data SET urls = ? WHERE word = ?")) {
-                        updateStmt.setString(1, existingUrls);
-                        updateStmt.setString(2, word);
-                        updateStmt.executeUpdate();
-                    }
-                }
-            } else {
-                // Insert new word-URL pair
-                try (PreparedStatement insertStmt = conn.prepareStatement("INSERT INTO index_data (word, urls) VALUES (?, ?)")) {
-                    insertStmt.setString(1, word);
-                    insertStmt.setString(2, url);
-                    insertStmt.executeUpdate();
-                }
-            }
+            indexWord(word, docId(url));
             conn.commit();  // Commit the transaction
 
         } catch (SQLException e) {
@@ -306,6 +552,117 @@ public class IndexStorageBarrel extends UnicastRemoteObject implements IndexStor
         }
     }
 
+    /**
+     * Associates a word with a URL inside the caller's transaction.
+     *
+     * If the word already exists, the URL is appended to its list unless already
+     * present; otherwise a new entry is created. The caller is responsible for
+     * committing or rolling back.
+     *
+     * @param word The word to be indexed
+     * @param url The URL where the word was found
+     * @throws SQLException If a database error occurs
+     */
+    private void indexWord(String word, String url) throws SQLException {
+        if (word == null || word.trim().isEmpty() || url == null || url.trim().isEmpty()) {
+            System.err.println("Barrel " + barrelId + " tentativa de adicionar palavra ou URL vazio");
+            return;
+        }
+
+        String existingUrls = null;
+
+        // Check if the word already exists in the database
+        try (PreparedStatement stmt = connection.prepareStatement("SELECT urls FROM index_data WHERE word = ?")) {
+            stmt.setString(1, word);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    existingUrls = rs.getString("urls");
+                }
+            }
+        }
+
+        // Update or insert the word with associated URLs
+        if (existingUrls != null) {
+            // Check if the URL already exists for this word
+            String[] urlArray = existingUrls.split(";");
+            boolean urlExists = false;
+            for (String existingUrl : urlArray) {
+                if (existingUrl.equals(url)) {
+                    urlExists = true;
+                    break;
+                }
+            }
+
+            if (!urlExists) {
+                // Append new URL to existing URLs
+                existingUrls += ";" + url;
+                try (PreparedStatement updateStmt = connection.prepareStatement("UPDATE index_data SET urls = ? WHERE word = ?")) {
+                    updateStmt.setString(1, existingUrls);
+                    updateStmt.setString(2, word);
+                    updateStmt.executeUpdate();
+                }
+            }
+        } else {
+            // Insert new word-URL pair
+            try (PreparedStatement insertStmt = connection.prepareStatement("INSERT INTO index_data (word, urls) VALUES (?, ?)")) {
+                insertStmt.setString(1, word);
+                insertStmt.setString(2, url);
+                insertStmt.executeUpdate();
+            }
+        }
+    }
+
+    /**
+     * Records how often a word occurs in a page, inside the caller's transaction.
+     * A page that is indexed again replaces its previous count.
+     *
+     * @param word The indexed word
+     * @param url The URL where the word was found
+     * @param count Occurrences of the word in the page
+     * @throws SQLException If a database error occurs
+     */
+    private void recordTermFrequency(String word, String url, int count) throws SQLException {
+        try (PreparedStatement stmt = connection.prepareStatement(
+                "INSERT OR REPLACE INTO term_freqs (word, url, tf) VALUES (?, ?, ?)")) {
+            stmt.setString(1, word);
+            stmt.setString(2, url);
+            stmt.setInt(3, count);
+            stmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Records that a page is a near-duplicate of an indexed page, inside the caller's transaction.
+     *
+     * @param url The URL of the duplicate page
+     * @param originalUrl The URL of the indexed page it duplicates
+     * @throws SQLException If a database error occurs
+     */
+    private void recordDuplicate(String url, String originalUrl) throws SQLException {
+        try (PreparedStatement stmt = connection.prepareStatement(
+                "INSERT OR REPLACE INTO duplicates (url, original_url) VALUES (?, ?)")) {
+            stmt.setString(1, url);
+            stmt.setString(2, originalUrl);
+            stmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Records the number of terms of a page, inside the caller's transaction.
+     *
+     * @param url The URL of the page
+     * @param documentLength Number of terms in the page
+     * @throws SQLException If a database error occurs
+     */
+    private void recordDocumentLength(String url, int documentLength) throws SQLException {
+        try (PreparedStatement stmt = connection.prepareStatement(
+                "INSERT OR REPLACE INTO documents (url, length) VALUES (?, ?)")) {
+            stmt.setString(1, url);
+            stmt.setInt(2, documentLength);
+            stmt.executeUpdate();
+        }
+    }
+
     /**
      * Searches for a word in the inverted index and returns all URLs containing it.
      *
@@ -318,13 +675,12 @@ public class IndexStorageBarrel extends UnicastRemoteObject implements IndexStor
      */
     @Override
     public List<String> searchWord(String words) throws RemoteException {
-        // Split the input string into individual words
-        String[] wordArray = words.trim().split("\\s+");
+        // Split the query into terms with the same tokenizer the Downloaders use at index time
+        List<String> terms = new Tokenizer().terms(words);
         List<Set<String>> listOfUrlSets = new ArrayList<>();
 
-        // Process each word in the query
-        for (String word : wordArray) {
-            String normalizedWord = normalizeWord(word); // Normalize the word
+        // Process each term in the query
+        for (String normalizedWord : terms) {
             Set<String> urlSet = new HashSet<>();
             try (PreparedStatement stmt = connection.prepareStatement(
                     "SELECT urls FROM index_data WHERE word = ?")) {
@@ -368,24 +724,6 @@ public class IndexStorageBarrel extends UnicastRemoteObject implements IndexStor
         return sortUrlsByLinkedCount(commonUrlsList);
     }
 
-    // Helper method to normalize a single word
-    private String normalizeWord(String word) {
-        if (word == null) return "";
-
-        // Convert to lowercase
-        String normalized = word.toLowerCase();
-
-        // Normalize accents using NFD (Normalization Form Decomposed)
-        normalized = java.text.Normalizer.normalize(normalized, java.text.Normalizer.Form.NFD);
-
-        // Remove diacritical marks (accents)
-        normalized = normalized.replaceAll("\\p{M}", "");
-
-        // Remove special characters, keeping only letters and numbers
-        normalized = normalized.replaceAll("[^a-z0-9]", "");
-
-        return normalized;
-    }
     /**
      * Sorts a list of URLs based on the number of inbound links they have.
      * The method queries the database to count how many times each URL appears 
@@ -438,7 +776,7 @@ public class IndexStorageBarrel extends UnicastRemoteObject implements IndexStor
         List<String> inboundLinks = new ArrayList<>();
         String sql = "SELECT source_url FROM links_graph WHERE linked_url = ?";
         try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setString(1, pageUrl);
+            stmt.setString(1, docId(pageUrl));
             ResultSet rs = stmt.executeQuery();
             while (rs.next()) {
                 inboundLinks.add(rs.getString("source_url"));
@@ -473,14 +811,8 @@ public class IndexStorageBarrel extends UnicastRemoteObject implements IndexStor
             conn = connection;
             conn.setAutoCommit(false);  // Start transaction
 
-            try (PreparedStatement stmt = conn.prepareStatement("INSERT OR IGNORE INTO links_graph (source_url, linked_url) VALUES (?, ?)")) {
-                stmt.setString(1, sourceUrl);
-                stmt.setString(2, linkedUrl);
-                int rowsAffected = stmt.executeUpdate();
-
-                conn.commit();  // Commit transaction
-
-            }
+            insertLink(docId(sourceUrl), docId(linkedUrl));
+            conn.commit();  // Commit transaction
         } catch (SQLException e) {
             System.err.println("Barrel " + barrelId + " erro ao adicionar link: " + e.getMessage());
             try {
@@ -495,6 +827,27 @@ public class IndexStorageBarrel extends UnicastRemoteObject implements IndexStor
         }
     }
 
+    /**
+     * Records a link relationship inside the caller's transaction.
+     *
+     * @param sourceUrl The URL of the page containing the link
+     * @param linkedUrl The URL of the linked page
+     * @throws SQLException If a database error occurs
+     */
+    private void insertLink(String sourceUrl, String linkedUrl) throws SQLException {
+        if (sourceUrl == null || sourceUrl.trim().isEmpty() ||
+                linkedUrl == null || linkedUrl.trim().isEmpty()) {
+            System.err.println("Barrel " + barrelId + " tentativa de adicionar link com URL vazio");
+            return;
+        }
+
+        try (PreparedStatement stmt = connection.prepareStatement("INSERT OR IGNORE INTO links_graph (source_url, linked_url) VALUES (?, ?)")) {
+            stmt.setString(1, sourceUrl);
+            stmt.setString(2, linkedUrl);
+            stmt.executeUpdate();
+        }
+    }
+
     /**
      * Checks if a URL is present in the inverted index.
      *
@@ -508,7 +861,7 @@ public class IndexStorageBarrel extends UnicastRemoteObject implements IndexStor
     @Override
     public boolean isUrlIndexed(String url) throws RemoteException {
         try (PreparedStatement stmt = connection.prepareStatement("SELECT 1 FROM index_data WHERE urls LIKE ? LIMIT 1")) {
-            stmt.setString(1, "%" + url + "%");
+            stmt.setString(1, "%" + docId(url) + "%");
             ResultSet rs = stmt.executeQuery();
             return rs.next();
         } catch (SQLException e) {
@@ -550,6 +903,14 @@ public class IndexStorageBarrel extends UnicastRemoteObject implements IndexStor
                 }
             }
 
+            // Count pages recorded as near-duplicates
+            try (Statement stmt = connection.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM duplicates")) {
+                if (rs.next()) {
+                    stats.put("near_duplicates", rs.getInt(1));
+                }
+            }
+
             // Calculate database size
             try (Statement stmt = connection.createStatement();
                  ResultSet rs = stmt.executeQuery("PRAGMA page_count")) {
@@ -565,6 +926,15 @@ public class IndexStorageBarrel extends UnicastRemoteObject implements IndexStor
                 }
             }
 
+            // Ingest queue and flow control state
+            stats.put("ingest_queue_depth", ingestQueue.size());
+            stats.put("ingest_credits", ingestQueue.remainingCapacity());
+            stats.put("ingest_drain_rate_per_s", String.format(Locale.ROOT, "%.1f", drainRate));
+            stats.put("ingest_dropped_messages", droppedMessages.get());
+            stats.put("ingest_failed_messages", failedMessages.get());
+            stats.put("ingest_saturated_ms", saturatedMillis.get());
+            stats.put("url_canonicalization", canonicalizer.report());
+
             // Add barrel identification and status information
             stats.put("barrel_id", barrelId);
             stats.put("status", "active");
@@ -626,7 +996,7 @@ public class IndexStorageBarrel extends UnicastRemoteObject implements IndexStor
      * 3. Initializes the IndexStorageBarrel server
      * 4. Sets up the RMI registry and registers the service
      * 5. Connects to the URLQueue service
-     * 6. Starts a multicast listener thread
+     * 6. Starts a multicast listener thread, the ingest writer and the credit advertisements
      * 7. Adds a shutdown hook for clean resource termination
      *
      * @param args Command-line arguments (args[0]: port number, args[1]: optional barrel ID)
@@ -649,7 +1019,7 @@ public class IndexStorageBarrel extends UnicastRemoteObject implements IndexStor
             }
 
             // Initialize the RMI server
-            IndexStorageBarrel server = new IndexStorageBarrel(barrelId);
+            IndexStorageBarrel server = new IndexStorageBarrel(barrelId, port);
 
             // Create or connect to Registry on the specified port
             Registry registry = null;
@@ -679,6 +1049,12 @@ public class IndexStorageBarrel extends UnicastRemoteObject implements IndexStor
             listenerThread.start();
             System.out.println("Barrel " + barrelId + " thread de escuta multicast iniciada.");
 
+            // Start the database writer and the credit advertisements for the Downloaders
+            Thread ingestThread = new Thread(server::ingest);
+            ingestThread.setName("IngestWriter-" + barrelId);
+            ingestThread.start();
+            server.startAdvertisingCredits();
+
             // Add shutdown hook for clean resource termination
             String finalBarrelId = barrelId;
             Registry finalRegistry = registry;
@@ -686,7 +1062,9 @@ public class IndexStorageBarrel extends UnicastRemoteObject implements IndexStor
                 try {
                     System.out.println("Desligando barrel " + finalBarrelId + "...");
                     finalRegistry.unbind(serviceName);
-                    multicast.leaveGroup();
+                    dataChannel.close();
+                    controlChannel.close();
+                    server.advertiseExecutor.shutdownNow();
                     if (server.connection != null && !server.connection.isClosed()) {
                         server.connection.close();
                     }
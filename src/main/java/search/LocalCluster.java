@@ -0,0 +1,56 @@
+package search;
+
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import search.Sockets.Transports;
+
+/**
+ * Launches a complete crawl pipeline inside a single JVM for throughput benchmarks.
+ *
+ * <p>The URLQueue, one IndexStorageBarrel and the Downloader are started in this
+ * process and exchange index data over the in-JVM loopback transport, so measurements
+ * are not affected by network noise. The RMI services still use the ports from
+ * {@code config.properties}.</p>
+ *
+ * <p>To run without network access, write a corpus with {@link CorpusGenerator}, set
+ * {@code FETCH_MODE=replay} and {@code CRAWL_ARCHIVE} to its file, and seed with
+ * {@code http://site0.test/}.</p>
+ *
+ * <p>Usage: {@code java search.LocalCluster <barrelPort> <seedUrl> [seedUrl...]}</p>
+ *
+ * @author João Antunes, David Cameijo and Gabriel Pinto
+ */
+public class LocalCluster {
+
+    /**
+     * Starts the in-process cluster, seeds the queue and runs the Downloader.
+     *
+     * @param args Command-line arguments (args[0]: barrel registry port, args[1..]: seed URLs)
+     */
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.err.println("Usage: java search.LocalCluster <barrelPort> <seedUrl> [seedUrl...]");
+            return;
+        }
+
+        // Every component in this JVM exchanges index data through the loopback transport
+        System.setProperty("googol.transport", Transports.LOOPBACK);
+
+        try {
+            URLQueue.main(new String[0]);
+            IndexStorageBarrel.main(new String[]{args[0], "local_" + args[0]});
+
+            Registry registry = LocateRegistry.getRegistry("localhost", URLQueue.getRegistryPort());
+            URLQueueInterface queue = (URLQueueInterface) registry.lookup("URLQueueService");
+            queue.addUrls(new ArrayList<>(Arrays.asList(args).subList(1, args.length)));
+
+            Downloader.main(new String[0]);
+        } catch (Exception e) {
+            System.err.println("Failed to start local cluster: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,266 @@
+package search.Sockets;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Credit-based flow controller used by senders of index traffic (the Downloaders).
+ *
+ * <p>Storage barrels periodically advertise their ingest capacity on a lightweight
+ * control channel using messages of the form:</p>
+ * <pre>credit;barrelId;credits;capacity;drainRatePerSecond</pre>
+ *
+ * <p>The controller keeps the latest advertisement of every barrel and derives a send
+ * rate from it. A barrel can absorb, over the next advertising interval, everything it
+ * drains plus its free queue slots, so its sustainable rate is
+ * {@code drainRate + credits / interval}. The sender is throttled to the slowest live
+ * barrel or, when a quorum is configured, to the rate that at least {@code quorum}
+ * barrels can sustain.</p>
+ *
+ * <p>Throttling uses a reservation-style token bucket: callers reserve permits and sleep
+ * for the time needed to repay them, so the lock is only held for the arithmetic.</p>
+ */
+public class FlowController {
+
+    /** Prefix of credit advertisement messages on the control channel */
+    public static final String CREDIT_PREFIX = "credit";
+
+    /** Lower bound for the send rate, so a stalled barrel never blocks senders forever */
+    private static final double MIN_RATE = 50.0;
+
+    /** Maximum burst, in seconds worth of the current rate */
+    private static final double BURST_SECONDS = 0.1;
+
+    /** Channel on which barrels advertise their credits */
+    private final Transport controlChannel;
+
+    /** Interval between barrel advertisements in milliseconds */
+    private final long advertiseIntervalMs;
+
+    /** Number of barrels that must sustain the chosen rate (0 means all live barrels) */
+    private final int quorum;
+
+    /** Latest advertisement received from each barrel */
+    private final Map<String, Advertisement> advertisements = new ConcurrentHashMap<>();
+
+    /** Total time callers spent sleeping because of the rate limit */
+    private final AtomicLong throttledNanos = new AtomicLong();
+
+    /** Number of permits granted so far */
+    private final AtomicLong grantedPermits = new AtomicLong();
+
+    /** Available tokens; negative values are permits reserved in the future */
+    private double tokens;
+
+    /** Time of the last token refill */
+    private long lastRefillNanos = System.nanoTime();
+
+    /** Thread reading advertisements from the control channel */
+    private Thread listenerThread;
+
+    /** Flag used to stop the listener thread */
+    private volatile boolean running;
+
+    /**
+     * Snapshot of the ingest capacity advertised by one barrel.
+     */
+    private record Advertisement(long credits, long capacity, double drainRate, long receivedAtMs) {
+
+        /**
+         * Returns the rate, in messages per second, this barrel can absorb.
+         *
+         * @param intervalMs The advertising interval in milliseconds
+         * @return The sustainable send rate for this barrel
+         */
+        double sustainableRate(long intervalMs) {
+            return drainRate + credits * 1000.0 / intervalMs;
+        }
+    }
+
+    /**
+     * Creates a flow controller that listens for advertisements on the given channel.
+     *
+     * @param controlChannel The control channel barrels advertise on
+     * @param advertiseIntervalMs The interval between barrel advertisements in milliseconds
+     * @param quorum Number of barrels that must sustain the rate, or 0 for all live barrels
+     */
+    public FlowController(Transport controlChannel, long advertiseIntervalMs, int quorum) {
+        this.controlChannel = controlChannel;
+        this.advertiseIntervalMs = advertiseIntervalMs;
+        this.quorum = quorum;
+    }
+
+    /**
+     * Starts the background thread that consumes credit advertisements.
+     */
+    public void start() {
+        running = true;
+        listenerThread = new Thread(this::listen, "FlowControlListener");
+        listenerThread.setDaemon(true);
+        listenerThread.start();
+    }
+
+    /**
+     * Stops the listener thread. Permits are granted without limit afterwards.
+     */
+    public void stop() {
+        running = false;
+        if (listenerThread != null) {
+            listenerThread.interrupt();
+        }
+        advertisements.clear();
+    }
+
+    /**
+     * Builds a credit advertisement message for a barrel.
+     *
+     * @param barrelId The identifier of the advertising barrel
+     * @param credits Free slots in the barrel's ingest queue
+     * @param capacity Total capacity of the barrel's ingest queue
+     * @param drainRate Messages applied per second over the last interval
+     * @return The encoded advertisement
+     */
+    public static String encodeAdvertisement(String barrelId, long credits, long capacity, double drainRate) {
+        return CREDIT_PREFIX + ";" + barrelId + ";" + credits + ";" + capacity + ";" + String.format(Locale.ROOT, "%.1f", drainRate);
+    }
+
+    /**
+     * Reads advertisements from the control channel until stopped.
+     */
+    private void listen() {
+        while (running) {
+            try {
+                handleMessage(controlChannel.receive());
+            } catch (IOException e) {
+                if (running) {
+                    System.err.println("Flow control channel error: " + e.getMessage());
+                    try {
+                        Thread.sleep(advertiseIntervalMs);
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Parses a control message and records it if it is a credit advertisement.
+     *
+     * @param message The raw control message
+     */
+    void handleMessage(String message) {
+        String[] parts = message.split(";");
+        if (parts.length != 5 || !CREDIT_PREFIX.equals(parts[0])) {
+            return;
+        }
+        try {
+            advertisements.put(parts[1], new Advertisement(
+                    Long.parseLong(parts[2]),
+                    Long.parseLong(parts[3]),
+                    Double.parseDouble(parts[4]),
+                    System.currentTimeMillis()));
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid credit advertisement: " + message);
+        }
+    }
+
+    /**
+     * Returns the sustainable rate of every barrel that advertised recently.
+     * A barrel is considered dead after three missed advertisements.
+     *
+     * @return The sustainable rates of the live barrels, in messages per second
+     */
+    private List<Double> liveRates() {
+        long now = System.currentTimeMillis();
+        long staleAfterMs = advertiseIntervalMs * 3;
+        List<Double> rates = new ArrayList<>();
+        advertisements.values().removeIf(ad -> now - ad.receivedAtMs() > staleAfterMs);
+        for (Advertisement ad : advertisements.values()) {
+            rates.add(ad.sustainableRate(advertiseIntervalMs));
+        }
+        return rates;
+    }
+
+    /**
+     * Returns the current send rate limit in messages per second.
+     *
+     * @return The rate limit, or {@link Double#POSITIVE_INFINITY} if no barrel is advertising
+     */
+    public double currentRateLimit() {
+        List<Double> rates = liveRates();
+        if (rates.isEmpty()) {
+            return Double.POSITIVE_INFINITY;
+        }
+
+        // Sort fastest first; the quorum-th entry is the rate that many barrels can sustain
+        rates.sort((a, b) -> Double.compare(b, a));
+        int index = (quorum <= 0 || quorum > rates.size()) ? rates.size() - 1 : quorum - 1;
+        return Math.max(MIN_RATE, rates.get(index));
+    }
+
+    /**
+     * Acquires one send permit, blocking while the sender is over its rate limit.
+     *
+     * @throws InterruptedException If the thread is interrupted while throttled
+     */
+    public void acquire() throws InterruptedException {
+        acquire(1);
+    }
+
+    /**
+     * Acquires send permits, blocking while the sender is over its rate limit.
+     *
+     * @param permits The number of messages about to be sent
+     * @throws InterruptedException If the thread is interrupted while throttled
+     */
+    public void acquire(int permits) throws InterruptedException {
+        double rate = currentRateLimit();
+        grantedPermits.addAndGet(permits);
+        if (Double.isInfinite(rate)) {
+            return;
+        }
+
+        long waitNanos;
+        synchronized (this) {
+            long now = System.nanoTime();
+            tokens = Math.min(rate * BURST_SECONDS, tokens + (now - lastRefillNanos) / 1e9 * rate);
+            lastRefillNanos = now;
+            tokens -= permits;
+            waitNanos = tokens >= 0 ? 0 : (long) (-tokens / rate * 1e9);
+        }
+
+        if (waitNanos > 0) {
+            throttledNanos.addAndGet(waitNanos);
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    /**
+     * Returns the total time senders spent throttled, in milliseconds.
+     *
+     * @return The accumulated throttled time
+     */
+    public long getThrottledMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(throttledNanos.get());
+    }
+
+    /**
+     * Returns a one-line summary of the current flow control state.
+     *
+     * @return A human-readable report
+     */
+    public String report() {
+        double rate = currentRateLimit();
+        String rateText = Double.isInfinite(rate) ? "unlimited" : String.format("%.0f msg/s", rate);
+        return String.format("Flow control: rate limit %s, %d live barrels, %d messages sent, throttled %d ms",
+                rateText, advertisements.size(), grantedPermits.get(), getThrottledMillis());
+    }
+}
@@ -0,0 +1,179 @@
+package search.Sockets;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * In-JVM implementation of {@link Transport} built on lock-free queues.
+ *
+ * <p>Endpoints that join the same channel name behave like members of a multicast
+ * group: a message sent by one endpoint is appended to the inbox of every other
+ * endpoint on the channel. Inboxes are {@link ConcurrentLinkedQueue}s and idle
+ * receivers park until a sender unparks them, so no locks are taken on the hot path.</p>
+ *
+ * <p>Like a socket's receive buffer, each inbox holds at most {@link #INBOX_CAPACITY}
+ * messages. A message delivered to a full inbox is dropped for that endpoint only and
+ * counted in {@link #droppedMessages()}; the sender never blocks. Dropping keeps the
+ * best-effort semantics of multicast, which the flow control is designed for, and
+ * bounds the inboxes of endpoints that only send (a Downloader's data endpoint still
+ * gets the messages of the other Downloaders and never reads them).</p>
+ *
+ * <p>This lets the whole crawl pipeline run inside one process, which removes network
+ * noise from throughput measurements.</p>
+ */
+public class LoopbackTransport implements Transport {
+
+    /** Maximum time a receiver parks before re-checking its inbox */
+    private static final long PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    /** Maximum number of messages waiting in an inbox */
+    private static final int INBOX_CAPACITY = 10000;
+
+    /** Endpoints currently joined to each channel */
+    private static final Map<String, List<LoopbackTransport>> CHANNELS = new ConcurrentHashMap<>();
+
+    /** Name of the channel this endpoint belongs to */
+    private final String channel;
+
+    /** Messages delivered to this endpoint and not yet received */
+    private final ConcurrentLinkedQueue<String> inbox = new ConcurrentLinkedQueue<>();
+
+    /** Number of messages in the inbox, kept apart because the queue's size is not constant-time */
+    private final AtomicInteger inboxSize = new AtomicInteger();
+
+    /** Messages dropped because the inbox was full */
+    private final AtomicLong dropped = new AtomicLong();
+
+    /** Thread currently parked in {@link #receive()}, if any */
+    private volatile Thread waiter;
+
+    /** Flag set once the endpoint is closed */
+    private volatile boolean closed;
+
+    /**
+     * Creates an endpoint that is not joined to its channel yet.
+     *
+     * @param channel The channel name
+     */
+    private LoopbackTransport(String channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * Creates an endpoint joined to the given in-process channel.
+     *
+     * @param channel The channel name; endpoints with the same name exchange messages
+     * @return The joined endpoint
+     */
+    public static LoopbackTransport join(String channel) {
+        LoopbackTransport endpoint = new LoopbackTransport(channel);
+        CHANNELS.computeIfAbsent(channel, k -> new CopyOnWriteArrayList<>()).add(endpoint);
+        return endpoint;
+    }
+
+    /**
+     * Appends a message to this endpoint's inbox and wakes its receiver, or drops it
+     * if the inbox is full.
+     *
+     * @param message The delivered message
+     */
+    private void deliver(String message) {
+        if (inboxSize.incrementAndGet() > INBOX_CAPACITY) {
+            inboxSize.decrementAndGet();
+            dropped.incrementAndGet();
+            return;
+        }
+        inbox.offer(message);
+        Thread parked = waiter;
+        if (parked != null) {
+            LockSupport.unpark(parked);
+        }
+    }
+
+    @Override
+    public void send(String message) throws IOException {
+        if (closed) {
+            throw new IOException("Loopback transport on channel " + channel + " is closed");
+        }
+        for (LoopbackTransport endpoint : CHANNELS.getOrDefault(channel, List.of())) {
+            if (endpoint != this) {
+                endpoint.deliver(message);
+            }
+        }
+    }
+
+    @Override
+    public void sendBatch(List<String> messages) throws IOException {
+        for (String message : messages) {
+            send(message);
+        }
+    }
+
+    /**
+     * Returns the number of messages this endpoint dropped because its inbox was full.
+     *
+     * @return The drop count since the endpoint joined
+     */
+    public long droppedMessages() {
+        return dropped.get();
+    }
+
+    /**
+     * Takes the next message from the inbox.
+     *
+     * @return The message, or null if the inbox is empty
+     */
+    private String poll() {
+        String message = inbox.poll();
+        if (message != null) {
+            inboxSize.decrementAndGet();
+        }
+        return message;
+    }
+
+    @Override
+    public String receive() throws IOException {
+        while (!closed) {
+            String message = poll();
+            if (message != null) {
+                return message;
+            }
+
+            // Publish ourselves before the second poll so a concurrent send cannot be missed
+            waiter = Thread.currentThread();
+            message = poll();
+            if (message != null) {
+                waiter = null;
+                return message;
+            }
+            LockSupport.parkNanos(this, PARK_NANOS);
+            waiter = null;
+
+            if (Thread.interrupted()) {
+                throw new IOException("Interrupted while waiting on loopback channel " + channel);
+            }
+        }
+        throw new IOException("Loopback transport on channel " + channel + " is closed");
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        List<LoopbackTransport> endpoints = CHANNELS.get(channel);
+        if (endpoints != null) {
+            endpoints.remove(this);
+        }
+        Thread parked = waiter;
+        if (parked != null) {
+            LockSupport.unpark(parked);
+        }
+    }
+}
@@ -6,12 +6,20 @@ import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.MulticastSocket;
 import java.net.NetworkInterface;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
 
 /**
  * Class for managing reliable multicast communication. It allows sending and receiving
  * messages within a multicast group and ensures that messages are delivered reliably.
+ *
+ * <p>This is the UDP multicast implementation of {@link Transport}. Batches are packed
+ * into datagrams of at most {@link #MAX_BATCH_BYTES} bytes, one message per line, and
+ * unpacked again on reception.</p>
  */
-public class ReliableMulticast {
+public class ReliableMulticast implements Transport {
 
     /** Multicast socket for communication */
     private MulticastSocket socket;
@@ -22,8 +30,17 @@ public class ReliableMulticast {
     /** Port for multicast communication */
     private int port;
 
-    /** Buffer size for receiving multicast messages */
-    private static final int BUF_SIZE = 1024;
+    /** Buffer size for receiving multicast messages (largest UDP payload) */
+    private static final int BUF_SIZE = 65507;
+
+    /** Maximum payload of a batched datagram, chosen to fit a typical Ethernet MTU */
+    private static final int MAX_BATCH_BYTES = 1400;
+
+    /** Separator between messages packed into the same datagram */
+    private static final char MESSAGE_SEPARATOR = '\n';
+
+    /** Messages unpacked from a batched datagram and not yet returned */
+    private final Deque<String> pending = new ArrayDeque<>();
 
     /**
      * Constructor for setting up the multicast socket, joining the multicast group, and initializing communication.
@@ -55,7 +72,7 @@ public class ReliableMulticast {
      * @throws IOException If there is an issue sending the message.
      */
     public void sendMessage(String message) throws IOException {
-        byte[] buf = message.getBytes();
+        byte[] buf = message.getBytes(StandardCharsets.UTF_8);
         DatagramPacket packet = new DatagramPacket(buf, buf.length, group, port);
         socket.send(packet);
         // System.out.println("Sent message: " + message);
@@ -64,16 +81,32 @@ public class ReliableMulticast {
     /**
      * Method to receive messages from the multicast group.
      *
+     * <p>If the datagram carries a batch, the first message is returned and the rest
+     * are kept for the following calls.</p>
+     *
      * @return The received message as a String.
      * @throws IOException If there is an issue receiving the message.
      */
-    public String receiveMessage() throws IOException {
+    public synchronized String receiveMessage() throws IOException {
+        if (!pending.isEmpty()) {
+            return pending.poll();
+        }
+
         byte[] buf = new byte[BUF_SIZE];
         DatagramPacket packet = new DatagramPacket(buf, buf.length);
         socket.receive(packet);
-        String received = new String(packet.getData(), 0, packet.getLength());
+        String received = new String(packet.getData(), 0, packet.getLength(), StandardCharsets.UTF_8);
         // System.out.println("Received message: " + received);
-        return received;
+
+        if (received.indexOf(MESSAGE_SEPARATOR) < 0) {
+            return received;
+        }
+        for (String message : received.split(String.valueOf(MESSAGE_SEPARATOR))) {
+            if (!message.isEmpty()) {
+                pending.add(message);
+            }
+        }
+        return pending.poll();
     }
 
     /**
@@ -92,4 +125,52 @@ public class ReliableMulticast {
         socket.close();
         System.out.println("Left multicast group and closed socket.");
     }
+
+    //----------------------------------------TRANSPORT----------------------------------------
+
+    @Override
+    public void send(String message) throws IOException {
+        sendMessage(message);
+    }
+
+    /**
+     * Packs the messages into as few datagrams as possible without exceeding
+     * {@link #MAX_BATCH_BYTES} per datagram. A message larger than the limit is
+     * sent in a datagram of its own.
+     *
+     * @param messages The messages to send, in order
+     * @throws IOException If a datagram cannot be sent
+     */
+    @Override
+    public void sendBatch(List<String> messages) throws IOException {
+        StringBuilder datagram = new StringBuilder(MAX_BATCH_BYTES);
+        int datagramBytes = 0;
+        for (String message : messages) {
+            int messageBytes = message.getBytes(StandardCharsets.UTF_8).length;
+            if (datagramBytes > 0 && datagramBytes + 1 + messageBytes > MAX_BATCH_BYTES) {
+                sendMessage(datagram.toString());
+                datagram.setLength(0);
+                datagramBytes = 0;
+            }
+            if (datagramBytes > 0) {
+                datagram.append(MESSAGE_SEPARATOR);
+                datagramBytes++;
+            }
+            datagram.append(message);
+            datagramBytes += messageBytes;
+        }
+        if (datagramBytes > 0) {
+            sendMessage(datagram.toString());
+        }
+    }
+
+    @Override
+    public String receive() throws IOException {
+        return receiveMessage();
+    }
+
+    @Override
+    public void close() throws IOException {
+        leaveGroup();
+    }
 }
@@ -0,0 +1,316 @@
+package search.Sockets;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * TCP implementation of {@link Transport} for networks where multicast is blocked.
+ *
+ * <p>The transport has two roles:</p>
+ * <ul>
+ *   <li><b>Server</b> (barrels): binds a port and accepts any number of connections.
+ *       {@link #receive()} returns frames sent by any client and {@link #send(String)}
+ *       broadcasts to every connected client.</li>
+ *   <li><b>Client</b> (Downloaders): connects to a fixed list of servers.
+ *       {@link #send(String)} fans the message out to every server and
+ *       {@link #receive()} returns frames sent back by any of them.</li>
+ * </ul>
+ *
+ * <p>Each message is one {@link DataOutputStream#writeUTF(String)} frame. A batch is
+ * written with a single flush per connection. The inbox is bounded, so a slow receiver
+ * pushes back on its senders through TCP flow control instead of dropping messages.</p>
+ */
+public class TcpFanoutTransport implements Transport {
+
+    /** Capacity of the inbox shared by all connections */
+    private static final int INBOX_CAPACITY = 10000;
+
+    /** Delay between reconnection attempts to servers whose connection was lost */
+    private static final long RECONNECT_DELAY_MS = 5000;
+
+    /** Connection timeout when dialing a server */
+    private static final int CONNECT_TIMEOUT_MS = 3000;
+
+    /** Frames received from any connection and not yet returned by {@link #receive()} */
+    private final BlockingQueue<String> inbox = new LinkedBlockingQueue<>(INBOX_CAPACITY);
+
+    /** Open connections (accepted clients in server mode, dialed servers in client mode) */
+    private final List<Connection> connections = new CopyOnWriteArrayList<>();
+
+    /** Servers to dial in client mode; empty in server mode. Guards the peers' connections */
+    private final List<Peer> peers = new ArrayList<>();
+
+    /** Listening socket in server mode; null in client mode */
+    private final ServerSocket serverSocket;
+
+    /** Flag set once the transport is closed */
+    private volatile boolean closed;
+
+    /**
+     * A server endpoint dialed in client mode.
+     */
+    private static class Peer {
+        final InetSocketAddress address;
+        Connection connection;
+
+        Peer(InetSocketAddress address) {
+            this.address = address;
+        }
+    }
+
+    /**
+     * One open TCP connection and its framed output stream.
+     */
+    private class Connection {
+        final Socket socket;
+        final DataOutputStream out;
+
+        Connection(Socket socket) throws IOException {
+            this.socket = socket;
+            socket.setTcpNoDelay(true);
+            this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            startDaemon(this::readLoop, "TcpFanoutReader-" + socket.getRemoteSocketAddress());
+        }
+
+        /**
+         * Reads frames from the socket into the shared inbox until the connection closes.
+         */
+        private void readLoop() {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()))) {
+                while (!closed) {
+                    inbox.put(in.readUTF());
+                }
+            } catch (EOFException e) {
+                // Remote side closed the connection
+            } catch (IOException e) {
+                if (!closed) {
+                    System.err.println("TCP transport connection lost: " + socket.getRemoteSocketAddress() + " - " + e.getMessage());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                close();
+            }
+        }
+
+        /**
+         * Writes the messages as consecutive frames and flushes once.
+         *
+         * @param messages The messages to write
+         * @throws IOException If the connection fails
+         */
+        synchronized void write(List<String> messages) throws IOException {
+            for (String message : messages) {
+                out.writeUTF(message);
+            }
+            out.flush();
+        }
+
+        void close() {
+            connections.remove(this);
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                // Already closed
+            }
+        }
+    }
+
+    /**
+     * Creates a server endpoint listening on the given port.
+     *
+     * @param port The TCP port to bind
+     * @throws IOException If the port cannot be bound
+     */
+    public TcpFanoutTransport(int port) throws IOException {
+        this.serverSocket = new ServerSocket(port);
+        startDaemon(this::acceptLoop, "TcpFanoutAcceptor-" + port);
+        System.out.println("TCP transport listening on port " + port);
+    }
+
+    /**
+     * Creates a client endpoint that fans messages out to the given servers.
+     * Servers that are not reachable yet are dialed again in the background every
+     * {@link #RECONNECT_DELAY_MS} milliseconds.
+     *
+     * @param servers The server addresses to connect to
+     */
+    public TcpFanoutTransport(List<InetSocketAddress> servers) {
+        this.serverSocket = null;
+        for (InetSocketAddress server : servers) {
+            peers.add(new Peer(server));
+        }
+        for (Peer peer : peers) {
+            connect(peer);
+        }
+        if (!peers.isEmpty()) {
+            startDaemon(this::reconnectLoop, "TcpFanoutReconnector");
+        }
+    }
+
+    /**
+     * Starts a daemon thread running the given task.
+     *
+     * @param task The task to run
+     * @param name The thread name
+     */
+    private static void startDaemon(Runnable task, String name) {
+        Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Accepts client connections until the transport is closed.
+     */
+    private void acceptLoop() {
+        while (!closed) {
+            try {
+                connections.add(new Connection(serverSocket.accept()));
+            } catch (IOException e) {
+                if (!closed) {
+                    System.err.println("TCP transport failed to accept connection: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Redials the servers whose connection was lost until the transport is closed.
+     *
+     * <p>Dialing can block for up to {@link #CONNECT_TIMEOUT_MS} per server, so it
+     * runs here rather than in {@link #sendBatch(List)}: an unreachable barrel never
+     * holds up the senders, which keep writing to the servers still connected.</p>
+     */
+    private void reconnectLoop() {
+        while (!closed) {
+            try {
+                Thread.sleep(RECONNECT_DELAY_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            List<Peer> lost = new ArrayList<>();
+            synchronized (peers) {
+                for (Peer peer : peers) {
+                    if (peer.connection == null || !connections.contains(peer.connection)) {
+                        peer.connection = null;
+                        lost.add(peer);
+                    }
+                }
+            }
+            for (Peer peer : lost) {
+                if (!closed) {
+                    connect(peer);
+                }
+            }
+        }
+    }
+
+    /**
+     * Dials a server without holding any lock, then publishes the connection.
+     *
+     * @param peer The server to dial
+     */
+    private void connect(Peer peer) {
+        Connection connection;
+        Socket socket = new Socket();
+        try {
+            socket.connect(peer.address, CONNECT_TIMEOUT_MS);
+            connection = new Connection(socket);
+        } catch (IOException e) {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                // Never connected
+            }
+            System.err.println("TCP transport could not connect to " + peer.address + ": " + e.getMessage());
+            return;
+        }
+
+        synchronized (peers) {
+            peer.connection = connection;
+            connections.add(connection);
+        }
+        if (closed) {
+            // close() may have run before the connection was listed
+            connection.close();
+            return;
+        }
+        System.out.println("TCP transport connected to " + peer.address);
+    }
+
+    @Override
+    public void send(String message) throws IOException {
+        sendBatch(List.of(message));
+    }
+
+    /**
+     * Writes the batch to every open connection. Like multicast, a receiver that is down
+     * simply misses the messages until the background reconnection restores it; an
+     * exception is only thrown once the transport is closed.
+     *
+     * @param messages The messages to send, in order
+     * @throws IOException If the transport is closed
+     */
+    @Override
+    public void sendBatch(List<String> messages) throws IOException {
+        if (closed) {
+            throw new IOException("TCP transport is closed");
+        }
+
+        for (Connection connection : connections) {
+            try {
+                connection.write(messages);
+            } catch (IOException e) {
+                System.err.println("TCP transport send failed to " + connection.socket.getRemoteSocketAddress() + ": " + e.getMessage());
+                connection.close();
+            }
+        }
+    }
+
+    /**
+     * TCP never drops a frame: when the inbox is full the readers stop and the senders
+     * block on their socket buffers.
+     *
+     * @return true
+     */
+    @Override
+    public boolean isReliable() {
+        return true;
+    }
+
+    @Override
+    public String receive() throws IOException {
+        try {
+            return inbox.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting on TCP transport", e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        for (Connection connection : connections) {
+            connection.close();
+        }
+        if (serverSocket != null) {
+            serverSocket.close();
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package search.Sockets;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Message transport used between the Downloaders and the storage barrels.
+ *
+ * <p>A transport is a symmetric endpoint: {@link #send(String)} delivers a message to
+ * the endpoints on the other side of the channel and {@link #receive()} returns the
+ * next message sent by them. Delivery is best-effort, as with UDP multicast; senders
+ * rely on the flow control channel to avoid overrunning receivers. Transports that
+ * never lose a message once sent report it through {@link #isReliable()}.</p>
+ *
+ * <p>Implementations:</p>
+ * <ul>
+ *   <li>{@link ReliableMulticast} - UDP multicast, the default deployment</li>
+ *   <li>{@link LoopbackTransport} - lock-free in-JVM queues, for benchmarks on one box</li>
+ *   <li>{@link TcpFanoutTransport} - TCP fan-out, for networks where multicast is blocked</li>
+ * </ul>
+ */
+public interface Transport extends AutoCloseable {
+
+    /**
+     * Sends a single message.
+     *
+     * @param message The message to send; must not contain line breaks
+     * @throws IOException If the message cannot be sent
+     */
+    void send(String message) throws IOException;
+
+    /**
+     * Sends several messages, letting the implementation coalesce them into fewer
+     * packets or writes. Receivers still get them one at a time from {@link #receive()}.
+     *
+     * @param messages The messages to send, in order
+     * @throws IOException If the messages cannot be sent
+     */
+    void sendBatch(List<String> messages) throws IOException;
+
+    /**
+     * Blocks until the next message arrives.
+     *
+     * @return The received message
+     * @throws IOException If the transport fails or is closed
+     */
+    String receive() throws IOException;
+
+    /**
+     * Tells whether messages accepted by {@link #send(String)} always reach a receiver
+     * that is up. A receiver of a reliable transport may stop reading to slow its
+     * senders down instead of dropping what it cannot keep up with.
+     *
+     * @return true if the transport does not drop messages, false if it is best-effort
+     */
+    default boolean isReliable() {
+        return false;
+    }
+
+    /**
+     * Releases the resources held by this endpoint.
+     *
+     * @throws IOException If the endpoint cannot be closed cleanly
+     */
+    @Override
+    void close() throws IOException;
+}
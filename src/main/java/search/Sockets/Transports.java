@@ -0,0 +1,83 @@
+package search.Sockets;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.List;
+
+/**
+ * Factory for {@link Transport} implementations selected by configuration.
+ *
+ * <p>The {@code TRANSPORT} property chooses the implementation:</p>
+ * <ul>
+ *   <li>{@code multicast} (default) - {@link ReliableMulticast} on the given group and port</li>
+ *   <li>{@code loopback} - {@link LoopbackTransport}, only meaningful when every component
+ *       runs in the same JVM</li>
+ *   <li>{@code tcp} - {@link TcpFanoutTransport}; barrels listen and Downloaders connect</li>
+ * </ul>
+ *
+ * <p>The system property {@code googol.transport} overrides the configured value, which
+ * lets an in-process launcher force the loopback transport.</p>
+ */
+public final class Transports {
+
+    /** Multicast transport name */
+    public static final String MULTICAST = "multicast";
+
+    /** In-JVM loopback transport name */
+    public static final String LOOPBACK = "loopback";
+
+    /** TCP fan-out transport name */
+    public static final String TCP = "tcp";
+
+    private Transports() {
+    }
+
+    /**
+     * Resolves the transport kind, applying the {@code googol.transport} override.
+     *
+     * @param configured The value of the TRANSPORT property, possibly null
+     * @return The lower-case transport kind
+     */
+    public static String resolveKind(String configured) {
+        String kind = System.getProperty("googol.transport", configured == null ? MULTICAST : configured);
+        return kind.trim().toLowerCase();
+    }
+
+    /**
+     * Opens the receiving side of a channel, as used by the storage barrels.
+     *
+     * @param kind The transport kind
+     * @param groupAddress The multicast group address
+     * @param multicastPort The multicast port, which also names the loopback channel
+     * @param tcpPort The port to listen on with the TCP transport
+     * @return The opened transport
+     * @throws IOException If the transport cannot be opened
+     */
+    public static Transport listen(String kind, String groupAddress, int multicastPort, int tcpPort) throws IOException {
+        return switch (resolveKind(kind)) {
+            case LOOPBACK -> LoopbackTransport.join(groupAddress + ":" + multicastPort);
+            case TCP -> new TcpFanoutTransport(tcpPort);
+            case MULTICAST -> new ReliableMulticast(groupAddress, multicastPort);
+            default -> throw new IOException("Unknown transport: " + kind);
+        };
+    }
+
+    /**
+     * Opens the sending side of a channel, as used by the Downloaders.
+     *
+     * @param kind The transport kind
+     * @param groupAddress The multicast group address
+     * @param multicastPort The multicast port, which also names the loopback channel
+     * @param tcpServers The barrel endpoints to connect to with the TCP transport
+     * @return The opened transport
+     * @throws IOException If the transport cannot be opened
+     */
+    public static Transport connect(String kind, String groupAddress, int multicastPort, List<InetSocketAddress> tcpServers) throws IOException {
+        return switch (resolveKind(kind)) {
+            case LOOPBACK -> LoopbackTransport.join(groupAddress + ":" + multicastPort);
+            case TCP -> new TcpFanoutTransport(tcpServers);
+            case MULTICAST -> new ReliableMulticast(groupAddress, multicastPort);
+            default -> throw new IOException("Unknown transport: " + kind);
+        };
+    }
+}
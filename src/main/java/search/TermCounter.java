@@ -0,0 +1,259 @@
+package search;
+
+import java.util.Arrays;
+
+/**
+ * Per-page term frequency table used by the Downloader to aggregate a page's terms
+ * before sending them, so each distinct term is transmitted once with its count.
+ *
+ * <p>The table is an open-addressing hash map with linear probing, keyed by a 64-bit
+ * hash of the term. Keys, counts and term positions live in parallel primitive arrays
+ * and the characters of every distinct term are copied once into a shared character
+ * pool, so counting a page allocates nothing once the arrays have grown to fit it.
+ * Hash matches are confirmed against the pooled characters, so collisions never merge
+ * different terms.</p>
+ *
+ * <p>Instances are meant to be reused for successive pages with {@link #clear()} and
+ * are not thread-safe; use one per thread.</p>
+ *
+ * @author João Antunes, David Cameijo and Gabriel Pinto
+ */
+public final class TermCounter {
+
+    /**
+     * Receives the distinct terms of the table with their counts.
+     */
+    @FunctionalInterface
+    public interface TermCountSink {
+        /**
+         * Accepts a term and its count. The pool is owned by the counter and must
+         * not be modified.
+         *
+         * @param pool Character pool holding the term
+         * @param offset Start of the term in the pool
+         * @param length Length of the term
+         * @param count Number of occurrences of the term
+         */
+        void accept(char[] pool, int offset, int length, int count);
+    }
+
+    /** Initial number of slots; must be a power of two */
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /** Capacity above which {@link #clear()} releases the arrays of an unusually large page */
+    private static final int RETAINED_CAPACITY = 1 << 16;
+
+    //----------------------------------------ATTRIBUTES----------------------------------------
+
+    /** Term hash of every slot */
+    private long[] hashes;
+
+    /** Occurrences of the term in every slot; 0 marks an empty slot */
+    private int[] counts;
+
+    /** Start of each slot's term in the pool */
+    private int[] offsets;
+
+    /** Length of each slot's term */
+    private int[] lengths;
+
+    /** Occupied slots in insertion order, so iteration does not scan the whole table */
+    private int[] order;
+
+    /** Characters of all distinct terms */
+    private char[] pool;
+
+    /** Characters used in the pool */
+    private int poolUsed;
+
+    /** Number of distinct terms */
+    private int size;
+
+    /** Total number of terms added since the last clear */
+    private int total;
+
+    /**
+     * Creates an empty counter.
+     */
+    public TermCounter() {
+        allocate(INITIAL_CAPACITY);
+        pool = new char[INITIAL_CAPACITY * 8];
+    }
+
+    //----------------------------------------METHODS----------------------------------------
+
+    /**
+     * Allocates empty slot arrays of the given capacity.
+     *
+     * @param capacity The number of slots, a power of two
+     */
+    private void allocate(int capacity) {
+        hashes = new long[capacity];
+        counts = new int[capacity];
+        offsets = new int[capacity];
+        lengths = new int[capacity];
+        order = new int[capacity / 2];
+    }
+
+    /**
+     * Computes a 64-bit hash of a term (FNV-1a followed by a final avalanche step).
+     *
+     * @param term Buffer holding the term
+     * @param length Length of the term
+     * @return The term hash
+     */
+    private static long hash(char[] term, int length) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < length; i++) {
+            h = (h ^ term[i]) * 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * Counts one occurrence of a term. Compatible with {@link Tokenizer.TermSink}.
+     *
+     * @param term Buffer holding the term; copied if the term is new
+     * @param length Length of the term
+     */
+    public void add(char[] term, int length) {
+        long h = hash(term, length);
+        int mask = counts.length - 1;
+        int slot = (int) h & mask;
+        total++;
+
+        while (counts[slot] != 0) {
+            if (hashes[slot] == h && lengths[slot] == length
+                    && Arrays.equals(pool, offsets[slot], offsets[slot] + length, term, 0, length)) {
+                counts[slot]++;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        // New term: copy it into the pool and claim the slot
+        if (poolUsed + length > pool.length) {
+            pool = Arrays.copyOf(pool, Math.max(pool.length * 2, poolUsed + length));
+        }
+        System.arraycopy(term, 0, pool, poolUsed, length);
+        hashes[slot] = h;
+        counts[slot] = 1;
+        offsets[slot] = poolUsed;
+        lengths[slot] = length;
+        order[size++] = slot;
+        poolUsed += length;
+
+        // Keep the load factor at or below one half
+        if (size == order.length) {
+            rehash(counts.length * 2);
+        }
+    }
+
+    /**
+     * Moves every entry into a table of the given capacity.
+     *
+     * @param capacity The new number of slots, a power of two
+     */
+    private void rehash(int capacity) {
+        long[] oldHashes = hashes;
+        int[] oldCounts = counts;
+        int[] oldOffsets = offsets;
+        int[] oldLengths = lengths;
+        int[] oldOrder = order;
+        allocate(capacity);
+
+        int mask = capacity - 1;
+        for (int i = 0; i < size; i++) {
+            int old = oldOrder[i];
+            int slot = (int) oldHashes[old] & mask;
+            while (counts[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            hashes[slot] = oldHashes[old];
+            counts[slot] = oldCounts[old];
+            offsets[slot] = oldOffsets[old];
+            lengths[slot] = oldLengths[old];
+            order[i] = slot;
+        }
+    }
+
+    /**
+     * Hands every distinct term and its count to the sink, in order of first appearance.
+     *
+     * @param sink Receives each term
+     */
+    public void forEach(TermCountSink sink) {
+        for (int i = 0; i < size; i++) {
+            int slot = order[i];
+            sink.accept(pool, offsets[slot], lengths[slot], counts[slot]);
+        }
+    }
+
+    /**
+     * Computes the 64-bit SimHash of the counted terms.
+     *
+     * <p>Every distinct term votes on each bit of the fingerprint with its hash, weighted
+     * by its count, and each bit of the result is set where the weighted votes are
+     * positive. Pages with mostly the same terms get fingerprints a few bits apart, so
+     * near-duplicates can be found by Hamming distance.</p>
+     *
+     * @return The fingerprint, or 0 if the counter is empty
+     */
+    public long simHash() {
+        long[] votes = new long[64];
+        for (int i = 0; i < size; i++) {
+            int slot = order[i];
+            long h = hashes[slot];
+            int weight = counts[slot];
+            for (int bit = 0; bit < 64; bit++) {
+                votes[bit] += ((h >>> bit) & 1) != 0 ? weight : -weight;
+            }
+        }
+
+        long fingerprint = 0;
+        for (int bit = 0; bit < 64; bit++) {
+            if (votes[bit] > 0) {
+                fingerprint |= 1L << bit;
+            }
+        }
+        return fingerprint;
+    }
+
+    /**
+     * Returns the number of distinct terms.
+     *
+     * @return The distinct term count
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the number of terms added since the last clear, i.e. the document length.
+     *
+     * @return The total term count
+     */
+    public int total() {
+        return total;
+    }
+
+    /**
+     * Empties the counter so it can be reused for the next page.
+     */
+    public void clear() {
+        if (counts.length > RETAINED_CAPACITY) {
+            allocate(INITIAL_CAPACITY);
+            pool = new char[INITIAL_CAPACITY * 8];
+        } else {
+            for (int i = 0; i < size; i++) {
+                counts[order[i]] = 0;
+            }
+        }
+        size = 0;
+        total = 0;
+        poolUsed = 0;
+    }
+}
@@ -0,0 +1,311 @@
+package search;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Single-pass tokenizer and term normalizer shared by the Downloader (index time)
+ * and the IndexStorageBarrel (query time), so both sides produce the same terms.
+ *
+ * <p>The text is scanned once, character by character:</p>
+ * <ul>
+ *   <li>Whitespace separates tokens. A token starting with {@code http} or {@code www}
+ *       is treated as a link and skipped whole.</li>
+ *   <li>ASCII punctuation other than the hyphen separates terms inside a token.</li>
+ *   <li>Letters are folded to their lower-case base letter (accents removed) and
+ *       hyphens are kept.</li>
+ *   <li>Everything else (digits, symbols, combining marks) is dropped without
+ *       splitting the term.</li>
+ *   <li>A term is emitted only if it contains at least one letter.</li>
+ * </ul>
+ *
+ * <p>ASCII characters are classified through a small constant table. Other characters
+ * are folded once with {@link Normalizer} and the result is cached in a shared table,
+ * so steady-state tokenization runs no regular expressions and allocates nothing: terms
+ * are written into a reusable buffer handed to a {@link TermSink}.</p>
+ *
+ * <p>Instances are not thread-safe; use one per thread.</p>
+ *
+ * @author João Antunes, David Cameijo and Gabriel Pinto
+ */
+public final class Tokenizer {
+
+    /**
+     * Receives the terms produced by {@link #tokenize(CharSequence, TermSink)}.
+     */
+    @FunctionalInterface
+    public interface TermSink {
+        /**
+         * Accepts a term. The buffer is reused for the next term, so it must be
+         * copied if it is kept after the call returns.
+         *
+         * @param term Buffer holding the term in its first {@code length} characters
+         * @param length The length of the term
+         */
+        void accept(char[] term, int length);
+    }
+
+    //----------------------------------------CHARACTER CLASSES----------------------------------------
+
+    /** Character is dropped without ending the term */
+    private static final char DROP = 0;
+
+    /** Character ends the current term (ASCII punctuation) */
+    private static final char BOUNDARY = 1;
+
+    /** Character ends the current token (whitespace) */
+    private static final char SPACE = 2;
+
+    /** Character folds to more than one character; see {@link #EXPANSIONS} */
+    private static final char EXPANDS = 0xFFFE;
+
+    /** Character has not been classified yet */
+    private static final char UNKNOWN = 0xFFFF;
+
+    /** Classification or folded form of every ASCII character */
+    private static final char[] ASCII = new char[128];
+
+    /** Lazily filled classification or folded form of every other BMP character */
+    private static final char[] FOLD = new char[65536];
+
+    /** Folded forms of characters that decompose into several letters */
+    private static final Map<Character, String> EXPANSIONS = new ConcurrentHashMap<>();
+
+    static {
+        for (char c = 0; c < 128; c++) {
+            if (c >= 'a' && c <= 'z') {
+                ASCII[c] = c;
+            } else if (c >= 'A' && c <= 'Z') {
+                ASCII[c] = (char) (c + ('a' - 'A'));
+            } else if (c == '-') {
+                ASCII[c] = '-';
+            } else if (c == ' ' || (c >= '\t' && c <= '\r')) {
+                ASCII[c] = SPACE;
+            } else if ((c >= '!' && c <= '/') || (c >= ':' && c <= '@') || (c >= '[' && c <= '`') || (c >= '{' && c <= '~')) {
+                ASCII[c] = BOUNDARY;
+            } else {
+                ASCII[c] = DROP;
+            }
+        }
+        Arrays.fill(FOLD, UNKNOWN);
+    }
+
+    //----------------------------------------ATTRIBUTES----------------------------------------
+
+    /** Reusable buffer holding the term being built */
+    private char[] buffer = new char[64];
+
+    /** Length of the term being built */
+    private int length;
+
+    /** Whether the term being built contains a letter */
+    private boolean hasLetter;
+
+    //----------------------------------------METHODS----------------------------------------
+
+    /**
+     * Classifies a non-ASCII BMP character, computing and caching its folded form.
+     *
+     * @param c The character
+     * @return The folded character or one of the class markers
+     */
+    private static char classify(char c) {
+        char cached = FOLD[c];
+        if (cached != UNKNOWN) {
+            return cached;
+        }
+
+        char result;
+        if (Character.isWhitespace(c) || Character.isSpaceChar(c)) {
+            result = SPACE;
+        } else if (Character.isLetter(c)) {
+            String folded = fold(String.valueOf(c));
+            if (folded.length() == 1) {
+                result = folded.charAt(0);
+            } else if (folded.isEmpty()) {
+                result = DROP;
+            } else {
+                EXPANSIONS.put(c, folded);
+                result = EXPANDS;
+            }
+        } else {
+            result = DROP;
+        }
+
+        // Plain store, racing with other threads: every thread computes the same value and
+        // char writes are atomic, so a reader sees either UNKNOWN or the result. There is no
+        // happens-before edge with the EXPANSIONS.put above, though, so a reader may see
+        // EXPANDS before the expansion; expansionOf() recomputes it in that case.
+        FOLD[c] = result;
+        return result;
+    }
+
+    /**
+     * Returns the folded form of a character classified as {@link #EXPANDS}.
+     *
+     * @param c The character
+     * @return Its folded letters, recomputed if another thread's entry is not visible yet
+     */
+    private static String expansionOf(char c) {
+        String expansion = EXPANSIONS.get(c);
+        return expansion != null ? expansion : EXPANSIONS.computeIfAbsent(c, k -> fold(String.valueOf(k)));
+    }
+
+    /**
+     * Removes diacritical marks and converts letters to lower case.
+     *
+     * @param letters The letters to fold
+     * @return The folded letters
+     */
+    private static String fold(String letters) {
+        String decomposed = Normalizer.normalize(letters, Normalizer.Form.NFD);
+        StringBuilder folded = new StringBuilder(decomposed.length());
+        for (int i = 0; i < decomposed.length(); ) {
+            int cp = decomposed.codePointAt(i);
+            i += Character.charCount(cp);
+            if (Character.isLetter(cp)) {
+                folded.appendCodePoint(Character.toLowerCase(cp));
+            }
+        }
+        return folded.toString();
+    }
+
+    /**
+     * Checks whether the token starting at {@code start} looks like a link: it starts
+     * with {@code http} or {@code www} (any case) and has more characters after it.
+     *
+     * @param text The text
+     * @param start Start of the token
+     * @param end End of the token (exclusive)
+     * @return true if the token should be skipped as a link
+     */
+    private static boolean isLink(CharSequence text, int start, int end) {
+        return (end - start > 4 && startsWithIgnoreCase(text, start, "http"))
+                || (end - start > 3 && startsWithIgnoreCase(text, start, "www"));
+    }
+
+    private static boolean startsWithIgnoreCase(CharSequence text, int start, String prefix) {
+        for (int i = 0; i < prefix.length(); i++) {
+            if ((text.charAt(start + i) | 0x20) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns whether a character separates tokens.
+     *
+     * @param c The character
+     * @return true for whitespace
+     */
+    private static boolean isSpace(char c) {
+        return c < 128 ? ASCII[c] == SPACE : classify(c) == SPACE;
+    }
+
+    /**
+     * Splits text into normalized terms and hands each one to the sink.
+     *
+     * @param text The text to tokenize
+     * @param sink Receives each term
+     * @return The number of terms emitted
+     */
+    public int tokenize(CharSequence text, TermSink sink) {
+        int terms = 0;
+        int n = text.length();
+        int i = 0;
+
+        while (i < n) {
+            // Skip whitespace up to the next token
+            while (i < n && isSpace(text.charAt(i))) {
+                i++;
+            }
+            int tokenStart = i;
+            while (i < n && !isSpace(text.charAt(i))) {
+                i++;
+            }
+            int tokenEnd = i;
+            if (tokenStart == tokenEnd || isLink(text, tokenStart, tokenEnd)) {
+                continue;
+            }
+
+            length = 0;
+            hasLetter = false;
+            for (int j = tokenStart; j < tokenEnd; j++) {
+                char c = text.charAt(j);
+                char folded = c < 128 ? ASCII[c] : classify(c);
+
+                if (folded == BOUNDARY) {
+                    terms += flush(sink);
+                } else if (folded == EXPANDS) {
+                    String expansion = expansionOf(c);
+                    for (int k = 0; k < expansion.length(); k++) {
+                        append(expansion.charAt(k), true);
+                    }
+                } else if (folded > SPACE) {
+                    append(folded, folded != '-');
+                } else if (folded == DROP && Character.isHighSurrogate(c) && j + 1 < tokenEnd
+                        && Character.isLowSurrogate(text.charAt(j + 1))) {
+                    // Supplementary characters are rare: fold them on the slow path
+                    int cp = Character.toCodePoint(c, text.charAt(++j));
+                    if (Character.isLetter(cp)) {
+                        String expansion = fold(new String(Character.toChars(cp)));
+                        for (int k = 0; k < expansion.length(); k++) {
+                            append(expansion.charAt(k), true);
+                        }
+                    }
+                }
+            }
+            terms += flush(sink);
+        }
+        return terms;
+    }
+
+    /**
+     * Appends a character to the term being built, growing the buffer if needed.
+     *
+     * @param c The character to append
+     * @param letter Whether the character is a letter
+     */
+    private void append(char c, boolean letter) {
+        if (length == buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+        buffer[length++] = c;
+        hasLetter |= letter;
+    }
+
+    /**
+     * Emits the term being built if it contains a letter, then resets it.
+     *
+     * @param sink Receives the term
+     * @return 1 if a term was emitted, 0 otherwise
+     */
+    private int flush(TermSink sink) {
+        int emitted = 0;
+        if (length > 0 && hasLetter) {
+            sink.accept(buffer, length);
+            emitted = 1;
+        }
+        length = 0;
+        hasLetter = false;
+        return emitted;
+    }
+
+    /**
+     * Tokenizes text into a list of terms. Allocates one string per term; intended
+     * for short inputs such as search queries.
+     *
+     * @param text The text to tokenize
+     * @return The normalized terms, in order of appearance
+     */
+    public List<String> terms(CharSequence text) {
+        List<String> terms = new ArrayList<>();
+        tokenize(text, (term, len) -> terms.add(new String(term, 0, len)));
+        return terms;
+    }
+}
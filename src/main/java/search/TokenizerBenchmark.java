@@ -0,0 +1,151 @@
+package search;
+
+import java.lang.management.ManagementFactory;
+import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Micro-benchmark comparing {@link Tokenizer} with the regex-based word pipeline the
+ * Downloader used before it.
+ *
+ * <p>Both pipelines tokenize the same synthetic page text (Portuguese and English words,
+ * accents, punctuation, numbers and links). After a warm-up phase each pipeline is timed
+ * over several measured rounds and the report shows nanoseconds and bytes allocated per
+ * term. Allocation is read from the current thread's allocation counter.</p>
+ *
+ * <p>Usage: {@code java search.TokenizerBenchmark [words] [rounds]}</p>
+ *
+ * @author João Antunes, David Cameijo and Gabriel Pinto
+ */
+public class TokenizerBenchmark {
+
+    /** Vocabulary used to synthesize page text */
+    private static final String[] VOCABULARY = {
+            "Informação", "distribuída", "motor", "pesquisa", "índice", "ligação", "página", "the", "search",
+            "engine", "coração", "Ação", "well-known", "São", "Paulo", "crawler", "(barrel)", "queue,", "data.",
+            "2024", "v1.2", "https://example.com/path?q=1", "www.uc.pt", "don't", "e-mail", "naïve", "Zürich",
+            "façade", "résumé", "«aspas»", "—", "ÉCOLE", "über", "niño", "straße"
+    };
+
+    /** Sink for the terms produced, preventing dead-code elimination */
+    private static long checksum;
+
+    //----------------------------------------LEGACY PIPELINE----------------------------------------
+
+    private static String[] splitByPunctuation(String input) {
+        return input.split("[\\p{Punct}&&[^-]]+");
+    }
+
+    private static String cleanWord(String input) {
+        return input.replaceAll("[^\\p{L}-]", "");
+    }
+
+    private static String normalizeText(String inputWord) {
+        return Normalizer.normalize(inputWord, Normalizer.Form.NFD).replaceAll("\\p{M}", "");
+    }
+
+    private static boolean containsLetter(String word) {
+        return word.matches(".*[a-zA-Záéíóúâêîôûãõç].*");
+    }
+
+    private static boolean isLink(String input) {
+        Pattern pattern = Pattern.compile("^(http|https|www)\\S+", Pattern.CASE_INSENSITIVE);
+        Matcher matcher = pattern.matcher(input);
+        return matcher.find();
+    }
+
+    /**
+     * Runs the word pipeline the Downloader used before {@link Tokenizer}.
+     *
+     * @param text The page text
+     * @return The number of terms produced
+     */
+    private static long legacy(String text) {
+        return Arrays.stream(text.split("\\s+"))
+                .filter(word -> !word.isEmpty() && !isLink(word))
+                .flatMap(word -> Arrays.stream(splitByPunctuation(word)))
+                .map(TokenizerBenchmark::cleanWord)
+                .map(TokenizerBenchmark::normalizeText)
+                .map(String::toLowerCase)
+                .filter(part -> !part.isEmpty() && containsLetter(part))
+                .peek(part -> checksum += part.length())
+                .count();
+    }
+
+    //----------------------------------------BENCHMARK----------------------------------------
+
+    /**
+     * Runs the tokenizer over the page text.
+     *
+     * @param tokenizer The tokenizer instance, reused across rounds
+     * @param text The page text
+     * @return The number of terms produced
+     */
+    private static long tokenizer(Tokenizer tokenizer, String text) {
+        return tokenizer.tokenize(text, (term, length) -> checksum += length);
+    }
+
+    /**
+     * Returns the number of bytes allocated so far by the current thread.
+     *
+     * @return The allocated bytes, or 0 if the JVM does not expose the counter
+     */
+    private static long allocatedBytes() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean) {
+            return bean.getCurrentThreadAllocatedBytes();
+        }
+        return 0;
+    }
+
+    /**
+     * Times one pipeline and prints its results.
+     *
+     * @param name The pipeline name
+     * @param rounds The number of measured rounds
+     * @param pipeline The pipeline, returning the number of terms produced
+     */
+    private static void measure(String name, int rounds, java.util.function.LongSupplier pipeline) {
+        // Warm up so both pipelines are measured after JIT compilation
+        for (int i = 0; i < Math.max(3, rounds / 2); i++) {
+            pipeline.getAsLong();
+        }
+
+        long terms = 0;
+        long bytesBefore = allocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            terms += pipeline.getAsLong();
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = allocatedBytes() - bytesBefore;
+
+        System.out.printf("%-10s %10d terms  %8.1f ns/term  %8.1f bytes/term  %8.1f ms/round%n",
+                name, terms, (double) elapsed / terms, (double) allocated / terms, elapsed / 1e6 / rounds);
+    }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args Command-line arguments (args[0]: words of synthetic text, args[1]: measured rounds)
+     */
+    public static void main(String[] args) {
+        int words = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        Random random = new Random(42);
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            builder.append(VOCABULARY[random.nextInt(VOCABULARY.length)]).append(i % 17 == 0 ? "\n" : " ");
+        }
+        String text = builder.toString();
+
+        System.out.printf("Tokenizing %d words (%d chars), %d rounds%n", words, text.length(), rounds);
+        Tokenizer tokenizer = new Tokenizer();
+        measure("legacy", rounds, () -> legacy(text));
+        measure("tokenizer", rounds, () -> tokenizer(tokenizer, text));
+        System.out.println("checksum " + checksum);
+    }
+}
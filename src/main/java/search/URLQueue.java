@@ -3,27 +3,66 @@ package search;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Path;
 import java.rmi.RemoteException;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
 import java.rmi.server.UnicastRemoteObject;
 import java.sql.*;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
-import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import search.Crawler.BatchWriter;
+import search.Crawler.CrawlTrapDetector;
+import search.Crawler.Frontier;
+import search.Crawler.NearDuplicateIndex;
+import search.Crawler.PriorityFrontier;
+import search.Crawler.SeenUrlSet;
+import search.Crawler.SpillingFrontier;
+import search.Crawler.StripedFrontier;
 
 /**
  * URLQueue implements a persistent queue system for URL management in a distributed search engine.
  *
  * This class provides a centralized service for storing and retrieving URLs that need to be
  * processed by web crawler components. The queue is implemented as a combination of an
- * in-memory queue (for efficiency) and a SQLite database (for persistence).
+ * in-memory queue (for efficiency) and a SQLite database (for persistence). In FIFO mode
+ * the in-memory queue keeps only its oldest and newest URLs on the heap and spills the
+ * rest to segment files, so its memory use does not grow with the size of the crawl
+ * frontier. In priority mode (FRONTIER_MODE=priority) every queued URL is kept on the
+ * heap with its score, so memory grows with the frontier, roughly a few hundred bytes
+ * per queued URL.
  *
  * The class ensures that:
- * 1. URLs are uniquely stored (no duplicates)
+ * 1. URLs are uniquely stored (no duplicates): every URL ever added is kept in a
+ *    seen set, a Bloom filter in front of an exact SQLite table, and is enqueued once
  * 2. URLs are persisted to disk to survive system restarts
- * 3. URLs are processed in a first-in-first-out (FIFO) manner
+ * 3. URLs are processed in a first-in-first-out (FIFO) manner, or, in priority mode,
+ *    most important first: each URL carries an OPIC-style score that grows with every
+ *    inbound link found, discounted by its depth and by how much of its host was crawled
  * 4. The queue can be accessed remotely via Java RMI
+ * 5. URLs taken in batches are leased, not deleted: a URL whose lease expires
+ *    without an acknowledgement is handed out again, so a crashed Downloader
+ *    does not lose work
+ *
+ * No method holds a queue-wide lock. The in-memory queue is split into stripes by
+ * host, each with its own lock, the seen set is concurrent, and every database write
+ * goes through a write-behind log that a single thread commits in batches. Adding
+ * and taking URLs therefore never waits for the disk; a crash loses at most the
+ * writes of the last moments, and URLs whose removal was not yet written are handed
+ * out again after the restart.
  *
  * @author João Antunes, David Cameijo and Gabriel Pinto
  */
@@ -31,27 +70,191 @@ public class URLQueue extends UnicastRemoteObject implements URLQueueInterface {
 
     //----------------------------------------ATTRIBUTES----------------------------------------
 
-    /** Connection to the SQLite database for persistent storage */
+    /** Connection to the SQLite database, written through {@link #writer} once the queue is open */
     private Connection connection;
 
+    /** Second connection for reads that should not wait for the writer's transactions */
+    private Connection readConnection;
+
+    /** Commits every database write in batches, off the callers' threads */
+    private BatchWriter writer;
+
     /** In-memory queue for high-performance URL operations */
-    private Queue<String> queue;
-    private Queue<String> allUrlsProcessed;
+    private StripedFrontier queue;
+
+    /** Whether the queue ranks URLs by score ("priority" mode) */
+    private boolean priorityMode;
+
+    /** Order URLs are handed out in: "fifo", or "priority" for most important first */
+    private static String FRONTIER_MODE = "fifo";
+
+    /** Priority mode: score discount per level of depth */
+    private static double FRONTIER_DEPTH_PENALTY = 0.5;
+
+    /** Priority mode: score discount per URL already handed out for the same host */
+    private static double FRONTIER_HOST_PENALTY = 0.05;
+
+    /** Score credited to URLs added without a linking page, such as seeds */
+    private static final double SEED_SCORE = 1.0;
+
+    /** FIFO mode: directory the in-memory queue spills its segment files to */
+    private static String FRONTIER_SPILL_DIR = "../frontier";
+
+    /** FIFO mode: number of URLs in each of the in-memory queue's buffers and segment files */
+    private static int FRONTIER_BUFFER_SIZE = 10_000;
+
+    /** Number of independently locked stripes of the in-memory queue */
+    private static int FRONTIER_STRIPES = 8;
+
+    /** Maximum number of writes waiting for the database before callers are held back */
+    private static int WRITE_QUEUE_CAPACITY = 100_000;
+
+    /** Maximum number of writes committed in one transaction */
+    private static int WRITE_BATCH_SIZE = 10_000;
     private static int URL_PORT = 8184;
 
+    /** Every URL ever added, so each one is enqueued once */
+    private SeenUrlSet seenUrls;
+
+    /** Number of URLs the seen set's Bloom filter is sized for */
+    private static long SEEN_EXPECTED_URLS = 10_000_000;
+
+    /** False-positive rate of the seen set's Bloom filter at its expected size */
+    private static double SEEN_FALSE_POSITIVE_RATE = 0.01;
+
+    /** File the seen set's Bloom filter is saved to */
+    private static String SEEN_FILTER_FILE = "../seen_urls.bloom";
+
+    /** Maximum Hamming distance between the SimHash fingerprints of near-duplicate pages */
+    private static int NEAR_DUPLICATE_DISTANCE = 3;
+
+    /** Fingerprints of the pages indexed so far, shared by all Downloaders */
+    private NearDuplicateIndex nearDuplicates;
+
+    /** Per-host and per-template budgets of the links queued, and the templates flagged as traps */
+    private CrawlTrapDetector traps;
+
+    /** Maximum number of links queued per host */
+    private static int TRAP_HOST_BUDGET = 100_000;
+
+    /** Maximum number of links queued per path template */
+    private static int TRAP_PATTERN_BUDGET = 5_000;
+
+    /** Fraction of a budget after which links are demoted */
+    private static double TRAP_DEMOTE_FRACTION = 0.5;
+
+    /** Factor applied to the score of demoted links */
+    private static double TRAP_DEMOTE_FACTOR = 0.1;
+
+    /** Consecutive pages of a template with near-identical link sets that flag it as a trap */
+    private static int TRAP_SIMILAR_LINK_PAGES = 20;
+
+    /** Maximum Hamming distance between the fingerprints of near-identical link sets */
+    private static int TRAP_LINK_SET_DISTANCE = 3;
+
+    /** Counters per row of the budget sketches */
+    private static int TRAP_SKETCH_WIDTH = 1 << 18;
+
+    /** Rows of the budget sketches */
+    private static int TRAP_SKETCH_DEPTH = 4;
+
+    /** Time a leased URL stays reserved before it is handed out again, in milliseconds */
+    private static long LEASE_TIMEOUT_MS = 300_000;
+
+    /** Number of times a URL is handed out before it is dropped as failing */
+    private static int MAX_DELIVERY_ATTEMPTS = 3;
+
+    /** Interval between scans for expired leases, in milliseconds */
+    private static long LEASE_SCAN_INTERVAL_MS = 1_000;
+
+    /** Bits of a lease id numbering the leases of one run; the bits above hold the run's epoch */
+    private static final int LEASE_SEQUENCE_BITS = 32;
+
+    /** Largest epoch, so lease ids fit in the 48 bits URLQueueRouter leaves to a node */
+    private static final long MAX_LEASE_EPOCH = (1L << (48 - LEASE_SEQUENCE_BITS)) - 1;
+
+    /** Identifier of the next lease */
+    private final AtomicLong nextLeaseId = new AtomicLong(1);
+
+    /**
+     * An expired lease waiting to be handed out again.
+     *
+     * @param leaseId The expired lease
+     * @param url The leased URL
+     * @param attempts Number of times the URL has been handed out
+     * @param score The URL's score
+     * @param depth The URL's depth
+     */
+    private record Redelivery(long leaseId, String url, int attempts, double score, int depth) {
+    }
+
+    /** Expired leases found by the lease scanner, handed out before new URLs */
+    private final ConcurrentLinkedQueue<Redelivery> redeliveries = new ConcurrentLinkedQueue<>();
+
+    /** Ids of the leases in {@link #redeliveries}; an acknowledgement removes the id and cancels the redelivery */
+    private final Set<Long> redelivering = ConcurrentHashMap.newKeySet();
+
+    /** Notified when URLs become available, for {@link #takeUrls(int, long)} callers waiting on an empty queue */
+    private final Object arrivals = new Object();
+
+    /** Number of callers waiting on {@link #arrivals} */
+    private final AtomicInteger waitingTakers = new AtomicInteger();
+
+    /** Longest a single {@link #takeUrls(int, long)} call waits for URLs, in milliseconds */
+    private static long MAX_TAKE_WAIT_MS = 30_000;
+
+    /** Runs {@link #scanExpiredLeases()} periodically */
+    private ScheduledExecutorService leaseScanner;
+
+    /** Number of persisted URLs read into the in-memory queue per chunk on startup */
+    private static int WARM_START_CHUNK = 10_000;
+
+    /** URLs read into the in-memory queue on startup so far */
+    private volatile long warmStartLoaded;
+
+    /** Last persisted id the startup load reads up to */
+    private volatile long warmStartLastId;
+
+    /** Persisted ids up to this one were loaded or handed out; rows after it are only in the database */
+    private volatile long warmStartAfterId;
+
+    /** Duration of the startup load in milliseconds, or -1 while it is running */
+    private volatile long warmStartMillis = -1;
+
+    private static final String INSERT_URL = "INSERT OR IGNORE INTO urls (url, score, depth) VALUES (?, ?, ?)";
+    private static final String CREDIT_URL = "UPDATE urls SET score = score + ? WHERE url = ?";
+    private static final String DELETE_URL = "DELETE FROM urls WHERE url = ?";
+    private static final String INSERT_LEASE = "INSERT INTO leases (lease_id, url, expires_at, attempts, score, depth) VALUES (?, ?, ?, ?, ?, ?)";
+    private static final String DELETE_LEASE = "DELETE FROM leases WHERE lease_id = ?";
+    private static final String EXTEND_LEASE = "UPDATE leases SET expires_at = ? WHERE lease_id = ?";
+    private static final String SAVE_FINGERPRINT = "INSERT OR REPLACE INTO fingerprints (url, simhash) VALUES (?, ?)";
+
     //----------------------------------------CONSTRUCTOR----------------------------------------
 
+    /**
+     * Constructs a new URLQueue instance using the default storage files.
+     *
+     * @throws RemoteException If a remote communication error occurs during initialization
+     */
+    public URLQueue() throws RemoteException {
+        this(null);
+    }
+
     /**
      * Constructs a new URLQueue instance.
      *
+     * When several queue nodes partition the crawl, each is given a node id so that
+     * its database, seen filter and spill directory get their own names.
+     *
      * This constructor:
-     * 1. Initializes the in-memory queue as a LinkedList
+     * 1. Initializes the in-memory queue for the configured mode
      * 2. Establishes a connection to the SQLite database
      * 3. Creates the URL storage table if it doesn't exist
      *
+     * @param nodeId Identifier of this queue node, or null for a single-node deployment
      * @throws RemoteException If a remote communication error occurs during initialization
      */
-    public URLQueue() throws RemoteException {
+    public URLQueue(String nodeId) throws RemoteException {
         super();
 
         try (InputStream input = new FileInputStream("../config.properties")) {
@@ -59,57 +262,410 @@ public class URLQueue extends UnicastRemoteObject implements URLQueueInterface {
             prop.load(input);
 
             URL_PORT = Integer.parseInt(prop.getProperty("URL_QUEUE_PORT"));
+            NEAR_DUPLICATE_DISTANCE = Integer.parseInt(prop.getProperty("NEAR_DUPLICATE_DISTANCE", String.valueOf(NEAR_DUPLICATE_DISTANCE)));
+            LEASE_TIMEOUT_MS = Long.parseLong(prop.getProperty("LEASE_TIMEOUT_MS", String.valueOf(LEASE_TIMEOUT_MS)));
+            MAX_DELIVERY_ATTEMPTS = Integer.parseInt(prop.getProperty("MAX_DELIVERY_ATTEMPTS", String.valueOf(MAX_DELIVERY_ATTEMPTS)));
+            SEEN_EXPECTED_URLS = Long.parseLong(prop.getProperty("SEEN_EXPECTED_URLS", String.valueOf(SEEN_EXPECTED_URLS)));
+            SEEN_FALSE_POSITIVE_RATE = Double.parseDouble(prop.getProperty("SEEN_FALSE_POSITIVE_RATE", String.valueOf(SEEN_FALSE_POSITIVE_RATE)));
+            SEEN_FILTER_FILE = prop.getProperty("SEEN_FILTER_FILE", SEEN_FILTER_FILE);
+            FRONTIER_SPILL_DIR = prop.getProperty("FRONTIER_SPILL_DIR", FRONTIER_SPILL_DIR);
+            FRONTIER_BUFFER_SIZE = Integer.parseInt(prop.getProperty("FRONTIER_BUFFER_SIZE", String.valueOf(FRONTIER_BUFFER_SIZE)));
+            FRONTIER_STRIPES = Integer.parseInt(prop.getProperty("FRONTIER_STRIPES", String.valueOf(FRONTIER_STRIPES)));
+            WRITE_QUEUE_CAPACITY = Integer.parseInt(prop.getProperty("WRITE_QUEUE_CAPACITY", String.valueOf(WRITE_QUEUE_CAPACITY)));
+            WRITE_BATCH_SIZE = Integer.parseInt(prop.getProperty("WRITE_BATCH_SIZE", String.valueOf(WRITE_BATCH_SIZE)));
+            LEASE_SCAN_INTERVAL_MS = Long.parseLong(prop.getProperty("LEASE_SCAN_INTERVAL_MS", String.valueOf(LEASE_SCAN_INTERVAL_MS)));
+            MAX_TAKE_WAIT_MS = Long.parseLong(prop.getProperty("MAX_TAKE_WAIT_MS", String.valueOf(MAX_TAKE_WAIT_MS)));
+            WARM_START_CHUNK = Integer.parseInt(prop.getProperty("WARM_START_CHUNK", String.valueOf(WARM_START_CHUNK)));
+            FRONTIER_MODE = prop.getProperty("FRONTIER_MODE", FRONTIER_MODE).trim().toLowerCase();
+            FRONTIER_DEPTH_PENALTY = Double.parseDouble(prop.getProperty("FRONTIER_DEPTH_PENALTY", String.valueOf(FRONTIER_DEPTH_PENALTY)));
+            FRONTIER_HOST_PENALTY = Double.parseDouble(prop.getProperty("FRONTIER_HOST_PENALTY", String.valueOf(FRONTIER_HOST_PENALTY)));
+            TRAP_HOST_BUDGET = Integer.parseInt(prop.getProperty("TRAP_HOST_BUDGET", String.valueOf(TRAP_HOST_BUDGET)));
+            TRAP_PATTERN_BUDGET = Integer.parseInt(prop.getProperty("TRAP_PATTERN_BUDGET", String.valueOf(TRAP_PATTERN_BUDGET)));
+            TRAP_DEMOTE_FRACTION = Double.parseDouble(prop.getProperty("TRAP_DEMOTE_FRACTION", String.valueOf(TRAP_DEMOTE_FRACTION)));
+            TRAP_DEMOTE_FACTOR = Double.parseDouble(prop.getProperty("TRAP_DEMOTE_FACTOR", String.valueOf(TRAP_DEMOTE_FACTOR)));
+            TRAP_SIMILAR_LINK_PAGES = Integer.parseInt(prop.getProperty("TRAP_SIMILAR_LINK_PAGES", String.valueOf(TRAP_SIMILAR_LINK_PAGES)));
+            TRAP_LINK_SET_DISTANCE = Integer.parseInt(prop.getProperty("TRAP_LINK_SET_DISTANCE", String.valueOf(TRAP_LINK_SET_DISTANCE)));
+            TRAP_SKETCH_WIDTH = Integer.parseInt(prop.getProperty("TRAP_SKETCH_WIDTH", String.valueOf(TRAP_SKETCH_WIDTH)));
+            TRAP_SKETCH_DEPTH = Integer.parseInt(prop.getProperty("TRAP_SKETCH_DEPTH", String.valueOf(TRAP_SKETCH_DEPTH)));
         } catch (IOException ex) {
             System.out.println(ex.getMessage());
         }
 
-        queue = new LinkedList<>();
+        priorityMode = "priority".equals(FRONTIER_MODE);
+        String spillDir = forNode(FRONTIER_SPILL_DIR, nodeId);
+        int stripeBuffer = Math.max(1, FRONTIER_BUFFER_SIZE / FRONTIER_STRIPES);
+        try {
+            // Each stripe spills to its own directory, with a share of the buffer so the heap bound is unchanged
+            queue = new StripedFrontier(FRONTIER_STRIPES, stripe -> priorityMode
+                    ? new PriorityFrontier(FRONTIER_DEPTH_PENALTY, FRONTIER_HOST_PENALTY)
+                    : new SpillingFrontier(Path.of(spillDir, "stripe-" + stripe).toString(), stripeBuffer));
+        } catch (IOException e) {
+            throw new RemoteException("Failed to prepare the frontier spill directory " + spillDir, e);
+        }
+        nearDuplicates = new NearDuplicateIndex(NEAR_DUPLICATE_DISTANCE);
+        traps = new CrawlTrapDetector(TRAP_HOST_BUDGET, TRAP_PATTERN_BUDGET, TRAP_DEMOTE_FRACTION,
+                TRAP_SIMILAR_LINK_PAGES, TRAP_LINK_SET_DISTANCE, TRAP_SKETCH_WIDTH, TRAP_SKETCH_DEPTH);
 
         try {
-            // Connect to SQLite database
-            connection = DriverManager.getConnection("jdbc:sqlite:../urlqueue.db");
+            // Connect to SQLite database; WAL lets the read connection work while the writer commits
+            String databaseUrl = "jdbc:sqlite:" + forNode("../urlqueue.db", nodeId);
+            connection = DriverManager.getConnection(databaseUrl);
             Statement stmt = connection.createStatement();
+            stmt.execute("PRAGMA journal_mode=WAL");
 
             // Create table if it doesn't exist
             // The UNIQUE constraint prevents duplicate URLs
             stmt.execute("CREATE TABLE IF NOT EXISTS urls (id INTEGER PRIMARY KEY AUTOINCREMENT, url TEXT UNIQUE)");
+            addColumnIfMissing(stmt, "urls", "score", "REAL NOT NULL DEFAULT " + SEED_SCORE);
+            addColumnIfMissing(stmt, "urls", "depth", "INTEGER NOT NULL DEFAULT 0");
+            if (priorityMode) {
+                // Priority mode falls back to the best persisted URLs, so their scores are indexed
+                stmt.execute("CREATE INDEX IF NOT EXISTS idx_urls_score ON urls(score)");
+            }
+
+            // SimHash fingerprints of indexed pages, reloaded so duplicates are still detected after a restart
+            stmt.execute("CREATE TABLE IF NOT EXISTS fingerprints (url TEXT PRIMARY KEY, simhash INTEGER)");
+            try (ResultSet rs = stmt.executeQuery("SELECT url, simhash FROM fingerprints")) {
+                while (rs.next()) {
+                    nearDuplicates.put(rs.getString(1), rs.getLong(2));
+                }
+            }
+
+            // URLs handed out and not yet acknowledged; the expiry index keeps redelivery scans cheap
+            stmt.execute("CREATE TABLE IF NOT EXISTS leases (" +
+                    "lease_id INTEGER PRIMARY KEY, " +
+                    "url TEXT NOT NULL, " +
+                    "expires_at INTEGER NOT NULL, " +
+                    "attempts INTEGER NOT NULL)");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_leases_expires_at ON leases(expires_at)");
+            addColumnIfMissing(stmt, "leases", "score", "REAL NOT NULL DEFAULT " + SEED_SCORE);
+            addColumnIfMissing(stmt, "leases", "depth", "INTEGER NOT NULL DEFAULT 0");
+            nextLeaseId.set(startLeaseEpoch(stmt));
+            boolean seenTableExists;
+            try (ResultSet rs = stmt.executeQuery("SELECT 1 FROM sqlite_master WHERE type = 'table' AND name = 'seen'")) {
+                seenTableExists = rs.next();
+            }
+            try (ResultSet rs = stmt.executeQuery("SELECT COALESCE(MAX(id), 0) FROM urls")) {
+                warmStartLastId = rs.next() ? rs.getLong(1) : 0;
+            }
+            stmt.close();
+
+            // From here on the write connection belongs to the writer
+            writer = new BatchWriter(connection, WRITE_QUEUE_CAPACITY, WRITE_BATCH_SIZE, "URLQueueWriter");
+            readConnection = DriverManager.getConnection(databaseUrl);
+
+            // Seen URLs; databases from before the seen table are seeded with their pending URLs
+            seenUrls = new SeenUrlSet(readConnection, writer, forNode(SEEN_FILTER_FILE, nodeId), SEEN_EXPECTED_URLS, SEEN_FALSE_POSITIVE_RATE);
+            if (!seenTableExists) {
+                try (Statement read = readConnection.createStatement();
+                     ResultSet rs = read.executeQuery("SELECT url FROM urls UNION SELECT url FROM leases")) {
+                    while (rs.next()) {
+                        seenUrls.add(rs.getString(1));
+                    }
+                }
+                writer.flush();
+            }
 
             System.out.println("Base de dados pronta a utilizar...");
+            startLeaseScanner();
+            startWarmStart();
         } catch (SQLException e) {
             e.printStackTrace();
         }
     }
 
+    /**
+     * Starts reading the URLs persisted by a previous run back into the in-memory queue.
+     *
+     * <p>The urls table is read in rowid order in chunks of WARM_START_CHUNK rows, each
+     * chunk resuming after the last id of the previous one. The database is only held
+     * while a chunk is read, so URLs are added and handed out while loading goes on.
+     * Rows added after loading started are already in memory and are skipped; rows
+     * handed out from the database before their chunk was read are no longer there to
+     * be read.</p>
+     */
+    private void startWarmStart() {
+        if (warmStartLastId == 0) {
+            warmStartMillis = 0;
+            return;
+        }
+
+        Thread loader = new Thread(() -> {
+            long start = System.nanoTime();
+            try {
+                while (warmStartAfterId < warmStartLastId) {
+                    loadChunk();
+                }
+            } catch (SQLException e) {
+                System.err.println("Warm start stopped after " + warmStartLoaded + " URLs; the rest is served from the database");
+                e.printStackTrace();
+            }
+            warmStartMillis = (System.nanoTime() - start) / 1_000_000;
+            System.out.printf("Warm start: %d URLs loaded in %d ms (%.0f URLs/s)%n", warmStartLoaded, warmStartMillis,
+                    warmStartLoaded * 1000.0 / Math.max(1, warmStartMillis));
+        }, "FrontierWarmStart");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    /**
+     * Reads the next chunk of persisted URLs into the in-memory queue.
+     *
+     * <p>Runs with exclusive use of the database, so it never overlaps with
+     * {@link #takeFromDatabase(int, long, List)} on the same rows.</p>
+     *
+     * @throws SQLException If a database error occurs
+     */
+    private void loadChunk() throws SQLException {
+        writer.exclusive(conn -> {
+            long chunkEnd = warmStartLastId;
+            int rows = 0;
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    "SELECT id, url, score, depth FROM urls WHERE id > ? AND id <= ? ORDER BY id LIMIT ?")) {
+                stmt.setLong(1, warmStartAfterId);
+                stmt.setLong(2, warmStartLastId);
+                stmt.setInt(3, WARM_START_CHUNK);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        queue.add(new Frontier.Entry(rs.getString("url"), rs.getDouble("score"), rs.getInt("depth")));
+                        chunkEnd = rs.getLong("id");
+                        rows++;
+                    }
+                }
+            }
+            warmStartLoaded += rows;
+            warmStartAfterId = rows < WARM_START_CHUNK ? warmStartLastId : chunkEnd;
+            return null;
+        });
+        signalArrivals();
+    }
+
+    /**
+     * Wakes the callers of {@link #takeUrls(int, long)} waiting for URLs, if there are any.
+     *
+     * <p>Called after URLs were made available. A waiter registers in
+     * {@link #waitingTakers} before it checks for URLs, so either it sees the new URLs
+     * or this method sees the waiter.</p>
+     */
+    private void signalArrivals() {
+        if (waitingTakers.get() > 0) {
+            synchronized (arrivals) {
+                arrivals.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Starts the periodic scan that finds expired leases and queues them for redelivery.
+     */
+    private void startLeaseScanner() {
+        leaseScanner = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "LeaseScanner");
+            thread.setDaemon(true);
+            return thread;
+        });
+        leaseScanner.scheduleWithFixedDelay(this::scanExpiredLeases, 0, LEASE_SCAN_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Queues the leases that expired without an acknowledgement for redelivery.
+     *
+     * <p>Acknowledgements and renewals submitted so far are written first, so they are
+     * not mistaken for expiries. Each expired lease is pushed a full timeout into the
+     * future in the same transaction: it is not found again by the next scans, and if
+     * the queue stops before handing it out, it expires again after the restart.</p>
+     */
+    private void scanExpiredLeases() {
+        try {
+            writer.flush();
+            long now = System.currentTimeMillis();
+            List<Redelivery> expired = writer.exclusive(conn -> {
+                List<Redelivery> found = new ArrayList<>();
+                try (PreparedStatement select = conn.prepareStatement(
+                             "SELECT lease_id, url, attempts, score, depth FROM leases WHERE expires_at <= ? ORDER BY expires_at LIMIT 10000");
+                     PreparedStatement postpone = conn.prepareStatement(EXTEND_LEASE)) {
+                    select.setLong(1, now);
+                    try (ResultSet rs = select.executeQuery()) {
+                        while (rs.next()) {
+                            found.add(new Redelivery(rs.getLong("lease_id"), rs.getString("url"), rs.getInt("attempts"),
+                                    rs.getDouble("score"), rs.getInt("depth")));
+                        }
+                    }
+                    for (Redelivery redelivery : found) {
+                        postpone.setLong(1, now + LEASE_TIMEOUT_MS);
+                        postpone.setLong(2, redelivery.leaseId());
+                        postpone.executeUpdate();
+                    }
+                }
+                return found;
+            });
+            for (Redelivery redelivery : expired) {
+                if (redelivering.add(redelivery.leaseId())) {
+                    redeliveries.add(redelivery);
+                }
+            }
+            if (!expired.isEmpty()) {
+                signalArrivals();
+            }
+        } catch (SQLException | RuntimeException e) {
+            System.err.println("Lease scan failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Derives the name of a node's own copy of a storage file or directory.
+     *
+     * @param path The default path, such as {@code ../urlqueue.db}
+     * @param nodeId The node id, or null
+     * @return The path with the node id appended to its name, such as {@code ../urlqueue_2.db}
+     */
+    private static String forNode(String path, String nodeId) {
+        if (nodeId == null || nodeId.isEmpty()) {
+            return path;
+        }
+        int slash = Math.max(path.lastIndexOf('/'), path.lastIndexOf('\\'));
+        int dot = path.lastIndexOf('.');
+        if (dot > slash + 1) {
+            return path.substring(0, dot) + "_" + nodeId + path.substring(dot);
+        }
+        return path + "_" + nodeId;
+    }
+
+    /**
+     * Adds a column to a table created by an earlier version, if it is not there yet.
+     *
+     * @param stmt Statement to run the schema queries on
+     * @param table The table
+     * @param column The column name
+     * @param definition The column type and constraints
+     * @throws SQLException If a database error occurs
+     */
+    private static void addColumnIfMissing(Statement stmt, String table, String column, String definition) throws SQLException {
+        try (ResultSet rs = stmt.executeQuery("PRAGMA table_info(" + table + ")")) {
+            while (rs.next()) {
+                if (column.equalsIgnoreCase(rs.getString("name"))) {
+                    return;
+                }
+            }
+        }
+        stmt.execute("ALTER TABLE " + table + " ADD COLUMN " + column + " " + definition);
+    }
+
     //----------------------------------------METHODS----------------------------------------
 
     /**
-     * Adds a URL to the queue if it doesn't already exist.
+     * Adds a URL to the queue if it was never added before.
      *
      * This method:
-     * 1. Checks if the URL is already in the in-memory queue
-     * 2. If not, adds it to both the in-memory queue and the database
-     * 3. Uses SQL's INSERT OR IGNORE to handle duplicate URLs in the database
+     * 1. Checks the URL against the seen set, which costs a memory lookup for most new URLs
+     * 2. If it is new, records it as seen and adds it to the in-memory queue
+     * 3. Submits its insert to the database writer, which uses INSERT OR IGNORE
      *
-     * The method is synchronized to ensure thread safety when multiple clients
-     * are adding URLs concurrently.
+     * The method is thread-safe without a queue-wide lock; concurrent callers adding
+     * the same URL are resolved by the seen set.
      *
      * @param url The URL to add to the queue
      * @throws RemoteException If a remote communication error occurs
      */
     @Override
-    public synchronized void addUrl(String url) throws RemoteException {
-
-        if (!queue.contains(url)) {  // Avoid duplicate URLs
-            if (allUrlsProcessed.contains(url)) return;
-            queue.add(url);
-            allUrlsProcessed.add(url);
-            try (PreparedStatement stmt = connection.prepareStatement("INSERT OR IGNORE INTO urls (url) VALUES (?)")) {
-                stmt.setString(1, url);
-                stmt.executeUpdate();
+    public void addUrl(String url) throws RemoteException {
+        if (url == null || url.isEmpty()) {
+            return;
+        }
+        addUrls(List.of(url));
+    }
+
+    /**
+     * Adds several URLs to the queue.
+     *
+     * URLs seen before are skipped, as in {@link #addUrl(String)}, including repeats
+     * within the same collection. New URLs are recorded as seen and their inserts are
+     * submitted to the database writer, which commits them in batches.
+     *
+     * @param urls The URLs to add to the queue
+     * @return The number of URLs actually added
+     * @throws RemoteException If a remote communication error occurs
+     */
+    @Override
+    public int addUrls(Collection<String> urls) throws RemoteException {
+        return enqueue(urls, SEED_SCORE, 0, false, false);
+    }
+
+    /**
+     * Adds the links found on a page, crediting each with a share of the page's score.
+     *
+     * The caller splits the page's score evenly among its distinct outlinks (OPIC)
+     * and passes the share. New URLs are queued with the share as score; URLs still
+     * waiting in the queue have their score raised by it, which in priority mode
+     * moves them ahead.
+     *
+     * Links count against their host's and path template's budgets: past a fraction
+     * of a budget they are queued with a demoted score, past the whole budget, or once
+     * their template is flagged as a trap, they are dropped.
+     *
+     * @param urls The URLs the page links to
+     * @param credit The share of the page's score credited to each link
+     * @param depth The depth of the links, one more than the page's
+     * @return The number of URLs newly added to the queue
+     * @throws RemoteException If a remote communication error occurs
+     */
+    @Override
+    public int addLinks(Collection<String> urls, double credit, int depth) throws RemoteException {
+        return enqueue(urls, credit, depth, priorityMode, true);
+    }
+
+    /**
+     * Queues the URLs never seen before.
+     *
+     * Each new URL's insert is submitted together with its entry in the seen set, so
+     * both commit in the same transaction, and before the URL enters the in-memory
+     * queue, so its removal can never be written before it.
+     *
+     * @param urls The URLs to queue
+     * @param score Score credited to each URL
+     * @param depth Depth of the new URLs
+     * @param creditQueued Whether URLs already waiting in the queue have their score raised by {@code score}
+     * @param budgeted Whether new URLs count against the crawl-trap budgets; seeds do not
+     * @return The number of URLs newly added to the queue
+     */
+    private int enqueue(Collection<String> urls, double score, int depth, boolean creditQueued, boolean budgeted) {
+        int added = 0;
+        List<BatchWriter.Op> credits = new ArrayList<>();
+        for (String url : urls) {
+            if (url == null || url.isEmpty()) {
+                continue;
+            }
+            double urlScore = score;
+            if (budgeted && !seenUrls.mightContain(url)) {
+                CrawlTrapDetector.Verdict verdict = traps.check(url);
+                if (verdict == CrawlTrapDetector.Verdict.BLOCK) {
+                    continue;
+                }
+                if (verdict == CrawlTrapDetector.Verdict.DEMOTE) {
+                    urlScore *= TRAP_DEMOTE_FACTOR;
+                }
+            }
+            try {
+                if (seenUrls.add(url, new BatchWriter.Op(INSERT_URL, url, urlScore, depth))) {
+                    queue.add(new Frontier.Entry(url, urlScore, depth));
+                    if (budgeted) {
+                        traps.recordQueued(url);
+                    }
+                    added++;
+                } else if (creditQueued) {
+                    // Raise the in-memory copy if it is there; persisted rows are updated either way
+                    queue.raise(url, score);
+                    credits.add(new BatchWriter.Op(CREDIT_URL, score, url));
+                }
             } catch (SQLException e) {
                 e.printStackTrace();
             }
         }
+        writer.submit(credits, null);
+        if (added > 0) {
+            signalArrivals();
+        }
+        return added;
     }
 
     /**
@@ -117,74 +673,274 @@ public class URLQueue extends UnicastRemoteObject implements URLQueueInterface {
      *
      * This method implements the following logic:
      * 1. First attempts to take a URL from the in-memory queue
-     * 2. If the in-memory queue is empty, retrieves one URL from the database
-     * 3. Removes the URL from both the in-memory queue and the database
-     * 4. Uses a transaction to ensure database consistency
-     *
-     * The method is synchronized to ensure thread safety when multiple clients
-     * are taking URLs concurrently.
+     * 2. If the in-memory queue is empty and URLs persisted by a previous run are still
+     *    being loaded, retrieves one URL from the database
+     * 3. Removes the URL from the database through the writer
      *
      * @return The next URL in the queue, or null if the queue is empty
      * @throws RemoteException If a remote communication error occurs
      */
     @Override
-    public synchronized String takeUrl() throws RemoteException {
-        String url = queue.poll();  // Remove from memory queue
-        if (url != null) {
-            // URL was removed from the queue, so remove it from the database too
-            try (PreparedStatement deleteStmt = connection.prepareStatement("DELETE FROM urls WHERE url = ?")) {
-                // Start a transaction
-                connection.setAutoCommit(false);
-
-                deleteStmt.setString(1, url);
-                deleteStmt.executeUpdate();
-
-                // Commit the transaction
-                connection.commit();
-            } catch (SQLException e) {
-                // Rollback the transaction in case of error
-                if (connection != null) {
-                    try {
-                        connection.rollback();
-                    } catch (SQLException ex) {
-                        ex.printStackTrace();
+    public String takeUrl() throws RemoteException {
+        List<Frontier.Entry> polled = queue.poll(1);
+        if (!polled.isEmpty()) {
+            String url = polled.get(0).url();
+            writer.submit(new BatchWriter.Op(DELETE_URL, url));
+            return url;
+        }
+        if (warmStartAfterId < warmStartLastId) {
+            List<Frontier.Entry> taken = takeFromDatabase(1, 0, null);
+            return taken.isEmpty() ? null : taken.get(0).url();
+        }
+        return null;
+    }
+
+    /**
+     * Leases up to {@code max} URLs.
+     *
+     * Expired leases found by the lease scanner are redelivered first, under a new
+     * lease id so a late acknowledgement from the previous holder cannot release the
+     * new lease. URLs that already reached the maximum number of delivery attempts are
+     * dropped. The rest is taken from the stripes of the in-memory queue. Only while
+     * the URLs of a previous run are still being loaded does a shortfall fall back to
+     * the database.
+     *
+     * Taken URLs move from the urls table to the leases table in one submission to the
+     * database writer, so the call returns without waiting for the disk.
+     *
+     * @param max The maximum number of URLs to lease
+     * @return The leases granted, possibly empty
+     * @throws RemoteException If a remote communication error occurs
+     */
+    @Override
+    public List<UrlLease> takeUrls(int max) throws RemoteException {
+        List<UrlLease> leases = new ArrayList<>(Math.max(0, Math.min(max, 1000)));
+        List<BatchWriter.Op> ops = new ArrayList<>();
+        long expiresAt = System.currentTimeMillis() + LEASE_TIMEOUT_MS;
+
+        // Redeliver expired leases, unless they were acknowledged after the scan found them
+        Redelivery redelivery;
+        while (leases.size() < max && (redelivery = redeliveries.poll()) != null) {
+            if (!redelivering.remove(redelivery.leaseId())) {
+                continue;
+            }
+            ops.add(new BatchWriter.Op(DELETE_LEASE, redelivery.leaseId()));
+            if (redelivery.attempts() < MAX_DELIVERY_ATTEMPTS) {
+                leases.add(addLease(ops, redelivery.url(), expiresAt, redelivery.attempts() + 1,
+                        redelivery.score(), redelivery.depth()));
+            } else {
+                System.out.println("URL descartado após " + redelivery.attempts() + " tentativas: " + redelivery.url());
+            }
+        }
+
+        // Then take new URLs from memory
+        for (Frontier.Entry entry : queue.poll(max - leases.size())) {
+            ops.add(new BatchWriter.Op(DELETE_URL, entry.url()));
+            leases.add(addLease(ops, entry.url(), expiresAt, 1, entry.score(), entry.depth()));
+        }
+        writer.submit(ops, null);
+
+        if (leases.size() < max && warmStartAfterId < warmStartLastId) {
+            takeFromDatabase(max - leases.size(), expiresAt, leases);
+        }
+        return leases;
+    }
+
+    /**
+     * Leases up to {@code max} URLs, waiting up to {@code timeoutMs} for some to arrive
+     * if the queue is empty.
+     *
+     * The caller is woken as soon as URLs are added, loaded or due for redelivery, so
+     * Downloaders need not poll an empty queue. The wait is capped at MAX_TAKE_WAIT_MS.
+     *
+     * @param max The maximum number of URLs to lease
+     * @param timeoutMs The longest time to wait for URLs, in milliseconds
+     * @return The leases granted, empty if none arrived in time
+     * @throws RemoteException If a remote communication error occurs
+     */
+    @Override
+    public List<UrlLease> takeUrls(int max, long timeoutMs) throws RemoteException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.min(Math.max(0, timeoutMs), MAX_TAKE_WAIT_MS));
+        List<UrlLease> leases = takeUrls(max);
+        while (leases.isEmpty()) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                break;
+            }
+            waitingTakers.incrementAndGet();
+            try {
+                synchronized (arrivals) {
+                    if (queue.size() == 0 && redeliveries.isEmpty()) {
+                        TimeUnit.NANOSECONDS.timedWait(arrivals, remaining);
                     }
                 }
-                e.printStackTrace();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } finally {
+                waitingTakers.decrementAndGet();
             }
-        } else {
-            // Try to get a URL from the database if the in-memory queue is empty
-            try (Statement stmt = connection.createStatement();
-                 ResultSet rs = stmt.executeQuery("SELECT url FROM urls LIMIT 1")) {
-                if (rs.next()) {
-                    url = rs.getString("url");
-
-                    try (PreparedStatement deleteStmt = connection.prepareStatement("DELETE FROM urls WHERE url = ?")) {
-                        // Start a transaction
-                        connection.setAutoCommit(false);
-
-                        deleteStmt.setString(1, url);
-                        deleteStmt.executeUpdate();
-
-                        // Commit the transaction
-                        connection.commit();
-                    } catch (SQLException e) {
-                        // Rollback the transaction in case of error
-                        if (connection != null) {
-                            try {
-                                connection.rollback();
-                            } catch (SQLException ex) {
-                                ex.printStackTrace();
+            leases = takeUrls(max);
+        }
+        return leases;
+    }
+
+    /**
+     * Takes URLs persisted by a previous run that the warm start has not loaded yet.
+     *
+     * Rows up to the warm start's position are in memory or already handed out, so
+     * only later rows are read. In FIFO mode the oldest rows are taken in rowid order,
+     * removed with a single range delete, and the warm start skips past them; in
+     * priority mode the best-scored rows are taken. Runs with exclusive use of the
+     * database, so the rows are removed before anyone else can read them.
+     *
+     * @param max The maximum number of URLs to take
+     * @param expiresAt Expiry time of the leases
+     * @param leases List the new leases are added to, or null to take the URLs without leasing them
+     * @return The URLs taken, possibly none
+     */
+    private List<Frontier.Entry> takeFromDatabase(int max, long expiresAt, List<UrlLease> leases) {
+        try {
+            return writer.exclusive(conn -> {
+                List<Frontier.Entry> taken = new ArrayList<>();
+                List<BatchWriter.Op> ops = new ArrayList<>();
+                long afterId = warmStartAfterId;
+                long lastId = warmStartLastId;
+                String order = priorityMode ? "score DESC" : "id";
+                long lastTaken = afterId;
+                try (PreparedStatement select = conn.prepareStatement(
+                        "SELECT id, url, score, depth FROM urls WHERE id > ? AND id <= ? ORDER BY " + order + " LIMIT ?")) {
+                    select.setLong(1, afterId);
+                    select.setLong(2, lastId);
+                    select.setInt(3, max);
+                    try (ResultSet rs = select.executeQuery()) {
+                        while (rs.next()) {
+                            Frontier.Entry entry = new Frontier.Entry(rs.getString("url"), rs.getDouble("score"), rs.getInt("depth"));
+                            taken.add(entry);
+                            lastTaken = rs.getLong("id");
+                            if (priorityMode) {
+                                ops.add(new BatchWriter.Op("DELETE FROM urls WHERE id = ?", lastTaken));
                             }
                         }
-                        e.printStackTrace();
                     }
                 }
-            } catch (SQLException e) {
-                e.printStackTrace();
+                if (!priorityMode && lastTaken > afterId) {
+                    ops.add(new BatchWriter.Op("DELETE FROM urls WHERE id > ? AND id <= ?", afterId, lastTaken));
+                }
+                List<UrlLease> granted = new ArrayList<>();
+                if (leases != null) {
+                    for (Frontier.Entry entry : taken) {
+                        granted.add(addLease(ops, entry.url(), expiresAt, 1, entry.score(), entry.depth()));
+                    }
+                }
+                execute(conn, ops);
+                if (!priorityMode && lastTaken > afterId) {
+                    warmStartAfterId = lastTaken;
+                }
+                if (leases != null) {
+                    leases.addAll(granted);
+                }
+                return taken;
+            });
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * Runs statements directly on a connection, inside the caller's transaction.
+     *
+     * @param conn The connection
+     * @param ops The statements
+     * @throws SQLException If a statement fails
+     */
+    private static void execute(Connection conn, List<BatchWriter.Op> ops) throws SQLException {
+        for (BatchWriter.Op op : ops) {
+            try (PreparedStatement stmt = conn.prepareStatement(op.sql())) {
+                for (int i = 0; i < op.params().length; i++) {
+                    stmt.setObject(i + 1, op.params()[i]);
+                }
+                stmt.executeUpdate();
             }
         }
-        return url;
+    }
+
+    /**
+     * Starts a new lease epoch and returns the first lease id of this run.
+     *
+     * <p>Lease ids cannot restart from the leases table: acknowledged leases are deleted
+     * and the last lease inserts may be lost in a crash, while running Downloaders keep
+     * their ids across a reconnection and would then ack or renew another URL's lease.
+     * Each run therefore takes the next epoch from the {@code queue_meta} table, committed
+     * before any lease is handed out, and numbers its leases within it. An epoch holds
+     * 2^32 leases; after 2^16 - 1 runs the epochs wrap around to the first one.</p>
+     *
+     * @param stmt Statement on the write connection, in auto-commit mode
+     * @return The first lease id of the run
+     * @throws SQLException If the epoch cannot be read or stored
+     */
+    private static long startLeaseEpoch(Statement stmt) throws SQLException {
+        stmt.execute("CREATE TABLE IF NOT EXISTS queue_meta (key TEXT PRIMARY KEY, value INTEGER NOT NULL)");
+        long epoch;
+        try (ResultSet rs = stmt.executeQuery("SELECT value FROM queue_meta WHERE key = 'lease_epoch'")) {
+            epoch = rs.next() ? rs.getLong(1) % MAX_LEASE_EPOCH + 1 : 1;
+        }
+        stmt.executeUpdate("INSERT OR REPLACE INTO queue_meta (key, value) VALUES ('lease_epoch', " + epoch + ")");
+        return epoch << LEASE_SEQUENCE_BITS;
+    }
+
+    /**
+     * Creates a lease and adds its insert to a list of statements.
+     *
+     * @param ops The statements the insert is added to
+     * @param url The leased URL
+     * @param expiresAt Expiry time of the lease
+     * @param attempts Number of times the URL has been handed out, including this one
+     * @param score The URL's score, handed on to the links found on the page
+     * @param depth The URL's depth
+     * @return The new lease
+     */
+    private UrlLease addLease(List<BatchWriter.Op> ops, String url, long expiresAt, int attempts,
+                              double score, int depth) {
+        long leaseId = nextLeaseId.getAndIncrement();
+        ops.add(new BatchWriter.Op(INSERT_LEASE, leaseId, url, expiresAt, attempts, score, depth));
+        return new UrlLease(leaseId, url, score, depth);
+    }
+
+    /**
+     * Acknowledges processed URLs, releasing their leases for good.
+     *
+     * Unknown or already redelivered lease ids are ignored. An expired lease that is
+     * acknowledged before it was handed out again is not redelivered.
+     *
+     * @param leaseIds The ids of the leases to acknowledge
+     * @throws RemoteException If a remote communication error occurs
+     */
+    @Override
+    public void ack(Collection<Long> leaseIds) throws RemoteException {
+        List<BatchWriter.Op> ops = new ArrayList<>(leaseIds.size());
+        for (long leaseId : leaseIds) {
+            redelivering.remove(leaseId);
+            ops.add(new BatchWriter.Op(DELETE_LEASE, leaseId));
+        }
+        writer.submit(ops, null);
+    }
+
+    /**
+     * Extends leases still being worked on by another lease timeout.
+     *
+     * @param leaseIds The ids of the leases to extend
+     * @throws RemoteException If a remote communication error occurs
+     */
+    @Override
+    public void extendLeases(Collection<Long> leaseIds) throws RemoteException {
+        long expiresAt = System.currentTimeMillis() + LEASE_TIMEOUT_MS;
+        List<BatchWriter.Op> ops = new ArrayList<>(leaseIds.size());
+        for (long leaseId : leaseIds) {
+            ops.add(new BatchWriter.Op(EXTEND_LEASE, expiresAt, leaseId));
+        }
+        writer.submit(ops, null);
     }
 
     /**
@@ -198,25 +954,165 @@ public class URLQueue extends UnicastRemoteObject implements URLQueueInterface {
      * @throws RemoteException If a remote communication error occurs
      */
     @Override
-    public synchronized boolean isEmpty() throws RemoteException {
+    public boolean isEmpty() throws RemoteException {
         return queue.isEmpty();
     }
 
+    /**
+     * Checks a page's SimHash fingerprint against the pages indexed so far.
+     *
+     * If an indexed page lies within the configured Hamming distance, its URL is
+     * returned and the fingerprint is not stored, so duplicates always point to a page
+     * that was actually indexed. Otherwise the fingerprint is stored (replacing the
+     * page's previous one) and null is returned.
+     *
+     * @param url The URL of the page
+     * @param fingerprint The page's 64-bit SimHash
+     * @return The URL of the indexed page it duplicates, or null if the page is new
+     * @throws RemoteException If a remote communication error occurs
+     */
+    @Override
+    public String registerFingerprint(String url, long fingerprint) throws RemoteException {
+        synchronized (nearDuplicates) {
+            String original = nearDuplicates.findNearDuplicate(fingerprint, url);
+            if (original != null) {
+                return original;
+            }
+            nearDuplicates.put(url, fingerprint);
+        }
+        writer.submit(new BatchWriter.Op(SAVE_FINGERPRINT, url, fingerprint));
+        return null;
+    }
+
+    /**
+     * Records the link set of a fetched page and tells whether the page belongs to a trap.
+     *
+     * A path template whose pages keep producing near-identical link sets is flagged
+     * as a trap; from then on its links are dropped by {@link #addLinks} and its pages
+     * are reported here as trapped.
+     *
+     * @param url The URL of the page
+     * @param fingerprint The SimHash of the page's link templates, 0 if the page had too few links
+     * @return true if the page's template is flagged as a trap
+     * @throws RemoteException If a remote communication error occurs
+     */
+    @Override
+    public boolean reportLinkSet(String url, long fingerprint) throws RemoteException {
+        return traps.recordLinkSet(url, fingerprint);
+    }
+
+    /**
+     * Returns statistics about the queue and its seen URL set.
+     *
+     * This includes the number of URLs waiting in memory and in the database, the
+     * number of leases outstanding, the backlog of the database writer, and the size,
+     * memory use and false-positive rates of the seen set's Bloom filter. Database
+     * counts reflect the writes committed so far.
+     *
+     * @return A map containing statistical information about the queue
+     * @throws RemoteException If a remote communication error occurs
+     */
+    @Override
+    public Map<String, Object> getStats() throws RemoteException {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("frontier_mode", FRONTIER_MODE);
+        stats.put("frontier_urls", queue.size());
+        stats.put("frontier_stripes", queue.stripeCount());
+        if (priorityMode) {
+            stats.put("frontier_score_raises", queue.sum(stripe -> ((PriorityFrontier) stripe).raises()));
+            stats.put("frontier_priority_corrections", queue.sum(stripe -> ((PriorityFrontier) stripe).corrections()));
+            stats.put("frontier_tracked_hosts", queue.sum(stripe -> ((PriorityFrontier) stripe).trackedHosts()));
+            stats.put("frontier_swept_hosts", queue.sum(stripe -> ((PriorityFrontier) stripe).sweptHosts()));
+        } else {
+            stats.put("frontier_spilled_segments", queue.sum(stripe -> ((SpillingFrontier) stripe).spilledSegments()));
+            stats.put("frontier_segments_written", queue.sum(stripe -> ((SpillingFrontier) stripe).segmentsWritten()));
+        }
+        synchronized (readConnection) {
+            try (Statement stmt = readConnection.createStatement()) {
+                try (ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM urls")) {
+                    if (rs.next()) {
+                        stats.put("queued_urls", rs.getLong(1));
+                    }
+                }
+                try (ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM leases")) {
+                    if (rs.next()) {
+                        stats.put("leased_urls", rs.getLong(1));
+                    }
+                }
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        }
+        stats.put("redeliveries_pending", redelivering.size());
+        stats.put("takers_waiting", waitingTakers.get());
+        stats.put("warm_start_loaded", warmStartLoaded);
+        stats.put("warm_start_ms", warmStartMillis);
+        writer.reportTo("queue_writer", stats);
+        seenUrls.reportTo(stats);
+        traps.reportTo(stats);
+        return stats;
+    }
+
+    /**
+     * Waits until every write submitted so far is committed.
+     */
+    void awaitWrites() {
+        writer.flush();
+    }
+
+    /**
+     * Writes what is still queued for the database and saves the seen set's Bloom
+     * filter, so the next start does not rebuild it.
+     */
+    void shutdown() {
+        if (leaseScanner != null) {
+            leaseScanner.shutdownNow();
+            try {
+                leaseScanner.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (writer != null) {
+            writer.close();
+        }
+        if (seenUrls != null) {
+            seenUrls.save();
+        }
+    }
+
+    /**
+     * Returns the RMI registry port the queue service is published on.
+     *
+     * @return The configured registry port
+     */
+    static int getRegistryPort() {
+        return URL_PORT;
+    }
+
     //----------------------------------------MAIN----------------------------------------
 
     /**
      * Main method to initialize and run the URLQueue service.
      *
      * This method:
-     * 1. Creates a new URLQueue instance
-     * 2. Sets up the RMI registry on port 8184
+     * 1. Creates a new URLQueue instance and registers a shutdown hook that flushes
+     *    its pending writes and saves the seen set
+     * 2. Sets up the RMI registry on the configured port, or on the port given as argument
      * 3. Registers the URLQueue service in the registry with the name "URLQueueService"
      *
-     * @param args Command-line arguments (not used)
+     * To run several partitions of the queue, start one node per entry of
+     * QUEUE_NODES, each with its own port and node id.
+     *
+     * @param args Optional registry port, followed by an optional node id
      */
     public static void main(String args[]) {
         try {
-            URLQueue urlQueue = new URLQueue();
+            URLQueue urlQueue = new URLQueue(args.length >= 2 ? args[1] : null);
+            Runtime.getRuntime().addShutdownHook(new Thread(urlQueue::shutdown, "URLQueueShutdown"));
+            if (args.length >= 1) {
+                URL_PORT = Integer.parseInt(args[0]);
+            }
             Registry registry = LocateRegistry.createRegistry(URL_PORT);
             registry.rebind("URLQueueService", urlQueue);
             System.out.println("URLQueueService ready...");
@@ -0,0 +1,249 @@
+package search;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Contention benchmark for {@link URLQueue} with concurrent producers and consumers.
+ *
+ * <p>Producers add batches of synthetic URLs spread over many hosts, about a quarter of
+ * them repeats. Consumers lease batches and acknowledge them at once. After the run
+ * the report shows URLs added and leased per second and the latency percentiles of
+ * {@code addUrls} and {@code takeUrls}.</p>
+ *
+ * <p>In {@code serialized} mode every call holds one shared lock and waits for its
+ * writes to commit before returning, which reproduces the queue-wide monitor and the
+ * synchronous writes the queue used before; {@code concurrent} mode calls the queue
+ * directly. The queue runs as node {@code bench}, so it uses its own database and
+ * files, which are deleted before the run.</p>
+ *
+ * <p>Usage: {@code java search.URLQueueBenchmark [producers] [consumers] [seconds] [concurrent|serialized]}</p>
+ *
+ * @author João Antunes, David Cameijo and Gabriel Pinto
+ */
+public class URLQueueBenchmark {
+
+    /** URLs per addUrls call */
+    private static final int ADD_BATCH = 100;
+
+    /** URLs per takeUrls call */
+    private static final int TAKE_BATCH = 50;
+
+    /** Latency samples kept per thread */
+    private static final int MAX_SAMPLES = 1 << 20;
+
+    /** Lock shared by all calls in serialized mode */
+    private static final Object MONITOR = new Object();
+
+    /**
+     * Latency samples of one thread, in nanoseconds.
+     */
+    private static final class Samples {
+        final long[] nanos = new long[MAX_SAMPLES];
+        int count;
+
+        void add(long value) {
+            if (count < nanos.length) {
+                nanos[count++] = value;
+            }
+        }
+    }
+
+    /**
+     * A call to the queue that may throw.
+     */
+    @FunctionalInterface
+    private interface Call {
+        void run() throws Exception;
+    }
+
+    //----------------------------------------BENCHMARK----------------------------------------
+
+    /**
+     * Runs a call, in serialized mode under the shared lock and until its writes committed.
+     *
+     * @param queue The queue
+     * @param serialized Whether to emulate the queue-wide monitor
+     * @param call The call
+     * @throws Exception If the call fails
+     */
+    private static void invoke(URLQueue queue, boolean serialized, Call call) throws Exception {
+        if (serialized) {
+            synchronized (MONITOR) {
+                call.run();
+                queue.awaitWrites();
+            }
+        } else {
+            call.run();
+        }
+    }
+
+    /**
+     * Prints the percentiles of the samples of several threads.
+     *
+     * @param name The operation
+     * @param samples The samples of each thread
+     */
+    private static void printLatency(String name, List<Samples> samples) {
+        int total = 0;
+        for (Samples s : samples) {
+            total += s.count;
+        }
+        long[] all = new long[total];
+        int offset = 0;
+        for (Samples s : samples) {
+            System.arraycopy(s.nanos, 0, all, offset, s.count);
+            offset += s.count;
+        }
+        if (all.length == 0) {
+            System.out.printf("%-10s no calls%n", name);
+            return;
+        }
+        Arrays.sort(all);
+        System.out.printf("%-10s %9d calls  p50 %8.1f us  p99 %8.1f us  p99.9 %9.1f us  max %9.1f us%n",
+                name, all.length, percentile(all, 0.50) / 1e3, percentile(all, 0.99) / 1e3,
+                percentile(all, 0.999) / 1e3, all[all.length - 1] / 1e3);
+    }
+
+    /**
+     * Returns a percentile of sorted values.
+     *
+     * @param sorted The values, in ascending order
+     * @param fraction The percentile, between 0 and 1
+     * @return The value at that percentile
+     */
+    private static long percentile(long[] sorted, double fraction) {
+        return sorted[Math.min(sorted.length - 1, (int) (sorted.length * fraction))];
+    }
+
+    /**
+     * Deletes the files a previous run left for the benchmark node.
+     *
+     * @throws IOException If a file cannot be deleted
+     */
+    private static void deleteNodeFiles() throws IOException {
+        for (String file : List.of("../urlqueue_bench.db", "../urlqueue_bench.db-wal", "../urlqueue_bench.db-shm",
+                "../seen_urls_bench.bloom")) {
+            Files.deleteIfExists(Path.of(file));
+        }
+    }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args Command-line arguments (args[0]: producers, args[1]: consumers,
+     *             args[2]: duration in seconds, args[3]: concurrent or serialized)
+     * @throws Exception If the queue cannot be created
+     */
+    public static void main(String[] args) throws Exception {
+        int producers = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int consumers = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        boolean serialized = args.length > 3 && args[3].equalsIgnoreCase("serialized");
+
+        deleteNodeFiles();
+        URLQueue queue = new URLQueue("bench");
+        System.out.printf("%d producers, %d consumers, %d s, %s%n", producers, consumers, seconds,
+                serialized ? "serialized" : "concurrent");
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong nextUrl = new AtomicLong();
+        AtomicLong added = new AtomicLong();
+        AtomicLong leased = new AtomicLong();
+        AtomicLong errors = new AtomicLong();
+        List<Samples> addSamples = new ArrayList<>();
+        List<Samples> takeSamples = new ArrayList<>();
+        CountDownLatch done = new CountDownLatch(producers + consumers);
+        List<Thread> threads = new ArrayList<>();
+
+        for (int p = 0; p < producers; p++) {
+            Samples samples = new Samples();
+            addSamples.add(samples);
+            threads.add(new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                List<String> batch = new ArrayList<>(ADD_BATCH);
+                while (running.get()) {
+                    batch.clear();
+                    for (int i = 0; i < ADD_BATCH; i++) {
+                        // About one URL in four repeats an earlier one
+                        long id = random.nextInt(4) == 0 && nextUrl.get() > 0
+                                ? random.nextLong(nextUrl.get()) : nextUrl.getAndIncrement();
+                        batch.add("https://host" + (id % 5_000) + ".example/page/" + id);
+                    }
+                    long start = System.nanoTime();
+                    try {
+                        int[] count = new int[1];
+                        invoke(queue, serialized, () -> count[0] = queue.addUrls(batch));
+                        added.addAndGet(count[0]);
+                    } catch (Exception e) {
+                        errors.incrementAndGet();
+                    }
+                    samples.add(System.nanoTime() - start);
+                }
+                done.countDown();
+            }, "Producer-" + p));
+        }
+
+        for (int c = 0; c < consumers; c++) {
+            Samples samples = new Samples();
+            takeSamples.add(samples);
+            threads.add(new Thread(() -> {
+                while (running.get()) {
+                    long start = System.nanoTime();
+                    try {
+                        List<List<UrlLease>> taken = new ArrayList<>(1);
+                        invoke(queue, serialized, () -> taken.add(queue.takeUrls(TAKE_BATCH)));
+                        samples.add(System.nanoTime() - start);
+                        List<UrlLease> leases = taken.get(0);
+                        if (leases.isEmpty()) {
+                            Thread.sleep(1);
+                            continue;
+                        }
+                        leased.addAndGet(leases.size());
+                        List<Long> ids = new ArrayList<>(leases.size());
+                        for (UrlLease lease : leases) {
+                            ids.add(lease.leaseId());
+                        }
+                        invoke(queue, serialized, () -> queue.ack(ids));
+                    } catch (Exception e) {
+                        errors.incrementAndGet();
+                    }
+                }
+                done.countDown();
+            }, "Consumer-" + c));
+        }
+
+        long start = System.nanoTime();
+        threads.forEach(Thread::start);
+        Thread.sleep(seconds * 1000L);
+        running.set(false);
+        done.await();
+        double elapsed = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("added  %10d URLs  %10.0f URLs/s%n", added.get(), added.get() / elapsed);
+        System.out.printf("leased %10d URLs  %10.0f URLs/s%n", leased.get(), leased.get() / elapsed);
+        printLatency("addUrls", addSamples);
+        printLatency("takeUrls", takeSamples);
+        if (errors.get() > 0) {
+            System.out.println("errors " + errors.get());
+        }
+
+        long flushStart = System.nanoTime();
+        queue.awaitWrites();
+        System.out.printf("writer drained in %.1f ms%n", (System.nanoTime() - flushStart) / 1e6);
+        Map<String, Object> stats = new TreeMap<>(queue.getStats());
+        stats.forEach((key, value) -> System.out.println("  " + key + " = " + value));
+        queue.shutdown();
+        System.exit(0);
+    }
+}
@@ -2,6 +2,9 @@ package search;
 
 import java.rmi.Remote;
 import java.rmi.RemoteException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Remote interface for managing a URL queue in a distributed search system.
@@ -17,6 +20,28 @@ public interface URLQueueInterface extends Remote {
      */
     void addUrl(String url) throws RemoteException;
 
+    /**
+     * Adds several URLs to the queue in a single call.
+     *
+     * @param urls The URLs to be inserted into the queue.
+     * @return The number of URLs that were new and added.
+     * @throws RemoteException If a remote communication error occurs.
+     */
+    int addUrls(Collection<String> urls) throws RemoteException;
+
+    /**
+     * Adds the links found on a page. The caller splits the page's score among its
+     * links and passes each link's share, which is added to the link's score and
+     * ranks the queue in priority mode.
+     *
+     * @param urls The URLs the page links to.
+     * @param credit The share of the page's score credited to each link.
+     * @param depth The depth of the links, one more than the page's.
+     * @return The number of URLs that were new and added to the queue.
+     * @throws RemoteException If a remote communication error occurs.
+     */
+    int addLinks(Collection<String> urls, double credit, int depth) throws RemoteException;
+
     /**
      * Retrieves the next URL from the queue for processing.
      *
@@ -25,6 +50,44 @@ public interface URLQueueInterface extends Remote {
      */
     String takeUrl() throws RemoteException;
 
+    /**
+     * Leases up to {@code max} URLs from the queue in a single call. Each URL must be
+     * acknowledged with {@link #ack(Collection)} once processed, or it is handed out
+     * again after the lease timeout.
+     *
+     * @param max The maximum number of URLs to lease.
+     * @return The leases granted, empty if the queue is empty.
+     * @throws RemoteException If a remote communication error occurs.
+     */
+    List<UrlLease> takeUrls(int max) throws RemoteException;
+
+    /**
+     * Leases up to {@code max} URLs, waiting for URLs to arrive if the queue is empty.
+     * Returns as soon as URLs can be leased, or empty once the timeout elapsed.
+     *
+     * @param max The maximum number of URLs to lease.
+     * @param timeoutMs The longest time to wait for URLs, in milliseconds; the queue may cap it.
+     * @return The leases granted, empty if none arrived in time.
+     * @throws RemoteException If a remote communication error occurs.
+     */
+    List<UrlLease> takeUrls(int max, long timeoutMs) throws RemoteException;
+
+    /**
+     * Acknowledges processed URLs so their leases are not redelivered.
+     *
+     * @param leaseIds The ids of the leases to acknowledge.
+     * @throws RemoteException If a remote communication error occurs.
+     */
+    void ack(Collection<Long> leaseIds) throws RemoteException;
+
+    /**
+     * Extends leases that are still being worked on by another lease timeout.
+     *
+     * @param leaseIds The ids of the leases to extend.
+     * @throws RemoteException If a remote communication error occurs.
+     */
+    void extendLeases(Collection<Long> leaseIds) throws RemoteException;
+
     /**
      * Checks whether the URL queue is empty.
      *
@@ -32,4 +95,34 @@ public interface URLQueueInterface extends Remote {
      * @throws RemoteException If a remote communication error occurs.
      */
     boolean isEmpty() throws RemoteException;
-}
\ No newline at end of file
+
+    /**
+     * Registers a page's SimHash fingerprint, or reports the indexed page it nearly duplicates.
+     *
+     * @param url The URL of the page.
+     * @param fingerprint The 64-bit SimHash of the page's terms.
+     * @return The URL of the indexed near-duplicate, or {@code null} if the page is new and was registered.
+     * @throws RemoteException If a remote communication error occurs.
+     */
+    String registerFingerprint(String url, long fingerprint) throws RemoteException;
+
+    /**
+     * Reports the link set of a fetched page, so pages whose links keep repeating can be
+     * recognised as a crawler trap.
+     *
+     * @param url The URL of the page.
+     * @param fingerprint The SimHash of the page's link templates, 0 if the page had too few links.
+     * @return {@code true} if the page belongs to a trap and its links should not be queued.
+     * @throws RemoteException If a remote communication error occurs.
+     */
+    boolean reportLinkSet(String url, long fingerprint) throws RemoteException;
+
+    /**
+     * Returns statistics about the queue, including the size, memory use and
+     * false-positive rate of its seen URL filter.
+     *
+     * @return A map containing statistical information about the queue.
+     * @throws RemoteException If a remote communication error occurs.
+     */
+    Map<String, Object> getStats() throws RemoteException;
+}
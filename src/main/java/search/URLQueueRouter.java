@@ -0,0 +1,458 @@
+package search;
+
+import java.rmi.NotBoundException;
+import java.rmi.RemoteException;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import search.Crawler.ConsistentHashRing;
+import search.Crawler.HostScheduler;
+
+/**
+ * Client-side view of a URL queue partitioned across several {@link URLQueue} nodes.
+ *
+ * <p>Each node owns the hosts that a {@link ConsistentHashRing} assigns to it, so all
+ * URLs of a host are queued, deduplicated and leased by one node. The router
+ * implements {@link URLQueueInterface} so the Downloader and the Gateway use it like
+ * a single queue:</p>
+ * <ul>
+ *   <li>Adds are grouped by owning node, with one remote call per node.</li>
+ *   <li>Batched takes start at a different node on every call and move on to the next
+ *       node until the batch is full, spreading Downloaders over the partitions.</li>
+ *   <li>Lease ids are tagged with the index of the node that granted them, so
+ *       acknowledgements and renewals go back to that node.</li>
+ *   <li>Near-duplicate fingerprints are registered with the first node only, so
+ *       duplicates are still detected across hosts.</li>
+ * </ul>
+ *
+ * <p>Node stubs are looked up lazily and looked up again once if a call fails. All
+ * nodes must be listed in the same order by every client, since the order defines the
+ * lease id tags. With a single node the router passes calls straight through.</p>
+ *
+ * @author João Antunes, David Cameijo and Gabriel Pinto
+ */
+public class URLQueueRouter implements URLQueueInterface {
+
+    /** Bits of a routed lease id holding the node's own lease id */
+    private static final int LEASE_ID_BITS = 48;
+
+    /** Mask of the node's own lease id */
+    private static final long LEASE_ID_MASK = (1L << LEASE_ID_BITS) - 1;
+
+    /** Points per node on the hash ring */
+    private static final int VIRTUAL_NODES = 128;
+
+    /**
+     * A remote call to one queue node.
+     *
+     * @param <T> The result type
+     */
+    @FunctionalInterface
+    private interface NodeCall<T> {
+        T apply(URLQueueInterface node) throws RemoteException;
+    }
+
+    /**
+     * Sends one node its part of a batch.
+     *
+     * @param <E> The element type
+     */
+    @FunctionalInterface
+    private interface PartCall<E> {
+        int apply(int node, List<E> part) throws RemoteException;
+    }
+
+    //----------------------------------------ATTRIBUTES----------------------------------------
+
+    /** Host and registry port of every node */
+    private final String[] addresses;
+
+    /** Stub of every node, or null until it is looked up */
+    private final URLQueueInterface[] stubs;
+
+    /** Assigns hosts to nodes */
+    private final ConsistentHashRing ring;
+
+    /** Node the next batched take starts at */
+    private final AtomicInteger nextTakeNode = new AtomicInteger();
+
+    //----------------------------------------CONSTRUCTOR----------------------------------------
+
+    /**
+     * Creates a router over the given nodes.
+     *
+     * @param nodes Addresses of the queue nodes as {@code host:port}, in the same order on every client
+     */
+    public URLQueueRouter(List<String> nodes) {
+        if (nodes.isEmpty() || nodes.size() > 1 << (63 - LEASE_ID_BITS)) {
+            throw new IllegalArgumentException("Unsupported number of queue nodes: " + nodes.size());
+        }
+        this.addresses = nodes.stream().map(String::trim).toArray(String[]::new);
+        this.stubs = new URLQueueInterface[addresses.length];
+        this.ring = new ConsistentHashRing(Arrays.asList(addresses), VIRTUAL_NODES);
+    }
+
+    /**
+     * Creates a router and looks up every node, so a missing node is reported at startup.
+     *
+     * @param nodes Comma-separated addresses of the queue nodes as {@code host:port}
+     * @return The connected router
+     * @throws RemoteException If a node's registry cannot be reached
+     * @throws NotBoundException If a node's registry has no queue service
+     */
+    public static URLQueueRouter connect(String nodes) throws RemoteException, NotBoundException {
+        URLQueueRouter router = new URLQueueRouter(Arrays.asList(nodes.split(",")));
+        for (int node = 0; node < router.addresses.length; node++) {
+            router.lookup(node);
+        }
+        return router;
+    }
+
+    //----------------------------------------METHODS----------------------------------------
+
+    /**
+     * Looks up the queue service of a node.
+     *
+     * @param node The node index
+     * @return The node's stub
+     * @throws RemoteException If the registry cannot be reached
+     * @throws NotBoundException If the registry has no queue service
+     */
+    private synchronized URLQueueInterface lookup(int node) throws RemoteException, NotBoundException {
+        String address = addresses[node];
+        int colon = address.lastIndexOf(':');
+        Registry registry = LocateRegistry.getRegistry(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1)));
+        URLQueueInterface stub = (URLQueueInterface) registry.lookup("URLQueueService");
+        stubs[node] = stub;
+        return stub;
+    }
+
+    /**
+     * Calls a node, looking up its stub again and retrying once if the call fails.
+     *
+     * @param node The node index
+     * @param call The call
+     * @param <T> The result type
+     * @return The call's result
+     * @throws RemoteException If the node cannot be reached
+     */
+    private <T> T call(int node, NodeCall<T> call) throws RemoteException {
+        URLQueueInterface stub;
+        synchronized (this) {
+            stub = stubs[node];
+        }
+        if (stub != null) {
+            try {
+                return call.apply(stub);
+            } catch (RemoteException e) {
+                System.err.println("Queue node " + addresses[node] + " failed, reconnecting: " + e.getMessage());
+            }
+        }
+        try {
+            return call.apply(lookup(node));
+        } catch (NotBoundException e) {
+            throw new RemoteException("Queue node " + addresses[node] + " has no URLQueueService", e);
+        }
+    }
+
+    /**
+     * Returns the node owning a URL's host.
+     *
+     * @param url The URL
+     * @return The node index
+     */
+    private int nodeFor(String url) {
+        return addresses.length == 1 ? 0 : ring.nodeFor(HostScheduler.hostOf(url));
+    }
+
+    /**
+     * Splits URLs by owning node.
+     *
+     * @param urls The URLs
+     * @return The URLs of every node, indexed by node
+     */
+    private List<List<String>> partition(Collection<String> urls) {
+        List<List<String>> parts = new ArrayList<>(addresses.length);
+        for (int node = 0; node < addresses.length; node++) {
+            parts.add(new ArrayList<>());
+        }
+        for (String url : urls) {
+            if (url != null && !url.isEmpty()) {
+                parts.get(nodeFor(url)).add(url);
+            }
+        }
+        return parts;
+    }
+
+    /**
+     * Tags a node's lease with the node index.
+     *
+     * @param node The node index
+     * @param lease The lease granted by the node
+     * @return The lease with a routed id
+     */
+    private static UrlLease route(int node, UrlLease lease) {
+        return new UrlLease(((long) node << LEASE_ID_BITS) | lease.leaseId(), lease.url(), lease.score(), lease.depth());
+    }
+
+    /**
+     * Splits routed lease ids by the node that granted them, restoring the node's own ids.
+     *
+     * @param leaseIds The routed lease ids
+     * @return The node's lease ids, indexed by node
+     */
+    private List<List<Long>> partitionLeases(Collection<Long> leaseIds) {
+        List<List<Long>> parts = new ArrayList<>(addresses.length);
+        for (int node = 0; node < addresses.length; node++) {
+            parts.add(new ArrayList<>());
+        }
+        for (long leaseId : leaseIds) {
+            int node = (int) (leaseId >>> LEASE_ID_BITS);
+            if (node < addresses.length) {
+                parts.get(node).add(leaseId & LEASE_ID_MASK);
+            }
+        }
+        return parts;
+    }
+
+    @Override
+    public void addUrl(String url) throws RemoteException {
+        call(nodeFor(url), node -> {
+            node.addUrl(url);
+            return null;
+        });
+    }
+
+    /**
+     * Adds URLs with one call per owning node. Every node is tried even if one fails.
+     *
+     * @param urls The URLs to add
+     * @return The number of URLs added across all nodes
+     * @throws RemoteException If any node could not be reached, after the others were called
+     */
+    @Override
+    public int addUrls(Collection<String> urls) throws RemoteException {
+        return forEachPart(partition(urls), (node, part) -> call(node, stub -> stub.addUrls(part)));
+    }
+
+    /**
+     * Adds a page's links with one call per owning node. Every node is tried even if one fails.
+     *
+     * @param urls The URLs the page links to
+     * @param credit The share of the page's score credited to each link
+     * @param depth The depth of the links
+     * @return The number of URLs added across all nodes
+     * @throws RemoteException If any node could not be reached, after the others were called
+     */
+    @Override
+    public int addLinks(Collection<String> urls, double credit, int depth) throws RemoteException {
+        return forEachPart(partition(urls), (node, part) -> call(node, stub -> stub.addLinks(part, credit, depth)));
+    }
+
+    /**
+     * Sends each node its part of a batch.
+     *
+     * @param parts The part of every node
+     * @param send Sends a non-empty part to its node and returns the number of URLs added
+     * @param <E> The element type
+     * @return The total number of URLs added
+     * @throws RemoteException If any node failed, after all were tried
+     */
+    private <E> int forEachPart(List<List<E>> parts, PartCall<E> send) throws RemoteException {
+        int added = 0;
+        RemoteException failure = null;
+        for (int node = 0; node < parts.size(); node++) {
+            List<E> part = parts.get(node);
+            if (part.isEmpty()) {
+                continue;
+            }
+            try {
+                added += send.apply(node, part);
+            } catch (RemoteException e) {
+                failure = e;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return added;
+    }
+
+    @Override
+    public String takeUrl() throws RemoteException {
+        int start = Math.floorMod(nextTakeNode.getAndIncrement(), addresses.length);
+        RemoteException failure = null;
+        for (int i = 0; i < addresses.length; i++) {
+            try {
+                String url = call((start + i) % addresses.length, URLQueueInterface::takeUrl);
+                if (url != null) {
+                    return url;
+                }
+            } catch (RemoteException e) {
+                failure = e;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return null;
+    }
+
+    /**
+     * Leases up to {@code max} URLs, starting at a different node on every call and
+     * moving on to the next node until the batch is full. Unreachable nodes are
+     * skipped; an exception is only thrown if no node could be reached.
+     *
+     * @param max The maximum number of URLs to lease
+     * @return The leases granted, with routed ids
+     * @throws RemoteException If no node could be reached
+     */
+    @Override
+    public List<UrlLease> takeUrls(int max) throws RemoteException {
+        List<UrlLease> leases = new ArrayList<>();
+        int start = Math.floorMod(nextTakeNode.getAndIncrement(), addresses.length);
+        RemoteException failure = null;
+        int reached = 0;
+        for (int i = 0; i < addresses.length && leases.size() < max; i++) {
+            int node = (start + i) % addresses.length;
+            int wanted = max - leases.size();
+            try {
+                for (UrlLease lease : call(node, stub -> stub.takeUrls(wanted))) {
+                    leases.add(route(node, lease));
+                }
+                reached++;
+            } catch (RemoteException e) {
+                failure = e;
+            }
+        }
+        if (reached == 0 && failure != null) {
+            throw failure;
+        }
+        return leases;
+    }
+
+    /**
+     * Leases up to {@code max} URLs from any node, waiting if every node is empty.
+     *
+     * All nodes are tried first without waiting. If none has URLs, one node, chosen in
+     * turn, is asked to wait for arrivals; since URLs are spread over the nodes by
+     * host, an active crawl adds URLs to every node. Unreachable nodes are skipped.
+     *
+     * @param max The maximum number of URLs to lease
+     * @param timeoutMs The longest time to wait for URLs, in milliseconds
+     * @return The leases granted, with routed ids, empty if none arrived in time
+     * @throws RemoteException If no node could be reached
+     */
+    @Override
+    public List<UrlLease> takeUrls(int max, long timeoutMs) throws RemoteException {
+        List<UrlLease> leases = takeUrls(max);
+        if (!leases.isEmpty() || timeoutMs <= 0) {
+            return leases;
+        }
+        int start = Math.floorMod(nextTakeNode.getAndIncrement(), addresses.length);
+        RemoteException failure = null;
+        for (int i = 0; i < addresses.length; i++) {
+            int node = (start + i) % addresses.length;
+            try {
+                for (UrlLease lease : call(node, stub -> stub.takeUrls(max, timeoutMs))) {
+                    leases.add(route(node, lease));
+                }
+                return leases;
+            } catch (RemoteException e) {
+                failure = e;
+            }
+        }
+        throw failure;
+    }
+
+    @Override
+    public void ack(Collection<Long> leaseIds) throws RemoteException {
+        forEachPart(partitionLeases(leaseIds), (node, part) -> call(node, stub -> {
+            stub.ack(part);
+            return 0;
+        }));
+    }
+
+    @Override
+    public void extendLeases(Collection<Long> leaseIds) throws RemoteException {
+        forEachPart(partitionLeases(leaseIds), (node, part) -> call(node, stub -> {
+            stub.extendLeases(part);
+            return 0;
+        }));
+    }
+
+    /**
+     * Checks whether every node is empty. Unreachable nodes count as empty.
+     *
+     * @return true if no reachable node has queued URLs
+     * @throws RemoteException Never thrown; kept by the interface
+     */
+    @Override
+    public boolean isEmpty() throws RemoteException {
+        for (int node = 0; node < addresses.length; node++) {
+            try {
+                if (!call(node, URLQueueInterface::isEmpty)) {
+                    return false;
+                }
+            } catch (RemoteException e) {
+                System.err.println("Queue node " + addresses[node] + " unreachable: " + e.getMessage());
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String registerFingerprint(String url, long fingerprint) throws RemoteException {
+        return call(0, node -> node.registerFingerprint(url, fingerprint));
+    }
+
+    /**
+     * Reports a page's link set to the node owning the page's host, which also owns
+     * the URLs of the page's path template.
+     *
+     * @param url The URL of the page
+     * @param fingerprint The SimHash of the page's link templates
+     * @return true if the page belongs to a trap
+     * @throws RemoteException If the node cannot be reached
+     */
+    @Override
+    public boolean reportLinkSet(String url, long fingerprint) throws RemoteException {
+        return call(nodeFor(url), node -> node.reportLinkSet(url, fingerprint));
+    }
+
+    /**
+     * Returns the statistics of every node. With several nodes, each key is prefixed
+     * with the node's address.
+     *
+     * @return The merged statistics
+     * @throws RemoteException If no node could be reached
+     */
+    @Override
+    public Map<String, Object> getStats() throws RemoteException {
+        if (addresses.length == 1) {
+            return call(0, URLQueueInterface::getStats);
+        }
+        Map<String, Object> stats = new TreeMap<>();
+        RemoteException failure = null;
+        for (int node = 0; node < addresses.length; node++) {
+            String prefix = "[" + addresses[node] + "] ";
+            try {
+                call(node, URLQueueInterface::getStats).forEach((key, value) -> stats.put(prefix + key, value));
+            } catch (RemoteException e) {
+                stats.put(prefix + "status", "unreachable");
+                failure = e;
+            }
+        }
+        if (stats.size() == addresses.length && failure != null) {
+            throw failure;
+        }
+        return stats;
+    }
+}
@@ -0,0 +1,24 @@
+package search;
+
+import java.io.Serializable;
+
+/**
+ * A URL handed out by the {@link URLQueue} for a limited time.
+ *
+ * <p>The URL stays reserved for the holder until the lease expires. The holder
+ * acknowledges it with {@link URLQueueInterface#ack(java.util.Collection)} once the
+ * page has been processed; a lease that expires without being acknowledged (for
+ * example because its Downloader crashed) is handed out again.</p>
+ *
+ * <p>The lease also carries the URL's score and depth, so the holder can credit the
+ * links found on the page with {@link URLQueueInterface#addLinks(java.util.Collection, double, int)}.</p>
+ *
+ * @param leaseId Identifier used to acknowledge or extend the lease
+ * @param url The leased URL
+ * @param score The URL's score, to be split among the links found on the page
+ * @param depth Number of links followed from a seed URL to reach it
+ *
+ * @author João Antunes, David Cameijo and Gabriel Pinto
+ */
+public record UrlLease(long leaseId, String url, double score, int depth) implements Serializable {
+}